@@ -0,0 +1,249 @@
+package com.soprasteria.azure.openai;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+
+import com.azure.ai.openai.OpenAIClient;
+import com.azure.ai.openai.OpenAIClientBuilder;
+import com.azure.core.util.HttpClientOptions;
+import com.azure.search.documents.SearchClient;
+import com.azure.search.documents.SearchClientBuilder;
+import com.azure.search.documents.indexes.SearchIndexClientBuilder;
+import com.azure.search.documents.indexes.models.AzureOpenAIVectorizer;
+import com.azure.search.documents.indexes.models.SearchIndex;
+import com.azure.search.documents.indexes.models.VectorSearchProfile;
+import com.azure.search.documents.indexes.models.VectorSearchVectorizer;
+import com.soprasteria.azure.openai.embedding.EmbeddingCache;
+import com.soprasteria.azure.openai.journey2.SearchResultCache;
+import com.soprasteria.azure.openai.journey2.SearchResultReader.Passage;
+import com.soprasteria.azure.openai.journey3.utils.Utils;
+import com.soprasteria.azure.openai.rag.Bulkhead;
+import com.soprasteria.azure.openai.rag.MmrSelector;
+import com.soprasteria.azure.openai.rag.RagPipeline;
+import com.soprasteria.azure.openai.standin.FaultProfile;
+import com.soprasteria.azure.openai.standin.RagStandIns;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.env.Environment;
+
+/**
+ * The clients, the caches and the {@link RagPipeline}, built once and shared by every request. The connection
+ * pool of each Azure client is sized to the bulkhead in front of it, so a permit never waits for a connection, also
+ * when the client talks to a plain http stand-in. The configured embedding model and dimensions are checked against
+ * the index at startup.
+ * <p>
+ * With the {@code standin} profile the three backends are local stand-ins started with the application.
+ */
+@Configuration
+public class RagConfiguration {
+
+    private static final Logger log = LoggerFactory.getLogger(RagConfiguration.class);
+
+    @Value("${azure.openai.endpoint}")
+    private String openaiEndpoint;
+
+    @Value("${azure.openai.api-key}")
+    private String openaiApiKey;
+
+    @Value("${azure.openai.chat-model}")
+    private String chatModel;
+
+    @Value("${azure.openai.embedding-model}")
+    private String embeddingModel;
+
+    @Value("${azure.openai.embedding-dimensions}")
+    private int embeddingDimensions;
+
+    @Value("${azure.openai.embedding-cache-dir}")
+    private String embeddingCacheDir;
+
+    @Value("${azure.search.endpoint}")
+    private String searchEndpoint;
+
+    @Value("${azure.search.index-name}")
+    private String searchIndex;
+
+    @Value("${azure.search.api-key}")
+    private String searchApiKey;
+
+    @Value("${rag.search-cache.max-entries}")
+    private int searchCacheEntries;
+
+    @Value("${rag.search-cache.ttl}")
+    private Duration searchCacheTtl;
+
+    @Value("${rag.context.top-k}")
+    private int contextTopK;
+
+    @Value("${rag.context.max-tokens}")
+    private int contextMaxTokens;
+
+    @Value("${rag.context.mmr.candidates}")
+    private int mmrCandidates;
+
+    @Value("${rag.context.mmr.lambda}")
+    private double mmrLambda;
+
+    @Value("${rag.context.mmr.max-similarity}")
+    private double mmrMaxSimilarity;
+
+    @Value("${rag.context.mmr.min-relevance}")
+    private double mmrMinRelevance;
+
+    @Value("${rag.server.request-timeout}")
+    private Duration requestTimeout;
+
+    @Value("${rag.server.chat-stall-timeout}")
+    private Duration chatStallTimeout;
+
+    @Value("${rag.server.max-queue-wait}")
+    private Duration maxQueueWait;
+
+    @Value("${rag.server.max-concurrent.embeddings}")
+    private int maxEmbeddings;
+
+    @Value("${rag.server.max-concurrent.search}")
+    private int maxSearches;
+
+    @Value("${rag.server.max-concurrent.chat}")
+    private int maxChats;
+
+    /**
+     * The stand-ins inject the faults of {@code rag.standin.faults}, {@link FaultProfile#REALISTIC} if not set.
+     */
+    @Bean
+    @Profile("standin")
+    public RagStandIns ragStandIns(Environment environment) throws IOException {
+        final var faults = Binder.get(environment).bind("rag.standin.faults", FaultProfile.class)
+            .orElse(FaultProfile.REALISTIC);
+        final var standIns = new RagStandIns(faults, searchIndex, embeddingDimensions);
+        log.info("Stand-ins: {}", standIns);
+        return standIns;
+    }
+
+    @Bean
+    public OpenAIClient embeddingsClient(ObjectProvider<RagStandIns> standIns) {
+        final var standIn = standIns.getIfAvailable();
+        return Utils.keyedEndpoint(new OpenAIClientBuilder(),
+                standIn != null ? standIn.embeddings().endpoint() : openaiEndpoint, openaiApiKey,
+                clientOptions(maxEmbeddings))
+            .buildClient();
+    }
+
+    @Bean
+    public OpenAIClient chatClient(ObjectProvider<RagStandIns> standIns) {
+        final var standIn = standIns.getIfAvailable();
+        return Utils.keyedEndpoint(new OpenAIClientBuilder(),
+                standIn != null ? standIn.chat().endpoint() : openaiEndpoint, openaiApiKey,
+                clientOptions(maxChats))
+            .buildClient();
+    }
+
+    @Bean
+    public SearchClient searchClient(ObjectProvider<RagStandIns> standIns) {
+        final var standIn = standIns.getIfAvailable();
+        final var endpoint = standIn != null ? standIn.search().endpoint() : searchEndpoint;
+        checkIndexEmbeddings(Utils.keyedEndpoint(new SearchIndexClientBuilder(), endpoint, searchApiKey)
+            .buildClient().getIndex(searchIndex));
+        return Utils.keyedEndpoint(new SearchClientBuilder(), endpoint, searchApiKey, clientOptions(maxSearches))
+            .indexName(searchIndex)
+            .buildClient();
+    }
+
+    @Bean
+    public EmbeddingCache embeddingCache() {
+        return new EmbeddingCache(Path.of(embeddingCacheDir), 64L * 1024 * 1024);
+    }
+
+    /**
+     * Documents uploaded to the stand-in invalidate its index at once. The real index is filled by other processes,
+     * so results found there are served for at most {@code rag.search-cache.ttl} after an upload.
+     */
+    @Bean
+    public SearchResultCache<List<Passage>> searchResultCache(ObjectProvider<RagStandIns> standIns) {
+        final var cache = new SearchResultCache<List<Passage>>(searchCacheEntries, searchCacheTtl);
+        final var standIn = standIns.getIfAvailable();
+        if (standIn != null) {
+            standIn.search().backend().onChange(cache::invalidate);
+        }
+        return cache;
+    }
+
+    @Bean
+    public RagPipeline ragPipeline(@Qualifier("embeddingsClient") OpenAIClient embeddingsClient,
+                                   @Qualifier("chatClient") OpenAIClient chatClient, SearchClient searchClient,
+                                   EmbeddingCache embeddingCache, SearchResultCache<List<Passage>> searchCache) {
+        final var settings = new RagPipeline.Settings(chatModel, embeddingModel, embeddingDimensions, contextTopK,
+            contextMaxTokens, new MmrSelector(mmrLambda, mmrMaxSimilarity, mmrMinRelevance), mmrCandidates, 0.7,
+            chatStallTimeout);
+        return new RagPipeline(embeddingsClient, chatClient, searchClient, embeddingCache, searchCache, settings,
+            new Bulkhead("embeddings", maxEmbeddings, maxQueueWait), new Bulkhead("search", maxSearches, maxQueueWait),
+            new Bulkhead("chat", maxChats, maxQueueWait));
+    }
+
+    /**
+     * Fail at startup unless questions are embedded like the chunks in the index: with as many dimensions as its
+     * vector field and, when the field has a vectorizer, with the same model.
+     */
+    private void checkIndexEmbeddings(SearchIndex index) {
+        final var field = index.getFields().stream()
+            .filter(candidate -> RagPipeline.VECTOR_FIELD.equals(candidate.getName()))
+            .findFirst()
+            .orElseThrow(() -> new IllegalStateException(
+                "Index " + index.getName() + " has no vector field " + RagPipeline.VECTOR_FIELD));
+        if (!Objects.equals(field.getVectorSearchDimensions(), embeddingDimensions)) {
+            throw new IllegalStateException(String.format(
+                "azure.openai.embedding-dimensions is %d, but %s.%s has %s dimensions", embeddingDimensions,
+                index.getName(), field.getName(), field.getVectorSearchDimensions()));
+        }
+        final var vectorizer = vectorizer(index, field.getVectorSearchProfileName());
+        if (vectorizer instanceof AzureOpenAIVectorizer openai && openai.getParameters() != null) {
+            final var parameters = openai.getParameters();
+            final var model = parameters.getModelName() == null ? null : parameters.getModelName().toString();
+            if (!embeddingModel.equals(model) && !embeddingModel.equals(parameters.getDeploymentName())) {
+                throw new IllegalStateException(String.format(
+                    "azure.openai.embedding-model is %s, but %s.%s is vectorized with %s (deployment %s)",
+                    embeddingModel, index.getName(), field.getName(), model, parameters.getDeploymentName()));
+            }
+        }
+        log.info("Index {} matches {} with {} dimensions", index.getName(), embeddingModel, embeddingDimensions);
+    }
+
+    private static VectorSearchVectorizer vectorizer(SearchIndex index, String profileName) {
+        final var vectorSearch = index.getVectorSearch();
+        if (vectorSearch == null || profileName == null || vectorSearch.getVectorizers() == null) {
+            return null;
+        }
+        final var vectorizerName = vectorSearch.getProfiles().stream()
+            .filter(profile -> profile.getName().equals(profileName))
+            .map(VectorSearchProfile::getVectorizerName)
+            .findFirst()
+            .orElse(null);
+        return vectorSearch.getVectorizers().stream()
+            .filter(vectorizer -> vectorizer.getVectorizerName().equals(vectorizerName))
+            .findFirst()
+            .orElse(null);
+    }
+
+    /**
+     * No client waits for a response longer than a whole request may take. This is only a backstop: the pipeline
+     * interrupts every call still running at its request's deadline.
+     */
+    private HttpClientOptions clientOptions(int connections) {
+        return new HttpClientOptions()
+            .setMaximumConnectionPoolSize(connections)
+            .setResponseTimeout(requestTimeout)
+            .setReadTimeout(requestTimeout);
+    }
+
+}
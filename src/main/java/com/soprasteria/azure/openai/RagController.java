@@ -0,0 +1,168 @@
+package com.soprasteria.azure.openai;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.azure.core.exception.HttpResponseException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.soprasteria.azure.openai.embedding.EmbeddingCache;
+import com.soprasteria.azure.openai.journey2.SearchResultCache;
+import com.soprasteria.azure.openai.rag.Bulkhead;
+import com.soprasteria.azure.openai.rag.RagPipeline;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ProblemDetail;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Question answering over HTTP. {@code POST /api/answer} with {@code {"question": "..."}} answers as server-sent
+ * events: a {@code context} event describing the prompt, the answer text as it streams from the model, one
+ * {@code data: {"text": "..."}} message per piece, and a {@code done} event with the timings, or an {@code error}
+ * event if the answer fails halfway.
+ * <p>
+ * Requests run on virtual threads, so the handler blocks on the backends and writes the stream itself. Failures
+ * before the first event are answered with a status instead: 503 with {@code Retry-After} when a backend is at
+ * capacity, 504 past the request timeout and 502 when a backend fails. The chat permit is taken before the first
+ * event, so a saturated chat backend is answered 503 as well.
+ */
+@RestController
+@RequestMapping("/api")
+public class RagController {
+
+    private static final Logger log = LoggerFactory.getLogger(RagController.class);
+
+    public record Question(String question) {
+    }
+
+    public record Stats(List<Bulkhead.Stats> bulkheads, EmbeddingCache.Stats embeddingCache,
+                        SearchResultCache.Stats searchCache) {
+    }
+
+    private final RagPipeline pipeline;
+    private final ObjectMapper mapper;
+    private final Duration requestTimeout;
+
+    public RagController(RagPipeline pipeline, ObjectMapper mapper,
+                         @Value("${rag.server.request-timeout}") Duration requestTimeout) {
+        this.pipeline = pipeline;
+        this.mapper = mapper;
+        this.requestTimeout = requestTimeout;
+    }
+
+    @PostMapping("/answer")
+    public void answer(@RequestBody Question question, HttpServletResponse response) throws IOException {
+        if (question.question() == null || question.question().isBlank()) {
+            response.sendError(HttpStatus.BAD_REQUEST.value(), "'question' must not be blank");
+            return;
+        }
+        final var deadline = System.nanoTime() + requestTimeout.toNanos();
+        final var retrieval = pipeline.retrieve(question.question().strip(), deadline);
+        // The status is sent with the first event, so the chat permit is taken before it: without capacity the
+        // request is answered 503 rather than 200 and an error event.
+        try (final var permit = pipeline.admit(deadline)) {
+            stream(retrieval, permit, response, deadline);
+        }
+    }
+
+    private void stream(RagPipeline.Retrieval retrieval, Bulkhead.Permit permit, HttpServletResponse response,
+                        long deadline) throws IOException {
+        response.setContentType(MediaType.TEXT_EVENT_STREAM_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "no-cache");
+        final var out = response.getOutputStream();
+        final var context = retrieval.context();
+        event(out, "context", Map.of(
+            "chunks", context.included().size(),
+            "dropped", context.dropped().size(),
+            "promptTokens", retrieval.promptTokens(),
+            "retrievalMillis", Math.round(retrieval.millis())));
+        // The answer streams on a thread of the pipeline's; once the request thread ends the answer, pieces still
+        // arriving are refused rather than written after the last event.
+        final var ended = new AtomicBoolean();
+        try {
+            final var answer = pipeline.answer(retrieval, permit, text -> {
+                synchronized (out) {
+                    if (ended.get()) {
+                        throw new IllegalStateException("The answer has already ended");
+                    }
+                    try {
+                        event(out, null, Map.of("text", text));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            }, deadline);
+            final var done = new LinkedHashMap<String, Object>();
+            done.put("timeToFirstTokenMillis", Math.round(answer.timeToFirstTokenMillis()));
+            done.put("totalMillis", Math.round(answer.totalMillis()));
+            done.put("chunks", answer.chunks());
+            done.put("finishReason", answer.finishReason());
+            event(out, "done", done);
+        } catch (UncheckedIOException e) {
+            // The client went away; there is no one left to tell.
+            log.debug("Client gone while streaming: {}", e.getMessage());
+        } catch (RuntimeException e) {
+            log.warn("Answer failed after {} ms: {}", Math.round(retrieval.millis()), e.toString());
+            synchronized (out) {
+                ended.set(true);
+                event(out, "error", Map.of("message", String.valueOf(e.getMessage())));
+            }
+        }
+    }
+
+    @GetMapping("/stats")
+    public Stats stats() {
+        return new Stats(pipeline.bulkheads(), pipeline.embeddingCache(), pipeline.searchCache());
+    }
+
+    @ExceptionHandler(Bulkhead.Rejected.class)
+    public ResponseEntity<ProblemDetail> rejected(Bulkhead.Rejected e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+            .header(HttpHeaders.RETRY_AFTER, "1")
+            .body(ProblemDetail.forStatusAndDetail(HttpStatus.SERVICE_UNAVAILABLE, e.getMessage()));
+    }
+
+    @ExceptionHandler(RagPipeline.DeadlineExceeded.class)
+    public ProblemDetail deadlineExceeded(RagPipeline.DeadlineExceeded e) {
+        return ProblemDetail.forStatusAndDetail(HttpStatus.GATEWAY_TIMEOUT, e.getMessage());
+    }
+
+    @ExceptionHandler(HttpResponseException.class)
+    public ProblemDetail backendFailed(HttpResponseException e) {
+        log.warn("Backend failed: {}", e.getMessage());
+        return ProblemDetail.forStatusAndDetail(HttpStatus.BAD_GATEWAY,
+            "Backend answered " + e.getResponse().getStatusCode());
+    }
+
+    /**
+     * Write one event and flush it, so it leaves the server as soon as it exists.
+     */
+    private void event(OutputStream out, String name, Map<String, ?> data) throws IOException {
+        final var event = new StringBuilder();
+        if (name != null) {
+            event.append("event: ").append(name).append('\n');
+        }
+        event.append("data: ").append(mapper.writeValueAsString(data)).append("\n\n");
+        out.write(event.toString().getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+}
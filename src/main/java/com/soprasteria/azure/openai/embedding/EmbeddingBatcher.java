@@ -0,0 +1,219 @@
+package com.soprasteria.azure.openai.embedding;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+import com.azure.ai.openai.OpenAIClient;
+import com.azure.ai.openai.models.EmbeddingsOptions;
+
+/**
+ * Packs single texts into multi-input embedding requests. Callers submit one text at a time and get a future of its
+ * vector; a dispatcher collects pending texts into a request until it holds {@code maxInputs} texts or
+ * {@code maxTokens} estimated tokens, or no more texts arrived within {@code linger}, and sends it while up to
+ * {@code maxInFlight} other requests are running.
+ * <p>
+ * A text larger than the token budget is sent on its own. When a request fails, every future of its texts fails with
+ * the same exception.
+ */
+public class EmbeddingBatcher implements AutoCloseable {
+
+    /**
+     * Request counts since the batcher was created.
+     */
+    public record Stats(long requests, long inputs, long failedRequests) {
+
+        public double meanBatchSize() {
+            return requests == 0 ? 0.0 : (double) inputs / requests;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d texts in %d requests (%.1f per request, %d failed)",
+                inputs, requests, meanBatchSize(), failedRequests);
+        }
+    }
+
+    private record Pending(String text, int tokens, CompletableFuture<float[]> future) {
+    }
+
+    private static final Pending CLOSED = new Pending(null, 0, null);
+
+    private final Function<List<String>, List<float[]>> embedBatch;
+    private final int maxInputs;
+    private final int maxTokens;
+    private final Duration linger;
+    private final ToIntFunction<String> tokenCounter;
+    private final Semaphore inFlight;
+    private final LinkedBlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Thread dispatcher;
+    private boolean closed;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder inputs = new LongAdder();
+    private final LongAdder failedRequests = new LongAdder();
+
+    /**
+     * @param embedBatch   embeds a list of texts, returning one vector per text in the same order
+     * @param maxInputs    most texts per request
+     * @param maxTokens    most estimated tokens per request
+     * @param maxInFlight  most requests running at the same time
+     * @param linger       how long a partly filled request waits for more texts
+     * @param tokenCounter estimated tokens of a text, e.g. {@link #estimateTokens(String)}
+     */
+    public EmbeddingBatcher(Function<List<String>, List<float[]>> embedBatch, int maxInputs, int maxTokens,
+                            int maxInFlight, Duration linger, ToIntFunction<String> tokenCounter) {
+        if (maxInputs < 1 || maxTokens < 1 || maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInputs, maxTokens and maxInFlight must be at least 1");
+        }
+        this.embedBatch = embedBatch;
+        this.maxInputs = maxInputs;
+        this.maxTokens = maxTokens;
+        this.linger = linger;
+        this.tokenCounter = tokenCounter;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.dispatcher = Thread.ofVirtual().name("embedding-batcher").start(this::dispatch);
+    }
+
+    /**
+     * Batcher for an embeddings deployment: up to 256 texts and 64k estimated tokens per request, 4 requests in
+     * flight, and 10 ms for a request to fill up.
+     */
+    public static EmbeddingBatcher forDeployment(OpenAIClient client, String deployment, int dimensions) {
+        return new EmbeddingBatcher(texts -> embed(client, deployment, dimensions, texts), 256, 64_000, 4,
+            Duration.ofMillis(10), EmbeddingBatcher::estimateTokens);
+    }
+
+    /**
+     * One request for all {@code texts}. Results are mapped back by their prompt index, as the service does not
+     * promise to return them in order.
+     */
+    public static List<float[]> embed(OpenAIClient client, String deployment, int dimensions, List<String> texts) {
+        final var options = new EmbeddingsOptions(texts).setDimensions(dimensions);
+        final var vectors = new float[texts.size()][];
+        for (final var item : client.getEmbeddings(deployment, options).getData()) {
+            final var embedding = item.getEmbedding();
+            final var vector = new float[embedding.size()];
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] = embedding.get(i);
+            }
+            vectors[item.getPromptIndex()] = vector;
+        }
+        return Arrays.asList(vectors);
+    }
+
+    /**
+     * Rough token count for budgeting: about four characters per token for English text.
+     */
+    public static int estimateTokens(String text) {
+        return Math.max(1, (text.length() + 3) / 4);
+    }
+
+    public synchronized CompletableFuture<float[]> submit(String text) {
+        if (closed) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Embedding batcher is closed"));
+        }
+        final var pending = new Pending(text, tokenCounter.applyAsInt(text), new CompletableFuture<>());
+        queue.add(pending);
+        return pending.future();
+    }
+
+    /**
+     * Submit every text and wait for all vectors, in the order of {@code texts}.
+     */
+    public List<float[]> embedAll(List<String> texts) {
+        final var futures = texts.stream().map(this::submit).toList();
+        return futures.stream().map(CompletableFuture::join).toList();
+    }
+
+    public Stats stats() {
+        return new Stats(requests.sum(), inputs.sum(), failedRequests.sum());
+    }
+
+    private void dispatch() {
+        Pending carried = null;
+        try {
+            while (true) {
+                final var first = carried != null ? carried : queue.take();
+                carried = null;
+                if (first == CLOSED) {
+                    return;
+                }
+                final var batch = new ArrayList<Pending>();
+                batch.add(first);
+                var tokens = first.tokens();
+                final var deadline = System.nanoTime() + linger.toNanos();
+                while (batch.size() < maxInputs) {
+                    final var next = queue.poll(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    if (next == CLOSED || tokens + next.tokens() > maxTokens) {
+                        carried = next;
+                        break;
+                    }
+                    batch.add(next);
+                    tokens += next.tokens();
+                }
+                inFlight.acquire();
+                executor.execute(() -> send(batch));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void send(List<Pending> batch) {
+        try {
+            final var vectors = embedBatch.apply(batch.stream().map(Pending::text).toList());
+            requests.increment();
+            inputs.add(batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                final var vector = i < vectors.size() ? vectors.get(i) : null;
+                if (vector != null) {
+                    batch.get(i).future().complete(vector);
+                } else {
+                    batch.get(i).future().completeExceptionally(
+                        new IllegalStateException("No embedding returned for input " + i));
+                }
+            }
+        } catch (Exception e) {
+            failedRequests.increment();
+            batch.forEach(pending -> pending.future().completeExceptionally(e));
+        } finally {
+            inFlight.release();
+        }
+    }
+
+    /**
+     * Send what is pending, wait for every request to finish and stop the dispatcher.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            queue.add(CLOSED);
+        }
+        try {
+            dispatcher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        executor.close();
+    }
+
+}
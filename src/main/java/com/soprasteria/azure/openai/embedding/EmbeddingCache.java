@@ -0,0 +1,203 @@
+package com.soprasteria.azure.openai.embedding;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Two-tier cache of embeddings keyed by deployment, dimensions and the SHA-256 of the normalized text, so the same
+ * question or query text is embedded once across runs.
+ * <p>
+ * The first tier is an in-memory LRU map bounded by the bytes of the vectors it holds. The second tier is a
+ * {@link MappedEmbeddingFile} per deployment and dimensionality in {@code directory}, which keeps every embedding
+ * ever computed as primitive floats and survives restarts. Texts are normalized by NFKC, trimming and collapsing
+ * whitespace, so formatting differences do not miss the cache; case is kept, as it changes the embedding.
+ */
+public class EmbeddingCache implements AutoCloseable {
+
+    /**
+     * Hit and miss counts since the cache was opened.
+     */
+    public record Stats(long memoryHits, long diskHits, long misses) {
+
+        public long requests() {
+            return memoryHits + diskHits + misses;
+        }
+
+        public double hitRate() {
+            return requests() == 0 ? 0.0 : (double) (memoryHits + diskHits) / requests();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d requests, hit rate %.1f%% (%d memory, %d disk, %d misses)",
+                requests(), hitRate() * 100, memoryHits, diskHits, misses);
+        }
+    }
+
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final Path directory;
+    private final long maxMemoryBytes;
+    private final LinkedHashMap<String, float[]> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, MappedEmbeddingFile> files = new ConcurrentHashMap<>();
+    private long memoryBytes;
+
+    private final LongAdder memoryHits = new LongAdder();
+    private final LongAdder diskHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param directory      where the on-disk tier keeps its files, created on first use
+     * @param maxMemoryBytes upper bound of the float data held by the in-memory tier
+     */
+    public EmbeddingCache(Path directory, long maxMemoryBytes) {
+        this.directory = directory;
+        this.maxMemoryBytes = maxMemoryBytes;
+    }
+
+    /**
+     * Cache in {@code embedding-cache/} holding up to 64 MB of vectors in memory.
+     */
+    public static EmbeddingCache withDefaults() {
+        return new EmbeddingCache(Path.of("embedding-cache"), 64L * 1024 * 1024);
+    }
+
+    /**
+     * The cached embedding of {@code text}, or the result of {@code embed} applied to it, which is then cached in
+     * both tiers. {@code embed} must return vectors of {@code dimensions} values.
+     */
+    public float[] get(String deployment, int dimensions, String text, Function<String, float[]> embed) {
+        final var hash = hash(deployment, dimensions, text);
+        final var cached = cached(deployment, dimensions, hash);
+        if (cached != null) {
+            return cached;
+        }
+        misses.increment();
+        final var vector = embed.apply(text);
+        store(deployment, dimensions, hash, vector);
+        return vector;
+    }
+
+    /**
+     * The embeddings of {@code texts} in order, with every text missing from the cache embedded by a single call to
+     * {@code embed}, which returns their vectors in the order it was given them. Nothing is embedded when all are
+     * cached.
+     */
+    public List<float[]> getAll(String deployment, int dimensions, List<String> texts,
+                                Function<List<String>, List<float[]>> embed) {
+        final var vectors = new float[texts.size()][];
+        final var hashes = new byte[texts.size()][];
+        final var missing = new ArrayList<Integer>();
+        for (int i = 0; i < vectors.length; i++) {
+            hashes[i] = hash(deployment, dimensions, texts.get(i));
+            vectors[i] = cached(deployment, dimensions, hashes[i]);
+            if (vectors[i] == null) {
+                missing.add(i);
+            }
+        }
+        if (!missing.isEmpty()) {
+            misses.add(missing.size());
+            final var embedded = embed.apply(missing.stream().map(texts::get).toList());
+            for (int j = 0; j < missing.size(); j++) {
+                final int i = missing.get(j);
+                vectors[i] = embedded.get(j);
+                store(deployment, dimensions, hashes[i], vectors[i]);
+            }
+        }
+        return Arrays.asList(vectors);
+    }
+
+    public Stats stats() {
+        return new Stats(memoryHits.sum(), diskHits.sum(), misses.sum());
+    }
+
+    /**
+     * The text as it is hashed: NFKC, trimmed, and with every run of whitespace replaced by a single space.
+     */
+    public static String normalize(String text) {
+        return Normalizer.normalize(text, Normalizer.Form.NFKC).strip().replaceAll("\\s+", " ");
+    }
+
+    static byte[] hash(String deployment, int dimensions, String text) {
+        try {
+            final var digest = MessageDigest.getInstance("SHA-256");
+            digest.update((deployment + '\0' + dimensions + '\0' + normalize(text)).getBytes(StandardCharsets.UTF_8));
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    static String hex(byte[] hash) {
+        return HEX.formatHex(hash);
+    }
+
+    private float[] cached(String deployment, int dimensions, byte[] hash) {
+        final var key = hex(hash);
+        final var cached = fromMemory(key);
+        if (cached != null) {
+            memoryHits.increment();
+            return cached;
+        }
+        final var stored = file(deployment, dimensions).get(hash);
+        if (stored != null) {
+            diskHits.increment();
+            toMemory(key, stored);
+        }
+        return stored;
+    }
+
+    private void store(String deployment, int dimensions, byte[] hash, float[] vector) {
+        file(deployment, dimensions).put(hash, vector);
+        toMemory(hex(hash), vector);
+    }
+
+    private synchronized float[] fromMemory(String key) {
+        return memory.get(key);
+    }
+
+    private synchronized void toMemory(String key, float[] vector) {
+        if (memory.put(key, vector) == null) {
+            memoryBytes += (long) vector.length * Float.BYTES;
+        }
+        final var eldest = memory.entrySet().iterator();
+        while (memoryBytes > maxMemoryBytes && eldest.hasNext()) {
+            memoryBytes -= (long) eldest.next().getValue().length * Float.BYTES;
+            eldest.remove();
+        }
+    }
+
+    private MappedEmbeddingFile file(String deployment, int dimensions) {
+        final var name = deployment.replaceAll("[^A-Za-z0-9._-]", "_") + "-" + dimensions + ".emb";
+        return files.computeIfAbsent(name, ignored -> {
+            try {
+                return MappedEmbeddingFile.open(directory.resolve(name), dimensions);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (final var file : files.values()) {
+            file.close();
+        }
+        files.clear();
+    }
+
+}
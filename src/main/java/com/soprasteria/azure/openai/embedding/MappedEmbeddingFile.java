@@ -0,0 +1,144 @@
+package com.soprasteria.azure.openai.embedding;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Append-only, memory-mapped file of embeddings of one dimensionality, each stored as its 32 byte key hash followed
+ * by little-endian float32 values.
+ * <p>
+ * File layout: a 16 byte header ({@code EMB1} magic, record count, dimensions, reserved) followed by the records.
+ * The file is mapped in fixed-size segments, and a new segment is mapped when the last one is full, so appending
+ * never remaps what readers use; mapping past the end grows the file sparsely. The record count is written after the
+ * record, so a record torn by a crash is simply not there on the next open.
+ */
+class MappedEmbeddingFile implements AutoCloseable {
+
+    static final int HASH_BYTES = 32;
+
+    private static final int MAGIC = 0x454d4231; // "EMB1"
+    private static final int HEADER_BYTES = 16;
+    private static final long SEGMENT_BYTES = 64L * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final int dimensions;
+    private final int recordBytes;
+    private final int recordsPerSegment;
+    private final MappedByteBuffer header;
+    private final List<MappedByteBuffer> segments = new CopyOnWriteArrayList<>();
+    private final Map<String, Integer> records = new ConcurrentHashMap<>();
+    private int size;
+
+    private MappedEmbeddingFile(Path path, int dimensions) throws IOException {
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        this.channel = FileChannel.open(path,
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.dimensions = dimensions;
+        this.recordBytes = HASH_BYTES + dimensions * Float.BYTES;
+        this.recordsPerSegment = (int) Math.max(1, SEGMENT_BYTES / recordBytes);
+        this.header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (header.getInt(0) == 0) {
+            header.putInt(0, MAGIC).putInt(4, 0).putInt(8, dimensions);
+        } else if (header.getInt(0) != MAGIC || header.getInt(8) != dimensions) {
+            channel.close();
+            throw new IOException("Not an embedding file of " + dimensions + " dimensions: " + path);
+        }
+        final var stored = header.getInt(4);
+        for (int row = 0; row < stored; row++) {
+            final var hash = new byte[HASH_BYTES];
+            segment(row).get(offset(row), hash);
+            records.put(EmbeddingCache.hex(hash), row);
+        }
+        this.size = stored;
+    }
+
+    static MappedEmbeddingFile open(Path path, int dimensions) throws IOException {
+        return new MappedEmbeddingFile(path, dimensions);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * The stored embedding of a key hash, or null when there is none.
+     */
+    float[] get(byte[] hash) {
+        final var row = records.get(EmbeddingCache.hex(hash));
+        if (row == null) {
+            return null;
+        }
+        final var vector = new float[dimensions];
+        // Absolute slices and bulk gets do not touch the shared buffer's position, so readers need no lock.
+        segment(row).slice(offset(row) + HASH_BYTES, dimensions * Float.BYTES)
+            .order(ByteOrder.LITTLE_ENDIAN)
+            .asFloatBuffer()
+            .get(vector);
+        return vector;
+    }
+
+    synchronized void put(byte[] hash, float[] vector) {
+        if (vector.length != dimensions) {
+            throw new IllegalArgumentException("Expected " + dimensions + " dimensions but got " + vector.length);
+        }
+        final var key = EmbeddingCache.hex(hash);
+        if (records.containsKey(key)) {
+            return;
+        }
+        final var row = size;
+        final var segment = segment(row);
+        segment.put(offset(row), hash);
+        segment.slice(offset(row) + HASH_BYTES, dimensions * Float.BYTES)
+            .order(ByteOrder.LITTLE_ENDIAN)
+            .asFloatBuffer()
+            .put(vector);
+        size = row + 1;
+        header.putInt(4, size);
+        records.put(key, row);
+    }
+
+    private ByteBuffer segment(int row) {
+        final var index = row / recordsPerSegment;
+        if (index < segments.size()) {
+            return segments.get(index);
+        }
+        synchronized (segments) {
+            while (segments.size() <= index) {
+                try {
+                    segments.add(channel.map(FileChannel.MapMode.READ_WRITE,
+                        HEADER_BYTES + (long) segments.size() * recordsPerSegment * recordBytes,
+                        (long) recordsPerSegment * recordBytes));
+                } catch (IOException e) {
+                    throw new IllegalStateException("Could not map embedding file segment " + segments.size(), e);
+                }
+            }
+            return segments.get(index);
+        }
+    }
+
+    private int offset(int row) {
+        return (row % recordsPerSegment) * recordBytes;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        header.force();
+        for (final var segment : segments) {
+            segment.force();
+        }
+        channel.close();
+    }
+
+}
@@ -16,6 +16,7 @@ import com.azure.search.documents.models.SearchResult;
 import com.azure.search.documents.models.VectorSearchOptions;
 import com.azure.search.documents.models.VectorizableTextQuery;
 import com.azure.search.documents.util.SearchPagedIterable;
+import com.soprasteria.azure.openai.rag.StreamingAnswer;
 import org.springframework.beans.factory.annotation.Value;
 
 public class AzureOpenAiApplication {
@@ -69,9 +70,9 @@ public class AzureOpenAiApplication {
         final var options = new ChatCompletionsOptions(messages).setTemperature(0.7d);
 
         System.out.println("Svarer...");
-        openAIClient.getChatCompletions(chatModel, options)
-            .getChoices()
-            .forEach(choice -> System.out.println(choice.getMessage().getContent()));
+        final var answer = StreamingAnswer.stream(openAIClient, chatModel, options,
+            StreamingAnswer.printingTo(System.out));
+        System.out.printf("%n%n(%s)%n", answer);
     }
 
     private static String getContext(SearchPagedIterable results) {
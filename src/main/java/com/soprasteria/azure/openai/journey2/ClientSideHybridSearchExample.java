@@ -0,0 +1,67 @@
+package com.soprasteria.azure.openai.journey2;
+
+import java.time.Duration;
+import java.util.List;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.azure.core.credential.AzureKeyCredential;
+import com.azure.search.documents.SearchClientBuilder;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link HybridKeywordAndVectorSearchExample} with the fusion done by a {@link HybridRetriever}: keyword and vector
+ * search on {@code sopravector2} plus vector search on the older {@code sopravector} index, which the service cannot
+ * fuse into one query. Both indexes chunk the same handbook, so documents are matched on their chunk text.
+ */
+public class ClientSideHybridSearchExample {
+
+    private static final String endpoint = "https://aisearch-fastai-rag.search.windows.net";
+    private static final String apiKey = "<api-key>";
+
+    private static final String SEARCH_TEXT = "Hvor mange feriedager får jeg?";
+    private static final Duration LATENCY_BUDGET = Duration.ofMillis(800);
+
+    public static void main(String[] args) throws Exception {
+        Logger root = (Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME);
+        root.setLevel(Level.INFO);
+
+        final var sopravector2 = new SearchClientBuilder()
+            .endpoint(endpoint)
+            .indexName("sopravector2")
+            .credential(new AzureKeyCredential(apiKey))
+            .buildClient();
+        final var sopravector = new SearchClientBuilder()
+            .endpoint(endpoint)
+            .indexName("sopravector")
+            .credential(new AzureKeyCredential(apiKey))
+            .buildClient();
+
+        final var legs = List.of(
+            HybridRetriever.Leg.keyword(sopravector2, 50, 1.0, "title", "chunk"),
+            HybridRetriever.Leg.vector(sopravector2, "text_vector", 50, 1.0, "title", "chunk"),
+            HybridRetriever.Leg.vector(sopravector, "text_vector", 20, 0.5, "title", "chunk"));
+
+        try (final var retriever = new HybridRetriever(legs, HybridRetriever.byField("chunk"), LATENCY_BUDGET)) {
+            final var result = retriever.retrieve(SEARCH_TEXT, 5);
+
+            result.hits().forEach(hit -> {
+                final var title = (String) hit.document().get("title");
+                var chunk = (String) hit.document().get("chunk");
+                if (chunk != null && chunk.length() > 300) {
+                    chunk = chunk.substring(0, 300) + "...";
+                }
+
+                System.out.println("Title: " + title);
+                System.out.println("Chunk: " + chunk);
+                System.out.printf("Score: %.5f, ranks: %s%n", hit.score(), hit.ranks());
+                System.out.println("-----------------------------------");
+            });
+
+            result.legs().forEach(leg -> System.out.printf("%-28s %-8s %3d hits %8.1f ms%s%n",
+                leg.leg(), leg.status(), leg.hits(), leg.millis(), leg.error() == null ? "" : "  " + leg.error()));
+            System.out.printf("Total: %.1f ms%n", result.millis());
+        }
+    }
+
+}
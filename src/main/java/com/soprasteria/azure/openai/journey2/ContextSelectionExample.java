@@ -0,0 +1,156 @@
+package com.soprasteria.azure.openai.journey2;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.DoubleStream;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.azure.ai.openai.OpenAIClient;
+import com.azure.ai.openai.OpenAIClientBuilder;
+import com.azure.ai.openai.models.ChatCompletionsOptions;
+import com.azure.ai.openai.models.ChatRequestSystemMessage;
+import com.azure.ai.openai.models.ChatRequestUserMessage;
+import com.azure.core.util.Context;
+import com.azure.search.documents.SearchClient;
+import com.azure.search.documents.SearchClientBuilder;
+import com.azure.search.documents.models.SearchOptions;
+import com.azure.search.documents.models.VectorSearchOptions;
+import com.azure.search.documents.models.VectorizedQuery;
+import com.soprasteria.azure.openai.journey3.utils.Utils;
+import com.soprasteria.azure.openai.rag.BpeTokenizer;
+import com.soprasteria.azure.openai.rag.ContextBuilder;
+import com.soprasteria.azure.openai.rag.MmrSelector;
+import com.soprasteria.azure.openai.rag.StreamingAnswer;
+import com.soprasteria.azure.openai.standin.ChatCompletionsStandIn;
+import com.soprasteria.azure.openai.standin.FaultProfile;
+import com.soprasteria.azure.openai.standin.Handbook;
+import com.soprasteria.azure.openai.standin.HashingVectorizer;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Prompt size and answer latency with the context chosen two ways: the {@value #TOP_K} best hits by score, as before,
+ * and {@value #TOP_K} chosen by MMR among {@value #CANDIDATES} candidates using the vectors the index returns.
+ * <p>
+ * The search stand-in holds the {@link Handbook}, every paragraph in three near-identical versions. By default the
+ * answers come from a chat completions stand-in whose time to first token grows with the prompt,
+ * {@value #PREFILL_MILLIS_PER_THOUSAND_TOKENS} ms per thousand tokens, so its latency columns are modelled: they only
+ * restate that assumption for the measured prompt sizes. Pass {@code --azure} to send the same prompts to the
+ * deployment and measure the latency for real.
+ */
+public class ContextSelectionExample {
+
+    private static final String openaiEndpoint = "https://aoai-fastai-rag.openai.azure.com/";
+    private static final String openaiApiKey = "<api-key>";
+    private static final String indexName = "handbook";
+    private static final String deployment = "gpt-4o-mini";
+
+    private static final int DIMENSIONS = 1024;
+    private static final int TOP_K = 10;
+    private static final int CANDIDATES = 30;
+    private static final int MAX_TOKENS = 4000;
+    private static final long PREFILL_MILLIS_PER_THOUSAND_TOKENS = 150;
+    private static final long TOKEN_INTERVAL_MILLIS = 10;
+    private static final String SYSTEM_PROMPT = """
+        Du er en AI Assistent som har innsikt i Sopra Steria sin personalhåndbok vedlagt som context.
+        Vær kortfattet og detaljert i svarene dine, bruk kun informasjon fra fra personalhåndboken.
+
+        Context:
+        %s
+        """;
+
+    private static final List<String> QUESTIONS = Handbook.questions();
+
+    record Strategy(String name, ContextBuilder builder) {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Logger root = (Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME);
+        root.setLevel(Level.WARN);
+
+        final var tokenizer = BpeTokenizer.forModel(deployment);
+        final var strategies = List.of(
+            new Strategy("Top " + TOP_K + " by score", ContextBuilder.tokens(TOP_K, MAX_TOKENS, tokenizer)),
+            new Strategy("MMR " + TOP_K + " of " + CANDIDATES, ContextBuilder.tokens(TOP_K, MAX_TOKENS, tokenizer)
+                .diverse(MmrSelector.withDefaults(), CANDIDATES, "text_vector", null)));
+
+        final var azure = List.of(args).contains("--azure");
+        try (final var search = Handbook.searchService(FaultProfile.NONE, indexName, DIMENSIONS);
+             final var chat = azure ? null : new ChatCompletionsStandIn(0, FaultProfile.NONE,
+                 Duration.ofMillis(PREFILL_MILLIS_PER_THOUSAND_TOKENS), Duration.ofMillis(TOKEN_INTERVAL_MILLIS))) {
+            final var searchClient = Utils.keyedEndpoint(new SearchClientBuilder(), search.endpoint(), "stand-in")
+                .indexName(indexName)
+                .buildClient();
+            final var openAIClient = azure
+                ? Utils.keyedEndpoint(new OpenAIClientBuilder(), openaiEndpoint, openaiApiKey).buildClient()
+                : Utils.keyedEndpoint(new OpenAIClientBuilder(), chat.endpoint(), "stand-in").buildClient();
+
+            // Warm up both clients and the JIT.
+            for (final var strategy : strategies) {
+                ask(searchClient, openAIClient, tokenizer, strategy.builder(), QUESTIONS.getFirst());
+            }
+
+            System.out.format("| %-20s | %8s | %8s | %9s | %10s | %10s | %10s |%n", "Context", "Chunks",
+                "Dropped", "Tokens", "TTFT p50", "Total p50", "Total p95");
+            System.out.println("-".repeat(99));
+            for (final var strategy : strategies) {
+                final var runs = QUESTIONS.stream()
+                    .map(question -> ask(searchClient, openAIClient, tokenizer, strategy.builder(), question))
+                    .toList();
+                final var firstToken = sorted(runs.stream().mapToDouble(run -> run.answer().timeToFirstTokenMillis()));
+                final var total = sorted(runs.stream().mapToDouble(run -> run.answer().totalMillis()));
+                System.out.format("| %-20s | %8.1f | %8.1f | %9.0f | %10.0f | %10.0f | %10.0f |%n",
+                    strategy.name(),
+                    runs.stream().mapToInt(run -> run.context().included().size()).average().orElse(0),
+                    runs.stream().mapToInt(run -> run.context().dropped().size()).average().orElse(0),
+                    runs.stream().mapToInt(Run::promptTokens).average().orElse(0),
+                    Utils.percentile(firstToken, 50), Utils.percentile(total, 50), Utils.percentile(total, 95));
+            }
+            if (azure) {
+                System.out.printf("%nLatency measured against the %s deployment at %s.%n", deployment, openaiEndpoint);
+            } else {
+                System.out.printf("%nLatency is MODELLED by the chat stand-in: %d ms per thousand prompt tokens to the "
+                        + "first token, then %d ms per token. Pass --azure to measure the %s deployment.%n",
+                    PREFILL_MILLIS_PER_THOUSAND_TOKENS, TOKEN_INTERVAL_MILLIS, deployment);
+            }
+        }
+    }
+
+    record Run(ContextBuilder.Context context, int promptTokens, StreamingAnswer.Result answer) {
+    }
+
+    private static Run ask(SearchClient searchClient, OpenAIClient openAIClient, BpeTokenizer tokenizer,
+                           ContextBuilder builder, String question) {
+        final var questionVector = HashingVectorizer.vectorize(question, DIMENSIONS);
+        final var vectorQuery = new VectorizedQuery(toList(questionVector)).setFields("text_vector");
+        final var options = builder.bound(new SearchOptions()
+            .setVectorSearchOptions(new VectorSearchOptions().setQueries(List.of(vectorQuery))));
+        final var context = builder.build(searchClient.search(null, options, Context.NONE), questionVector);
+
+        final var systemPrompt = String.format(SYSTEM_PROMPT, context.text());
+        final var messages = List.of(
+            new ChatRequestSystemMessage(systemPrompt),
+            new ChatRequestUserMessage(question));
+        final var answer = StreamingAnswer.stream(openAIClient, deployment, new ChatCompletionsOptions(messages),
+            text -> {
+            });
+        return new Run(context, tokenizer.count(systemPrompt) + tokenizer.count(question), answer);
+    }
+
+    private static double[] sorted(DoubleStream values) {
+        final var array = values.toArray();
+        Arrays.sort(array);
+        return array;
+    }
+
+    private static List<Float> toList(float[] vector) {
+        final var list = new ArrayList<Float>(vector.length);
+        for (float value : vector) {
+            list.add(value);
+        }
+        return list;
+    }
+
+}
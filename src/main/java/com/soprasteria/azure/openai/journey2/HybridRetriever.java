@@ -0,0 +1,261 @@
+package com.soprasteria.azure.openai.journey2;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+import com.azure.core.util.Context;
+import com.azure.search.documents.SearchClient;
+import com.azure.search.documents.SearchDocument;
+import com.azure.search.documents.models.SearchOptions;
+import com.azure.search.documents.models.VectorSearchOptions;
+import com.azure.search.documents.models.VectorizableTextQuery;
+
+/**
+ * Hybrid retrieval fused on the client instead of by the service: a keyword leg and any number of vector legs, each
+ * with its own k and weight and possibly against different indexes, run concurrently and merged with weighted
+ * Reciprocal Rank Fusion, {@code score = sum(weight / (60 + rank))}.
+ * <p>
+ * A retrieval takes as long as its slowest leg. With a latency budget it takes at most the budget: legs that have
+ * not answered by then are interrupted, left out of the fusion and reported as late, as long as at least one leg has
+ * answered. A failing leg is left out the same way; only when every leg fails does the retrieval fail.
+ * <p>
+ * Legs are told apart by position, so two legs may share a name; results then label them {@code name #1},
+ * {@code name #2} and so on.
+ */
+public class HybridRetriever implements AutoCloseable {
+
+    public static final int RRF_K = 60;
+
+    /**
+     * The documents one leg returns for a question, best first.
+     */
+    @FunctionalInterface
+    public interface LegSearch {
+        List<Map<String, Object>> search(String question) throws Exception;
+    }
+
+    public record Leg(String name, double weight, LegSearch search) {
+
+        /**
+         * Full text search for the question, {@code k} results.
+         */
+        public static Leg keyword(SearchClient client, int k, double weight, String... select) {
+            return new Leg(client.getIndexName() + " keyword", weight, question ->
+                firstPage(client, question, new SearchOptions().setTop(k).setSelect(select)));
+        }
+
+        /**
+         * Vector search on {@code field} with the question vectorized by the service, {@code k} nearest neighbours.
+         */
+        public static Leg vector(SearchClient client, String field, int k, double weight, String... select) {
+            return new Leg(client.getIndexName() + " " + field, weight, question -> {
+                final var vectorQuery = new VectorizableTextQuery(question)
+                    .setFields(field)
+                    .setKNearestNeighborsCount(k);
+                final var options = new SearchOptions()
+                    .setTop(k)
+                    .setSelect(select)
+                    .setVectorSearchOptions(new VectorSearchOptions().setQueries(List.of(vectorQuery)));
+                return firstPage(client, null, options);
+            });
+        }
+
+        private static List<Map<String, Object>> firstPage(SearchClient client, String searchText,
+                                                           SearchOptions options) {
+            final var page = client.search(searchText, options, Context.NONE).iterableByPage().iterator().next();
+            return page.getValue().stream()
+                .<Map<String, Object>>map(result -> result.getDocument(SearchDocument.class))
+                .toList();
+        }
+    }
+
+    public enum LegStatus { ANSWERED, FAILED, LATE }
+
+    public record LegResult(String leg, LegStatus status, int hits, double millis, String error) {
+    }
+
+    /**
+     * A fused document with its RRF score and its 1-based rank in every leg that returned it, by leg label.
+     */
+    public record Hit(String id, Map<String, Object> document, double score, Map<String, Integer> ranks) {
+    }
+
+    public record Result(List<Hit> hits, List<LegResult> legs, double millis) {
+    }
+
+    private record LegOutcome(List<Map<String, Object>> documents, double millis) {
+    }
+
+    private final List<Leg> legs;
+    private final List<String> labels;
+    private final Function<Map<String, Object>, String> identity;
+    private final Duration latencyBudget;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    /**
+     * @param identity      what makes two documents from different legs the same document, see {@link #byField}
+     * @param latencyBudget how long to wait for the slower legs, or null to always wait for all of them
+     */
+    public HybridRetriever(List<Leg> legs, Function<Map<String, Object>, String> identity, Duration latencyBudget) {
+        if (legs.isEmpty()) {
+            throw new IllegalArgumentException("A hybrid retriever needs at least one leg");
+        }
+        this.legs = List.copyOf(legs);
+        this.labels = labels(this.legs);
+        this.identity = identity;
+        this.latencyBudget = latencyBudget;
+    }
+
+    /**
+     * Documents are the same when they have the same value of {@code field}: the key within one index, or a field
+     * both indexes share, such as the chunk text, across indexes.
+     */
+    public static Function<Map<String, Object>, String> byField(String field) {
+        return document -> String.valueOf(document.get(field));
+    }
+
+    private static List<String> labels(List<Leg> legs) {
+        final var counts = new HashMap<String, Integer>();
+        legs.forEach(leg -> counts.merge(leg.name(), 1, Integer::sum));
+        final var seen = new HashMap<String, Integer>();
+        return legs.stream()
+            .map(leg -> counts.get(leg.name()) == 1
+                ? leg.name()
+                : leg.name() + " #" + seen.merge(leg.name(), 1, Integer::sum))
+            .toList();
+    }
+
+    public Result retrieve(String question, int top) throws InterruptedException {
+        final var start = System.nanoTime();
+        final var futures = new ArrayList<CompletableFuture<LegOutcome>>(legs.size());
+        final var tasks = new ArrayList<Future<?>>(legs.size());
+        for (final var leg : legs) {
+            final var future = new CompletableFuture<LegOutcome>();
+            tasks.add(executor.submit(() -> runLeg(leg, question, future)));
+            futures.add(future);
+        }
+        awaitLegs(futures, start);
+
+        final var rankings = new LinkedHashMap<Integer, List<Map<String, Object>>>();
+        final var legResults = new ArrayList<LegResult>(legs.size());
+        Throwable firstFailure = null;
+        for (int i = 0; i < legs.size(); i++) {
+            final var future = futures.get(i);
+            if (!future.isDone()) {
+                // Nobody waits for a late leg any more, so it should not keep its thread and connection either.
+                tasks.get(i).cancel(true);
+                legResults.add(new LegResult(labels.get(i), LegStatus.LATE, 0, millisSince(start), null));
+            } else if (future.isCompletedExceptionally()) {
+                final var cause = future.exceptionNow();
+                firstFailure = firstFailure == null ? cause : firstFailure;
+                legResults.add(new LegResult(labels.get(i), LegStatus.FAILED, 0, millisSince(start),
+                    cause.getClass().getSimpleName() + ": " + cause.getMessage()));
+            } else {
+                final var outcome = future.resultNow();
+                rankings.put(i, outcome.documents());
+                legResults.add(new LegResult(labels.get(i), LegStatus.ANSWERED, outcome.documents().size(),
+                    outcome.millis(), null));
+            }
+        }
+        if (rankings.isEmpty()) {
+            throw new IllegalStateException("Every leg of the hybrid query failed", firstFailure);
+        }
+        return new Result(fuse(rankings, top), legResults, millisSince(start));
+    }
+
+    private static void runLeg(Leg leg, String question, CompletableFuture<LegOutcome> outcome) {
+        final var start = System.nanoTime();
+        try {
+            outcome.complete(new LegOutcome(leg.search().search(question), millisSince(start)));
+        } catch (Exception e) {
+            outcome.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Wait for every leg, or until the budget is spent and at least one leg has answered.
+     */
+    private void awaitLegs(List<CompletableFuture<LegOutcome>> futures, long start) throws InterruptedException {
+        final var all = CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new));
+        try {
+            if (latencyBudget == null) {
+                all.get();
+                return;
+            }
+            final var remaining = latencyBudget.toNanos() - (System.nanoTime() - start);
+            all.get(Math.max(0, remaining), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            // A failed leg is reported with the others; allOf fails only once every leg is done.
+        } catch (TimeoutException e) {
+            awaitFirstAnswer(futures);
+        }
+    }
+
+    private static void awaitFirstAnswer(List<CompletableFuture<LegOutcome>> futures) throws InterruptedException {
+        final var answered = new CompletableFuture<Void>();
+        for (final var future : futures) {
+            future.thenRun(() -> answered.complete(null));
+        }
+        final var all = CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new));
+        try {
+            CompletableFuture.anyOf(answered, all).get();
+        } catch (ExecutionException e) {
+            // Every leg is done and at least one failed; reported with the others.
+        }
+    }
+
+    /**
+     * @param rankings the documents of every leg that answered, by the leg's position
+     */
+    private List<Hit> fuse(Map<Integer, List<Map<String, Object>>> rankings, int top) {
+        final var scores = new LinkedHashMap<String, Double>();
+        final var documents = new LinkedHashMap<String, Map<String, Object>>();
+        final var ranks = new LinkedHashMap<String, Map<String, Integer>>();
+        rankings.forEach((position, ranking) -> {
+            final var leg = legs.get(position);
+            for (int rank = 1; rank <= ranking.size(); rank++) {
+                final var document = ranking.get(rank - 1);
+                final var id = identity.apply(document);
+                final var legRanks = ranks.computeIfAbsent(id, key -> new LinkedHashMap<>());
+                if (legRanks.putIfAbsent(labels.get(position), rank) != null) {
+                    continue;
+                }
+                scores.merge(id, leg.weight() / (RRF_K + rank), Double::sum);
+                final var merged = documents.computeIfAbsent(id, key -> new LinkedHashMap<>());
+                document.forEach(merged::putIfAbsent);
+            }
+        });
+        return scores.entrySet().stream()
+            .sorted(Map.Entry.<String, Double>comparingByValue(Comparator.reverseOrder()))
+            .limit(top)
+            .map(entry -> new Hit(entry.getKey(), documents.get(entry.getKey()), entry.getValue(),
+                ranks.get(entry.getKey())))
+            .toList();
+    }
+
+    private static double millisSince(long start) {
+        return (System.nanoTime() - start) / 1_000_000.0;
+    }
+
+    /**
+     * Stop any legs that are still running.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+}
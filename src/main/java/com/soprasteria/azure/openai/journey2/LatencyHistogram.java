@@ -0,0 +1,85 @@
+package com.soprasteria.azure.openai.journey2;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of latencies in microseconds with log-linear buckets: exact below 64 µs, then 32 buckets per
+ * power of two, so any recorded value is reported within about 3%. Fixed memory whatever the number of samples,
+ * and safe to record into from many threads.
+ */
+public class LatencyHistogram {
+
+    private static final int LINEAR = 64;
+    private static final int SUB_BUCKETS = 32;
+    private static final int MAX_SHIFT = 40;
+
+    private final AtomicLongArray counts = new AtomicLongArray(LINEAR + MAX_SHIFT * SUB_BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public void recordNanos(long nanos) {
+        record(Math.max(0, nanos / 1000));
+    }
+
+    public void record(long micros) {
+        counts.incrementAndGet(index(micros));
+        count.increment();
+        sum.add(micros);
+        max.accumulate(micros);
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    public double meanMillis() {
+        final var n = count();
+        return n == 0 ? 0.0 : sum.sum() / 1000.0 / n;
+    }
+
+    public double maxMillis() {
+        return max.get() / 1000.0;
+    }
+
+    /**
+     * Latency at percentile {@code p} in [0, 100], in milliseconds.
+     */
+    public double percentileMillis(double p) {
+        final var n = count();
+        if (n == 0) {
+            return 0.0;
+        }
+        final var rank = Math.max(1, (long) Math.ceil(p / 100.0 * n));
+        var seen = 0L;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(max.get(), upperBound(i)) / 1000.0;
+            }
+        }
+        return maxMillis();
+    }
+
+    private static int index(long micros) {
+        if (micros < LINEAR) {
+            return (int) micros;
+        }
+        // micros >> shift lies in [32, 64).
+        final var shift = Math.min(MAX_SHIFT, 63 - Long.numberOfLeadingZeros(micros) - 5);
+        final var top = (int) Math.min(2 * SUB_BUCKETS - 1, micros >> shift);
+        return LINEAR + (shift - 1) * SUB_BUCKETS + (top - SUB_BUCKETS);
+    }
+
+    private static long upperBound(int index) {
+        if (index < LINEAR) {
+            return index;
+        }
+        final var shift = (index - LINEAR) / SUB_BUCKETS + 1;
+        final var top = (index - LINEAR) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((long) (top + 1) << shift) - 1;
+    }
+
+}
@@ -0,0 +1,202 @@
+package com.soprasteria.azure.openai.journey2;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import com.azure.core.exception.HttpResponseException;
+
+/**
+ * Drives a query against a search service with virtual threads, either open loop at a target rate or closed loop
+ * with a fixed number of users, sampling the question text of every request from a query set.
+ * <p>
+ * Latency is measured from when a request was due, not from when it was sent: in an open loop from its slot in the
+ * fixed-rate schedule, in a paced closed loop from the user's next pacing slot. A slow response then counts against
+ * every request it held back, rather than hiding them (coordinated omission). Service time, from send to response, is
+ * recorded next to it. An unpaced closed loop has no schedule, so its latency is service time.
+ */
+public class LoadGenerator {
+
+    /**
+     * One request for a question text.
+     */
+    @FunctionalInterface
+    public interface Query {
+        void run(String question) throws Exception;
+    }
+
+    public record Result(
+        String label,
+        long requests,
+        long errors,
+        Map<String, Long> errorsByType,
+        Duration elapsed,
+        LatencyHistogram latency,
+        LatencyHistogram serviceTime
+    ) {
+        public double throughput() {
+            return (requests - errors) / (elapsed.toNanos() / 1e9);
+        }
+
+        public double errorRate() {
+            return requests == 0 ? 0.0 : (double) errors / requests;
+        }
+    }
+
+    private final Query query;
+    private final List<String> questions;
+    private final long seed;
+
+    public LoadGenerator(Query query, List<String> questions, long seed) {
+        if (questions.isEmpty()) {
+            throw new IllegalArgumentException("No questions to sample from");
+        }
+        this.query = query;
+        this.questions = questions;
+        this.seed = seed;
+    }
+
+    /**
+     * Question file: one question per line; blank lines and lines starting with {@code #} are skipped.
+     */
+    public static List<String> readQuestions(Path file) throws IOException {
+        try (final var in = Files.newInputStream(file)) {
+            return readQuestions(in);
+        }
+    }
+
+    public static List<String> readQuestions(InputStream in) throws IOException {
+        try (final var reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            return reader.lines()
+                .map(String::strip)
+                .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                .toList();
+        }
+    }
+
+    /**
+     * Start {@code qps} requests per second on a fixed schedule for {@code duration}, whatever the responses, and wait
+     * for the last of them.
+     */
+    public Result openLoop(String label, double qps, Duration duration) {
+        final var recorder = new Recorder();
+        final var random = new SplittableRandom(seed);
+        final var interval = (long) (1e9 / qps);
+        final var start = System.nanoTime();
+        final var end = start + duration.toNanos();
+        try (final var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (long i = 0; ; i++) {
+                final var due = start + i * interval;
+                if (due >= end) {
+                    break;
+                }
+                parkUntil(due);
+                final var question = questions.get(random.nextInt(questions.size()));
+                executor.execute(() -> recorder.run(question, due));
+            }
+        }
+        return recorder.result(label, Duration.ofNanos(System.nanoTime() - start));
+    }
+
+    /**
+     * Run {@code users} users for {@code duration}, each sending its next request when its previous one has returned,
+     * and no sooner than one {@code pacing} after its previous slot. {@link Duration#ZERO} sends back to back.
+     */
+    public Result closedLoop(String label, int users, Duration pacing, Duration duration) {
+        final var recorder = new Recorder();
+        final var start = System.nanoTime();
+        final var end = start + duration.toNanos();
+        try (final var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int user = 0; user < users; user++) {
+                final var random = new SplittableRandom(seed + user);
+                // Spread the users over one pacing interval so they do not start in lockstep.
+                final var offset = users > 1 ? pacing.toNanos() * user / users : 0;
+                executor.execute(() -> {
+                    var due = start + offset;
+                    while (due < end) {
+                        parkUntil(due);
+                        final var sent = System.nanoTime();
+                        final var question = questions.get(random.nextInt(questions.size()));
+                        recorder.run(question, pacing.isZero() ? sent : due);
+                        due = pacing.isZero() ? System.nanoTime() : due + pacing.toNanos();
+                    }
+                });
+            }
+        }
+        return recorder.result(label, Duration.ofNanos(System.nanoTime() - start));
+    }
+
+    private static void parkUntil(long nanoTime) {
+        long remaining;
+        while ((remaining = nanoTime - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    private class Recorder {
+
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LatencyHistogram serviceTime = new LatencyHistogram();
+        private final LongAdder requests = new LongAdder();
+        private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+        void run(String question, long due) {
+            final var sent = System.nanoTime();
+            try {
+                query.run(question);
+                final var done = System.nanoTime();
+                latency.recordNanos(done - due);
+                serviceTime.recordNanos(done - sent);
+            } catch (HttpResponseException e) {
+                errors.computeIfAbsent("HTTP " + e.getResponse().getStatusCode(), type -> new LongAdder()).increment();
+            } catch (Exception e) {
+                errors.computeIfAbsent(e.getClass().getSimpleName(), type -> new LongAdder()).increment();
+            } finally {
+                requests.increment();
+            }
+        }
+
+        Result result(String label, Duration elapsed) {
+            final var byType = new TreeMap<String, Long>();
+            errors.forEach((type, count) -> byType.put(type, count.sum()));
+            final var errorCount = byType.values().stream().mapToLong(Long::longValue).sum();
+            return new Result(label, requests.sum(), errorCount, byType, elapsed, latency, serviceTime);
+        }
+    }
+
+    public static void printResults(List<Result> results) {
+        final var format = "| %-32s | %8s | %8s | %7s | %9s | %9s | %9s | %9s | %10s |%n";
+        System.out.format(format, "Run", "Requests", "Ok/s", "Errors", "p50 (ms)", "p95 (ms)", "p99 (ms)",
+            "max (ms)", "svc p99");
+        System.out.println("-".repeat(125));
+        for (final var result : results) {
+            System.out.format(format,
+                result.label(),
+                result.requests(),
+                String.format("%.1f", result.throughput()),
+                String.format("%.2f%%", result.errorRate() * 100),
+                String.format("%.1f", result.latency().percentileMillis(50)),
+                String.format("%.1f", result.latency().percentileMillis(95)),
+                String.format("%.1f", result.latency().percentileMillis(99)),
+                String.format("%.1f", result.latency().maxMillis()),
+                String.format("%.1f", result.serviceTime().percentileMillis(99)));
+            if (!result.errorsByType().isEmpty()) {
+                System.out.println("    errors: " + result.errorsByType());
+            }
+        }
+    }
+
+}
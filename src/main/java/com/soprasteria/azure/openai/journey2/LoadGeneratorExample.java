@@ -0,0 +1,202 @@
+package com.soprasteria.azure.openai.journey2;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.azure.search.documents.SearchClient;
+import com.azure.search.documents.SearchClientBuilder;
+import com.azure.search.documents.indexes.models.SearchField;
+import com.azure.search.documents.indexes.models.SearchFieldDataType;
+import com.azure.search.documents.indexes.models.SearchIndex;
+import com.soprasteria.azure.openai.journey3.utils.Utils;
+import com.soprasteria.azure.openai.standin.FaultProfile;
+import com.soprasteria.azure.openai.standin.HashingVectorizer;
+import com.soprasteria.azure.openai.standin.SearchServiceStandIn;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Load test of the journey 2 query shapes: the same questions sent as each {@link SearchMode}, open loop at a target
+ * rate or closed loop with a number of users, with latency percentiles, throughput and error rate per mode.
+ * <p>
+ * Usage: {@code LoadGeneratorExample [--modes vector,hybrid-semantic] [--qps 20 | --users 8 [--pacing-ms 500]]
+ * [--duration-s 30] [--queries file] [--standin] [--streaming] [--cache]}. Questions are sampled from
+ * {@code hr-queries.txt} on the classpath unless a file is given. {@code --standin} runs against a local search
+ * stand-in with realistic latency and faults, filled with generated HR chunks, instead of the {@code sopravector2}
+ * index. {@code --streaming} decodes responses with the {@link StreamingSearchClient} instead of the SDK, and
+ * {@code --cache} puts a {@link SearchResultCache} in front of the searches, invalidated when documents are uploaded
+ * to the stand-in. The service is filled by other processes, so against it cached results live out their TTL.
+ */
+public class LoadGeneratorExample {
+
+    private static final String endpoint = "https://aisearch-fastai-rag.search.windows.net";
+    private static final String indexName = "sopravector2";
+    private static final String apiKey = "<api-key>";
+
+    private static final String QUERIES_RESOURCE = "/hr-queries.txt";
+    private static final int STAND_IN_DIMENSIONS = 256;
+    private static final int STAND_IN_DOCUMENTS = 5_000;
+    private static final long SEED = 42;
+
+    public static void main(String[] args) throws Exception {
+        Logger root = (Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME);
+        root.setLevel(Level.WARN);
+
+        final var options = parseArgs(args);
+        final var modes = List.of(options.getOrDefault("modes", "vector,hybrid-semantic").split(",")).stream()
+            .map(SearchMode::parse)
+            .toList();
+        final var duration = Duration.ofSeconds(Long.parseLong(options.getOrDefault("duration-s", "30")));
+        final var questions = options.containsKey("queries")
+            ? LoadGenerator.readQuestions(Path.of(options.get("queries")))
+            : bundledQuestions();
+
+        try (final var standIn = options.containsKey("standin") ? startStandIn() : null) {
+            final SearchClient client = standIn != null
+                ? Utils.keyedEndpoint(new SearchClientBuilder(), standIn.endpoint(), "stand-in")
+                    .indexName(indexName)
+                    .buildClient()
+                : Utils.keyedEndpoint(new SearchClientBuilder(), endpoint, apiKey)
+                    .indexName(indexName)
+                    .buildClient();
+
+            final var streaming = options.containsKey("streaming")
+                ? new StreamingSearchClient(client, new SearchResultReader(Integer.MAX_VALUE))
+                : null;
+            final SearchResultCache<List<?>> cache = options.containsKey("cache")
+                ? SearchResultCache.withDefaults()
+                : null;
+            if (cache != null && standIn != null) {
+                standIn.backend().onChange(cache::invalidate);
+            }
+
+            final var results = new ArrayList<LoadGenerator.Result>();
+            for (final var mode : modes) {
+                final LoadGenerator.Query query;
+                if (cache != null && streaming != null) {
+                    query = question -> cache.get(indexName, question, mode.request(question),
+                        () -> searchUnchecked(streaming, mode.request(question)));
+                } else if (cache != null) {
+                    query = question -> cache.get(indexName, question, mode.options(question),
+                        () -> mode.firstPage(client, question));
+                } else if (streaming != null) {
+                    query = question -> mode.execute(streaming, question);
+                } else {
+                    query = question -> mode.execute(client, question);
+                }
+                final var generator = new LoadGenerator(query, questions, SEED);
+                final LoadGenerator.Result result;
+                if (options.containsKey("users")) {
+                    final var users = Integer.parseInt(options.get("users"));
+                    final var pacing = Duration.ofMillis(Long.parseLong(options.getOrDefault("pacing-ms", "0")));
+                    System.out.printf("%s: %d users, pacing %d ms, for %ds%n",
+                        mode, users, pacing.toMillis(), duration.toSeconds());
+                    result = generator.closedLoop(mode + " (" + users + " users)", users, pacing, duration);
+                } else {
+                    final var qps = Double.parseDouble(options.getOrDefault("qps", "20"));
+                    System.out.printf("%s: %.1f queries/s for %ds%n", mode, qps, duration.toSeconds());
+                    result = generator.openLoop(mode + " (" + qps + " qps)", qps, duration);
+                }
+                results.add(result);
+            }
+
+            System.out.println();
+            LoadGenerator.printResults(results);
+            if (cache != null) {
+                System.out.println("\nSearch result cache: " + cache.stats());
+            }
+        }
+    }
+
+    private static List<SearchResultReader.Passage> searchUnchecked(StreamingSearchClient client,
+                                                                    Map<String, Object> request) {
+        try {
+            return client.search(request);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static Map<String, String> parseArgs(String[] args) {
+        final var options = new HashMap<String, String>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+            }
+            final var name = args[i].substring(2);
+            if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                options.put(name, args[++i]);
+            } else {
+                options.put(name, "true");
+            }
+        }
+        return options;
+    }
+
+    private static List<String> bundledQuestions() throws Exception {
+        try (final var in = LoadGeneratorExample.class.getResourceAsStream(QUERIES_RESOURCE)) {
+            if (in == null) {
+                throw new IllegalStateException("Missing query set " + QUERIES_RESOURCE);
+            }
+            return LoadGenerator.readQuestions(in);
+        }
+    }
+
+    /**
+     * A stand-in with an index shaped like {@code sopravector2}, holding generated HR chunks vectorized the way the
+     * stand-in vectorizes query text.
+     */
+    static SearchServiceStandIn startStandIn() throws Exception {
+        final var standIn = new SearchServiceStandIn(0, FaultProfile.REALISTIC, STAND_IN_DOCUMENTS);
+        final var index = new SearchIndex(indexName, List.of(
+            new SearchField("id", SearchFieldDataType.STRING).setKey(true),
+            new SearchField("title", SearchFieldDataType.STRING).setSearchable(true),
+            new SearchField("chunk", SearchFieldDataType.STRING).setSearchable(true),
+            new SearchField("text_vector", SearchFieldDataType.collection(SearchFieldDataType.SINGLE))
+                .setVectorSearchDimensions(STAND_IN_DIMENSIONS)));
+        standIn.backend().createOrUpdateIndex(index, STAND_IN_DOCUMENTS);
+        standIn.backend().upload(indexName, hrChunks());
+        System.out.println("Search service stand-in listening on " + standIn.endpoint());
+        return standIn;
+    }
+
+    private static List<Map<String, Object>> hrChunks() {
+        final var topics = List.of(
+            "Ferie", "Feriepenger", "Sykefravær", "Egenmelding", "Foreldrepermisjon", "Lønn", "Overtid",
+            "Pensjon", "Hjemmekontor", "Reiseregning", "Forsikring", "Kompetanseutvikling", "Oppsigelse",
+            "Arbeidstid", "Velferdspermisjon", "Bonus");
+        final var sentences = List.of(
+            "Retningslinjer for %s gjelder alle fast ansatte.",
+            "Spørsmål om %s rettes til nærmeste leder eller HR.",
+            "Søknad om %s registreres i personalsystemet.",
+            "Reglene for %s følger arbeidsmiljøloven og tariffavtalen.",
+            "Endringer i ordningen for %s varsles på intranettet.",
+            "Ansatte har rett til %s etter gjeldende avtale.");
+        final var chunks = new ArrayList<Map<String, Object>>(STAND_IN_DOCUMENTS);
+        for (int i = 0; i < STAND_IN_DOCUMENTS; i++) {
+            final var topic = topics.get(i % topics.size());
+            final var text = new StringBuilder();
+            for (int s = 0; s < 3; s++) {
+                text.append(String.format(sentences.get((i / topics.size() + s) % sentences.size()),
+                    topic.toLowerCase())).append(' ');
+            }
+            final var chunk = text.toString().strip();
+            final var vector = HashingVectorizer.vectorize(topic + " " + chunk, STAND_IN_DIMENSIONS);
+            final var values = new ArrayList<Float>(vector.length);
+            for (float value : vector) {
+                values.add(value);
+            }
+            chunks.add(Map.of("id", "hr-" + i, "title", topic + " " + (i / topics.size() + 1), "chunk", chunk,
+                "text_vector", values));
+        }
+        return chunks;
+    }
+
+}
@@ -0,0 +1,151 @@
+package com.soprasteria.azure.openai.journey2;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.azure.search.documents.SearchAsyncClient;
+import com.azure.search.documents.models.SearchOptions;
+import com.azure.search.documents.models.SearchResult;
+import com.azure.search.documents.util.SearchPagedResponse;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+/**
+ * Blocking iterator over the pages of an asynchronous search that keeps up to {@code depth} pages requested ahead
+ * of the consumer. While page N is being consumed, page N+1 is already on its way, so a deep result set costs about
+ * one round trip plus the consumer's time, instead of one round trip per page in series as with
+ * {@code SearchPagedIterable}.
+ * <p>
+ * Closing the iterator cancels the pages still requested, so a consumer that stops early, like a context builder
+ * that has enough chunks, does not pay for the rest. Use it in try-with-resources.
+ */
+public class PrefetchingPageIterator<T> implements Iterator<T>, AutoCloseable {
+
+    private static final Object END = new Object();
+
+    private record Failure(Throwable error) {
+    }
+
+    private final LinkedBlockingQueue<Object> buffer = new LinkedBlockingQueue<>();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private volatile Subscription subscription;
+    private Object next;
+
+    /**
+     * @param depth pages requested ahead of the one being consumed; 1 overlaps one fetch with consumption
+     */
+    public PrefetchingPageIterator(Publisher<T> pages, int depth) {
+        if (depth < 1) {
+            throw new IllegalArgumentException("Prefetch depth must be at least 1, was " + depth);
+        }
+        pages.subscribe(new Subscriber<T>() {
+            @Override
+            public void onSubscribe(Subscription s) {
+                subscription = s;
+                if (closed.get()) {
+                    s.cancel();
+                } else {
+                    // Every call to next() asks for one more, so the first page comes with depth pages behind it.
+                    s.request(depth);
+                }
+            }
+
+            @Override
+            public void onNext(T page) {
+                buffer.add(page);
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                buffer.add(new Failure(error));
+            }
+
+            @Override
+            public void onComplete() {
+                buffer.add(END);
+            }
+        });
+    }
+
+    /**
+     * Pages of {@code client.search(searchText, options)}, {@code depth} ahead.
+     */
+    public static PrefetchingPageIterator<SearchPagedResponse> pages(SearchAsyncClient client, String searchText,
+                                                                    SearchOptions options, int depth) {
+        return new PrefetchingPageIterator<>(client.search(searchText, options).byPage(), depth);
+    }
+
+    /**
+     * The results of every page in order, for a for-each loop. Breaking out of the loop does not cancel the
+     * prefetched pages; close the page iterator for that.
+     */
+    public static Iterable<SearchResult> results(PrefetchingPageIterator<SearchPagedResponse> pages) {
+        return () -> new Iterator<>() {
+            private Iterator<SearchResult> page = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!page.hasNext() && pages.hasNext()) {
+                    page = pages.next().getValue().iterator();
+                }
+                return page.hasNext();
+            }
+
+            @Override
+            public SearchResult next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return page.next();
+            }
+        };
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (closed.get()) {
+            return false;
+        }
+        if (next == null) {
+            try {
+                next = buffer.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                close();
+                throw new IllegalStateException("Interrupted while waiting for the next page", e);
+            }
+        }
+        if (next instanceof Failure failure) {
+            next = END;
+            if (failure.error() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IllegalStateException("Fetching the next page failed", failure.error());
+        }
+        return next != END;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        final var page = (T) next;
+        next = null;
+        subscription.request(1);
+        return page;
+    }
+
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true) && subscription != null) {
+            subscription.cancel();
+        }
+    }
+
+}
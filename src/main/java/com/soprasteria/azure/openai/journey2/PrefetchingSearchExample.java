@@ -0,0 +1,81 @@
+package com.soprasteria.azure.openai.journey2;
+
+import java.util.List;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.azure.core.util.Context;
+import com.azure.search.documents.SearchAsyncClient;
+import com.azure.search.documents.SearchClient;
+import com.azure.search.documents.SearchClientBuilder;
+import com.azure.search.documents.models.SearchOptions;
+import com.azure.search.documents.models.SearchResult;
+import com.soprasteria.azure.openai.journey3.utils.Utils;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads every page of a deep result set from the local search stand-in, once with {@code SearchPagedIterable} and
+ * once with a {@link PrefetchingPageIterator} at a few prefetch depths, with the consumer spending some time on every
+ * page, and prints how long each took.
+ */
+public class PrefetchingSearchExample {
+
+    private static final String indexName = "sopravector2";
+    private static final long CONSUMER_MILLIS_PER_PAGE = 20;
+    private static final List<Integer> DEPTHS = List.of(1, 2, 4);
+
+    public static void main(String[] args) throws Exception {
+        Logger root = (Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME);
+        root.setLevel(Level.WARN);
+
+        try (final var standIn = LoadGeneratorExample.startStandIn()) {
+            final var builder = Utils.keyedEndpoint(new SearchClientBuilder(), standIn.endpoint(), "stand-in")
+                .indexName(indexName);
+            final var client = builder.buildClient();
+            final var asyncClient = builder.buildAsyncClient();
+            // No top: every document, in pages of 50.
+            final var options = new SearchOptions().setSelect("title", "chunk");
+
+            // Warm up connections and the JIT on both paths.
+            synchronous(client, options);
+            prefetching(asyncClient, options, 1);
+
+            System.out.printf("%-24s %8s %10s%n", "Iteration", "Results", "Time (ms)");
+            System.out.println("-".repeat(44));
+            var start = System.nanoTime();
+            var count = synchronous(client, options);
+            System.out.printf("%-24s %8d %10.0f%n", "SearchPagedIterable", count, (System.nanoTime() - start) / 1e6);
+            for (final var depth : DEPTHS) {
+                start = System.nanoTime();
+                count = prefetching(asyncClient, options, depth);
+                System.out.printf("%-24s %8d %10.0f%n", "Prefetch depth " + depth, count,
+                    (System.nanoTime() - start) / 1e6);
+            }
+        }
+    }
+
+    private static int synchronous(SearchClient client, SearchOptions options) throws InterruptedException {
+        var count = 0;
+        for (final var page : client.search("*", options, Context.NONE).iterableByPage()) {
+            count += consume(page.getValue());
+        }
+        return count;
+    }
+
+    private static int prefetching(SearchAsyncClient client, SearchOptions options, int depth)
+        throws InterruptedException {
+        var count = 0;
+        try (final var pages = PrefetchingPageIterator.pages(client, "*", options, depth)) {
+            while (pages.hasNext()) {
+                count += consume(pages.next().getValue());
+            }
+        }
+        return count;
+    }
+
+    private static int consume(List<SearchResult> page) throws InterruptedException {
+        Thread.sleep(CONSUMER_MILLIS_PER_PAGE);
+        return page.size();
+    }
+
+}
@@ -0,0 +1,153 @@
+package com.soprasteria.azure.openai.journey2;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.soprasteria.azure.openai.AzureOpenAiApplication;
+import com.soprasteria.azure.openai.standin.Handbook;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Load test of the question answering endpoint, {@code POST /api/answer}: closed loop with each number of users in
+ * turn, every user reading the streamed answer to the end. Besides the latency of whole answers it reports the time
+ * to the first piece of answer text, which is what a user waits for, and the status codes the service answered with.
+ * <p>
+ * Usage: {@code RagServiceLoadExample [--url http://localhost:8080 | --standin] [--users 50,200,400]
+ * [--pacing-ms 0] [--duration-s 30] [--queries file]}. {@code --standin} starts the application in this JVM with the
+ * {@code standin} profile, against local stand-ins for Azure OpenAI and Azure AI Search holding the
+ * {@link Handbook}, whose questions are used unless a file is given.
+ */
+public class RagServiceLoadExample {
+
+    private static final long SEED = 42;
+
+    public static void main(String[] args) throws Exception {
+        Logger root = (Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME);
+        root.setLevel(Level.WARN);
+
+        final var options = LoadGeneratorExample.parseArgs(args);
+        final var users = List.of(options.getOrDefault("users", "50,200,400").split(",")).stream()
+            .map(Integer::parseInt)
+            .toList();
+        final var pacing = Duration.ofMillis(Long.parseLong(options.getOrDefault("pacing-ms", "0")));
+        final var duration = Duration.ofSeconds(Long.parseLong(options.getOrDefault("duration-s", "30")));
+        final var questions = options.containsKey("queries")
+            ? LoadGenerator.readQuestions(Path.of(options.get("queries")))
+            : Handbook.questions();
+
+        try (final var service = options.containsKey("standin") ? startService() : null;
+             final var http = HttpClient.newHttpClient()) {
+            final var url = service != null
+                ? "http://localhost:" + service.getEnvironment().getProperty("local.server.port")
+                : options.getOrDefault("url", "http://localhost:8080");
+            final var uri = URI.create(url + "/api/answer");
+
+            final var results = new ArrayList<LoadGenerator.Result>();
+            final var firstTokens = new ArrayList<LatencyHistogram>();
+            final var statuses = new ArrayList<Map<Integer, Long>>();
+            for (final var count : users) {
+                System.out.printf("%d users, pacing %d ms, for %ds against %s%n", count, pacing.toMillis(),
+                    duration.toSeconds(), url);
+                final var run = new Run(http, uri);
+                results.add(new LoadGenerator(run::ask, questions, SEED)
+                    .closedLoop(count + " users", count, pacing, duration));
+                firstTokens.add(run.firstToken);
+                statuses.add(run.statuses());
+            }
+
+            System.out.println();
+            LoadGenerator.printResults(results);
+            System.out.println();
+            System.out.format("| %-32s | %12s | %12s | %12s | %-30s |%n", "Run", "TTFT p50", "TTFT p95", "TTFT p99",
+                "Status codes");
+            System.out.println("-".repeat(115));
+            for (int i = 0; i < results.size(); i++) {
+                final var firstToken = firstTokens.get(i);
+                System.out.format("| %-32s | %12.1f | %12.1f | %12.1f | %-30s |%n", results.get(i).label(),
+                    firstToken.percentileMillis(50), firstToken.percentileMillis(95),
+                    firstToken.percentileMillis(99), statuses.get(i));
+            }
+        }
+    }
+
+    private static ConfigurableApplicationContext startService() {
+        final var application = new SpringApplication(AzureOpenAiApplication.class);
+        return application.run("--spring.profiles.active=standin", "--server.port=0",
+            "--logging.level.com.soprasteria=warn");
+    }
+
+    /**
+     * Posts questions and reads the server-sent events of each answer to the end.
+     */
+    private static class Run {
+
+        private static final ObjectMapper mapper = new ObjectMapper();
+
+        private final HttpClient http;
+        private final URI uri;
+        private final LatencyHistogram firstToken = new LatencyHistogram();
+        private final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+
+        Run(HttpClient http, URI uri) {
+            this.http = http;
+            this.uri = uri;
+        }
+
+        void ask(String question) throws IOException, InterruptedException {
+            final var body = mapper.writeValueAsBytes(Map.of("question", question));
+            final var request = HttpRequest.newBuilder(uri)
+                .header("Content-Type", "application/json")
+                .header("Accept", "text/event-stream")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+            final var sent = System.nanoTime();
+            final var response = http.send(request, HttpResponse.BodyHandlers.ofLines());
+            statuses.computeIfAbsent(response.statusCode(), status -> new LongAdder()).increment();
+            try (final var lines = response.body()) {
+                if (response.statusCode() != 200) {
+                    throw new IOException("HTTP " + response.statusCode());
+                }
+                var event = "message";
+                var answered = false;
+                for (final var line : (Iterable<String>) lines::iterator) {
+                    if (line.startsWith("event: ")) {
+                        event = line.substring("event: ".length());
+                    } else if (line.startsWith("data: ")) {
+                        if ("error".equals(event)) {
+                            throw new IOException("Answer failed: " + line.substring("data: ".length()));
+                        }
+                        if ("message".equals(event) && !answered) {
+                            firstToken.recordNanos(System.nanoTime() - sent);
+                            answered = true;
+                        }
+                    } else if (line.isEmpty()) {
+                        event = "message";
+                    }
+                }
+            }
+        }
+
+        Map<Integer, Long> statuses() {
+            final var counts = new TreeMap<Integer, Long>();
+            statuses.forEach((status, count) -> counts.put(status, count.sum()));
+            return counts;
+        }
+    }
+
+}
@@ -0,0 +1,132 @@
+package com.soprasteria.azure.openai.journey2;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.azure.core.util.Context;
+import com.azure.search.documents.SearchClient;
+import com.azure.search.documents.models.QueryType;
+import com.azure.search.documents.models.SearchResult;
+import com.azure.search.documents.models.SearchOptions;
+import com.azure.search.documents.models.SemanticSearchOptions;
+import com.azure.search.documents.models.VectorSearchOptions;
+import com.azure.search.documents.models.VectorizableTextQuery;
+
+/**
+ * The query shapes of the journey 2 examples, built from a question text the way each example builds its single
+ * query, so they can be driven repeatedly by the {@link LoadGenerator}.
+ */
+public enum SearchMode {
+
+    /**
+     * {@link KeywordSearchExample}: full text search only.
+     */
+    KEYWORD,
+    /**
+     * {@link VectorSearchExample}: the question vectorized by the service, no keyword part.
+     */
+    VECTOR,
+    /**
+     * {@link HybridKeywordAndVectorSearchExample}: keyword and vector results fused by the service.
+     */
+    HYBRID,
+    /**
+     * {@link HybridSemanticSearchExample}: hybrid search re-ranked by the semantic ranker.
+     */
+    HYBRID_SEMANTIC,
+    /**
+     * {@link HybridSemanticRewriteSearchExample}: as {@link #HYBRID_SEMANTIC}; the SDK cannot request query
+     * rewrites, so the request is the same until it can.
+     */
+    HYBRID_SEMANTIC_REWRITE;
+
+    private static final String SEMANTIC_CONFIGURATION = "sopravector2-semantic-configuration";
+
+    public static SearchMode parse(String name) {
+        return valueOf(name.trim().toUpperCase().replace('-', '_'));
+    }
+
+    /**
+     * Keyword part of the request, null for pure vector search.
+     */
+    public String searchText(String question) {
+        return this == VECTOR ? null : question;
+    }
+
+    public SearchOptions options(String question) {
+        final var searchOptions = new SearchOptions()
+            .setTop(5)
+            .setSelect("title", "chunk");
+        if (this == KEYWORD) {
+            return searchOptions;
+        }
+
+        final var vectorQuery = new VectorizableTextQuery(question).setFields("text_vector");
+        if (this != VECTOR) {
+            vectorQuery.setKNearestNeighborsCount(50);
+        }
+        searchOptions.setVectorSearchOptions(new VectorSearchOptions().setQueries(List.of(vectorQuery)));
+
+        if (this == HYBRID_SEMANTIC || this == HYBRID_SEMANTIC_REWRITE) {
+            searchOptions
+                .setQueryType(QueryType.SEMANTIC)
+                .setSemanticSearchOptions(new SemanticSearchOptions()
+                    .setSemanticConfigurationName(SEMANTIC_CONFIGURATION));
+        }
+        return searchOptions;
+    }
+
+    /**
+     * The same query as {@link #options} as a REST request body, for the {@link StreamingSearchClient}.
+     */
+    public Map<String, Object> request(String question) {
+        final var request = new LinkedHashMap<String, Object>();
+        if (searchText(question) != null) {
+            request.put("search", question);
+        }
+        request.put("top", 5);
+        request.put("select", "title,chunk");
+        if (this == KEYWORD) {
+            return request;
+        }
+
+        final var vectorQuery = new LinkedHashMap<String, Object>();
+        vectorQuery.put("kind", "text");
+        vectorQuery.put("text", question);
+        vectorQuery.put("fields", "text_vector");
+        if (this != VECTOR) {
+            vectorQuery.put("k", 50);
+        }
+        request.put("vectorQueries", List.of(vectorQuery));
+
+        if (this == HYBRID_SEMANTIC || this == HYBRID_SEMANTIC_REWRITE) {
+            request.put("queryType", "semantic");
+            request.put("semanticConfiguration", SEMANTIC_CONFIGURATION);
+        }
+        return request;
+    }
+
+    /**
+     * Send the query and read its first page, which is what a caller showing the top results waits for.
+     *
+     * @return number of results on the first page
+     */
+    public int execute(SearchClient client, String question) {
+        return firstPage(client, question).size();
+    }
+
+    /**
+     * As {@link #execute}, decoding the first page with the streaming reader.
+     */
+    public int execute(StreamingSearchClient client, String question) throws IOException {
+        return client.search(request(question), passage -> { });
+    }
+
+    public List<SearchResult> firstPage(SearchClient client, String question) {
+        final var results = client.search(searchText(question), options(question), Context.NONE);
+        return results.iterableByPage().iterator().next().getValue();
+    }
+
+}
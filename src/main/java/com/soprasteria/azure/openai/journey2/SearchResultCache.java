@@ -0,0 +1,356 @@
+package com.soprasteria.azure.openai.journey2;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import com.azure.search.documents.models.ScoringParameter;
+import com.azure.search.documents.models.SearchOptions;
+import com.azure.search.documents.models.VectorQuery;
+import com.azure.search.documents.models.VectorizableTextQuery;
+import com.azure.search.documents.models.VectorizedQuery;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.soprasteria.azure.openai.embedding.EmbeddingCache;
+
+/**
+ * In-memory cache of search results keyed by index, normalized question text and a canonical form of the query
+ * options, so the handful of questions asked over and over are answered without a round trip to the service.
+ * <p>
+ * Entries expire {@code ttl} after they were stored, and the least recently used entry is evicted beyond
+ * {@code maxEntries}. Concurrent misses for the same key share one search. After documents are uploaded, updated
+ * or deleted, call {@link #invalidate} for the index, or {@link #indexVersion} with a version that changes on every
+ * write, so no stale results are served; a document count is not one, as in-place updates leave it unchanged. Cached
+ * values are shared between callers and must not be modified.
+ */
+public class SearchResultCache<T> {
+
+    /**
+     * Counts since the cache was created. {@code expired} misses found an entry past its TTL.
+     */
+    public record Stats(long hits, long misses, long expired, long evictions, long invalidations, int size) {
+
+        public long requests() {
+            return hits + misses;
+        }
+
+        public double hitRate() {
+            return requests() == 0 ? 0.0 : (double) hits / requests();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d requests, hit rate %.1f%% (%d misses, %d expired, %d evicted, %d invalidated), "
+                + "%d entries", requests(), hitRate() * 100, misses, expired, evictions, invalidations, size);
+        }
+    }
+
+    private record Entry<T>(String indexName, T value, long expiresAt) {
+    }
+
+    private static final HexFormat HEX = HexFormat.of();
+    private static final ObjectMapper CANONICAL = new ObjectMapper()
+        .enable(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS);
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final LinkedHashMap<String, Entry<T>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, CompletableFuture<T>> loading = new ConcurrentHashMap<>();
+    private final Map<String, Long> generations = new ConcurrentHashMap<>();
+    private final Map<String, String> versions = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public SearchResultCache(int maxEntries, Duration ttl) {
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttl.toNanos();
+    }
+
+    /**
+     * Up to 10 000 result lists, each kept for 5 minutes.
+     */
+    public static <T> SearchResultCache<T> withDefaults() {
+        return new SearchResultCache<>(10_000, Duration.ofMinutes(5));
+    }
+
+    /**
+     * The cached results of an SDK query, or the result of {@code search}, which is then cached.
+     */
+    public T get(String indexName, String question, SearchOptions options, Supplier<T> search) {
+        return get(indexName, key(indexName, question, canonical(options)), search);
+    }
+
+    /**
+     * The cached results of a REST request body, as sent by the {@link StreamingSearchClient}, or the result of
+     * {@code search}, which is then cached.
+     */
+    public T get(String indexName, String question, Map<String, Object> request, Supplier<T> search) {
+        return get(indexName, key(indexName, question, canonical(request)), search);
+    }
+
+    private T get(String indexName, String key, Supplier<T> search) {
+        final var cached = lookup(key);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+        misses.increment();
+
+        final var load = new CompletableFuture<T>();
+        final var inFlight = loading.putIfAbsent(key, load);
+        if (inFlight != null) {
+            try {
+                return inFlight.join();
+            } catch (CompletionException e) {
+                // The failure of the shared search, as its own caller sees it.
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+        try {
+            final var value = search.get();
+            store(key, new Entry<>(indexName, value, System.nanoTime() + ttlNanos));
+            load.complete(value);
+            return value;
+        } catch (RuntimeException e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key);
+        }
+    }
+
+    /**
+     * Drop every entry of {@code indexName}, for example after documents were uploaded to it.
+     */
+    public void invalidate(String indexName) {
+        generations.merge(indexName, 1L, Long::sum);
+        synchronized (this) {
+            final var iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().indexName().equals(indexName)) {
+                    iterator.remove();
+                    invalidations.increment();
+                }
+            }
+        }
+    }
+
+    /**
+     * Record the current version of {@code indexName}; when it differs from the last one recorded, the index is
+     * {@linkplain #invalidate invalidated}.
+     */
+    public void indexVersion(String indexName, String version) {
+        final var previous = versions.put(indexName, version);
+        if (previous != null && !previous.equals(version)) {
+            invalidate(indexName);
+        }
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(hits.sum(), misses.sum(), expired.sum(), evictions.sum(), invalidations.sum(),
+            entries.size());
+    }
+
+    private synchronized T lookup(String key) {
+        final var entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (System.nanoTime() - entry.expiresAt() >= 0) {
+            entries.remove(key);
+            expired.increment();
+            return null;
+        }
+        return entry.value();
+    }
+
+    private synchronized void store(String key, Entry<T> entry) {
+        entries.put(key, entry);
+        final var eldest = entries.values().iterator();
+        while (entries.size() > maxEntries && eldest.hasNext()) {
+            eldest.next();
+            eldest.remove();
+            evictions.increment();
+        }
+    }
+
+    /**
+     * SHA-256 over the index and its invalidation count, the normalized question and the canonical options.
+     */
+    private String key(String indexName, String question, String canonicalOptions) {
+        try {
+            final var digest = MessageDigest.getInstance("SHA-256");
+            final var generation = generations.getOrDefault(indexName, 0L);
+            digest.update((indexName + '\0' + generation + '\0' + normalize(question) + '\0' + canonicalOptions)
+                .getBytes(StandardCharsets.UTF_8));
+            return HEX.formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : EmbeddingCache.normalize(text);
+    }
+
+    /**
+     * Every option that changes which results come back or what they contain, in a fixed order: paging, filters,
+     * scoring, facets, highlights, the total count, semantic answers and captions, and the vector queries. Select and
+     * search fields are sorted, since their order does not change the results. Only the session id is left out, as
+     * it picks a replica rather than results.
+     */
+    static String canonical(SearchOptions options) {
+        final var canonical = new StringBuilder()
+            .append("top=").append(options.getTop())
+            .append(";skip=").append(options.getSkip())
+            .append(";select=").append(sorted(options.getSelect()))
+            .append(";searchFields=").append(sorted(options.getSearchFields()))
+            .append(";filter=").append(options.getFilter())
+            .append(";orderBy=").append(options.getOrderBy())
+            .append(";searchMode=").append(options.getSearchMode())
+            .append(";scoringProfile=").append(options.getScoringProfile())
+            .append(";scoringParameters=").append(scoringParameters(options.getScoringParameters()))
+            .append(";scoringStatistics=").append(options.getScoringStatistics())
+            .append(";minimumCoverage=").append(options.getMinimumCoverage())
+            .append(";queryType=").append(options.getQueryType())
+            .append(";queryLanguage=").append(options.getQueryLanguage())
+            .append(";querySpeller=").append(options.getSpeller())
+            .append(";count=").append(options.isTotalCountIncluded())
+            .append(";facets=").append(options.getFacets())
+            .append(";highlightFields=").append(sorted(options.getHighlightFields()))
+            .append(";highlightPreTag=").append(options.getHighlightPreTag())
+            .append(";highlightPostTag=").append(options.getHighlightPostTag());
+        final var semantic = options.getSemanticSearchOptions();
+        if (semantic != null) {
+            canonical.append(";semanticConfiguration=").append(semantic.getSemanticConfigurationName())
+                .append(";semanticQuery=").append(semantic.getSemanticQuery())
+                .append(";semanticErrorMode=").append(semantic.getErrorMode())
+                .append(";semanticMaxWait=").append(semantic.getMaxWaitDuration());
+            final var answers = semantic.getQueryAnswer();
+            if (answers != null) {
+                canonical.append(";answers=").append(answers.getAnswerType())
+                    .append(",count=").append(answers.getCount())
+                    .append(",threshold=").append(answers.getThreshold());
+            }
+            final var captions = semantic.getQueryCaption();
+            if (captions != null) {
+                canonical.append(";captions=").append(captions.getCaptionType())
+                    .append(",highlight=").append(captions.isHighlightEnabled());
+            }
+        }
+        final var vectorSearch = options.getVectorSearchOptions();
+        if (vectorSearch != null && vectorSearch.getQueries() != null) {
+            canonical.append(";filterMode=").append(vectorSearch.getFilterMode());
+            for (final var query : vectorSearch.getQueries()) {
+                canonical.append(";vector(").append(canonical(query)).append(')');
+            }
+        }
+        return canonical.toString();
+    }
+
+    private static String scoringParameters(List<ScoringParameter> parameters) {
+        if (parameters == null) {
+            return null;
+        }
+        return parameters.stream()
+            .map(parameter -> parameter.getName() + "-" + parameter.getValues())
+            .sorted()
+            .toList()
+            .toString();
+    }
+
+    /**
+     * A vector query as the SDK serializes it, so options added by newer versions (a filter override, thresholds)
+     * are part of the key too, with the query text normalized and the vector replaced by its hash.
+     */
+    private static String canonical(VectorQuery query) {
+        try {
+            final var json = (ObjectNode) CANONICAL.readTree(query.toJsonString());
+            if (query instanceof VectorizableTextQuery textQuery) {
+                json.put("text", normalize(textQuery.getText()));
+            } else if (query instanceof VectorizedQuery vectorQuery) {
+                json.put("vector", vectorHash(vectorQuery.getVector()));
+            }
+            return CANONICAL.writeValueAsString(CANONICAL.treeToValue(json, Object.class));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Vector query cannot be serialized", e);
+        }
+    }
+
+    private static String vectorHash(List<?> vector) {
+        final var bytes = ByteBuffer.allocate(vector.size() * Float.BYTES);
+        vector.forEach(value -> bytes.putFloat(((Number) value).floatValue()));
+        try {
+            return HEX.formatHex(MessageDigest.getInstance("SHA-256").digest(bytes.array()));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static List<String> sorted(List<String> values) {
+        if (values == null) {
+            return null;
+        }
+        final var sorted = new ArrayList<>(values.stream().filter(Objects::nonNull).map(String::strip).toList());
+        sorted.sort(null);
+        return sorted;
+    }
+
+    /**
+     * A REST request body with its keys sorted at every level, the search and vector query texts normalized, query
+     * vectors replaced by their hash, and the select list sorted.
+     */
+    static String canonical(Map<String, Object> request) {
+        final var copy = new LinkedHashMap<>(request);
+        if (copy.get("search") instanceof String search) {
+            copy.put("search", normalize(search));
+        }
+        if (copy.get("select") instanceof String select) {
+            copy.put("select", String.join(",", sorted(List.of(select.split(",")))));
+        }
+        if (copy.get("vectorQueries") instanceof List<?> vectorQueries) {
+            copy.put("vectorQueries", vectorQueries.stream()
+                .map(query -> {
+                    if (!(query instanceof Map<?, ?> map)) {
+                        return query;
+                    }
+                    final var normalized = new LinkedHashMap<Object, Object>(map);
+                    if (map.get("text") instanceof String text) {
+                        normalized.put("text", normalize(text));
+                    }
+                    if (map.get("vector") instanceof List<?> vector) {
+                        normalized.put("vector", vectorHash(vector));
+                    }
+                    return normalized;
+                })
+                .toList());
+        }
+        try {
+            return CANONICAL.writeValueAsString(copy);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Request cannot be serialized", e);
+        }
+    }
+
+}
@@ -0,0 +1,157 @@
+package com.soprasteria.azure.openai.journey2;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Decodes a search response body ({@code {"value": [...]}}) with a streaming parser straight into {@link Passage}
+ * records, instead of a {@code SearchDocument} map per hit. Only the score, reranker score and the projected text
+ * fields and vector field are read; every other field, and everything outside {@code value} such as
+ * {@code @odata.nextLink}, is skipped unparsed. Text longer than the limit is cut while parsing, so the full text never
+ * becomes a string, a vector is read into a {@code float[]} without boxing, and each hit is handed on as soon as its
+ * object closes.
+ */
+public class SearchResultReader {
+
+    private static final JsonFactory JSON = new JsonFactory();
+    private static final String ELLIPSIS = "...";
+
+    /**
+     * One hit. {@code text} holds the projected text fields the hit has, {@code vector} is null unless a vector field
+     * is projected and returned, and {@code rerankerScore} is null unless the query was semantic.
+     */
+    public record Passage(Map<String, String> text, float[] vector, double score, Double rerankerScore) {
+
+        public String text(String field) {
+            return text.get(field);
+        }
+    }
+
+    private final int maxChars;
+    private final Set<String> textFields;
+    private final String vectorField;
+
+    /**
+     * A reader of the {@code title} and {@code chunk} the examples print.
+     *
+     * @param maxChars text longer than this is cut to it and ends in "..."; {@link Integer#MAX_VALUE} keeps it whole
+     */
+    public SearchResultReader(int maxChars) {
+        this(maxChars, List.of("title", "chunk"), null);
+    }
+
+    /**
+     * @param textFields  string fields to read, cut to {@code maxChars}
+     * @param vectorField field holding a vector to read, or null
+     */
+    public SearchResultReader(int maxChars, List<String> textFields, String vectorField) {
+        this.maxChars = maxChars;
+        this.textFields = Set.copyOf(textFields);
+        this.vectorField = vectorField;
+    }
+
+    public List<Passage> readAll(InputStream in) throws IOException {
+        final var passages = new ArrayList<Passage>();
+        read(in, passages::add);
+        return passages;
+    }
+
+    /**
+     * Parse a response body and pass each hit to {@code consumer} in result order.
+     *
+     * @return number of hits
+     */
+    public int read(InputStream in, Consumer<Passage> consumer) throws IOException {
+        try (final var parser = JSON.createParser(in)) {
+            expect(parser.nextToken(), JsonToken.START_OBJECT);
+            var hits = 0;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final var field = parser.currentName();
+                parser.nextToken();
+                if ("value".equals(field)) {
+                    expect(parser.currentToken(), JsonToken.START_ARRAY);
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        consumer.accept(readPassage(parser));
+                        hits++;
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return hits;
+        }
+    }
+
+    private Passage readPassage(JsonParser parser) throws IOException {
+        final var text = new HashMap<String, String>();
+        float[] vector = null;
+        double score = 0.0;
+        Double rerankerScore = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final var field = parser.currentName();
+            final var token = parser.nextToken();
+            if ("@search.score".equals(field)) {
+                score = parser.getDoubleValue();
+            } else if ("@search.rerankerScore".equals(field)) {
+                rerankerScore = token == JsonToken.VALUE_NULL ? null : parser.getDoubleValue();
+            } else if (token == JsonToken.VALUE_STRING && textFields.contains(field)) {
+                text.put(field, truncated(parser));
+            } else if (token == JsonToken.START_ARRAY && field.equals(vectorField)) {
+                vector = readVector(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new Passage(text, vector, score, rerankerScore);
+    }
+
+    private static float[] readVector(JsonParser parser) throws IOException {
+        var vector = new float[256];
+        var length = 0;
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (length == vector.length) {
+                vector = Arrays.copyOf(vector, length * 2);
+            }
+            vector[length++] = parser.getFloatValue();
+        }
+        return Arrays.copyOf(vector, length);
+    }
+
+    /**
+     * The current string value, cut to {@code maxChars} from the parser's own character buffer.
+     */
+    private String truncated(JsonParser parser) throws IOException {
+        final var length = parser.getTextLength();
+        if (length <= maxChars) {
+            return parser.getText();
+        }
+        final var chars = parser.getTextCharacters();
+        final var offset = parser.getTextOffset();
+        var end = maxChars;
+        if (end > 0 && Character.isHighSurrogate(chars[offset + end - 1])) {
+            end--;
+        }
+        return new StringBuilder(end + ELLIPSIS.length())
+            .append(chars, offset, end)
+            .append(ELLIPSIS)
+            .toString();
+    }
+
+    private static void expect(JsonToken actual, JsonToken expected) throws IOException {
+        if (actual != expected) {
+            throw new IOException("Malformed search response: expected " + expected + " but found " + actual);
+        }
+    }
+
+}
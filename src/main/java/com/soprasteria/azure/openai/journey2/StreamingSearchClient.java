@@ -0,0 +1,67 @@
+package com.soprasteria.azure.openai.journey2;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import com.azure.core.exception.HttpResponseException;
+import com.azure.core.http.HttpHeaderName;
+import com.azure.core.http.HttpMethod;
+import com.azure.core.http.HttpRequest;
+import com.azure.core.util.Context;
+import com.azure.search.documents.SearchClient;
+import com.azure.search.documents.SearchServiceVersion;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Sends search requests through a {@link SearchClient}'s own pipeline, so credentials, retries and stand-in
+ * endpoints work the same, but decodes the response body with a {@link SearchResultReader} as it streams in instead
+ * of letting the SDK build a {@code SearchDocument} per hit.
+ * <p>
+ * The request is the REST body of {@code docs/search.post.search}, for example from {@link SearchMode#request}.
+ */
+public class StreamingSearchClient {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final SearchClient client;
+    private final SearchResultReader reader;
+    private final String url;
+
+    public StreamingSearchClient(SearchClient client, SearchResultReader reader) {
+        this.client = client;
+        this.reader = reader;
+        this.url = client.getEndpoint() + "/indexes('" + client.getIndexName() + "')/docs/search.post.search"
+            + "?api-version=" + SearchServiceVersion.getLatest().getVersion();
+    }
+
+    public List<SearchResultReader.Passage> search(Map<String, Object> request) throws IOException {
+        final var passages = new ArrayList<SearchResultReader.Passage>();
+        search(request, passages::add);
+        return passages;
+    }
+
+    /**
+     * Send {@code request} and pass each hit of the first page to {@code consumer} as it is parsed.
+     *
+     * @return number of hits
+     */
+    public int search(Map<String, Object> request, Consumer<SearchResultReader.Passage> consumer) throws IOException {
+        final var httpRequest = new HttpRequest(HttpMethod.POST, url)
+            .setHeader(HttpHeaderName.CONTENT_TYPE, "application/json")
+            .setHeader(HttpHeaderName.ACCEPT, "application/json")
+            .setBody(MAPPER.writeValueAsBytes(request));
+        try (final var response = client.getHttpPipeline().sendSync(httpRequest, Context.NONE)) {
+            if (response.getStatusCode() >= 400) {
+                throw new HttpResponseException("Search request failed with status " + response.getStatusCode()
+                    + ": " + response.getBodyAsBinaryData().toString(), response, null);
+            }
+            try (final var body = response.getBodyAsBinaryData().toStream()) {
+                return reader.read(body, consumer);
+            }
+        }
+    }
+
+}
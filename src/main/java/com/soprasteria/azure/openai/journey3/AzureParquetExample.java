@@ -4,16 +4,18 @@ import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
-import com.azure.core.credential.AzureKeyCredential;
 import com.azure.search.documents.SearchClientBuilder;
 import com.azure.search.documents.indexes.models.IndexDocumentsBatch;
 import com.azure.search.documents.models.IndexAction;
 import com.azure.search.documents.models.IndexActionType;
 import com.azure.search.documents.models.IndexDocumentsResult;
 import com.azure.search.documents.models.IndexingResult;
+import com.soprasteria.azure.openai.journey3.utils.Scenario;
 import com.soprasteria.azure.openai.journey3.utils.Scenarios;
 import com.soprasteria.azure.openai.journey3.utils.Utils;
 import org.apache.hadoop.conf.Configuration;
@@ -42,9 +44,16 @@ public class AzureParquetExample {
             3072
         );
 
-        manager.createIndexes();
         final var scenarios = Scenarios.defineTestScenarios();
 
+        if (List.of(args).contains("--local")) {
+            final var documents = prepareDocuments(parquetFile);
+            uploadToLocalIndexes(documents, scenarios, manager);
+            return;
+        }
+
+        manager.createIndexes();
+
         parquetDataSet.createDataSet();
         parquetDataSet.readDataSet();
 
@@ -108,28 +117,101 @@ public class AzureParquetExample {
         return documents;
     }
 
+    /**
+     * Upload to every scenario index in turn. Failed documents do not stop the uploads to the other indexes; the
+     * indexes with failures are reported at the end.
+     */
     public static void uploadToAllIndexes(
         List<Map<String, Object>> documents,
-        List<Map<String, Object>> scenarios,
+        List<Scenario> scenarios,
         int batchSize
     ) throws Exception {
+        final var failures = new LinkedHashMap<String, Integer>();
         for (int i = 0; i < scenarios.size(); i++) {
             final var scenario = scenarios.get(i);
-            final var searchIndexName = searchIndexPrefix + "-" + scenario.get("name");
+            final var searchIndexName = searchIndexPrefix + "-" + scenario.name();
             System.out.printf("\nUploading to index (%d/%d): %s\n", i + 1, scenarios.size(), searchIndexName);
 
-            uploadToSearch(documents, searchIndexName, batchSize);
+            final var failed = uploadToSearch(documents, searchIndexName, batchSize);
+            if (failed > 0) {
+                failures.put(searchIndexName, failed);
+            }
+        }
+        if (!failures.isEmpty()) {
+            System.out.println("\nIndexes with failed documents:");
+            failures.forEach((index, failed) -> System.out.printf("  %s: %d of %d documents failed%n", index, failed,
+                documents.size()));
+        }
+    }
+
+    /**
+     * Build every scenario index in an in-process {@link LocalSearchBackend} instead of the search service.
+     */
+    public static LocalSearchBackend uploadToLocalIndexes(
+        List<Map<String, Object>> documents,
+        List<Scenario> scenarios,
+        AzureSearchIndexManager manager
+    ) {
+        final var backend = new LocalSearchBackend();
+        for (int i = 0; i < scenarios.size(); i++) {
+            final var index = manager.buildIndex(scenarios.get(i));
+            System.out.printf("\nIndexing locally (%d/%d): %s\n", i + 1, scenarios.size(), index.getName());
+
+            final var startTime = Instant.now();
+            backend.createOrUpdateIndex(index, documents.size());
+            backend.upload(index.getName(), documents);
+            System.out.printf("Indexed %d documents in %dms\n",
+                documents.size(), Duration.between(startTime, Instant.now()).toMillis());
+        }
+        return backend;
+    }
+
+    /**
+     * @return documents that failed to upload, after retries
+     */
+    public static int uploadToSearch(
+        final List<Map<String, Object>> documents,
+        final String indexName,
+        final int batchSize
+    ) throws Exception {
+        return uploadToSearch(documents, searchEndpoint, searchApiKey, indexName, batchSize);
+    }
+
+    /**
+     * {@link #uploadToSearch(List, String, String, String, int)}, then pass the index name to {@code uploaded}, also
+     * when documents failed, e.g. {@code cache::invalidate} of a
+     * {@link com.soprasteria.azure.openai.journey2.SearchResultCache} in front of the index.
+     *
+     * @return documents that failed to upload, after retries
+     */
+    public static int uploadToSearch(
+        final List<Map<String, Object>> documents,
+        final String endpoint,
+        final String apiKey,
+        final String indexName,
+        final int batchSize,
+        final Consumer<String> uploaded
+    ) throws Exception {
+        try {
+            return uploadToSearch(documents, endpoint, apiKey, indexName, batchSize);
+        } finally {
+            uploaded.accept(indexName);
         }
     }
 
-    public static void uploadToSearch(
+    /**
+     * Upload to an explicit endpoint, e.g. a local search service stand-in.
+     *
+     * @return documents that failed to upload, after retries
+     */
+    public static int uploadToSearch(
         final List<Map<String, Object>> documents,
+        final String endpoint,
+        final String apiKey,
         final String indexName,
         final int batchSize
     ) throws Exception {
-        final var searchClient = new SearchClientBuilder()
-            .endpoint(searchEndpoint)
-            .credential(new AzureKeyCredential(searchApiKey))
+        final var searchClient = Utils.keyedEndpoint(new SearchClientBuilder(), endpoint, apiKey)
             .indexName(indexName)
             .buildClient();
 
@@ -198,6 +280,7 @@ public class AzureParquetExample {
         System.out.printf("Successfully uploaded: %d documents\n", successfulDocs);
         System.out.printf("Failed documents: %d\n", failedDocs);
         System.out.printf("Total time: %ds\n", totalTime.toSeconds());
+        return failedDocs;
     }
 
 }
@@ -1,15 +1,20 @@
 package com.soprasteria.azure.openai.journey3;
 
-import com.azure.core.credential.AzureKeyCredential;
+import com.azure.core.exception.HttpResponseException;
 import com.azure.search.documents.indexes.SearchIndexClient;
 import com.azure.search.documents.indexes.SearchIndexClientBuilder;
 import com.azure.search.documents.indexes.models.*;
+import com.soprasteria.azure.openai.journey3.utils.Scenario;
 import com.soprasteria.azure.openai.journey3.utils.Scenarios;
+import com.soprasteria.azure.openai.journey3.utils.Utils;
 
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
 
 public class AzureSearchIndexManager {
 
@@ -17,41 +22,125 @@ public class AzureSearchIndexManager {
     private final String indexNamePrefix;
     private final int vectorDimensions;
 
-    private List<Map<String, Object>> scenarios;
-
     public AzureSearchIndexManager(String serviceEndpoint, String credential, String indexNamePrefix, int vectorDimensions) {
-        this.searchIndexClient = new SearchIndexClientBuilder()
-            .endpoint(serviceEndpoint)
-            .credential(new AzureKeyCredential(credential))
+        this.searchIndexClient = Utils.keyedEndpoint(new SearchIndexClientBuilder(), serviceEndpoint, credential)
             .buildClient();
         this.indexNamePrefix = indexNamePrefix;
         this.vectorDimensions = vectorDimensions;
     }
 
+    public void deleteIndex(final String indexName) {
+        searchIndexClient.deleteIndex(indexName);
+    }
+
+    public SearchIndexStatistics getIndexStatistics(final String indexName) {
+        return searchIndexClient.getIndexStatistics(indexName);
+    }
+
     public void createIndexes() {
         final var scenarios = Scenarios.defineTestScenarios();
 
-        final var createdIndexes = new ArrayList<Map<String, String>>();
-        for (final var scenario : scenarios) {
-            try {
-                final var indexName = createIndex(scenario);
-                final var result = new HashMap<String, String>();
-                result.put("index_name", indexName);
-                result.put("configuration", (String) scenario.get("description"));
-                createdIndexes.add(result);
-            } catch (Exception e) {
-                System.out.println("Error creating index for scenario " + scenario.get("name") + ": " + e.getMessage());
-            }
-        }
+        final var plan = planIndexes(scenarios);
+        printPlan(plan);
+        final var applied = applyPlan(plan);
 
         // Print created indexes
-        if (!createdIndexes.isEmpty()) {
+        if (!applied.isEmpty()) {
             System.out.println("\nCreated Indexes:");
-            for (final var entry : createdIndexes) {
+            for (final var entry : applied) {
                 System.out.println(entry);
             }
         } else {
-            System.out.println("\nNo indexes were created successfully.");
+            System.out.println("\nNo indexes were created or updated.");
+        }
+    }
+
+    /**
+     * Fetch the existing definition of every scenario index concurrently and diff it against the desired one.
+     */
+    public List<PlannedIndex> planIndexes(final List<Scenario> scenarios) {
+        try (final var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            final var futures = scenarios.stream()
+                .map(scenario -> CompletableFuture.supplyAsync(() -> planIndex(scenario), executor))
+                .toList();
+            return futures.stream().map(CompletableFuture::join).toList();
+        }
+    }
+
+    private PlannedIndex planIndex(final Scenario scenario) {
+        final var description = scenario.description();
+        final SearchIndex desired;
+        try {
+            desired = buildIndex(scenario);
+        } catch (Exception e) {
+            return new PlannedIndex(indexName(scenario), description, null,
+                PlannedAction.FAILED, List.of(e.getMessage()));
+        }
+
+        try {
+            final var existing = searchIndexClient.getIndex(desired.getName());
+            final var diff = IndexDiff.between(desired, existing);
+            if (diff.isEmpty()) {
+                return new PlannedIndex(desired.getName(), description, desired, PlannedAction.UNCHANGED, List.of());
+            }
+            final var action = diff.requiresRebuild() ? PlannedAction.RECREATE : PlannedAction.UPDATE;
+            return new PlannedIndex(desired.getName(), description, desired, action, diff.getChanges());
+        } catch (HttpResponseException e) {
+            if (e.getResponse() != null && e.getResponse().getStatusCode() == 404) {
+                return new PlannedIndex(desired.getName(), description, desired, PlannedAction.CREATE, List.of());
+            }
+            return new PlannedIndex(desired.getName(), description, desired, PlannedAction.FAILED, List.of(e.getMessage()));
+        } catch (Exception e) {
+            return new PlannedIndex(desired.getName(), description, desired, PlannedAction.FAILED, List.of(e.getMessage()));
+        }
+    }
+
+    private void printPlan(final List<PlannedIndex> plan) {
+        System.out.println("\nIndex provisioning plan:");
+        for (final var entry : plan) {
+            System.out.printf("  %-9s %s%n", entry.action(), entry.indexName());
+            for (final var change : entry.changes()) {
+                System.out.println("            " + change);
+            }
+        }
+    }
+
+    /**
+     * Create, update or recreate every index in the plan that has changes, in parallel. No-op entries are skipped.
+     * Recreating deletes the index and its documents first.
+     */
+    public List<Map<String, String>> applyPlan(final List<PlannedIndex> plan) {
+        final var pending = plan.stream()
+            .filter(entry -> entry.action() == PlannedAction.CREATE || entry.action() == PlannedAction.UPDATE
+                || entry.action() == PlannedAction.RECREATE)
+            .toList();
+
+        try (final var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            final var futures = pending.stream()
+                .map(entry -> CompletableFuture.supplyAsync(() -> applyIndex(entry), executor))
+                .toList();
+            return futures.stream()
+                .map(CompletableFuture::join)
+                .filter(Objects::nonNull)
+                .toList();
+        }
+    }
+
+    private Map<String, String> applyIndex(final PlannedIndex entry) {
+        try {
+            if (entry.action() == PlannedAction.RECREATE) {
+                searchIndexClient.deleteIndex(entry.indexName());
+                System.out.println("Deleted index for rebuild: " + entry.indexName());
+            }
+            searchIndexClient.createOrUpdateIndex(entry.desired());
+            System.out.println("Created or updated index: " + entry.indexName());
+            final var result = new HashMap<String, String>();
+            result.put("index_name", entry.indexName());
+            result.put("configuration", entry.description());
+            return result;
+        } catch (Exception e) {
+            System.out.println("Error creating index " + entry.indexName() + ": " + e.getClass() + " - " + e.getMessage());
+            return null;
         }
     }
 
@@ -72,35 +161,28 @@ public class AzureSearchIndexManager {
         return fields;
     }
 
-    private VectorSearchCompression createCompressionConfig(
-        final String configType,
-        final Integer truncateDims,
-        final boolean discardOriginals
-    ) {
-        final var compressionName = configType + "-compression";
-
-        // Enable rescoring only if originals are preserved
-        final boolean enableRescoring = !discardOriginals;
+    private VectorSearchCompression createCompressionConfig(final Scenario scenario) {
+        final var compressionName = scenario.compressionType().name().toLowerCase() + "-compression";
 
-        // Java SDK does not support setting rescoring, or truncation dimension
-        if ("scalar".equals(configType)) {
-            return new ScalarQuantizationCompression(compressionName)
+        // Java SDK does not support setting rescoring, or truncation dimension.
+        // Rescoring is done on the query side instead, see vector.Rescorer.
+        return switch (scenario.compressionType()) {
+            case SCALAR -> new ScalarQuantizationCompression(compressionName)
                 .setParameters(new ScalarQuantizationParameters()
                     .setQuantizedDataType(VectorSearchCompressionTarget.INT8));
-        } else if ("binary".equals(configType)) {
-            return new BinaryQuantizationCompression(compressionName);
-        } else {
-            return null;
-        }
+            case BINARY -> new BinaryQuantizationCompression(compressionName);
+            case NONE -> null;
+            case PQ -> throw new IllegalArgumentException(
+                "Scenario " + scenario.name() + " uses product quantization, which the service does not support");
+        };
     }
 
-    private VectorSearch createVectorSearchConfig(final VectorSearchCompression compressionConfig) {
+    private VectorSearch createVectorSearchConfig(
+        final VectorSearchCompression compressionConfig,
+        final HnswSettings hnswSettings
+    ) {
         final var algorithmConfig = new HnswAlgorithmConfiguration("hnsw-config")
-            .setParameters(new HnswParameters()
-                .setM(4)
-                .setEfConstruction(400)
-                .setEfSearch(500)
-                .setMetric(VectorSearchAlgorithmMetric.COSINE));
+            .setParameters(hnswSettings.toParameters());
 
         final var profiles = new ArrayList<VectorSearchProfile>();
         final var profile = new VectorSearchProfile("default-profile", "hnsw-config");
@@ -120,27 +202,41 @@ public class AzureSearchIndexManager {
         return vectorSearch;
     }
 
-    public String createIndex(final Map<String, Object> scenario) {
-        final var indexName = indexNamePrefix + "-" + scenario.get("name");
+    /**
+     * Build the desired index definition for a scenario without contacting the service.
+     */
+    public SearchIndex buildIndex(final Scenario scenario) {
+        return buildIndex(scenario, HnswSettings.DEFAULT);
+    }
 
-        final var storedEmbedding = (boolean) scenario.getOrDefault("stored_embedding", true);
+    /**
+     * Build the index definition for a scenario with explicit HNSW parameters.
+     */
+    public SearchIndex buildIndex(final Scenario scenario, final HnswSettings hnswSettings) {
+        final var indexName = indexName(scenario);
 
-        final var fields = createBaseFields(storedEmbedding);
+        final var fields = createBaseFields(scenario.storedEmbedding());
 
-        VectorSearchCompression compressionConfig = null;
-        if (scenario.get("compression_type") != null) {
-            compressionConfig = createCompressionConfig(
-                (String) scenario.get("compression_type"),
-                (Integer) scenario.get("truncate_dims"),
-                (boolean) scenario.getOrDefault("discard_originals", false)
-            );
-        }
+        final var compressionConfig = createCompressionConfig(scenario);
 
-        final var vectorSearch = createVectorSearchConfig(compressionConfig);
+        final var vectorSearch = createVectorSearchConfig(compressionConfig, hnswSettings);
 
-        final var index = new SearchIndex(indexName)
+        return new SearchIndex(indexName)
             .setFields(fields)
             .setVectorSearch(vectorSearch);
+    }
+
+    public String indexName(final Scenario scenario) {
+        return indexNamePrefix + "-" + scenario.name();
+    }
+
+    public String createIndex(final Scenario scenario) {
+        return createIndex(scenario, HnswSettings.DEFAULT);
+    }
+
+    public String createIndex(final Scenario scenario, final HnswSettings hnswSettings) {
+        final var index = buildIndex(scenario, hnswSettings);
+        final var indexName = index.getName();
 
         try {
             searchIndexClient.createOrUpdateIndex(index);
@@ -156,4 +252,20 @@ public class AzureSearchIndexManager {
         return indexName;
     }
 
+    /**
+     * {@code RECREATE} drops and recreates an index whose changes cannot be applied in place, see {@link IndexDiff}.
+     */
+    public enum PlannedAction {
+        CREATE, UPDATE, RECREATE, UNCHANGED, FAILED
+    }
+
+    public record PlannedIndex(
+        String indexName,
+        String description,
+        SearchIndex desired,
+        PlannedAction action,
+        List<String> changes
+    ) {
+    }
+
 }
@@ -0,0 +1,148 @@
+package com.soprasteria.azure.openai.journey3;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.azure.core.util.Context;
+import com.azure.search.documents.SearchClient;
+import com.azure.search.documents.SearchClientBuilder;
+import com.azure.search.documents.SearchDocument;
+import com.azure.search.documents.indexes.models.IndexDocumentsBatch;
+import com.azure.search.documents.models.IndexAction;
+import com.azure.search.documents.models.IndexActionType;
+import com.azure.search.documents.models.SearchOptions;
+import com.azure.search.documents.models.VectorSearchOptions;
+import com.azure.search.documents.models.VectorizedQuery;
+import com.soprasteria.azure.openai.journey3.utils.Scenario;
+import com.soprasteria.azure.openai.journey3.utils.Utils;
+import com.soprasteria.azure.openai.journey3.vector.HnswParameters;
+import com.soprasteria.azure.openai.journey3.vector.VectorEngine;
+
+/**
+ * {@link VectorEngine} backed by Azure AI Search. Every variant is a real index that is deleted again on close.
+ */
+public class AzureVectorEngine implements VectorEngine {
+
+    private static final Duration INGEST_TIMEOUT = Duration.ofMinutes(10);
+
+    private final String endpoint;
+    private final String apiKey;
+    private final AzureSearchIndexManager manager;
+    private final int batchSize;
+
+    public AzureVectorEngine(String endpoint, String apiKey, String indexNamePrefix, int vectorDimensions, int batchSize) {
+        this.endpoint = endpoint;
+        this.apiKey = apiKey;
+        this.manager = new AzureSearchIndexManager(endpoint, apiKey, indexNamePrefix, vectorDimensions);
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public Index build(String name, HnswParameters parameters, float[][] corpus) throws Exception {
+        final var indexName = manager.createIndex(Scenario.uncompressed(name), HnswSettings.of(parameters));
+        final var searchClient = Utils.keyedEndpoint(new SearchClientBuilder(), endpoint, apiKey)
+            .indexName(indexName)
+            .buildClient();
+
+        for (final var batch : Utils.chunkList(ordinals(corpus.length), batchSize)) {
+            final var actions = batch.stream()
+                .map(ordinal -> new IndexAction<Map<String, Object>>()
+                    .setActionType(IndexActionType.UPLOAD)
+                    .setDocument(document(ordinal, corpus[ordinal])))
+                .toList();
+            final var upload = new IndexDocumentsBatch<Map<String, Object>>();
+            upload.addActions(actions);
+            searchClient.indexDocuments(upload);
+        }
+
+        awaitDocumentCount(indexName, corpus.length);
+        return new AzureIndex(indexName, searchClient);
+    }
+
+    private void awaitDocumentCount(String indexName, long expected) throws InterruptedException {
+        final var deadline = Instant.now().plus(INGEST_TIMEOUT);
+        while (Instant.now().isBefore(deadline)) {
+            if (manager.getIndexStatistics(indexName).getDocumentCount() >= expected) {
+                return;
+            }
+            Thread.sleep(2000);
+        }
+        System.out.printf("Index %s did not reach %d documents within %s%n", indexName, expected, INGEST_TIMEOUT);
+    }
+
+    private static List<Integer> ordinals(int count) {
+        final var ordinals = new ArrayList<Integer>(count);
+        for (int i = 0; i < count; i++) {
+            ordinals.add(i);
+        }
+        return ordinals;
+    }
+
+    private static Map<String, Object> document(int ordinal, float[] vector) {
+        final var doc = new HashMap<String, Object>();
+        doc.put("id", Integer.toString(ordinal));
+        doc.put("embedding", toList(vector));
+        return doc;
+    }
+
+    private static List<Float> toList(float[] vector) {
+        final var list = new ArrayList<Float>(vector.length);
+        for (float value : vector) {
+            list.add(value);
+        }
+        return list;
+    }
+
+    private class AzureIndex implements Index {
+
+        private final String indexName;
+        private final SearchClient searchClient;
+
+        private AzureIndex(String indexName, SearchClient searchClient) {
+            this.indexName = indexName;
+            this.searchClient = searchClient;
+        }
+
+        @Override
+        public int[] search(float[] query, int k) {
+            final var vectorSearchOptions = new VectorSearchOptions()
+                .setQueries(List.of(
+                    new VectorizedQuery(toList(query))
+                        .setFields("embedding")
+                        .setKNearestNeighborsCount(k)
+                ));
+            final var searchOptions = new SearchOptions()
+                .setTop(k)
+                .setSelect("id")
+                .setVectorSearchOptions(vectorSearchOptions);
+
+            final var ids = new int[k];
+            int found = 0;
+            for (final var result : searchClient.search(null, searchOptions, Context.NONE)) {
+                if (found == k) {
+                    break;
+                }
+                ids[found++] = Integer.parseInt((String) result.getDocument(SearchDocument.class).get("id"));
+            }
+            return found == k ? ids : Arrays.copyOf(ids, found);
+        }
+
+        @Override
+        public long sizeBytes() {
+            final var vectorIndexSize = manager.getIndexStatistics(indexName).getVectorIndexSize();
+            return vectorIndexSize != null ? vectorIndexSize : 0L;
+        }
+
+        @Override
+        public void close() {
+            manager.deleteIndex(indexName);
+        }
+
+    }
+
+}
@@ -0,0 +1,80 @@
+package com.soprasteria.azure.openai.journey3;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+
+import com.azure.ai.openai.OpenAIClient;
+import com.azure.ai.openai.OpenAIClientBuilder;
+import com.soprasteria.azure.openai.embedding.EmbeddingBatcher;
+import com.soprasteria.azure.openai.journey3.utils.Utils;
+import com.soprasteria.azure.openai.standin.EmbeddingsStandIn;
+import com.soprasteria.azure.openai.standin.FaultProfile;
+
+/**
+ * Embeds the titles of the dataset one text per request, as {@code SearchQualityExample.getEmbedding} does, and
+ * through an {@link EmbeddingBatcher}, and compares the throughput. Every title is submitted by its own caller, so
+ * the batcher sees the same one-at-a-time traffic as the single requests.
+ * <p>
+ * Runs against a local {@link EmbeddingsStandIn} with realistic latency; pass {@code --azure} to use the
+ * deployment instead.
+ */
+public class EmbeddingBatchExample {
+
+    private static final String openaiEndpoint = "https://aoai-fastai-rag.openai.azure.com/";
+    private static final String openaiApiKey = "<api-key>";
+    private static final String embeddingDeployment = "text-embedding-3-large";
+    private static final int embeddingDimensions = 3072;
+    private static final String parquetFile = "dbpedia_100k.parquet";
+
+    private static final int SINGLE_TEXTS = 200;
+    private static final int BATCHED_TEXTS = 5000;
+
+    public static void main(String[] args) throws Exception {
+        final var azure = List.of(args).contains("--azure");
+        try (final var standIn = azure ? null : new EmbeddingsStandIn(0, FaultProfile.REALISTIC, embeddingDimensions);
+             final var dataset = EmbeddingDataset.open(parquetFile)) {
+            final var client = azure
+                ? Utils.keyedEndpoint(new OpenAIClientBuilder(), openaiEndpoint, openaiApiKey).buildClient()
+                : Utils.keyedEndpoint(new OpenAIClientBuilder(), standIn.endpoint(), "stand-in").buildClient();
+
+            final var texts = new ArrayList<String>();
+            for (int i = 0; i < Math.min(BATCHED_TEXTS, dataset.size()); i++) {
+                texts.add(dataset.title(i));
+            }
+
+            final var singleRate = single(client, texts.subList(0, Math.min(SINGLE_TEXTS, texts.size())));
+            final var batchedRate = batched(client, texts);
+
+            System.out.printf("%nOne text per request: %8.1f texts/s%n", singleRate);
+            System.out.printf("Batched:              %8.1f texts/s (%.0fx)%n", batchedRate, batchedRate / singleRate);
+            if (standIn != null) {
+                System.out.printf("Stand-in served %d texts in %d requests, at most %d at a time%n",
+                    standIn.inputs(), standIn.requests(), standIn.maxConcurrentRequests());
+            }
+        }
+    }
+
+    private static double single(OpenAIClient client, List<String> texts) {
+        final var start = System.nanoTime();
+        for (final var text : texts) {
+            EmbeddingBatcher.embed(client, embeddingDeployment, embeddingDimensions, List.of(text));
+        }
+        return texts.size() / ((System.nanoTime() - start) / 1e9);
+    }
+
+    private static double batched(OpenAIClient client, List<String> texts) {
+        final var start = System.nanoTime();
+        try (final var batcher = EmbeddingBatcher.forDeployment(client, embeddingDeployment, embeddingDimensions);
+             final var callers = Executors.newVirtualThreadPerTaskExecutor()) {
+            final var futures = texts.stream()
+                .map(text -> CompletableFuture.supplyAsync(() -> batcher.submit(text).join(), callers))
+                .toList();
+            futures.forEach(CompletableFuture::join);
+            System.out.println("Batcher: " + batcher.stats());
+        }
+        return texts.size() / ((System.nanoTime() - start) / 1e9);
+    }
+
+}
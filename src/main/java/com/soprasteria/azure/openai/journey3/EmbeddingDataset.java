@@ -0,0 +1,151 @@
+package com.soprasteria.azure.openai.journey3;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.soprasteria.azure.openai.journey3.utils.Utils;
+import com.soprasteria.azure.openai.journey3.vector.ExactKnn;
+import com.soprasteria.azure.openai.journey3.vector.GroundTruth;
+import com.soprasteria.azure.openai.journey3.vector.MappedVectorStore;
+import com.soprasteria.azure.openai.journey3.vector.Metric;
+import com.soprasteria.azure.openai.journey3.vector.Rescorer;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.hadoop.ParquetReader;
+import org.apache.parquet.hadoop.example.GroupReadSupport;
+
+/**
+ * The embeddings of the Parquet dataset as a memory-mapped {@link MappedVectorStore}, together with the document
+ * keys and titles by row ordinal.
+ * <p>
+ * The store ({@code <parquet>.vec}) and keys ({@code <parquet>.keys}) are written once by streaming the Parquet
+ * file, and rebuilt when the Parquet file is newer. Ground truth is cached in {@code <parquet>.truth/}.
+ */
+public class EmbeddingDataset implements AutoCloseable {
+
+    private final Path parquetPath;
+    private final MappedVectorStore vectors;
+    private final List<String> keys = new ArrayList<>();
+    private final List<String> titles = new ArrayList<>();
+    private final Map<String, Integer> ordinals = new HashMap<>();
+
+    private EmbeddingDataset(Path parquetPath, MappedVectorStore vectors, List<String> lines) {
+        this.parquetPath = parquetPath;
+        this.vectors = vectors;
+        for (final var line : lines) {
+            final var tab = line.indexOf('\t');
+            ordinals.put(line.substring(0, tab), keys.size());
+            keys.add(line.substring(0, tab));
+            titles.add(line.substring(tab + 1));
+        }
+    }
+
+    public static EmbeddingDataset open(String parquetFile) throws Exception {
+        final var parquetPath = Path.of(parquetFile);
+        final var vectorPath = sibling(parquetPath, ".vec");
+        final var keyPath = sibling(parquetPath, ".keys");
+        if (!Files.exists(vectorPath) || !Files.exists(keyPath)
+            || Files.getLastModifiedTime(vectorPath).compareTo(Files.getLastModifiedTime(parquetPath)) < 0) {
+            convert(parquetPath, vectorPath, keyPath);
+        }
+        return new EmbeddingDataset(parquetPath, MappedVectorStore.open(vectorPath),
+            Files.readAllLines(keyPath, StandardCharsets.UTF_8));
+    }
+
+    public MappedVectorStore vectors() {
+        return vectors;
+    }
+
+    public int size() {
+        return vectors.size();
+    }
+
+    /**
+     * Encoded document key of a row, as uploaded to the index.
+     */
+    public String key(int ordinal) {
+        return keys.get(ordinal);
+    }
+
+    public String title(int ordinal) {
+        return titles.get(ordinal);
+    }
+
+    /**
+     * Row ordinal of an encoded document key, or -1 when the key is not part of the dataset.
+     */
+    public int ordinal(String key) {
+        return ordinals.getOrDefault(key, -1);
+    }
+
+    public GroundTruth groundTruth(Metric metric) {
+        return new GroundTruth(new ExactKnn(vectors, metric), sibling(parquetPath, ".truth"));
+    }
+
+    public Rescorer rescorer(Metric metric) {
+        return new Rescorer(vectors, metric);
+    }
+
+    /**
+     * Rescore the document keys returned by a compressed index against the full-precision vectors of the dataset,
+     * and return the best k keys, best first. Keys that are not part of the dataset are dropped.
+     */
+    public List<String> rescore(Rescorer rescorer, float[] query, List<String> candidateKeys, int k) {
+        final var candidates = candidateKeys.stream().mapToInt(this::ordinal).filter(ordinal -> ordinal >= 0).toArray();
+        final var best = rescorer.rescore(query, candidates, k);
+        final var keys = new ArrayList<String>(best.length);
+        for (int ordinal : best) {
+            keys.add(key(ordinal));
+        }
+        return keys;
+    }
+
+    @Override
+    public void close() throws IOException {
+        vectors.close();
+    }
+
+    private static void convert(Path parquetPath, Path vectorPath, Path keyPath) throws Exception {
+        System.out.println("Writing vector store " + vectorPath + "...");
+        final var lines = new ArrayList<String>();
+        MappedVectorStore.Writer writer = null;
+        try (final var reader = ParquetReader.builder(new GroupReadSupport(),
+                new org.apache.hadoop.fs.Path(parquetPath.toString()))
+            .withConf(new Configuration())
+            .build()) {
+            Group group;
+            while ((group = reader.read()) != null) {
+                final var embeddingSize = group.getFieldRepetitionCount("embedding");
+                final var embedding = new float[embeddingSize];
+                for (int i = 0; i < embeddingSize; i++) {
+                    embedding[i] = group.getFloat("embedding", i);
+                }
+                if (writer == null) {
+                    writer = MappedVectorStore.create(vectorPath, embeddingSize);
+                }
+                writer.add(embedding);
+
+                final var key = Utils.encodeKey(group.getBinary("id", 0).toStringUsingUTF8());
+                final var title = group.getBinary("title", 0).toStringUsingUTF8().replaceAll("[\\t\\r\\n]", " ");
+                lines.add(key + "\t" + title);
+            }
+        } finally {
+            if (writer != null) {
+                writer.close();
+            }
+        }
+        Files.write(keyPath, lines, StandardCharsets.UTF_8);
+        System.out.printf("Vector store written: %d vectors%n", lines.size());
+    }
+
+    private static Path sibling(Path path, String suffix) {
+        return path.resolveSibling(path.getFileName() + suffix);
+    }
+
+}
@@ -0,0 +1,99 @@
+package com.soprasteria.azure.openai.journey3;
+
+import com.azure.search.documents.indexes.models.HnswAlgorithmConfiguration;
+import com.azure.search.documents.indexes.models.HnswParameters;
+import com.azure.search.documents.indexes.models.SearchField;
+import com.azure.search.documents.indexes.models.SearchIndex;
+import com.azure.search.documents.indexes.models.VectorSearchAlgorithmMetric;
+import com.azure.search.documents.indexes.models.VectorSearchProfile;
+import com.soprasteria.azure.openai.journey3.vector.Metric;
+
+/**
+ * HNSW graph parameters for a vector index.
+ *
+ * @param m              number of bi-directional links per node
+ * @param efConstruction candidate list size while building the graph
+ * @param efSearch       candidate list size while querying
+ * @param metric         similarity metric
+ */
+public record HnswSettings(int m, int efConstruction, int efSearch, VectorSearchAlgorithmMetric metric) {
+
+    /**
+     * The parameters used by every compression scenario.
+     */
+    public static final HnswSettings DEFAULT = new HnswSettings(4, 400, 500, VectorSearchAlgorithmMetric.COSINE);
+
+    /**
+     * The same parameters for the local vector code.
+     */
+    public com.soprasteria.azure.openai.journey3.vector.HnswParameters toLocal() {
+        return new com.soprasteria.azure.openai.journey3.vector.HnswParameters(m, efConstruction, efSearch,
+            Metric.from(metric));
+    }
+
+    /**
+     * The service-side settings for parameters of the local vector code.
+     */
+    public static HnswSettings of(com.soprasteria.azure.openai.journey3.vector.HnswParameters parameters) {
+        return new HnswSettings(parameters.m(), parameters.efConstruction(), parameters.efSearch(),
+            parameters.metric().toAzure());
+    }
+
+    /**
+     * The settings of the algorithm configuration behind the first vector field of an index definition.
+     */
+    public static HnswSettings of(SearchIndex definition) {
+        return definition.getFields().stream()
+            .filter(field -> field.getVectorSearchProfileName() != null)
+            .findFirst()
+            .map(field -> of(definition, field))
+            .orElse(DEFAULT);
+    }
+
+    /**
+     * HNSW parameters of the profile used by the vector field, falling back to {@link #DEFAULT} for anything the
+     * definition leaves unset.
+     */
+    public static HnswSettings of(SearchIndex definition, SearchField vectorField) {
+        final var vectorSearch = definition.getVectorSearch();
+        if (vectorSearch == null || vectorSearch.getProfiles() == null || vectorSearch.getAlgorithms() == null) {
+            return DEFAULT;
+        }
+        final var algorithmName = vectorSearch.getProfiles().stream()
+            .filter(profile -> profile.getName().equals(vectorField.getVectorSearchProfileName()))
+            .map(VectorSearchProfile::getAlgorithmConfigurationName)
+            .findFirst()
+            .orElse(null);
+        final var parameters = vectorSearch.getAlgorithms().stream()
+            .filter(algorithm -> algorithm.getName().equals(algorithmName))
+            .filter(HnswAlgorithmConfiguration.class::isInstance)
+            .map(algorithm -> ((HnswAlgorithmConfiguration) algorithm).getParameters())
+            .findFirst()
+            .orElse(null);
+        if (parameters == null) {
+            return DEFAULT;
+        }
+        return new HnswSettings(
+            parameters.getM() != null ? parameters.getM() : DEFAULT.m(),
+            parameters.getEfConstruction() != null ? parameters.getEfConstruction() : DEFAULT.efConstruction(),
+            parameters.getEfSearch() != null ? parameters.getEfSearch() : DEFAULT.efSearch(),
+            parameters.getMetric() != null ? parameters.getMetric() : DEFAULT.metric()
+        );
+    }
+
+    public HnswParameters toParameters() {
+        return new HnswParameters()
+            .setM(m)
+            .setEfConstruction(efConstruction)
+            .setEfSearch(efSearch)
+            .setMetric(metric);
+    }
+
+    /**
+     * Short name usable as part of an index name, e.g. {@code m4-efc400-efs500-cosine}.
+     */
+    public String label() {
+        return "m" + m + "-efc" + efConstruction + "-efs" + efSearch + "-" + metric.toString().toLowerCase().replace("_", "");
+    }
+
+}
@@ -0,0 +1,177 @@
+package com.soprasteria.azure.openai.journey3;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.azure.search.documents.indexes.models.VectorSearchAlgorithmMetric;
+import com.soprasteria.azure.openai.journey3.utils.Utils;
+import com.soprasteria.azure.openai.journey3.vector.ExactKnn;
+import com.soprasteria.azure.openai.journey3.vector.GroundTruth;
+import com.soprasteria.azure.openai.journey3.vector.Metric;
+import com.soprasteria.azure.openai.journey3.vector.VectorEngine;
+import com.soprasteria.azure.openai.journey3.vector.VectorStore;
+
+/**
+ * Builds one index variant per point of an HNSW parameter grid, ingests a fixed corpus, runs a fixed
+ * query set against it and records recall@k against exact ground truth, query latency and index size.
+ */
+public class HnswSweep {
+
+    private static final int WARMUP_QUERIES = 20;
+
+    private final VectorEngine engine;
+    private final float[][] corpus;
+    private final float[][] queries;
+    private final int k;
+    private final Path groundTruthDirectory;
+
+    private final Map<VectorSearchAlgorithmMetric, int[][]> groundTruth = new HashMap<>();
+
+    /**
+     * @param groundTruthDirectory where the exact neighbours of {@code queries} are cached, see {@link GroundTruth}
+     */
+    public HnswSweep(VectorEngine engine, float[][] corpus, float[][] queries, int k, Path groundTruthDirectory) {
+        this.engine = engine;
+        this.corpus = corpus;
+        this.queries = queries;
+        this.k = k;
+        this.groundTruthDirectory = groundTruthDirectory;
+    }
+
+    public record Point(
+        HnswSettings settings,
+        double recall,
+        double p50Millis,
+        double p95Millis,
+        double p99Millis,
+        long sizeBytes,
+        Duration buildTime,
+        boolean pareto
+    ) {
+        Point withPareto(boolean pareto) {
+            return new Point(settings, recall, p50Millis, p95Millis, p99Millis, sizeBytes, buildTime, pareto);
+        }
+    }
+
+    /**
+     * Every combination of the given parameter values.
+     */
+    public static List<HnswSettings> grid(
+        int[] ms,
+        int[] efConstructions,
+        int[] efSearches,
+        List<VectorSearchAlgorithmMetric> metrics
+    ) {
+        final var grid = new ArrayList<HnswSettings>();
+        for (final var metric : metrics) {
+            for (int m : ms) {
+                for (int efConstruction : efConstructions) {
+                    for (int efSearch : efSearches) {
+                        grid.add(new HnswSettings(m, efConstruction, efSearch, metric));
+                    }
+                }
+            }
+        }
+        return grid;
+    }
+
+    public List<Point> run(List<HnswSettings> grid) throws Exception {
+        final var points = new ArrayList<Point>();
+        for (int i = 0; i < grid.size(); i++) {
+            final var settings = grid.get(i);
+            System.out.printf("Sweep point (%d/%d): %s%n", i + 1, grid.size(), settings.label());
+            try {
+                points.add(measure(settings));
+            } catch (Exception e) {
+                System.out.println("Sweep point " + settings.label() + " failed: " + e.getMessage());
+            }
+        }
+        return markPareto(points);
+    }
+
+    private Point measure(HnswSettings settings) throws Exception {
+        var truth = groundTruth.get(settings.metric());
+        if (truth == null) {
+            truth = new GroundTruth(new ExactKnn(VectorStore.of(corpus), Metric.from(settings.metric())),
+                groundTruthDirectory).neighbours(queries, k);
+            groundTruth.put(settings.metric(), truth);
+        }
+
+        final var buildStart = Instant.now();
+        try (final var index = engine.build("sweep-" + settings.label(), settings.toLocal(), corpus)) {
+            final var buildTime = Duration.between(buildStart, Instant.now());
+
+            for (int i = 0; i < Math.min(WARMUP_QUERIES, queries.length); i++) {
+                index.search(queries[i], k);
+            }
+
+            final var latencies = new double[queries.length];
+            double recallSum = 0;
+            for (int i = 0; i < queries.length; i++) {
+                final var start = System.nanoTime();
+                final var result = index.search(queries[i], k);
+                latencies[i] = (System.nanoTime() - start) / 1_000_000.0;
+                recallSum += GroundTruth.recall(result, truth[i]);
+            }
+            Arrays.sort(latencies);
+
+            return new Point(
+                settings,
+                recallSum / queries.length,
+                Utils.percentile(latencies, 50),
+                Utils.percentile(latencies, 95),
+                Utils.percentile(latencies, 99),
+                index.sizeBytes(),
+                buildTime,
+                false
+            );
+        }
+    }
+
+    /**
+     * A point is on the Pareto front when no other point has at least its recall with lower or equal
+     * p95 latency and size, and is strictly better in one of them.
+     */
+    private static List<Point> markPareto(List<Point> points) {
+        final var marked = new ArrayList<Point>(points.size());
+        for (final var point : points) {
+            final var dominated = points.stream().anyMatch(other -> other != point
+                && other.recall() >= point.recall()
+                && other.p95Millis() <= point.p95Millis()
+                && other.sizeBytes() <= point.sizeBytes()
+                && (other.recall() > point.recall()
+                    || other.p95Millis() < point.p95Millis()
+                    || other.sizeBytes() < point.sizeBytes()));
+            marked.add(point.withPareto(!dominated));
+        }
+        return marked;
+    }
+
+    public static void printTable(List<Point> points, int k) {
+        final var sorted = new ArrayList<>(points);
+        sorted.sort((a, b) -> Double.compare(b.recall(), a.recall()));
+
+        final var format = "| %-32s | %9s | %9s | %9s | %9s | %12s | %9s | %6s |%n";
+        System.out.format(format,
+            "Settings", "Recall@" + k, "p50 (ms)", "p95 (ms)", "p99 (ms)", "Size (MB)", "Build (s)", "Pareto");
+        System.out.println("-".repeat(125));
+        for (final var point : sorted) {
+            System.out.format(format,
+                point.settings().label(),
+                String.format("%.4f", point.recall()),
+                String.format("%.2f", point.p50Millis()),
+                String.format("%.2f", point.p95Millis()),
+                String.format("%.2f", point.p99Millis()),
+                String.format("%.4f", point.sizeBytes() / (1024.0 * 1024.0)),
+                point.buildTime().toSeconds(),
+                point.pareto() ? "*" : "");
+        }
+    }
+
+}
@@ -0,0 +1,94 @@
+package com.soprasteria.azure.openai.journey3;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.azure.search.documents.indexes.models.VectorSearchAlgorithmMetric;
+import com.soprasteria.azure.openai.journey3.vector.LocalHnswEngine;
+import com.soprasteria.azure.openai.journey3.vector.VectorEngine;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.hadoop.ParquetReader;
+import org.apache.parquet.hadoop.example.GroupReadSupport;
+
+/**
+ * Sweep the HNSW parameters around {@link HnswSettings#DEFAULT} (m=4, efConstruction=400, efSearch=500)
+ * and print recall, latency and size for each grid point as a Pareto table.
+ */
+public class HnswSweepExample {
+
+    private static final String searchEndpoint = "https://aisearch-fastai-rag.search.windows.net";
+    private static final String searchApiKey = "<api-key>";
+    private static final String searchIndexPrefix = "hnsw-sweep";
+    private static final String parquetFile = "dbpedia_100k.parquet";
+
+    private static final int CORPUS_SIZE = 10_000;
+    private static final int QUERY_COUNT = 200;
+    private static final int K = 10;
+    private static final long SEED = 42;
+
+    public static void main(String[] args) throws Exception {
+        final var corpus = readEmbeddings(parquetFile, CORPUS_SIZE);
+        final var queries = sampleQueries(corpus, QUERY_COUNT, SEED);
+
+        // The in-process engine needs no service, and HnswSweepTest runs it over a synthetic corpus; pass --azure to
+        // sweep real indexes.
+        final VectorEngine engine = List.of(args).contains("--azure")
+            ? new AzureVectorEngine(searchEndpoint, searchApiKey, searchIndexPrefix, corpus[0].length, 100)
+            : new LocalHnswEngine();
+
+        final var grid = HnswSweep.grid(
+            new int[]{4, 8, 16},
+            new int[]{100, 400},
+            new int[]{100, 500},
+            List.of(VectorSearchAlgorithmMetric.COSINE)
+        );
+
+        final var points = new HnswSweep(engine, corpus, queries, K, Paths.get(parquetFile + ".truth")).run(grid);
+        HnswSweep.printTable(points, K);
+    }
+
+    /**
+     * Read the first {@code limit} embeddings of the Parquet dataset.
+     */
+    public static float[][] readEmbeddings(final String parquetFile, final int limit) throws Exception {
+        System.out.println("Reading embeddings from " + parquetFile);
+        final var embeddings = new ArrayList<float[]>();
+        try (final var reader = ParquetReader.builder(new GroupReadSupport(), new Path(parquetFile))
+            .withConf(new Configuration())
+            .build()) {
+            Group group;
+            while (embeddings.size() < limit && (group = reader.read()) != null) {
+                final var embeddingSize = group.getFieldRepetitionCount("embedding");
+                final var embedding = new float[embeddingSize];
+                for (int i = 0; i < embeddingSize; i++) {
+                    embedding[i] = group.getFloat("embedding", i);
+                }
+                embeddings.add(embedding);
+            }
+        }
+        return embeddings.toArray(new float[0][]);
+    }
+
+    /**
+     * Fixed query set: corpus vectors picked with a seeded random and perturbed with a little gaussian noise,
+     * so that queries are close to, but not identical with, indexed vectors.
+     */
+    public static float[][] sampleQueries(final float[][] corpus, final int count, final long seed) {
+        final var random = new Random(seed);
+        final var queries = new float[count][];
+        for (int q = 0; q < count; q++) {
+            final var source = corpus[random.nextInt(corpus.length)];
+            final var query = new float[source.length];
+            for (int i = 0; i < source.length; i++) {
+                query[i] = source[i] + (float) (random.nextGaussian() * 0.01);
+            }
+            queries[q] = query;
+        }
+        return queries;
+    }
+
+}
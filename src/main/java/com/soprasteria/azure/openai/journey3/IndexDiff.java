@@ -0,0 +1,224 @@
+package com.soprasteria.azure.openai.journey3;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+import com.azure.search.documents.indexes.models.HnswAlgorithmConfiguration;
+import com.azure.search.documents.indexes.models.ScalarQuantizationCompression;
+import com.azure.search.documents.indexes.models.SearchField;
+import com.azure.search.documents.indexes.models.SearchIndex;
+import com.azure.search.documents.indexes.models.VectorSearch;
+import com.azure.search.documents.indexes.models.VectorSearchAlgorithmConfiguration;
+import com.azure.search.documents.indexes.models.VectorSearchCompression;
+import com.azure.search.documents.indexes.models.VectorSearchProfile;
+
+/**
+ * Field and vector search difference between a desired and an existing index definition.
+ * <p>
+ * Only attributes set on the desired definition are compared, since the service fills in
+ * defaults for everything left unset.
+ * <p>
+ * Each change is classified as applicable in place or requiring the index to be dropped and recreated. The service
+ * rejects changes to the type, attributes, analyzer, vector dimensions or vector profile of an existing field, and
+ * removing a field. Changes to a compression, or to which compression a profile uses, would leave the stored vectors
+ * quantized the old way. The same goes for the HNSW parameters that shape the graph ({@code m},
+ * {@code efConstruction}, {@code metric}), while {@code efSearch} only affects queries.
+ */
+public class IndexDiff {
+
+    /**
+     * One difference, e.g. {@code "~ field 'embedding' dimensions: 1536 -> 3072"}.
+     */
+    public record Change(String description, boolean requiresRebuild) {
+
+        @Override
+        public String toString() {
+            return requiresRebuild ? description + " (requires rebuild)" : description;
+        }
+    }
+
+    private final List<Change> changes = new ArrayList<>();
+
+    private IndexDiff() {
+    }
+
+    public static IndexDiff between(final SearchIndex desired, final SearchIndex existing) {
+        final var diff = new IndexDiff();
+        diff.compareFields(desired.getFields(), existing.getFields());
+        diff.compareVectorSearch(desired.getVectorSearch(), existing.getVectorSearch());
+        return diff;
+    }
+
+    public boolean isEmpty() {
+        return changes.isEmpty();
+    }
+
+    /**
+     * Every change as text, those that cannot be applied in place marked {@code (requires rebuild)}.
+     */
+    public List<String> getChanges() {
+        return changes.stream().map(Change::toString).toList();
+    }
+
+    public List<Change> changes() {
+        return List.copyOf(changes);
+    }
+
+    /**
+     * Whether any change needs the index to be dropped and recreated rather than updated.
+     */
+    public boolean requiresRebuild() {
+        return changes.stream().anyMatch(Change::requiresRebuild);
+    }
+
+    private void compareFields(final List<SearchField> desired, final List<SearchField> existing) {
+        final var existingByName = byName(existing, SearchField::getName);
+        for (final var field : nullSafe(desired)) {
+            final var current = existingByName.get(field.getName());
+            final var path = "field '" + field.getName() + "'";
+            if (current == null) {
+                changes.add(new Change("+ " + path, false));
+                continue;
+            }
+            rebuildIf(path, "type", field.getType(), current.getType());
+            rebuildIf(path, "key", field.isKey(), current.isKey());
+            rebuildIf(path, "searchable", field.isSearchable(), current.isSearchable());
+            rebuildIf(path, "filterable", field.isFilterable(), current.isFilterable());
+            rebuildIf(path, "sortable", field.isSortable(), current.isSortable());
+            rebuildIf(path, "facetable", field.isFacetable(), current.isFacetable());
+            compare(path, "hidden", field.isHidden(), current.isHidden());
+            rebuildIf(path, "analyzer", field.getAnalyzerName(), current.getAnalyzerName());
+            rebuildIf(path, "indexAnalyzer", field.getIndexAnalyzerName(), current.getIndexAnalyzerName());
+            compare(path, "searchAnalyzer", field.getSearchAnalyzerName(), current.getSearchAnalyzerName());
+            rebuildIf(path, "dimensions", field.getVectorSearchDimensions(), current.getVectorSearchDimensions());
+            rebuildIf(path, "profile", field.getVectorSearchProfileName(), current.getVectorSearchProfileName());
+        }
+        final var desiredByName = byName(desired, SearchField::getName);
+        for (final var field : nullSafe(existing)) {
+            if (!desiredByName.containsKey(field.getName())) {
+                changes.add(new Change("- field '" + field.getName() + "'", true));
+            }
+        }
+    }
+
+    private void compareVectorSearch(final VectorSearch desired, final VectorSearch existing) {
+        if (desired == null) {
+            return;
+        }
+        final var current = existing != null ? existing : new VectorSearch();
+
+        compareNamed("algorithm", desired.getAlgorithms(), current.getAlgorithms(),
+            VectorSearchAlgorithmConfiguration::getName, this::compareAlgorithm);
+        compareNamed("profile", desired.getProfiles(), current.getProfiles(),
+            VectorSearchProfile::getName, this::compareProfile);
+        compareNamed("compression", desired.getCompressions(), current.getCompressions(),
+            VectorSearchCompression::getCompressionName, this::compareCompression);
+    }
+
+    private void compareAlgorithm(
+        final String path,
+        final VectorSearchAlgorithmConfiguration desired,
+        final VectorSearchAlgorithmConfiguration existing
+    ) {
+        rebuildIf(path, "kind", desired.getClass().getSimpleName(), existing.getClass().getSimpleName());
+        if (desired instanceof HnswAlgorithmConfiguration hnsw
+            && existing instanceof HnswAlgorithmConfiguration currentHnsw
+            && hnsw.getParameters() != null) {
+            final var params = hnsw.getParameters();
+            final var currentParams = currentHnsw.getParameters();
+            rebuildIf(path, "m", params.getM(), currentParams == null ? null : currentParams.getM());
+            rebuildIf(path, "efConstruction", params.getEfConstruction(),
+                currentParams == null ? null : currentParams.getEfConstruction());
+            compare(path, "efSearch", params.getEfSearch(), currentParams == null ? null : currentParams.getEfSearch());
+            rebuildIf(path, "metric", params.getMetric(), currentParams == null ? null : currentParams.getMetric());
+        }
+    }
+
+    private void compareProfile(final String path, final VectorSearchProfile desired, final VectorSearchProfile existing) {
+        rebuildIf(path, "algorithm", desired.getAlgorithmConfigurationName(), existing.getAlgorithmConfigurationName());
+        // Unlike the other attributes, dropping the compression of a profile is a change too.
+        if (!Objects.equals(desired.getCompressionName(), existing.getCompressionName())) {
+            changes.add(new Change("~ " + path + " compression: " + existing.getCompressionName() + " -> "
+                + desired.getCompressionName(), true));
+        }
+    }
+
+    private void compareCompression(final String path, final VectorSearchCompression desired, final VectorSearchCompression existing) {
+        rebuildIf(path, "kind", desired.getClass().getSimpleName(), existing.getClass().getSimpleName());
+        if (desired instanceof ScalarQuantizationCompression scalar
+            && existing instanceof ScalarQuantizationCompression currentScalar
+            && scalar.getParameters() != null) {
+            rebuildIf(path, "quantizedDataType",
+                scalar.getParameters().getQuantizedDataType(),
+                currentScalar.getParameters() == null ? null : currentScalar.getParameters().getQuantizedDataType());
+        }
+    }
+
+    private <T> void compareNamed(
+        final String kind,
+        final List<T> desired,
+        final List<T> existing,
+        final Function<T, String> nameOf,
+        final Comparison<T> comparison
+    ) {
+        final var existingByName = byName(existing, nameOf);
+        for (final var item : nullSafe(desired)) {
+            final var path = kind + " '" + nameOf.apply(item) + "'";
+            final var current = existingByName.get(nameOf.apply(item));
+            if (current == null) {
+                changes.add(new Change("+ " + path, false));
+            } else {
+                comparison.compare(path, item, current);
+            }
+        }
+        final var desiredByName = byName(desired, nameOf);
+        for (final var item : nullSafe(existing)) {
+            if (!desiredByName.containsKey(nameOf.apply(item))) {
+                changes.add(new Change("- " + kind + " '" + nameOf.apply(item) + "'", false));
+            }
+        }
+    }
+
+    private void compare(final String path, final String attribute, final Object desired, final Object existing) {
+        compare(path, attribute, desired, existing, false);
+    }
+
+    private void rebuildIf(final String path, final String attribute, final Object desired, final Object existing) {
+        compare(path, attribute, desired, existing, true);
+    }
+
+    private void compare(
+        final String path,
+        final String attribute,
+        final Object desired,
+        final Object existing,
+        final boolean requiresRebuild
+    ) {
+        if (desired != null && !Objects.equals(desired, existing)) {
+            changes.add(new Change("~ " + path + " " + attribute + ": " + existing + " -> " + desired,
+                requiresRebuild));
+        }
+    }
+
+    private static <T> Map<String, T> byName(final List<T> items, final Function<T, String> nameOf) {
+        final var map = new LinkedHashMap<String, T>();
+        for (final var item : nullSafe(items)) {
+            map.put(nameOf.apply(item), item);
+        }
+        return map;
+    }
+
+    private static <T> List<T> nullSafe(final List<T> items) {
+        return items != null ? items : List.of();
+    }
+
+    @FunctionalInterface
+    private interface Comparison<T> {
+        void compare(String path, T desired, T existing);
+    }
+
+}
@@ -0,0 +1,254 @@
+package com.soprasteria.azure.openai.journey3;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import com.soprasteria.azure.openai.journey3.utils.Scenario;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.hadoop.ParquetReader;
+import org.apache.parquet.hadoop.example.GroupReadSupport;
+
+/**
+ * Predicts the storage and vector index size of a scenario without building the index.
+ * <p>
+ * Every scenario is first reduced to raw bytes per document: the vector codes (4 bytes per dimension at full
+ * precision, 1 for int8, 1 bit for binary, one byte per subspace for product quantization) plus the HNSW links for
+ * the vector index, which depend on the {@code m} of the scenario's own graph settings, and the document text plus
+ * the full-precision copies kept for rescoring and retrieval for the storage. The service adds its own overhead on
+ * top, so both sizes are fitted as {@code scale * raw + perDocument} by least squares against sizes measured by
+ * {@link IndexSizeReporterExample}. Without measurements the raw bytes are returned as they are.
+ */
+public class IndexSizeEstimator {
+
+    /**
+     * Where {@link IndexSizeReporterExample} stores the measured sizes of converged indexes.
+     */
+    public static final String MEASUREMENTS_FILE = "index-sizes.csv";
+
+    private static final String MEASUREMENTS_HEADER = "scenario,documents,storage_size,vector_index_size";
+
+    /**
+     * @param textBytesPerDocument mean UTF-8 size of the key, title and content of a document
+     */
+    public record DatasetStatistics(long documents, int dimensions, double textBytesPerDocument) {
+
+        /**
+         * Stream the Parquet dataset once, without materialising the embeddings.
+         */
+        public static DatasetStatistics read(String parquetFile) throws IOException {
+            long documents = 0;
+            int dimensions = 0;
+            long textBytes = 0;
+            try (final var reader = ParquetReader.builder(new GroupReadSupport(),
+                    new org.apache.hadoop.fs.Path(parquetFile))
+                .withConf(new Configuration())
+                .build()) {
+                Group group;
+                while ((group = reader.read()) != null) {
+                    textBytes += group.getBinary("id", 0).length()
+                        + group.getBinary("title", 0).length()
+                        + group.getBinary("text", 0).length();
+                    dimensions = Math.max(dimensions, group.getFieldRepetitionCount("embedding"));
+                    documents++;
+                }
+            }
+            return new DatasetStatistics(documents, dimensions, documents > 0 ? (double) textBytes / documents : 0.0);
+        }
+    }
+
+    /**
+     * Sizes in bytes of a scenario index holding {@code documents} documents.
+     */
+    public record Measurement(String scenario, long documents, long storageSize, long vectorIndexSize) {
+    }
+
+    /**
+     * {@code scale * rawBytes + perDocument} bytes per document.
+     */
+    public record Fit(double scale, double perDocument, int measurements) {
+
+        public static final Fit IDENTITY = new Fit(1.0, 0.0, 0);
+
+        public double apply(double rawBytes) {
+            return scale * rawBytes + perDocument;
+        }
+    }
+
+    private final DatasetStatistics dataset;
+    private final Function<Scenario, HnswSettings> graphSettings;
+    private final Fit storageFit;
+    private final Fit vectorFit;
+
+    private IndexSizeEstimator(DatasetStatistics dataset, Function<Scenario, HnswSettings> graphSettings,
+                               Fit storageFit, Fit vectorFit) {
+        this.dataset = dataset;
+        this.graphSettings = graphSettings;
+        this.storageFit = storageFit;
+        this.vectorFit = vectorFit;
+    }
+
+    /**
+     * Estimator returning raw bytes, for when nothing has been measured yet.
+     *
+     * @param graphSettings HNSW settings of the algorithm configuration each scenario's index is built with, e.g.
+     *                      {@code HnswSettings.of(manager.buildIndex(scenario))}
+     */
+    public static IndexSizeEstimator uncalibrated(DatasetStatistics dataset,
+                                                  Function<Scenario, HnswSettings> graphSettings) {
+        return new IndexSizeEstimator(dataset, graphSettings, Fit.IDENTITY, Fit.IDENTITY);
+    }
+
+    /**
+     * Fit the estimator to measured sizes. Measurements of scenarios that are not in {@code scenarios}, or of empty
+     * indexes, are ignored.
+     */
+    public static IndexSizeEstimator calibrated(DatasetStatistics dataset,
+                                                Function<Scenario, HnswSettings> graphSettings,
+                                                List<Scenario> scenarios, List<Measurement> measurements) {
+        final var byName = scenarios.stream().collect(Collectors.toMap(Scenario::name, Function.identity()));
+        final var raw = uncalibrated(dataset, graphSettings);
+        final var storageRaw = new ArrayList<Double>();
+        final var storageMeasured = new ArrayList<Double>();
+        final var vectorRaw = new ArrayList<Double>();
+        final var vectorMeasured = new ArrayList<Double>();
+        for (final var measurement : measurements) {
+            final var scenario = byName.get(measurement.scenario());
+            if (scenario == null || measurement.documents() <= 0) {
+                continue;
+            }
+            storageRaw.add(raw.storageBytesPerDocument(scenario));
+            storageMeasured.add((double) measurement.storageSize() / measurement.documents());
+            vectorRaw.add(raw.vectorBytesPerDocument(scenario));
+            vectorMeasured.add((double) measurement.vectorIndexSize() / measurement.documents());
+        }
+        return new IndexSizeEstimator(dataset, graphSettings,
+            fit(storageRaw, storageMeasured), fit(vectorRaw, vectorMeasured));
+    }
+
+    public Fit storageFit() {
+        return storageFit;
+    }
+
+    public Fit vectorFit() {
+        return vectorFit;
+    }
+
+    /**
+     * Estimated size of the scenario index over the whole dataset.
+     */
+    public Measurement estimate(Scenario scenario) {
+        final var storage = storageFit.apply(storageBytesPerDocument(scenario)) * dataset.documents();
+        final var vector = vectorFit.apply(vectorBytesPerDocument(scenario)) * dataset.documents();
+        return new Measurement(scenario.name(), dataset.documents(), Math.max(0L, Math.round(storage)),
+            Math.max(0L, Math.round(vector)));
+    }
+
+    /**
+     * Raw vector index bytes of one document: its compressed codes and its HNSW links. Layer 0 keeps {@code 2m}
+     * links and the upper layers {@code m / (m - 1)} on average, each a 4 byte node id.
+     */
+    double vectorBytesPerDocument(Scenario scenario) {
+        final var m = graphSettings.apply(scenario).m();
+        final var links = 2.0 * m + (m > 1 ? (double) m / (m - 1) : 0.0);
+        return codeBytes(scenario) + 4.0 * links;
+    }
+
+    /**
+     * Raw storage bytes of one document: its text, the full-precision vectors kept next to a compressed index unless
+     * they are discarded, and the retrievable copy of a stored embedding.
+     */
+    double storageBytesPerDocument(Scenario scenario) {
+        final var fullPrecision = 4.0 * dataset.dimensions();
+        var bytes = dataset.textBytesPerDocument();
+        if (!scenario.isCompressed() || !scenario.discardOriginals()) {
+            bytes += fullPrecision;
+        }
+        if (scenario.storedEmbedding()) {
+            bytes += fullPrecision;
+        }
+        return bytes;
+    }
+
+    private double codeBytes(Scenario scenario) {
+        final var dimensions = scenario.dimensions(dataset.dimensions());
+        return switch (scenario.compressionType()) {
+            case NONE -> 4.0 * dimensions;
+            case SCALAR -> dimensions;
+            case BINARY -> Math.ceil(dimensions / 8.0);
+            case PQ -> scenario.pqSubspaces();
+        };
+    }
+
+    /**
+     * Least squares fit of {@code measured = scale * raw + perDocument}. With fewer than two distinct raw sizes the
+     * offset cannot be told apart from the scale, so only a scale is fitted.
+     */
+    static Fit fit(List<Double> raw, List<Double> measured) {
+        final var n = raw.size();
+        if (n == 0) {
+            return Fit.IDENTITY;
+        }
+        var meanRaw = 0.0;
+        var meanMeasured = 0.0;
+        for (int i = 0; i < n; i++) {
+            meanRaw += raw.get(i) / n;
+            meanMeasured += measured.get(i) / n;
+        }
+        var covariance = 0.0;
+        var variance = 0.0;
+        for (int i = 0; i < n; i++) {
+            covariance += (raw.get(i) - meanRaw) * (measured.get(i) - meanMeasured);
+            variance += (raw.get(i) - meanRaw) * (raw.get(i) - meanRaw);
+        }
+        if (n < 2 || variance < 1e-9 * meanRaw * meanRaw) {
+            return new Fit(meanRaw > 0 ? meanMeasured / meanRaw : 1.0, 0.0, n);
+        }
+        final var scale = covariance / variance;
+        return new Fit(scale, meanMeasured - scale * meanRaw, n);
+    }
+
+    public static List<Measurement> readMeasurements(Path file) throws IOException {
+        final var measurements = new ArrayList<Measurement>();
+        if (!Files.exists(file)) {
+            return measurements;
+        }
+        for (final var line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (line.isBlank() || line.equals(MEASUREMENTS_HEADER)) {
+                continue;
+            }
+            final var values = line.split(",");
+            measurements.add(new Measurement(values[0], Long.parseLong(values[1]), Long.parseLong(values[2]),
+                Long.parseLong(values[3])));
+        }
+        return measurements;
+    }
+
+    /**
+     * Merge measurements into the file, replacing earlier measurements of the same scenarios.
+     */
+    public static void writeMeasurements(List<Measurement> measurements, Path file) throws IOException {
+        final var merged = new LinkedHashMap<String, Measurement>();
+        for (final var measurement : readMeasurements(file)) {
+            merged.put(measurement.scenario(), measurement);
+        }
+        for (final var measurement : measurements) {
+            merged.put(measurement.scenario(), measurement);
+        }
+        final var lines = new ArrayList<String>();
+        lines.add(MEASUREMENTS_HEADER);
+        for (final var measurement : merged.values()) {
+            lines.add(measurement.scenario() + "," + measurement.documents() + "," + measurement.storageSize() + ","
+                + measurement.vectorIndexSize());
+        }
+        Files.write(file, lines, StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,68 @@
+package com.soprasteria.azure.openai.journey3;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.soprasteria.azure.openai.journey3.utils.Scenarios;
+
+/**
+ * Estimate the index sizes of every scenario, local-only ones included, without building any index. The estimator is
+ * calibrated with the sizes {@link IndexSizeReporterExample} measured earlier, if any, and prints the same table.
+ * The HNSW graph of every scenario is read from the index definition {@link AzureSearchIndexManager} would create;
+ * local-only scenarios, which have none, use {@link HnswSettings#DEFAULT} like the local engine does.
+ */
+public class IndexSizeEstimatorExample {
+
+    private static final String searchEndpoint = "https://aisearch-fastai-rag.search.windows.net";
+    private static final String searchApiKey = "<api-key>";
+    private static final String searchIndexPrefix = "compression-test";
+    private static final String parquetFile = "dbpedia_100k.parquet";
+
+    public static void main(String[] args) throws Exception {
+        final var scenarios = Scenarios.load();
+        final var dataset = IndexSizeEstimator.DatasetStatistics.read(parquetFile);
+        final var measurements = IndexSizeEstimator.readMeasurements(Path.of(IndexSizeEstimator.MEASUREMENTS_FILE));
+
+        // Building the definitions does not contact the service.
+        final var manager = new AzureSearchIndexManager(searchEndpoint, searchApiKey, searchIndexPrefix,
+            dataset.dimensions());
+        final var graphs = new HashMap<String, HnswSettings>();
+        for (final var scenario : scenarios) {
+            graphs.put(scenario.name(), scenario.localOnly()
+                ? HnswSettings.DEFAULT
+                : HnswSettings.of(manager.buildIndex(scenario)));
+        }
+
+        final var start = System.nanoTime();
+        final var estimator = IndexSizeEstimator.calibrated(dataset, scenario -> graphs.get(scenario.name()), scenarios,
+            measurements);
+        final List<Map<String, Object>> indexData = new ArrayList<>();
+        for (final var scenario : scenarios) {
+            final var estimate = estimator.estimate(scenario);
+            indexData.add(IndexSizeReporterExample.sizeEntry(manager.indexName(scenario),
+                scenario.name(), estimate.storageSize(), estimate.vectorIndexSize()));
+        }
+        final var micros = (System.nanoTime() - start) / 1000;
+
+        System.out.printf("Dataset: %d documents, %d dimensions, %.0f text bytes per document%n",
+            dataset.documents(), dataset.dimensions(), dataset.textBytesPerDocument());
+        if (measurements.isEmpty()) {
+            System.out.println("No measurements in " + IndexSizeEstimator.MEASUREMENTS_FILE
+                + ", estimates are raw bytes without service overhead");
+        }
+        printFit("Storage", estimator.storageFit());
+        printFit("Vector", estimator.vectorFit());
+        System.out.printf("Estimated %d scenarios in %d µs%n%n", scenarios.size(), micros);
+
+        IndexSizeReporterExample.printSizeTable(indexData);
+    }
+
+    private static void printFit(String name, IndexSizeEstimator.Fit fit) {
+        System.out.printf("%s fit: %.3f x raw bytes + %.1f bytes per document (%d measurements)%n",
+            name, fit.scale(), fit.perDocument(), fit.measurements());
+    }
+
+}
@@ -1,22 +1,28 @@
 package com.soprasteria.azure.openai.journey3;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
-import com.azure.core.credential.AzureKeyCredential;
 import com.azure.search.documents.indexes.SearchIndexClient;
 import com.azure.search.documents.indexes.SearchIndexClientBuilder;
-import com.azure.search.documents.indexes.models.SearchIndexStatistics;
+import com.soprasteria.azure.openai.journey3.utils.Scenario;
 import com.soprasteria.azure.openai.journey3.utils.Scenarios;
+import com.soprasteria.azure.openai.journey3.utils.Utils;
 
 public class IndexSizeReporterExample {
 
     private static final String searchEndpoint = "https://aisearch-fastai-rag.search.windows.net";
     private static final String searchApiKey = "<api-key>";
     private static final String searchIndexPrefix = "compression-test";
+    private static final long expectedDocuments = 100_000;
+    private static final String SERIES_FILE = "index-size-series.csv";
 
     public static void main(String[] args) throws Exception {
         final var scenarios = Scenarios.defineTestScenarios();
@@ -25,7 +31,7 @@ public class IndexSizeReporterExample {
             searchApiKey,
             searchIndexPrefix,
             scenarios,
-            100
+            expectedDocuments
         );
     }
 
@@ -34,61 +40,84 @@ public class IndexSizeReporterExample {
     }
 
     /**
-     * Get and print storage sizes for all indexes, with retry logic for eventual consistency.
+     * Poll the statistics of all indexes concurrently until they have converged, then print their storage sizes.
+     * The size-over-time series of every index is written to {@code index-size-series.csv}, and the converged sizes
+     * to {@code index-sizes.csv} for calibrating the {@link IndexSizeEstimator}.
+     *
+     * @param expectedDocuments document count every index should report once ingestion is done
      */
     public static void getIndexSizes(
         String endpoint,
         String credential,
         String indexPrefix,
-        List<Map<String, Object>> scenarios,
-        int retryAttempts
-    ) {
-        SearchIndexClient client = new SearchIndexClientBuilder()
-            .endpoint(endpoint)
-            .credential(new AzureKeyCredential(credential))
+        List<Scenario> scenarios,
+        long expectedDocuments
+    ) throws IOException {
+        SearchIndexClient client = Utils.keyedEndpoint(new SearchIndexClientBuilder(), endpoint, credential)
             .buildClient();
 
         System.out.println("\nGathering index statistics...");
         System.out.println("Note: There may be delays in finding index statistics after document upload");
-        System.out.println("Index statistics is not a real-time API\n");
+        System.out.println("Index statistics is not a real-time API, waiting for sizes to converge\n");
+
+        Map<String, Long> expected = new LinkedHashMap<>();
+        Map<String, String> scenarioNames = new HashMap<>();
+        for (Scenario scenario : scenarios) {
+            String indexName = indexPrefix + "-" + scenario.name();
+            expected.put(indexName, expectedDocuments);
+            scenarioNames.put(indexName, scenario.name());
+        }
+
+        Map<String, IndexStatisticsPoller.Result> results =
+            IndexStatisticsPoller.withDefaults(client::getIndexStatistics).awaitAll(expected);
+        Map<String, List<IndexStatisticsPoller.Sample>> series = new LinkedHashMap<>();
+        results.forEach((indexName, result) -> series.put(indexName, result.series()));
+        writeSeries(series, Path.of(SERIES_FILE));
 
         List<Map<String, Object>> indexData = new ArrayList<>();
+        List<IndexSizeEstimator.Measurement> measurements = new ArrayList<>();
 
-        for (Map<String, Object> scenario : scenarios) {
-            String scenarioName = scenario.get("name").toString();
-            String indexName = indexPrefix + "-" + scenarioName;
-
-            for (int attempt = 0; attempt < retryAttempts; attempt++) {
-                try {
-                    SearchIndexStatistics stats = client.getIndexStatistics(indexName);
-                    double storageSize = bytesToMB(stats.getStorageSize());
-                    double vectorSize = bytesToMB(stats.getVectorIndexSize());
-                    double totalSize = storageSize + vectorSize;
-
-                    Map<String, Object> entry = new HashMap<>();
-                    entry.put("Index Name", indexName);
-                    entry.put("Scenario", scenarioName);
-                    entry.put("Storage Size (MB)", storageSize);
-                    entry.put("Vector Size (MB)", vectorSize);
-                    entry.put("Total Size (MB)", totalSize);
-                    indexData.add(entry);
-                    break;
-                } catch (Exception e) {
-                    if (attempt == retryAttempts - 1) {
-                        System.out.printf("Failed to get statistics for %s after %d attempts: %s\n",
-                            indexName, retryAttempts, e.getMessage());
-                    } else {
-                        System.out.printf("Retry %d/%d for %s\n", attempt + 1, retryAttempts, indexName);
-                        try {
-                            Thread.sleep((long) Math.pow(2, attempt) * 1000);
-                        } catch (InterruptedException ie) {
-                            Thread.currentThread().interrupt();
-                        }
-                    }
-                }
+        for (IndexStatisticsPoller.Result result : results.values()) {
+            if (result.last() == null) {
+                System.out.printf("Failed to get statistics for %s: %s\n", result.indexName(), result.error());
+                continue;
+            }
+            if (!result.converged()) {
+                System.out.printf("Statistics of %s had not converged, reporting the last sample\n",
+                    result.indexName());
+            }
+            indexData.add(sizeEntry(result.indexName(), scenarioNames.get(result.indexName()),
+                result.last().storageSize(), result.last().vectorIndexSize()));
+            if (result.converged()) {
+                measurements.add(new IndexSizeEstimator.Measurement(scenarioNames.get(result.indexName()),
+                    result.last().documentCount(), result.last().storageSize(), result.last().vectorIndexSize()));
             }
         }
+        IndexSizeEstimator.writeMeasurements(measurements, Path.of(IndexSizeEstimator.MEASUREMENTS_FILE));
+
+        printSizeTable(indexData);
+    }
+
+    /**
+     * One row of the size table; sizes are in bytes.
+     */
+    static Map<String, Object> sizeEntry(String indexName, String scenarioName, long storageBytes, long vectorBytes) {
+        double storageSize = bytesToMB(storageBytes);
+        double vectorSize = bytesToMB(vectorBytes);
+
+        Map<String, Object> entry = new HashMap<>();
+        entry.put("Index Name", indexName);
+        entry.put("Scenario", scenarioName);
+        entry.put("Storage Size (MB)", storageSize);
+        entry.put("Vector Size (MB)", vectorSize);
+        entry.put("Total Size (MB)", storageSize + vectorSize);
+        return entry;
+    }
 
+    /**
+     * Print the size table sorted by total size, with reductions relative to the baseline scenario.
+     */
+    static void printSizeTable(List<Map<String, Object>> indexData) {
         Optional<Map<String, Object>> baselineOpt = indexData.stream()
             .filter(e -> "baseline".equals(e.get("Scenario")))
             .findFirst();
@@ -130,4 +159,21 @@ public class IndexSizeReporterExample {
                 entry.get("Vector Reduction (%)"));
         }
     }
+
+    /**
+     * Write the samples of every index as CSV, one row per sample.
+     */
+    static void writeSeries(Map<String, List<IndexStatisticsPoller.Sample>> series, Path file) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add("index,time,document_count,storage_size,vector_index_size");
+        for (Map.Entry<String, List<IndexStatisticsPoller.Sample>> entry : series.entrySet()) {
+            for (IndexStatisticsPoller.Sample sample : entry.getValue()) {
+                lines.add(String.join(",", entry.getKey(), sample.time().toString(),
+                    Long.toString(sample.documentCount()), Long.toString(sample.storageSize()),
+                    Long.toString(sample.vectorIndexSize())));
+            }
+        }
+        Files.write(file, lines);
+        System.out.println("Size-over-time series written to " + file);
+    }
 }
@@ -0,0 +1,233 @@
+package com.soprasteria.azure.openai.journey3;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+
+import com.azure.search.documents.indexes.models.SearchIndexStatistics;
+
+/**
+ * Polls the statistics of many indexes concurrently until each has converged, recording a size-over-time series
+ * on the way.
+ * <p>
+ * Index statistics are eventually consistent: after an upload the document count catches up first and the sizes
+ * keep changing for a while. An index has converged when it reports the expected document count and the same
+ * storage and vector index size for {@code stableSamples} consecutive samples. Failed calls are retried with
+ * capped exponential backoff and full jitter, so one missing index never stalls the others or the run.
+ * <p>
+ * {@link #record(String)} samples in the background instead, for a series taken while documents are uploaded.
+ */
+public class IndexStatisticsPoller {
+
+    public record Sample(Instant time, long documentCount, long storageSize, long vectorIndexSize) {
+    }
+
+    /**
+     * Outcome of polling one index. {@code last} is null when no sample could be taken before the timeout.
+     */
+    public record Result(String indexName, boolean converged, Sample last, List<Sample> series, String error) {
+    }
+
+    /**
+     * Samples of one index taken on a virtual thread every {@code interval} until closed. Failed calls are retried
+     * with the same backoff as {@link #await(String, long)} and leave no sample.
+     */
+    public final class Recording implements AutoCloseable {
+
+        private final String indexName;
+        private final List<Sample> series = Collections.synchronizedList(new ArrayList<>());
+        private final Thread thread;
+        private volatile boolean stopped;
+
+        private Recording(String indexName) {
+            this.indexName = indexName;
+            this.thread = Thread.ofVirtual().name("statistics-" + indexName).start(this::sample);
+        }
+
+        public String indexName() {
+            return indexName;
+        }
+
+        /**
+         * The samples taken so far, in time order.
+         */
+        public List<Sample> series() {
+            synchronized (series) {
+                return List.copyOf(series);
+            }
+        }
+
+        /**
+         * Stop sampling and wait for the sampling thread, so no sample is added after this returns.
+         */
+        @Override
+        public void close() {
+            stopped = true;
+            thread.interrupt();
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void sample() {
+            var failures = 0;
+            while (!stopped) {
+                Duration delay;
+                try {
+                    series.add(IndexStatisticsPoller.this.sample(indexName));
+                    failures = 0;
+                    delay = interval;
+                } catch (Exception e) {
+                    delay = backoff(failures++);
+                }
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private final Function<String, SearchIndexStatistics> statistics;
+    private final Duration interval;
+    private final Duration maxBackoff;
+    private final int stableSamples;
+    private final Duration timeout;
+
+    /**
+     * @param statistics    source of statistics by index name, e.g. {@code manager::getIndexStatistics}
+     * @param interval      time between successful samples, and the first retry delay after a failure
+     * @param maxBackoff    upper bound of the retry delay after repeated failures
+     * @param stableSamples number of consecutive equal samples that count as converged
+     * @param timeout       time after which an index is given up on
+     */
+    public IndexStatisticsPoller(Function<String, SearchIndexStatistics> statistics, Duration interval,
+                                 Duration maxBackoff, int stableSamples, Duration timeout) {
+        this.statistics = statistics;
+        this.interval = interval;
+        this.maxBackoff = maxBackoff;
+        this.stableSamples = Math.max(1, stableSamples);
+        this.timeout = timeout;
+    }
+
+    /**
+     * Sample every 5 s, back off to at most a minute, converge on 3 equal samples and give up after 30 minutes.
+     */
+    public static IndexStatisticsPoller withDefaults(Function<String, SearchIndexStatistics> statistics) {
+        return new IndexStatisticsPoller(statistics, Duration.ofSeconds(5), Duration.ofMinutes(1), 3,
+            Duration.ofMinutes(30));
+    }
+
+    /**
+     * Poll every index concurrently until it converges or times out.
+     *
+     * @param expectedDocuments expected document count by index name; 0 or less only requires stable sizes
+     * @return results in the iteration order of {@code expectedDocuments}
+     */
+    public Map<String, Result> awaitAll(Map<String, Long> expectedDocuments) {
+        try (final var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            final var futures = new LinkedHashMap<String, CompletableFuture<Result>>();
+            expectedDocuments.forEach((indexName, expected) ->
+                futures.put(indexName, CompletableFuture.supplyAsync(() -> await(indexName, expected), executor)));
+
+            final var results = new LinkedHashMap<String, Result>();
+            futures.forEach((indexName, future) -> results.put(indexName, future.join()));
+            return results;
+        }
+    }
+
+    /**
+     * Start sampling one index in the background until the returned recording is closed, regardless of
+     * convergence. The first sample is taken right away.
+     */
+    public Recording record(String indexName) {
+        return new Recording(indexName);
+    }
+
+    /**
+     * Poll one index on the calling thread until it converges or times out.
+     */
+    public Result await(String indexName, long expectedDocuments) {
+        final var deadline = Instant.now().plus(timeout);
+        final var series = new ArrayList<Sample>();
+        var failures = 0;
+        String error = null;
+
+        while (true) {
+            Duration delay;
+            try {
+                series.add(sample(indexName));
+                if (converged(series, expectedDocuments)) {
+                    return new Result(indexName, true, series.getLast(), List.copyOf(series), null);
+                }
+                failures = 0;
+                delay = interval;
+            } catch (Exception e) {
+                error = e.getMessage();
+                delay = backoff(failures++);
+            }
+
+            final var remaining = Duration.between(Instant.now(), deadline);
+            if (remaining.isNegative() || remaining.isZero()) {
+                System.out.printf("Statistics of %s did not converge within %s%n", indexName, timeout);
+                return new Result(indexName, false, series.isEmpty() ? null : series.getLast(),
+                    List.copyOf(series), error);
+            }
+            try {
+                Thread.sleep(delay.compareTo(remaining) < 0 ? delay : remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return new Result(indexName, false, series.isEmpty() ? null : series.getLast(),
+                    List.copyOf(series), "interrupted");
+            }
+        }
+    }
+
+    private Sample sample(String indexName) {
+        final var stats = statistics.apply(indexName);
+        return new Sample(Instant.now(), stats.getDocumentCount(), stats.getStorageSize(),
+            orZero(stats.getVectorIndexSize()));
+    }
+
+    private boolean converged(List<Sample> series, long expectedDocuments) {
+        final var last = series.getLast();
+        if (expectedDocuments > 0 && last.documentCount() != expectedDocuments) {
+            return false;
+        }
+        if (series.size() < stableSamples) {
+            return false;
+        }
+        for (final var sample : series.subList(series.size() - stableSamples, series.size())) {
+            if (sample.documentCount() != last.documentCount()
+                || sample.storageSize() != last.storageSize()
+                || sample.vectorIndexSize() != last.vectorIndexSize()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Full jitter: a uniform delay between zero and the capped exponential bound.
+     */
+    private Duration backoff(int failures) {
+        final var bound = Math.min(maxBackoff.toMillis(), interval.toMillis() << Math.min(failures, 20));
+        return Duration.ofMillis(ThreadLocalRandom.current().nextLong(bound + 1));
+    }
+
+    private static long orZero(Long value) {
+        return value != null ? value : 0L;
+    }
+
+}
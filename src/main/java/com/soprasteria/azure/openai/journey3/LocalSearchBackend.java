@@ -0,0 +1,404 @@
+package com.soprasteria.azure.openai.journey3;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+import com.azure.search.documents.indexes.models.SearchField;
+import com.azure.search.documents.indexes.models.SearchFieldDataType;
+import com.azure.search.documents.indexes.models.SearchIndex;
+import com.soprasteria.azure.openai.journey3.vector.HnswIndex;
+import com.soprasteria.azure.openai.journey3.vector.Neighbor;
+import com.soprasteria.azure.openai.journey3.vector.NodeHeap;
+
+/**
+ * In-process stand-in for the search service's indexing and query path, so the journey3 examples can iterate
+ * on index configurations offline. Indexes are created from the same {@link SearchIndex} definitions that
+ * {@link AzureSearchIndexManager} sends to the service, and use their HNSW parameters.
+ * <p>
+ * Uploading a key that already exists replaces the document; the old graph node is left in place as a
+ * tombstone and filtered out of results. Compression settings are not applied; vectors are kept at full
+ * float precision.
+ */
+public class LocalSearchBackend {
+
+    private final Map<String, LocalIndex> indexes = new ConcurrentHashMap<>();
+    private final List<Consumer<String>> changeListeners = new CopyOnWriteArrayList<>();
+
+    private static class LocalIndex {
+
+        private volatile SearchIndex definition;
+        private final String keyField;
+        private final String vectorField;
+        private final List<String> searchableFields;
+        private final HnswIndex hnsw;
+        private final AtomicReferenceArray<Map<String, Object>> documents;
+        private final Map<String, Integer> ordinals = new ConcurrentHashMap<>();
+        private final AtomicInteger liveDocuments = new AtomicInteger();
+        private final AtomicInteger tombstones = new AtomicInteger();
+        private final AtomicLong storageBytes = new AtomicLong();
+
+        private LocalIndex(SearchIndex definition, SearchField vectorField, int capacity) {
+            this.definition = definition;
+            this.keyField = definition.getFields().stream()
+                .filter(field -> Boolean.TRUE.equals(field.isKey()))
+                .map(SearchField::getName)
+                .findFirst()
+                .orElse("id");
+            this.vectorField = vectorField.getName();
+            this.searchableFields = definition.getFields().stream()
+                .filter(field -> Boolean.TRUE.equals(field.isSearchable()))
+                .filter(field -> SearchFieldDataType.STRING.equals(field.getType()))
+                .map(SearchField::getName)
+                .toList();
+            this.hnsw = new HnswIndex(vectorField.getVectorSearchDimensions(), capacity,
+                HnswSettings.of(definition, vectorField).toLocal());
+            this.documents = new AtomicReferenceArray<>(capacity);
+        }
+
+    }
+
+    /**
+     * Outcome of one indexing action, mirroring the service's per-document indexing result.
+     */
+    public record IndexingOutcome(String key, boolean succeeded, String errorMessage, int statusCode) {
+    }
+
+    /**
+     * Create an index able to hold {@code capacity} documents. Updating an existing index only replaces its
+     * definition and keeps the documents, like the service does.
+     *
+     * @return true if the index was created, false if it already existed
+     */
+    public boolean createOrUpdateIndex(final SearchIndex definition, final int capacity) {
+        final var existing = indexes.get(definition.getName());
+        if (existing != null) {
+            existing.definition = definition;
+            changed(definition.getName());
+            return false;
+        }
+        final var vectorField = definition.getFields().stream()
+            .filter(field -> field.getVectorSearchDimensions() != null)
+            .findFirst()
+            .orElseThrow(() -> new IllegalArgumentException("Index " + definition.getName() + " has no vector field"));
+
+        indexes.put(definition.getName(), new LocalIndex(definition, vectorField, capacity));
+        System.out.println("Created local index: " + definition.getName());
+        return true;
+    }
+
+    public Optional<SearchIndex> getIndex(final String indexName) {
+        return Optional.ofNullable(indexes.get(indexName)).map(index -> index.definition);
+    }
+
+    public Collection<SearchIndex> listIndexes() {
+        return indexes.values().stream().map(index -> index.definition).toList();
+    }
+
+    public boolean deleteIndex(final String indexName) {
+        final var deleted = indexes.remove(indexName) != null;
+        if (deleted) {
+            changed(indexName);
+        }
+        return deleted;
+    }
+
+    /**
+     * Call {@code listener} with the name of an index whenever its documents or definition change or it is deleted,
+     * for example to invalidate cached search results.
+     */
+    public void onChange(final Consumer<String> listener) {
+        changeListeners.add(listener);
+    }
+
+    private void changed(final String indexName) {
+        changeListeners.forEach(listener -> listener.accept(indexName));
+    }
+
+    /**
+     * Insert documents concurrently. Every document must carry its vector as a list of numbers.
+     */
+    public void upload(final String indexName, final List<Map<String, Object>> documents) {
+        final var index = requireIndex(indexName);
+        final var failed = documents.parallelStream()
+            .map(doc -> upload(index, doc))
+            .filter(outcome -> !outcome.succeeded())
+            .count();
+        changed(indexName);
+        System.out.printf("Uploaded %d documents to local index %s (%d failed)%n", documents.size() - failed, indexName, failed);
+    }
+
+    /**
+     * Apply a batch of indexing actions, each document carrying its {@code @search.action}
+     * ({@code upload}, {@code mergeOrUpload}, {@code merge} or {@code delete}; default {@code upload}).
+     */
+    public List<IndexingOutcome> index(final String indexName, final List<Map<String, Object>> actions) {
+        final var index = requireIndex(indexName);
+        final var outcomes = new ArrayList<IndexingOutcome>(actions.size());
+        for (final var action : actions) {
+            final var doc = new HashMap<>(action);
+            final var actionType = String.valueOf(doc.getOrDefault("@search.action", "upload"));
+            doc.remove("@search.action");
+            outcomes.add(switch (actionType) {
+                case "delete" -> delete(index, doc);
+                case "merge" -> merge(index, doc, false);
+                case "mergeOrUpload" -> merge(index, doc, true);
+                default -> upload(index, doc);
+            });
+        }
+        changed(indexName);
+        return outcomes;
+    }
+
+    private IndexingOutcome upload(final LocalIndex index, final Map<String, Object> doc) {
+        final var key = (String) doc.get(index.keyField);
+        if (key == null) {
+            return new IndexingOutcome(null, false, "Document is missing key field '" + index.keyField + "'", 400);
+        }
+        if (!(doc.get(index.vectorField) instanceof List<?> values)) {
+            return new IndexingOutcome(key, false, "Document is missing vector field '" + index.vectorField + "'", 400);
+        }
+
+        final var vector = toArray(values);
+        if (vector.length != index.hnsw.dimensions()) {
+            return new IndexingOutcome(key, false, "Expected " + index.hnsw.dimensions() + " dimensions, got " + vector.length, 400);
+        }
+        final int ordinal;
+        try {
+            ordinal = index.hnsw.add(vector);
+        } catch (IllegalStateException e) {
+            return new IndexingOutcome(key, false, e.getMessage(), 507);
+        }
+
+        final var stored = new HashMap<>(doc);
+        stored.put(index.vectorField, vector);
+        index.documents.set(ordinal, stored);
+        index.storageBytes.addAndGet(estimateBytes(stored));
+
+        final var previous = index.ordinals.put(key, ordinal);
+        final var replaced = previous != null ? index.documents.getAndSet(previous, null) : null;
+        if (replaced != null) {
+            index.storageBytes.addAndGet(-estimateBytes(replaced));
+            index.tombstones.incrementAndGet();
+            return new IndexingOutcome(key, true, null, 200);
+        }
+        index.liveDocuments.incrementAndGet();
+        return new IndexingOutcome(key, true, null, 201);
+    }
+
+    private IndexingOutcome merge(final LocalIndex index, final Map<String, Object> doc, final boolean uploadIfMissing) {
+        final var key = (String) doc.get(index.keyField);
+        final var ordinal = key != null ? index.ordinals.get(key) : null;
+        final var existing = ordinal != null ? index.documents.get(ordinal) : null;
+        if (existing == null) {
+            return uploadIfMissing ? upload(index, doc) : new IndexingOutcome(key, false, "Document not found.", 404);
+        }
+        if (doc.containsKey(index.vectorField)) {
+            final var merged = new HashMap<>(existing);
+            merged.putAll(doc);
+            return upload(index, merged);
+        }
+        final var merged = new HashMap<>(existing);
+        merged.putAll(doc);
+        index.documents.set(ordinal, merged);
+        index.storageBytes.addAndGet(estimateBytes(merged) - estimateBytes(existing));
+        return new IndexingOutcome(key, true, null, 200);
+    }
+
+    private IndexingOutcome delete(final LocalIndex index, final Map<String, Object> doc) {
+        final var key = (String) doc.get(index.keyField);
+        final var ordinal = key != null ? index.ordinals.remove(key) : null;
+        final var removed = ordinal != null ? index.documents.getAndSet(ordinal, null) : null;
+        if (removed != null) {
+            index.storageBytes.addAndGet(-estimateBytes(removed));
+            index.liveDocuments.decrementAndGet();
+            index.tombstones.incrementAndGet();
+        }
+        return new IndexingOutcome(key, true, null, 200);
+    }
+
+    /**
+     * Approximate nearest live documents for a query vector, best first. Neighbour ids are ordinals for
+     * {@link #getDocument(String, int)}.
+     */
+    public List<Neighbor> vectorSearch(final String indexName, final float[] vector, final int k) {
+        final var index = requireIndex(indexName);
+        final var extra = Math.min(index.tombstones.get(), k);
+        return index.hnsw.searchNeighbors(vector, k + extra).stream()
+            .filter(neighbor -> index.documents.get(neighbor.id()) != null)
+            .limit(k)
+            .toList();
+    }
+
+    /**
+     * Term-frequency / inverse-document-frequency ranking over the index's searchable string fields, by a full
+     * scan. Good enough to exercise keyword and hybrid query paths locally.
+     */
+    public List<Neighbor> keywordSearch(final String indexName, final String text, final int k) {
+        final var index = requireIndex(indexName);
+        final var terms = tokenize(text);
+        if (terms.isEmpty() || k <= 0) {
+            return List.of();
+        }
+
+        final var termFrequencies = new HashMap<Integer, int[]>();
+        final var documentFrequencies = new int[terms.size()];
+        final var size = index.hnsw.size();
+        for (int ordinal = 0; ordinal < size; ordinal++) {
+            final var doc = index.documents.get(ordinal);
+            if (doc == null) {
+                continue;
+            }
+            int[] frequencies = null;
+            for (final var field : index.searchableFields) {
+                if (!(doc.get(field) instanceof String value)) {
+                    continue;
+                }
+                for (final var token : tokenize(value)) {
+                    final var term = terms.indexOf(token);
+                    if (term >= 0) {
+                        if (frequencies == null) {
+                            frequencies = new int[terms.size()];
+                        }
+                        if (frequencies[term]++ == 0) {
+                            documentFrequencies[term]++;
+                        }
+                    }
+                }
+            }
+            if (frequencies != null) {
+                termFrequencies.put(ordinal, frequencies);
+            }
+        }
+
+        final var live = Math.max(1, index.liveDocuments.get());
+        final var top = NodeHeap.min(k + 1);
+        termFrequencies.forEach((ordinal, frequencies) -> {
+            float score = 0f;
+            for (int t = 0; t < frequencies.length; t++) {
+                if (frequencies[t] > 0) {
+                    final var idf = Math.log(1.0 + live / (1.0 + documentFrequencies[t]));
+                    score += (float) ((1.0 + Math.log(frequencies[t])) * idf);
+                }
+            }
+            top.push(score, ordinal);
+            if (top.size() > k) {
+                top.pop();
+            }
+        });
+
+        final var results = new Neighbor[top.size()];
+        for (int i = results.length - 1; i >= 0; i--) {
+            final var score = top.topKey();
+            results[i] = new Neighbor(top.pop(), score);
+        }
+        return List.of(results);
+    }
+
+    /**
+     * The first {@code limit} live documents in insertion order, all with score 1, as for a {@code *} query.
+     */
+    public List<Neighbor> allDocuments(final String indexName, final int limit) {
+        final var index = requireIndex(indexName);
+        final var size = index.hnsw.size();
+        final var all = new ArrayList<Neighbor>();
+        for (int ordinal = 0; ordinal < size && all.size() < limit; ordinal++) {
+            if (index.documents.get(ordinal) != null) {
+                all.add(new Neighbor(ordinal, 1f));
+            }
+        }
+        return all;
+    }
+
+    /**
+     * Top {@code k} documents for a query vector, projected to the selected fields plus {@code @search.score}.
+     */
+    public List<Map<String, Object>> search(final String indexName, final float[] vector, final int k, final String... select) {
+        final var results = new ArrayList<Map<String, Object>>(k);
+        for (final var neighbor : vectorSearch(indexName, vector, k)) {
+            final var doc = getDocument(indexName, neighbor.id());
+            final var result = new HashMap<String, Object>();
+            for (final var field : select) {
+                result.put(field, doc.get(field));
+            }
+            result.put("@search.score", neighbor.score());
+            results.add(result);
+        }
+        return results;
+    }
+
+    /**
+     * Stored document for an ordinal returned by a search, or null if it has since been replaced or deleted.
+     * Vector fields are stored as {@code float[]}.
+     */
+    public Map<String, Object> getDocument(final String indexName, final int ordinal) {
+        return requireIndex(indexName).documents.get(ordinal);
+    }
+
+    public long getDocumentCount(final String indexName) {
+        return requireIndex(indexName).liveDocuments.get();
+    }
+
+    public long getStorageSize(final String indexName) {
+        return requireIndex(indexName).storageBytes.get();
+    }
+
+    public long getVectorIndexSize(final String indexName) {
+        return requireIndex(indexName).hnsw.sizeBytes();
+    }
+
+    private LocalIndex requireIndex(final String indexName) {
+        final var index = indexes.get(indexName);
+        if (index == null) {
+            throw new IllegalArgumentException("Local index " + indexName + " does not exist");
+        }
+        return index;
+    }
+
+    private static List<String> tokenize(final String text) {
+        if (text == null || text.isBlank()) {
+            return List.of();
+        }
+        final var tokens = new ArrayList<String>();
+        for (final var token : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    private static long estimateBytes(final Map<String, Object> doc) {
+        long bytes = 0;
+        for (final var value : doc.values()) {
+            if (value instanceof String text) {
+                bytes += text.getBytes(StandardCharsets.UTF_8).length;
+            } else if (value instanceof float[] vector) {
+                bytes += (long) vector.length * Float.BYTES;
+            } else if (value != null) {
+                bytes += 8;
+            }
+        }
+        return bytes;
+    }
+
+    private static float[] toArray(final List<?> values) {
+        final var array = new float[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = ((Number) values.get(i)).floatValue();
+        }
+        return array;
+    }
+
+}
@@ -0,0 +1,140 @@
+package com.soprasteria.azure.openai.journey3;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import com.soprasteria.azure.openai.journey3.quantization.BinaryQuantizer;
+import com.soprasteria.azure.openai.journey3.quantization.ProductQuantizer;
+import com.soprasteria.azure.openai.journey3.quantization.QuantizedVectors;
+import com.soprasteria.azure.openai.journey3.quantization.ScalarQuantizer;
+import com.soprasteria.azure.openai.journey3.utils.Scenario;
+import com.soprasteria.azure.openai.journey3.utils.Scenarios;
+import com.soprasteria.azure.openai.journey3.vector.GroundTruth;
+import com.soprasteria.azure.openai.journey3.vector.Metric;
+import com.soprasteria.azure.openai.journey3.vector.Rescorer;
+import com.soprasteria.azure.openai.journey3.vector.VectorStore;
+
+/**
+ * Predict vector size and recall for each compression scenario before building any index: quantize the dataset
+ * locally the way the scenario would, rank a query set by the codes alone, and compare with exact search.
+ * <p>
+ * Recall is measured without rescoring, i.e. what a scenario that discards the originals returns, and after
+ * rescoring {@value #RESCORE_OVERSAMPLING}x oversampled candidates locally with {@link Rescorer}, together with the
+ * time that takes per query. Search latency is the mean time of one single-threaded brute-force scan of the codes.
+ * The local-only product quantization scenarios of {@link Scenarios#defineLocalScenarios()} are reported in the same
+ * table. Pass {@code --global} to calibrate int8 on a single range instead of one per dimension.
+ */
+public class QuantizationReportExample {
+
+    private static final String parquetFile = "dbpedia_100k.parquet";
+
+    private static final int QUERY_COUNT = 100;
+    private static final int CALIBRATION_SAMPLE = 10_000;
+    private static final int PQ_TRAINING_ITERATIONS = 15;
+    private static final int K = 10;
+    private static final long SEED = 42;
+    private static final double RESCORE_OVERSAMPLING = 10.0;
+
+    public static void main(String[] args) throws Exception {
+        final var perDimension = !List.of(args).contains("--global");
+        final var scenarios = Scenarios.load();
+
+        try (final var dataset = EmbeddingDataset.open(parquetFile)) {
+            final var store = dataset.vectors();
+            final var queries = sampleQueries(store, QUERY_COUNT, SEED);
+            final var truth = dataset.groundTruth(Metric.COSINE).neighbours(queries, K);
+
+            System.out.printf("%n--- Predicted vector size and recall@%d, %d vectors, %d queries ---%n",
+                K, store.size(), queries.length);
+            System.out.printf("%-32s %10s %12s %12s %8s %9s %11s %11s%n", "scenario", "bytes/vec",
+                "vectors MB", "total MB", "recall", "rescored", "search µs", "rescore µs");
+            for (final var scenario : scenarios) {
+                printScenario(scenario, store, queries, truth, perDimension);
+            }
+        }
+    }
+
+    private static void printScenario(Scenario scenario, VectorStore store, float[][] queries,
+                                      int[][] truth, boolean perDimension) {
+        final var dimensions = scenario.dimensions(store.dimensions());
+        final var originalBytes = (long) store.size() * store.dimensions() * Float.BYTES;
+
+        final QuantizedVectors encoded = switch (scenario.compressionType()) {
+            case SCALAR -> ScalarQuantizer.calibrate(store, dimensions, CALIBRATION_SAMPLE, perDimension, SEED)
+                .encodeAll(store, Metric.COSINE);
+            case BINARY -> new BinaryQuantizer(dimensions).encodeAll(store);
+            case PQ -> ProductQuantizer.train(store, dimensions, scenario.pqSubspaces(),
+                    CALIBRATION_SAMPLE, PQ_TRAINING_ITERATIONS, SEED)
+                .encodeAll(store, Metric.COSINE);
+            case NONE -> null;
+        };
+
+        final int bytesPerVector;
+        final long vectorBytes;
+        final double recall;
+        final double rescoredRecall;
+        final double searchMicros;
+        final var rescorer = new Rescorer(store, Metric.COSINE);
+        if (encoded == null) {
+            bytesPerVector = dimensions * Float.BYTES;
+            vectorBytes = originalBytes;
+            recall = 1.0;
+            rescoredRecall = 1.0;
+            searchMicros = Double.NaN;
+        } else {
+            bytesPerVector = encoded.bytesPerVector();
+            vectorBytes = encoded.sizeBytes();
+            final var candidates = new int[queries.length][];
+            final var start = System.nanoTime();
+            for (int q = 0; q < queries.length; q++) {
+                candidates[q] = encoded.search(queries[q], Rescorer.candidates(K, RESCORE_OVERSAMPLING));
+            }
+            searchMicros = (System.nanoTime() - start) / 1e3 / queries.length;
+            final var top = new int[queries.length][];
+            final var rescored = new int[queries.length][];
+            for (int q = 0; q < queries.length; q++) {
+                top[q] = Arrays.copyOf(candidates[q], Math.min(K, candidates[q].length));
+                rescored[q] = rescorer.rescore(queries[q], candidates[q], K);
+            }
+            recall = meanRecall(top, truth);
+            rescoredRecall = meanRecall(rescored, truth);
+        }
+        // Preserved originals are kept next to the compressed vectors for rescoring.
+        final var totalBytes = encoded == null || scenario.discardOriginals() ? vectorBytes : vectorBytes + originalBytes;
+
+        System.out.printf("%-32s %10d %12.1f %12.1f %8.3f %9.3f %11.1f %11.1f%n", scenario.name(),
+            bytesPerVector, toMB(vectorBytes), toMB(totalBytes), recall, rescoredRecall, searchMicros,
+            rescorer.meanMicros());
+    }
+
+    private static double meanRecall(int[][] results, int[][] truth) {
+        var sum = 0.0;
+        for (int q = 0; q < truth.length; q++) {
+            sum += GroundTruth.recall(results[q], truth[q]);
+        }
+        return truth.length == 0 ? 1.0 : sum / truth.length;
+    }
+
+    /**
+     * Fixed query set: rows picked with a seeded random and perturbed with a little gaussian noise, as in
+     * {@link HnswSweepExample#sampleQueries(float[][], int, long)}.
+     */
+    static float[][] sampleQueries(VectorStore store, int count, long seed) {
+        final var random = new Random(seed);
+        final var queries = new float[count][];
+        for (int q = 0; q < count; q++) {
+            final var query = store.get(random.nextInt(store.size()));
+            for (int i = 0; i < query.length; i++) {
+                query[i] += (float) (random.nextGaussian() * 0.01);
+            }
+            queries[q] = query;
+        }
+        return queries;
+    }
+
+    private static double toMB(long bytes) {
+        return bytes / (1024.0 * 1024.0);
+    }
+
+}
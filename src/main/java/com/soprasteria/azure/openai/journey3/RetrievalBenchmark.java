@@ -0,0 +1,326 @@
+package com.soprasteria.azure.openai.journey3;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.soprasteria.azure.openai.journey3.utils.Scenario;
+import com.soprasteria.azure.openai.journey3.utils.Utils;
+import com.soprasteria.azure.openai.journey3.vector.GroundTruth;
+import com.soprasteria.azure.openai.journey3.vector.Metric;
+import com.soprasteria.azure.openai.journey3.vector.Rescorer;
+
+/**
+ * Runs a query set against every scenario index and scores the results against exact ground truth over the dataset:
+ * recall@k, nDCG@k with binary relevance, overlap with the baseline scenario, and query latency percentiles.
+ * <p>
+ * All queries of all scenarios run concurrently, at most {@code maxConcurrency} at a time. Compressed scenarios are
+ * asked for oversampled candidates, and are reported both as returned and after local rescoring; the latency of a
+ * rescored row covers the search and the rescoring together.
+ * <p>
+ * A failed query is counted in {@code failures} and left out of the averages, which are over the answered queries
+ * only; the first error of each scenario is reported with it.
+ */
+public class RetrievalBenchmark {
+
+    private static final String QUERIES_RESOURCE = "/queries.txt";
+    private static final String BASELINE = "baseline";
+
+    /**
+     * Document keys of the best {@code top} results of a vector query against an index, best first.
+     */
+    @FunctionalInterface
+    public interface Searcher {
+        List<String> search(String indexName, float[] query, int top) throws Exception;
+    }
+
+    public record ScenarioResult(
+        String scenario,
+        int queries,
+        int failures,
+        double recall,
+        double ndcg,
+        double baselineOverlap,
+        double p50Millis,
+        double p95Millis,
+        double p99Millis,
+        String firstError
+    ) {
+    }
+
+    public record Report(String timestamp, int k, int queryCount, double rescoreOversampling,
+                         List<ScenarioResult> scenarios) {
+    }
+
+    private record QueryResult(List<String> keys, double millis, String error) {
+
+        static QueryResult failed(Exception e) {
+            return new QueryResult(List.of(), 0.0, e.getClass().getSimpleName() + ": " + e.getMessage());
+        }
+
+        boolean succeeded() {
+            return error == null;
+        }
+    }
+
+    /**
+     * One query against one scenario: as returned by the index and, for a compressed scenario, after rescoring.
+     */
+    private record Answer(QueryResult returned, QueryResult rescored) {
+    }
+
+    private final EmbeddingDataset dataset;
+    private final Searcher searcher;
+    private final int k;
+    private final double rescoreOversampling;
+    private final int maxConcurrency;
+
+    public RetrievalBenchmark(EmbeddingDataset dataset, Searcher searcher, int k, double rescoreOversampling,
+                              int maxConcurrency) {
+        this.dataset = dataset;
+        this.searcher = searcher;
+        this.k = k;
+        this.rescoreOversampling = rescoreOversampling;
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * The bundled query set, {@code queries.txt} on the classpath.
+     */
+    public static List<String> loadQueries() {
+        try (final var in = RetrievalBenchmark.class.getResourceAsStream(QUERIES_RESOURCE)) {
+            if (in == null) {
+                throw new IllegalStateException("Missing query set " + QUERIES_RESOURCE);
+            }
+            return readQueries(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * A query set file: one query per line; blank lines and lines starting with {@code #} are skipped, as are
+     * repeated queries.
+     */
+    public static List<String> loadQueries(Path file) throws IOException {
+        try (final var in = Files.newInputStream(file)) {
+            return readQueries(in);
+        }
+    }
+
+    private static List<String> readQueries(InputStream in) throws IOException {
+        final var queries = new ArrayList<String>();
+        final var seen = new HashSet<String>();
+        try (final var reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final var query = line.strip();
+                if (!query.isEmpty() && !query.startsWith("#") && seen.add(query)) {
+                    queries.add(query);
+                }
+            }
+        }
+        return queries;
+    }
+
+    /**
+     * Run every query vector against every scenario index. Result rows are in scenario order, each compressed
+     * scenario followed by its rescored row.
+     */
+    public Report run(List<Scenario> scenarios, Function<Scenario, String> indexName, float[][] queries)
+        throws IOException {
+        final var truth = dataset.groundTruth(Metric.COSINE).neighbours(queries, k);
+        final var rescorer = dataset.rescorer(Metric.COSINE);
+        final var permits = new Semaphore(maxConcurrency, true);
+
+        final var futures = new LinkedHashMap<Scenario, List<CompletableFuture<Answer>>>();
+        try (final var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (final var scenario : scenarios) {
+                final var index = indexName.apply(scenario);
+                final var rescore = scenario.isCompressed();
+                final var top = rescore ? Rescorer.candidates(k, rescoreOversampling) : k;
+                final var perQuery = new ArrayList<CompletableFuture<Answer>>(queries.length);
+                for (final var query : queries) {
+                    perQuery.add(CompletableFuture.supplyAsync(
+                        () -> search(permits, index, query, top, rescore ? rescorer : null), executor));
+                }
+                futures.put(scenario, perQuery);
+            }
+
+            final var answers = new LinkedHashMap<String, List<Answer>>();
+            futures.forEach((scenario, perQuery) ->
+                answers.put(scenario.name(), perQuery.stream().map(CompletableFuture::join).toList()));
+            final var baseline = answers.containsKey(BASELINE)
+                ? answers.get(BASELINE).stream().map(Answer::returned).toList()
+                : null;
+
+            final var results = new ArrayList<ScenarioResult>();
+            for (final var scenario : scenarios) {
+                final var perQuery = answers.get(scenario.name());
+                results.add(score(scenario.name(), perQuery.stream().map(Answer::returned).toList(), truth, baseline));
+                if (scenario.isCompressed()) {
+                    results.add(score(scenario.name() + "+rescore", perQuery.stream().map(Answer::rescored).toList(),
+                        truth, baseline));
+                }
+            }
+            return new Report(Instant.now().toString(), k, queries.length, rescoreOversampling, results);
+        }
+    }
+
+    /**
+     * Run one query, and rescore its candidates when {@code rescorer} is given. The clock starts once the query holds
+     * a permit, so the rescored latency is the search latency plus the rescoring.
+     */
+    private Answer search(Semaphore permits, String indexName, float[] query, int top, Rescorer rescorer) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            final var failed = QueryResult.failed(e);
+            return new Answer(failed, failed);
+        }
+        final var start = System.nanoTime();
+        final QueryResult returned;
+        try {
+            returned = new QueryResult(searcher.search(indexName, query, top), millisSince(start), null);
+        } catch (Exception e) {
+            final var failed = QueryResult.failed(e);
+            return new Answer(failed, failed);
+        } finally {
+            permits.release();
+        }
+        if (rescorer == null) {
+            return new Answer(returned, null);
+        }
+        try {
+            final var keys = dataset.rescore(rescorer, query, returned.keys(), k);
+            return new Answer(returned, new QueryResult(keys, millisSince(start), null));
+        } catch (RuntimeException e) {
+            return new Answer(returned, QueryResult.failed(e));
+        }
+    }
+
+    private static double millisSince(long start) {
+        return (System.nanoTime() - start) / 1_000_000.0;
+    }
+
+    private ScenarioResult score(String name, List<QueryResult> perQuery, int[][] truth, List<QueryResult> baseline) {
+        var recall = 0.0;
+        var ndcg = 0.0;
+        var overlap = 0.0;
+        var answered = 0;
+        var compared = 0;
+        String firstError = null;
+        final var latencies = new ArrayList<Double>();
+        for (int q = 0; q < perQuery.size(); q++) {
+            final var result = perQuery.get(q);
+            if (!result.succeeded()) {
+                firstError = firstError == null ? result.error() : firstError;
+                continue;
+            }
+            answered++;
+            final var ordinals = topOrdinals(result.keys());
+            recall += GroundTruth.recall(ordinals, truth[q]);
+            ndcg += ndcg(ordinals, truth[q]);
+            if (baseline != null && baseline.get(q).succeeded()) {
+                overlap += overlap(ordinals, topOrdinals(baseline.get(q).keys()));
+                compared++;
+            }
+            latencies.add(result.millis());
+        }
+        final var sorted = latencies.stream().mapToDouble(Double::doubleValue).sorted().toArray();
+        final var n = Math.max(1, answered);
+        return new ScenarioResult(name, perQuery.size(), perQuery.size() - answered, recall / n, ndcg / n,
+            baseline == null || compared == 0 ? Double.NaN : overlap / compared,
+            Utils.percentile(sorted, 50), Utils.percentile(sorted, 95), Utils.percentile(sorted, 99), firstError);
+    }
+
+    private int[] topOrdinals(List<String> keys) {
+        return keys.stream().limit(k).mapToInt(dataset::ordinal).toArray();
+    }
+
+    /**
+     * nDCG@k where a result is relevant when it is one of the exact top-k.
+     */
+    static double ndcg(int[] result, int[] truth) {
+        final var relevant = new HashSet<Integer>();
+        for (int ordinal : truth) {
+            relevant.add(ordinal);
+        }
+        var dcg = 0.0;
+        for (int i = 0; i < result.length; i++) {
+            if (relevant.contains(result[i])) {
+                dcg += 1.0 / (Math.log(i + 2) / Math.log(2));
+            }
+        }
+        var ideal = 0.0;
+        for (int i = 0; i < truth.length; i++) {
+            ideal += 1.0 / (Math.log(i + 2) / Math.log(2));
+        }
+        return ideal == 0.0 ? 1.0 : dcg / ideal;
+    }
+
+    /**
+     * Fraction of the baseline's results also returned by the scenario, ignoring order.
+     */
+    static double overlap(int[] result, int[] baseline) {
+        if (baseline.length == 0) {
+            return 1.0;
+        }
+        final var sorted = result.clone();
+        Arrays.sort(sorted);
+        var shared = 0;
+        for (int ordinal : baseline) {
+            if (Arrays.binarySearch(sorted, ordinal) >= 0) {
+                shared++;
+            }
+        }
+        return (double) shared / baseline.length;
+    }
+
+    public static void writeJson(Report report, Path file) throws IOException {
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(file.toFile(), report);
+    }
+
+    public static void printTable(Report report) {
+        final var format = "| %-32s | %9s | %9s | %9s | %9s | %9s | %9s | %8s |%n";
+        System.out.format(format, "Scenario", "Recall@" + report.k(), "nDCG@" + report.k(), "Overlap",
+            "p50 (ms)", "p95 (ms)", "p99 (ms)", "Failures");
+        System.out.println("-".repeat(125));
+        for (final var result : report.scenarios()) {
+            System.out.format(format,
+                result.scenario(),
+                String.format("%.4f", result.recall()),
+                String.format("%.4f", result.ndcg()),
+                Double.isNaN(result.baselineOverlap()) ? "-" : String.format("%.4f", result.baselineOverlap()),
+                String.format("%.2f", result.p50Millis()),
+                String.format("%.2f", result.p95Millis()),
+                String.format("%.2f", result.p99Millis()),
+                result.failures() + "/" + result.queries());
+        }
+        for (final var result : report.scenarios()) {
+            if (result.failures() > 0) {
+                System.out.printf("%s: %d of %d queries failed, averages are over the rest; first error: %s%n",
+                    result.scenario(), result.failures(), result.queries(), result.firstError());
+            }
+        }
+    }
+
+}
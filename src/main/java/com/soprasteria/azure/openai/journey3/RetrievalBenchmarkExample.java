@@ -0,0 +1,113 @@
+package com.soprasteria.azure.openai.journey3;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+
+import com.azure.ai.openai.OpenAIClientBuilder;
+import com.azure.core.credential.AzureKeyCredential;
+import com.azure.core.util.Context;
+import com.azure.search.documents.SearchClient;
+import com.azure.search.documents.SearchClientBuilder;
+import com.azure.search.documents.SearchDocument;
+import com.azure.search.documents.models.SearchOptions;
+import com.azure.search.documents.models.VectorSearchOptions;
+import com.azure.search.documents.models.VectorizedQuery;
+import com.soprasteria.azure.openai.embedding.EmbeddingBatcher;
+import com.soprasteria.azure.openai.embedding.EmbeddingCache;
+import com.soprasteria.azure.openai.journey3.utils.Scenarios;
+import com.soprasteria.azure.openai.journey3.utils.Utils;
+
+/**
+ * Benchmark every scenario index with a query set instead of the single query of {@link SearchQualityExample}, and
+ * write the scores to {@code retrieval-report.json}.
+ * <p>
+ * Usage: {@code RetrievalBenchmarkExample [query file]}; without a file the bundled {@code queries.txt} is used.
+ * Query texts are embedded through the embedding cache, so repeated runs only pay for new queries.
+ */
+public class RetrievalBenchmarkExample {
+
+    private static final String openaiEndpoint = "https://aoai-fastai-rag.openai.azure.com/";
+    private static final String openaiApiKey = "<api-key>";
+    private static final String embeddingDeployment = "text-embedding-3-large";
+    private static final int embeddingDimensions = 3072;
+
+    private static final String searchEndpoint = "https://aisearch-fastai-rag.search.windows.net";
+    private static final String searchIndexPrefix = "compression-test";
+    private static final String searchApiKey = "<api-key>";
+    private static final String parquetFile = "dbpedia_100k.parquet";
+    private static final String REPORT_FILE = "retrieval-report.json";
+
+    private static final int K = 10;
+    private static final double RESCORE_OVERSAMPLING = 10.0;
+    private static final int MAX_CONCURRENCY = 16;
+
+    public static void main(String[] args) throws Exception {
+        final var queryTexts = args.length > 0
+            ? RetrievalBenchmark.loadQueries(Path.of(args[0]))
+            : RetrievalBenchmark.loadQueries();
+        final var scenarios = Scenarios.defineTestScenarios();
+        System.out.printf("Benchmarking %d queries against %d scenarios%n", queryTexts.size(), scenarios.size());
+
+        final var queries = embed(queryTexts);
+        final Map<String, SearchClient> clients = new ConcurrentHashMap<>();
+        final RetrievalBenchmark.Searcher searcher = (indexName, query, top) -> {
+            final var client = clients.computeIfAbsent(indexName, name ->
+                Utils.keyedEndpoint(new SearchClientBuilder(), searchEndpoint, searchApiKey)
+                    .indexName(name)
+                    .buildClient());
+            return search(client, query, top);
+        };
+
+        try (final var dataset = EmbeddingDataset.open(parquetFile)) {
+            final var report = new RetrievalBenchmark(dataset, searcher, K, RESCORE_OVERSAMPLING, MAX_CONCURRENCY)
+                .run(scenarios, scenario -> searchIndexPrefix + "-" + scenario.name(), queries);
+            RetrievalBenchmark.printTable(report);
+            RetrievalBenchmark.writeJson(report, Path.of(REPORT_FILE));
+            System.out.println("\nReport written to " + REPORT_FILE);
+        }
+    }
+
+    private static float[][] embed(List<String> texts) throws Exception {
+        final var client = new OpenAIClientBuilder()
+            .endpoint(openaiEndpoint)
+            .credential(new AzureKeyCredential(openaiApiKey))
+            .buildClient();
+        try (final var cache = EmbeddingCache.withDefaults();
+             final var batcher = EmbeddingBatcher.forDeployment(client, embeddingDeployment, embeddingDimensions);
+             final var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            final var futures = texts.stream()
+                .map(text -> CompletableFuture.supplyAsync(() -> cache.get(embeddingDeployment, embeddingDimensions,
+                    text, missing -> batcher.submit(missing).join()), executor))
+                .toList();
+            final var vectors = futures.stream().map(CompletableFuture::join).toArray(float[][]::new);
+            System.out.println("Embedding cache: " + cache.stats());
+            System.out.println("Embedding requests: " + batcher.stats());
+            return vectors;
+        }
+    }
+
+    private static List<String> search(SearchClient client, float[] query, int top) {
+        final var embedding = new ArrayList<Float>(query.length);
+        for (float value : query) {
+            embedding.add(value);
+        }
+        final var searchOptions = new SearchOptions()
+            .setTop(top)
+            .setSelect("id")
+            .setVectorSearchOptions(new VectorSearchOptions()
+                .setQueries(List.of(new VectorizedQuery(embedding)
+                    .setFields("embedding")
+                    .setKNearestNeighborsCount(top))));
+        final var keys = new ArrayList<String>();
+        for (final var result : client.search(null, searchOptions, Context.NONE)) {
+            keys.add(String.valueOf(result.getDocument(SearchDocument.class).get("id")));
+        }
+        return keys;
+    }
+
+}
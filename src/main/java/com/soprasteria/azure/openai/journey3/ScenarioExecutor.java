@@ -0,0 +1,206 @@
+package com.soprasteria.azure.openai.journey3;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+import com.soprasteria.azure.openai.journey3.utils.Scenario;
+
+/**
+ * Runs the stages of every scenario as a dependency graph: within a scenario a stage starts once the stages it
+ * depends on have succeeded, and stages of different scenarios run concurrently. At most {@code maxConcurrency}
+ * throttled stages run at any time across all scenarios, so the search service is not flooded with index builds and
+ * uploads, while scenarios waiting for their statistics do not hold a place.
+ * <p>
+ * A failed stage does not stop other scenarios; the stages that depend on it are reported as skipped.
+ * <p>
+ * A {@link StageMonitor} runs alongside the task of a stage, e.g. to sample index statistics while documents are
+ * uploaded: it is started right before the task and closed right after it, whether the task succeeds or not.
+ */
+public class ScenarioExecutor {
+
+    /**
+     * Stages of a scenario, declared in dependency order. Stages that only poll the service are not throttled.
+     */
+    public enum Stage {
+        PROVISION(true),
+        INGEST(true, PROVISION),
+        WAIT_FOR_STATS(false, INGEST),
+        EVALUATE(true, WAIT_FOR_STATS);
+
+        private final boolean throttled;
+        private final List<Stage> dependencies;
+
+        Stage(boolean throttled, Stage... dependencies) {
+            this.throttled = throttled;
+            this.dependencies = List.of(dependencies);
+        }
+
+        public List<Stage> dependencies() {
+            return dependencies;
+        }
+
+        /**
+         * Whether the stage counts against {@code maxConcurrency}.
+         */
+        public boolean throttled() {
+            return throttled;
+        }
+    }
+
+    @FunctionalInterface
+    public interface StageTask {
+        void run(Scenario scenario) throws Exception;
+    }
+
+    /**
+     * Something that runs while the task of a stage runs. The returned handle is closed when the task ends.
+     */
+    @FunctionalInterface
+    public interface StageMonitor {
+        AutoCloseable start(Scenario scenario) throws Exception;
+    }
+
+    public enum Status {
+        SUCCEEDED, FAILED, SKIPPED
+    }
+
+    public record StageResult(String scenario, Stage stage, Status status, Duration duration, String error) {
+    }
+
+    private final int maxConcurrency;
+    private final Map<Stage, StageTask> tasks = new EnumMap<>(Stage.class);
+    private final Map<Stage, List<StageMonitor>> monitors = new EnumMap<>(Stage.class);
+
+    public ScenarioExecutor(int maxConcurrency) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("maxConcurrency must be at least 1");
+        }
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * Register the task of a stage. Stages without a task succeed immediately.
+     */
+    public ScenarioExecutor stage(Stage stage, StageTask task) {
+        tasks.put(stage, task);
+        return this;
+    }
+
+    /**
+     * Register a monitor that runs while the task of {@code stage} runs. A monitor that fails to start or to close
+     * fails the stage.
+     */
+    public ScenarioExecutor monitor(Stage stage, StageMonitor monitor) {
+        monitors.computeIfAbsent(stage, ignored -> new ArrayList<>()).add(monitor);
+        return this;
+    }
+
+    /**
+     * Run every stage of every scenario and wait for all of them. Results are in scenario order, then stage order.
+     */
+    public List<StageResult> run(List<Scenario> scenarios) {
+        final var permits = new Semaphore(maxConcurrency, true);
+        final var futures = new ArrayList<CompletableFuture<StageResult>>();
+        try (final var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (final var scenario : scenarios) {
+                final var stages = new EnumMap<Stage, CompletableFuture<StageResult>>(Stage.class);
+                for (final var stage : Stage.values()) {
+                    final var dependencies = stage.dependencies().stream().map(stages::get).toList();
+                    final var future = CompletableFuture.allOf(dependencies.toArray(CompletableFuture[]::new))
+                        .thenApplyAsync(ignored -> {
+                            final var blocked = dependencies.stream()
+                                .map(CompletableFuture::join)
+                                .anyMatch(result -> result.status() != Status.SUCCEEDED);
+                            return blocked
+                                ? new StageResult(scenario.name(), stage, Status.SKIPPED, Duration.ZERO, null)
+                                : runStage(permits, scenario, stage);
+                        }, executor);
+                    stages.put(stage, future);
+                    futures.add(future);
+                }
+            }
+            return futures.stream().map(CompletableFuture::join).toList();
+        }
+    }
+
+    private StageResult runStage(Semaphore permits, Scenario scenario, Stage stage) {
+        final var task = tasks.get(stage);
+        if (task == null) {
+            return new StageResult(scenario.name(), stage, Status.SUCCEEDED, Duration.ZERO, null);
+        }
+        if (stage.throttled()) {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return new StageResult(scenario.name(), stage, Status.FAILED, Duration.ZERO, "interrupted");
+            }
+        }
+        final var start = System.nanoTime();
+        try {
+            System.out.printf("[%s] %s started%n", scenario.name(), stage);
+            runMonitored(scenario, stage, task);
+            final var duration = Duration.ofNanos(System.nanoTime() - start);
+            System.out.printf("[%s] %s finished in %ds%n", scenario.name(), stage, duration.toSeconds());
+            return new StageResult(scenario.name(), stage, Status.SUCCEEDED, duration, null);
+        } catch (Exception e) {
+            System.out.printf("[%s] %s failed: %s%n", scenario.name(), stage, e.getMessage());
+            return new StageResult(scenario.name(), stage, Status.FAILED, Duration.ofNanos(System.nanoTime() - start),
+                e.getClass().getSimpleName() + ": " + e.getMessage());
+        } finally {
+            if (stage.throttled()) {
+                permits.release();
+            }
+        }
+    }
+
+    /**
+     * Start the monitors of the stage, run its task and close the monitors in reverse order.
+     */
+    private void runMonitored(Scenario scenario, Stage stage, StageTask task) throws Exception {
+        final var stageMonitors = monitors.getOrDefault(stage, List.of());
+        final var started = new ArrayList<AutoCloseable>(stageMonitors.size());
+        Exception failure = null;
+        try {
+            for (final var monitor : stageMonitors) {
+                started.add(monitor.start(scenario));
+            }
+            task.run(scenario);
+        } catch (Exception e) {
+            failure = e;
+        }
+        for (final var handle : started.reversed()) {
+            if (handle == null) {
+                continue;
+            }
+            try {
+                handle.close();
+            } catch (Exception e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    public static void printSummary(List<StageResult> results) {
+        System.out.println("\n--- Scenario stages ---");
+        System.out.printf("%-32s %-15s %-10s %10s  %s%n", "scenario", "stage", "status", "seconds", "error");
+        for (final var result : results) {
+            System.out.printf("%-32s %-15s %-10s %10.1f  %s%n", result.scenario(), result.stage(), result.status(),
+                result.duration().toMillis() / 1000.0, result.error() == null ? "" : result.error());
+        }
+    }
+
+}
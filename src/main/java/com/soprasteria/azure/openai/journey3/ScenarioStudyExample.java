@@ -0,0 +1,190 @@
+package com.soprasteria.azure.openai.journey3;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import com.azure.core.util.Context;
+import com.azure.search.documents.SearchClientBuilder;
+import com.azure.search.documents.SearchDocument;
+import com.azure.search.documents.models.SearchOptions;
+import com.azure.search.documents.models.VectorSearchOptions;
+import com.azure.search.documents.models.VectorizedQuery;
+import com.soprasteria.azure.openai.journey3.ScenarioExecutor.Stage;
+import com.soprasteria.azure.openai.journey3.utils.Scenario;
+import com.soprasteria.azure.openai.journey3.utils.Scenarios;
+import com.soprasteria.azure.openai.journey3.utils.Utils;
+import com.soprasteria.azure.openai.journey3.vector.GroundTruth;
+import com.soprasteria.azure.openai.journey3.vector.Metric;
+import com.soprasteria.azure.openai.journey3.vector.Rescorer;
+
+/**
+ * The full compression study in one run: provision, ingest, wait for index statistics and evaluate every scenario,
+ * with independent scenarios running concurrently through a {@link ScenarioExecutor}.
+ * <p>
+ * Evaluation samples queries from the dataset itself, so no embedding service is needed, and reports recall@10
+ * against exact search, with local rescoring for compressed scenarios. Pass a YAML file to run other scenarios than
+ * the bundled {@code scenarios.yml}; local-only scenarios are left out.
+ * <p>
+ * The statistics of each index are sampled from the start of its upload until they converge, and the series is
+ * written to {@code ingestion-series.csv}.
+ */
+public class ScenarioStudyExample {
+
+    private static final String searchEndpoint = "https://aisearch-fastai-rag.search.windows.net";
+    private static final String searchApiKey = "<api-key>";
+    private static final String searchIndexPrefix = "compression-test";
+    private static final String parquetFile = "dbpedia_100k.parquet";
+
+    private static final int MAX_CONCURRENCY = 4;
+    private static final int BATCH_SIZE = 100;
+    private static final Duration STATS_TIMEOUT = Duration.ofMinutes(30);
+    private static final Duration STATS_INTERVAL = Duration.ofSeconds(5);
+    private static final String SERIES_FILE = "ingestion-series.csv";
+    private static final int QUERY_COUNT = 50;
+    private static final int K = 10;
+    private static final double RESCORE_OVERSAMPLING = 10.0;
+    private static final long SEED = 42;
+
+    public static void main(String[] args) throws Exception {
+        final var scenarios = (args.length > 0 ? Scenarios.load(Path.of(args[0])) : Scenarios.load()).stream()
+            .filter(scenario -> !scenario.localOnly())
+            .toList();
+
+        final var manager = new AzureSearchIndexManager(searchEndpoint, searchApiKey, searchIndexPrefix, 3072);
+        final var documents = AzureParquetExample.prepareDocuments(parquetFile);
+
+        try (final var dataset = EmbeddingDataset.open(parquetFile)) {
+            final var queries = QuantizationReportExample.sampleQueries(dataset.vectors(), QUERY_COUNT, SEED);
+            final var truth = dataset.groundTruth(Metric.COSINE).neighbours(queries, K);
+            final var rescorer = dataset.rescorer(Metric.COSINE);
+            final var recalls = new ConcurrentSkipListMap<String, double[]>();
+            final var poller = new IndexStatisticsPoller(manager::getIndexStatistics, STATS_INTERVAL,
+                Duration.ofMinutes(1), 3, STATS_TIMEOUT);
+            final var series = new ConcurrentSkipListMap<String, List<IndexStatisticsPoller.Sample>>();
+
+            final var results = new ScenarioExecutor(MAX_CONCURRENCY)
+                .stage(Stage.PROVISION, scenario -> provision(manager, scenario))
+                .monitor(Stage.INGEST, scenario -> record(poller, manager.indexName(scenario), series))
+                .stage(Stage.INGEST, scenario -> ingest(documents, manager.indexName(scenario)))
+                .stage(Stage.WAIT_FOR_STATS, scenario ->
+                    awaitDocumentCount(poller, manager.indexName(scenario), documents.size(), series))
+                .stage(Stage.EVALUATE, scenario -> recalls.put(scenario.name(),
+                    evaluate(manager.indexName(scenario), scenario, dataset, rescorer, queries, truth)))
+                .run(scenarios);
+
+            ScenarioExecutor.printSummary(results);
+            printRecall(recalls);
+            IndexSizeReporterExample.writeSeries(series, Path.of(SERIES_FILE));
+        }
+    }
+
+    private static void provision(AzureSearchIndexManager manager, Scenario scenario) {
+        final var plan = manager.planIndexes(List.of(scenario));
+        for (final var entry : plan) {
+            if (entry.action() == AzureSearchIndexManager.PlannedAction.FAILED) {
+                throw new IllegalStateException(String.join("; ", entry.changes()));
+            }
+        }
+        final var pending = plan.stream()
+            .filter(entry -> entry.action() != AzureSearchIndexManager.PlannedAction.UNCHANGED)
+            .count();
+        if (manager.applyPlan(plan).size() < pending) {
+            throw new IllegalStateException("Index " + manager.indexName(scenario) + " could not be created");
+        }
+    }
+
+    /**
+     * Upload every document, failing the stage if any did not make it, so a partial index is not evaluated.
+     */
+    private static void ingest(List<Map<String, Object>> documents, String indexName) throws Exception {
+        final var failed = AzureParquetExample.uploadToSearch(documents, searchEndpoint, searchApiKey, indexName,
+            BATCH_SIZE);
+        if (failed > 0) {
+            throw new IllegalStateException(failed + " of " + documents.size() + " documents failed to upload to "
+                + indexName);
+        }
+    }
+
+    /**
+     * Sample the statistics of an index while it is being uploaded to; the samples are added to its series when the
+     * upload ends.
+     */
+    private static AutoCloseable record(IndexStatisticsPoller poller, String indexName,
+                                        Map<String, List<IndexStatisticsPoller.Sample>> series) {
+        final var recording = poller.record(indexName);
+        return () -> {
+            recording.close();
+            append(series, indexName, recording.series());
+        };
+    }
+
+    private static void awaitDocumentCount(IndexStatisticsPoller poller, String indexName, long expected,
+                                           Map<String, List<IndexStatisticsPoller.Sample>> series) {
+        final var result = poller.await(indexName, expected);
+        append(series, indexName, result.series());
+        if (!result.converged()) {
+            throw new IllegalStateException("Statistics of " + indexName + " did not converge on " + expected
+                + " documents within " + STATS_TIMEOUT + (result.error() != null ? ": " + result.error() : ""));
+        }
+    }
+
+    private static void append(Map<String, List<IndexStatisticsPoller.Sample>> series, String indexName,
+                               List<IndexStatisticsPoller.Sample> samples) {
+        series.merge(indexName, samples, (before, after) -> {
+            final var merged = new ArrayList<>(before);
+            merged.addAll(after);
+            return merged;
+        });
+    }
+
+    /**
+     * Mean recall@k as returned by the index and, for compressed scenarios, after local rescoring.
+     */
+    private static double[] evaluate(String indexName, Scenario scenario, EmbeddingDataset dataset,
+                                     Rescorer rescorer, float[][] queries, int[][] truth) {
+        final var searchClient = Utils.keyedEndpoint(new SearchClientBuilder(), searchEndpoint, searchApiKey)
+            .indexName(indexName)
+            .buildClient();
+        final var top = scenario.isCompressed() ? Rescorer.candidates(K, RESCORE_OVERSAMPLING) : K;
+
+        var recall = 0.0;
+        var rescoredRecall = 0.0;
+        for (int q = 0; q < queries.length; q++) {
+            final var embedding = new ArrayList<Float>(queries[q].length);
+            for (float value : queries[q]) {
+                embedding.add(value);
+            }
+            final var searchOptions = new SearchOptions()
+                .setTop(top)
+                .setSelect("id")
+                .setVectorSearchOptions(new VectorSearchOptions()
+                    .setQueries(List.of(new VectorizedQuery(embedding)
+                        .setFields("embedding")
+                        .setKNearestNeighborsCount(top))));
+
+            final var keys = new ArrayList<String>();
+            for (final var result : searchClient.search(null, searchOptions, Context.NONE)) {
+                keys.add(String.valueOf(result.getDocument(SearchDocument.class).get("id")));
+            }
+
+            final var returned = keys.subList(0, Math.min(K, keys.size())).stream().mapToInt(dataset::ordinal).toArray();
+            final var rescored = dataset.rescore(rescorer, queries[q], keys, K).stream()
+                .mapToInt(dataset::ordinal)
+                .toArray();
+            recall += GroundTruth.recall(returned, truth[q]);
+            rescoredRecall += GroundTruth.recall(rescored, truth[q]);
+        }
+        return new double[]{recall / queries.length, rescoredRecall / queries.length};
+    }
+
+    private static void printRecall(Map<String, double[]> recalls) {
+        System.out.println("\n--- Recall@" + K + " against exact search ---");
+        System.out.printf("%-32s %8s %9s%n", "scenario", "recall", "rescored");
+        recalls.forEach((name, recall) -> System.out.printf("%-32s %8.3f %9.3f%n", name, recall[0], recall[1]));
+    }
+
+}
@@ -1,6 +1,8 @@
 package com.soprasteria.azure.openai.journey3;
 
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 import com.azure.core.credential.AzureKeyCredential;
 import com.azure.search.documents.indexes.SearchIndexClientBuilder;
@@ -64,7 +66,33 @@ public class SearchIndexExample {
             .setFields(fields)
             .setVectorSearch(vectorSearch);
 
+        if (List.of(args).contains("--local")) {
+            runLocal(index);
+            return;
+        }
+
         searchIndexClient.createIndex(index);
     }
 
+    /**
+     * Create the index in a {@link LocalSearchBackend}, upload a handful of three-dimensional documents and show
+     * the nearest ones to a query vector, without a search service.
+     */
+    private static void runLocal(SearchIndex index) {
+        final var backend = new LocalSearchBackend();
+        backend.createOrUpdateIndex(index, 1000);
+        backend.upload(index.getName(), List.of(
+            Map.of("id", "north", "embedding", List.of(0.0f, 1.0f, 0.0f)),
+            Map.of("id", "north-east", "embedding", List.of(0.7f, 0.7f, 0.0f)),
+            Map.of("id", "east", "embedding", List.of(1.0f, 0.0f, 0.0f)),
+            Map.of("id", "south", "embedding", List.of(0.0f, -1.0f, 0.0f)),
+            Map.of("id", "up", "embedding", List.of(0.0f, 0.0f, 1.0f))));
+
+        final var query = new float[]{0.2f, 0.9f, 0.1f};
+        System.out.println("Nearest to " + Arrays.toString(query) + " in local index " + index.getName() + ":");
+        for (final var document : backend.search(index.getName(), query, 3, "id")) {
+            System.out.printf("  %-12s %.3f%n", document.get("id"), document.get("@search.score"));
+        }
+    }
+
 }
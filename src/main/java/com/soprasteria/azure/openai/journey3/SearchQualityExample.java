@@ -4,7 +4,6 @@ import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
 
 import com.azure.ai.openai.OpenAIClient;
@@ -16,78 +15,203 @@ import com.azure.search.documents.SearchClientBuilder;
 import com.azure.search.documents.SearchDocument;
 import com.azure.search.documents.models.SearchOptions;
 import com.azure.search.documents.models.VectorSearchOptions;
-import com.azure.search.documents.models.VectorizableTextQuery;
+import com.azure.search.documents.models.VectorizedQuery;
+import com.soprasteria.azure.openai.embedding.EmbeddingCache;
+import com.soprasteria.azure.openai.journey3.utils.Scenario;
 import com.soprasteria.azure.openai.journey3.utils.Scenarios;
+import com.soprasteria.azure.openai.journey3.utils.Utils;
+import com.soprasteria.azure.openai.journey3.vector.Metric;
+import com.soprasteria.azure.openai.journey3.vector.Rescorer;
+import com.soprasteria.azure.openai.journey3.vector.VectorOps;
 
 public class SearchQualityExample {
 
     private static final String openaiEndpoint = "https://aoai-fastai-rag.openai.azure.com/";
     private static final String openaiApiKey = "<api-key>";
     private static final String embeddingDeployment = "text-embedding-3-large";
+    private static final int embeddingDimensions = 3072;
 
     private static final String searchEndpoint = "https://aisearch-fastai-rag.search.windows.net";
     private static final String searchIndexPrefix = "compression-test";
     private static final String searchApiKey = "<api-key>";
+    private static final String parquetFile = "dbpedia_100k.parquet";
+    private static final double RESCORE_OVERSAMPLING = 10.0;
 
-
-    public static void main(String[] args) throws ExecutionException, InterruptedException {
-        // Assume scenarios is a List<Map<String, Object>> (or a POJO list)
+    public static void main(String[] args) throws Exception {
         final var scenarios = Scenarios.defineTestScenarios();
 
+        if (List.of(args).contains("--local")) {
+            runLocal(scenarios);
+            return;
+        }
+
         final var openAIClient = new OpenAIClientBuilder()
             .endpoint(openaiEndpoint)
             .credential(new AzureKeyCredential(openaiApiKey))
             .buildClient();
 
         final var query = "first avian dinosaur in the fossil record";
-        final var searchVector = getEmbedding(openAIClient, query);
+        final float[] queryVector;
+        try (final var cache = EmbeddingCache.withDefaults()) {
+            queryVector = cache.get(embeddingDeployment, embeddingDimensions, query,
+                text -> getEmbedding(openAIClient, text));
+            System.out.println("Embedding cache: " + cache.stats());
+        }
+        final var searchVector = toList(queryVector);
+
+        try (final var dataset = EmbeddingDataset.open(parquetFile)) {
+            final var exact = exactTop(dataset, queryVector, 5);
+            final var rescorer = dataset.rescorer(Metric.COSINE);
+
+            final var resultMap = new LinkedHashMap<String, List<String>>();
+            final var recallMap = new LinkedHashMap<String, Double>();
+            resultMap.put("exact", exact.titles());
+
+            for (final var scenario : scenarios) {
+                final var name = scenario.name();
+                final var indexName = searchIndexPrefix + "-" + name;
+
+                // The SDK cannot enable rescoring, so compressed indexes are asked for more candidates,
+                // which are rescored locally against the full-precision dataset vectors.
+                final var compressed = scenario.isCompressed();
+                final var top = compressed ? Rescorer.candidates(5, RESCORE_OVERSAMPLING) : 5;
+
+                final var searchClient = Utils.keyedEndpoint(new SearchClientBuilder(), searchEndpoint, searchApiKey)
+                    .indexName(indexName)
+                    .buildClient();
+
+                final var vectorSearchOptions = new VectorSearchOptions()
+                    .setQueries(List.of(
+                        new VectorizedQuery(searchVector)
+                            .setFields("embedding")
+                            .setKNearestNeighborsCount(Math.max(50, top))
+                    ));
+
+                final var searchOptions = new SearchOptions()
+                    .setTop(top)
+                    .setSelect("id", "title")
+                    .setVectorSearchOptions(vectorSearchOptions);
+                final var searchResults = searchClient.search(query, searchOptions, Context.NONE);
+
+                final var titles = new ArrayList<String>();
+                final var keys = new ArrayList<String>();
+                for (final var result : searchResults) {
+                    final var document = result.getDocument(SearchDocument.class);
+                    final var titleObj = document.get("title");
+                    if (titleObj instanceof String title) {
+                        titles.add(title);
+                    }
+                    keys.add(String.valueOf(document.get("id")));
+                }
 
-        final var resultMap = new LinkedHashMap<String, List<String>>();
+                resultMap.put(name, titles.subList(0, Math.min(5, titles.size())));
+                recallMap.put(name, exact.recall(keys.subList(0, Math.min(5, keys.size()))));
 
-        for (final var scenario : scenarios) {
-            final var name = scenario.get("name").toString();
-            final var indexName = searchIndexPrefix + "-" + name;
-
-            final var searchClient = new SearchClientBuilder()
-                .endpoint(searchEndpoint)
-                .credential(new AzureKeyCredential(searchApiKey))
-                .indexName(indexName)
-                .buildClient();
-
-            final var vectorSearchOptions = new VectorSearchOptions()
-                .setQueries(List.of(
-                    new VectorizedQuery(searchVector)
-                        .setFields("embedding")
-                        .setKNearestNeighborsCount(50)
-                ));
-
-            final var searchOptions = new SearchOptions()
-                .setTop(5)
-                .setSelect("title")
-                .setVectorSearchOptions(vectorSearchOptions);
-            final var searchResults = searchClient.search(query, searchOptions, Context.NONE);
+                if (compressed) {
+                    final var rescored = dataset.rescore(rescorer, queryVector, keys, 5);
+                    resultMap.put(name + "+rescore", rescored.stream()
+                        .map(key -> dataset.title(dataset.ordinal(key)))
+                        .toList());
+                    recallMap.put(name + "+rescore", exact.recall(rescored));
+                }
+            }
+
+            // Print table-like output
+            printComparisonTable(resultMap, 5);
+            printRecall(recallMap, 5);
+            System.out.printf("%nLocal rescoring of %d candidates: %.1f µs per query (%s)%n",
+                Rescorer.candidates(5, RESCORE_OVERSAMPLING), rescorer.meanMicros(), VectorOps.describe());
+        }
+    }
 
+    /**
+     * Offline variant: index the Parquet dataset into in-process HNSW indexes and query them with the embedding
+     * of the first document, since query text cannot be embedded without the OpenAI service.
+     */
+    private static void runLocal(List<Scenario> scenarios) throws Exception {
+        final var documents = AzureParquetExample.prepareDocuments(parquetFile);
+        final var manager = new AzureSearchIndexManager(searchEndpoint, searchApiKey, searchIndexPrefix, 3072);
+        final var backend = AzureParquetExample.uploadToLocalIndexes(documents, scenarios, manager);
+
+        @SuppressWarnings("unchecked") final var queryEmbedding = (List<Float>) documents.getFirst().get("embedding");
+        final var searchVector = toArray(queryEmbedding);
+
+        final ExactResult exact;
+        try (final var dataset = EmbeddingDataset.open(parquetFile)) {
+            exact = exactTop(dataset, searchVector, 5);
+        }
+
+        final var resultMap = new LinkedHashMap<String, List<String>>();
+        final var recallMap = new LinkedHashMap<String, Double>();
+        resultMap.put("exact", exact.titles());
+        for (final var scenario : scenarios) {
+            final var name = scenario.name();
             final var titles = new ArrayList<String>();
-            for (final var result : searchResults) {
-                final var document = result.getDocument(SearchDocument.class);
-                final var titleObj = document.get("title");
-                if (titleObj instanceof String title) {
+            final var keys = new ArrayList<String>();
+            for (final var document : backend.search(searchIndexPrefix + "-" + name, searchVector, 5, "id", "title")) {
+                if (document.get("title") instanceof String title) {
                     titles.add(title);
                 }
+                keys.add(String.valueOf(document.get("id")));
             }
-
             resultMap.put(name, titles);
+            recallMap.put(name, exact.recall(keys));
         }
 
-        // Print table-like output
         printComparisonTable(resultMap, 5);
+        printRecall(recallMap, 5);
+    }
+
+    /**
+     * Exact nearest neighbours of the query over the whole dataset, the reference every scenario is scored against.
+     */
+    private static ExactResult exactTop(EmbeddingDataset dataset, float[] searchVector, int k) throws Exception {
+        final var truth = dataset.groundTruth(Metric.COSINE).neighbours(new float[][]{searchVector}, k)[0];
+        final var keys = new ArrayList<String>();
+        final var titles = new ArrayList<String>();
+        for (int ordinal : truth) {
+            keys.add(dataset.key(ordinal));
+            titles.add(dataset.title(ordinal));
+        }
+        return new ExactResult(keys, titles);
+    }
+
+    private record ExactResult(List<String> keys, List<String> titles) {
+
+        /**
+         * Fraction of the exact top-k found among the returned document keys.
+         */
+        double recall(List<String> returned) {
+            return keys.isEmpty() ? 1.0 : (double) returned.stream().filter(keys::contains).count() / keys.size();
+        }
     }
 
-    private static List<Float> getEmbedding(OpenAIClient client, String input) {
-        final var options = new EmbeddingsOptions(List.of(input));
+    private static float[] toArray(List<Float> embedding) {
+        final var vector = new float[embedding.size()];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = embedding.get(i);
+        }
+        return vector;
+    }
+
+    private static List<Float> toList(float[] vector) {
+        final var embedding = new ArrayList<Float>(vector.length);
+        for (float value : vector) {
+            embedding.add(value);
+        }
+        return embedding;
+    }
+
+    private static float[] getEmbedding(OpenAIClient client, String input) {
+        final var options = new EmbeddingsOptions(List.of(input)).setDimensions(embeddingDimensions);
         final var embeddings = client.getEmbeddings(embeddingDeployment, options);
         final var item = embeddings.getData().get(0);
-        return item.getEmbedding();
+        return toArray(item.getEmbedding());
+    }
+
+    private static void printRecall(Map<String, Double> scenarioToRecall, int k) {
+        System.out.println("\n--- Recall@" + k + " against exact search ---");
+        scenarioToRecall.forEach((name, recall) -> System.out.printf("%-32s %.2f%n", name, recall));
     }
 
     private static void printComparisonTable(Map<String, List<String>> scenarioToTitles, int rowCount) {
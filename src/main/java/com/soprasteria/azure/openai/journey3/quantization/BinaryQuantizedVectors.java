@@ -0,0 +1,52 @@
+package com.soprasteria.azure.openai.journey3.quantization;
+
+import com.soprasteria.azure.openai.journey3.vector.VectorOps;
+
+/**
+ * A corpus encoded by a {@link BinaryQuantizer}, ranked by Hamming distance to the binarized query whatever the
+ * metric of the field.
+ */
+public class BinaryQuantizedVectors extends QuantizedVectors {
+
+    private final BinaryQuantizer quantizer;
+    private final int size;
+    private final long[] bits;
+
+    BinaryQuantizedVectors(BinaryQuantizer quantizer, int size, long[] bits) {
+        this.quantizer = quantizer;
+        this.size = size;
+        this.bits = bits;
+    }
+
+    public BinaryQuantizer quantizer() {
+        return quantizer;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * One bit per dimension, rounded up to whole bytes as the service stores it.
+     */
+    @Override
+    public int bytesPerVector() {
+        return (quantizer.dimensions() + Byte.SIZE - 1) / Byte.SIZE;
+    }
+
+    public long[] codes(int row) {
+        final var words = quantizer.words();
+        final var codes = new long[words];
+        System.arraycopy(bits, row * words, codes, 0, words);
+        return codes;
+    }
+
+    @Override
+    protected Scorer scorer(float[] query) {
+        final var words = quantizer.words();
+        final var encoded = quantizer.encode(query);
+        return row -> -VectorOps.hamming(encoded, 0, bits, row * words, words);
+    }
+
+}
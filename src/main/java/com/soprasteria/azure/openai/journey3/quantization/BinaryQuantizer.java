@@ -0,0 +1,85 @@
+package com.soprasteria.azure.openai.journey3.quantization;
+
+import com.soprasteria.azure.openai.journey3.vector.VectorStore;
+
+/**
+ * 1-bit quantization, the local counterpart of {@code BinaryQuantizationCompression}: each of the leading
+ * {@link #dimensions()} values becomes its sign bit, packed 64 to a {@code long}, lowest dimension in the lowest bit.
+ * Codes are compared by Hamming distance, as the service does for binary quantized fields.
+ */
+public class BinaryQuantizer {
+
+    private final int dimensions;
+    private final int words;
+
+    public BinaryQuantizer(int dimensions) {
+        this.dimensions = dimensions;
+        this.words = (dimensions + Long.SIZE - 1) / Long.SIZE;
+    }
+
+    public int dimensions() {
+        return dimensions;
+    }
+
+    /**
+     * Longs per encoded vector.
+     */
+    public int words() {
+        return words;
+    }
+
+    public long[] encode(float[] vector) {
+        final var bits = new long[words];
+        encode(vector, 0, bits, 0);
+        return bits;
+    }
+
+    /**
+     * Encode the leading {@link #dimensions()} values of {@code vector} from {@code offset} into
+     * {@link #words()} longs of {@code bits} from {@code bitsOffset}. Positive values set their bit.
+     */
+    public void encode(float[] vector, int offset, long[] bits, int bitsOffset) {
+        for (int word = 0; word < words; word++) {
+            final var from = word * Long.SIZE;
+            final var to = Math.min(from + Long.SIZE, dimensions);
+            long packed = 0L;
+            for (int i = from; i < to; i++) {
+                if (vector[offset + i] > 0f) {
+                    packed |= 1L << (i - from);
+                }
+            }
+            bits[bitsOffset + word] = packed;
+        }
+    }
+
+    /**
+     * Decode to a vector of +1 and -1, which has the same cosine ranking as the codes' Hamming distance.
+     */
+    public float[] decode(long[] bits) {
+        final var vector = new float[dimensions];
+        decode(bits, 0, vector, 0);
+        return vector;
+    }
+
+    public void decode(long[] bits, int bitsOffset, float[] vector, int offset) {
+        for (int i = 0; i < dimensions; i++) {
+            final var set = (bits[bitsOffset + i / Long.SIZE] >>> (i % Long.SIZE) & 1L) != 0;
+            vector[offset + i] = set ? 1f : -1f;
+        }
+    }
+
+    /**
+     * Encode every row of the store, e.g. the {@link com.soprasteria.azure.openai.journey3.vector.MappedVectorStore}
+     * of a Parquet dataset. Rows are read in blocks and encoded in parallel.
+     */
+    public BinaryQuantizedVectors encodeAll(VectorStore store) {
+        if (dimensions > store.dimensions()) {
+            throw new IllegalArgumentException(
+                "Cannot quantize " + dimensions + " dimensions of a " + store.dimensions() + " dimension store");
+        }
+        final var bits = new long[store.size() * words];
+        QuantizedVectors.forEachRow(store, (row, block, offset) -> encode(block, offset, bits, row * words));
+        return new BinaryQuantizedVectors(this, store.size(), bits);
+    }
+
+}
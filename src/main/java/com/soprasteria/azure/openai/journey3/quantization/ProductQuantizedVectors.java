@@ -0,0 +1,65 @@
+package com.soprasteria.azure.openai.journey3.quantization;
+
+import com.soprasteria.azure.openai.journey3.vector.Metric;
+
+/**
+ * A corpus encoded by a {@link ProductQuantizer}: one centroid index per subspace per row, plus the squared norm of
+ * every decoded row for the cosine metric. Rows are scored with the query's asymmetric distance table.
+ */
+public class ProductQuantizedVectors extends QuantizedVectors {
+
+    private static final int CENTROIDS = ProductQuantizer.CENTROIDS;
+
+    private final ProductQuantizer quantizer;
+    private final Metric metric;
+    private final byte[] codes;
+    private final float[] squaredNorms;
+
+    ProductQuantizedVectors(ProductQuantizer quantizer, Metric metric, byte[] codes, float[] squaredNorms) {
+        this.quantizer = quantizer;
+        this.metric = metric;
+        this.codes = codes;
+        this.squaredNorms = squaredNorms;
+    }
+
+    public ProductQuantizer quantizer() {
+        return quantizer;
+    }
+
+    @Override
+    public int size() {
+        return squaredNorms.length;
+    }
+
+    @Override
+    public int bytesPerVector() {
+        return quantizer.subspaces();
+    }
+
+    public float[] decode(int row) {
+        final var vector = new float[quantizer.dimensions()];
+        quantizer.decode(codes, row * quantizer.subspaces(), vector, 0);
+        return vector;
+    }
+
+    @Override
+    protected Scorer scorer(float[] query) {
+        final var euclidean = metric == Metric.EUCLIDEAN;
+        final var table = quantizer.table(query, euclidean);
+        final var subspaces = quantizer.subspaces();
+        return row -> {
+            final var offset = row * subspaces;
+            var sum = 0f;
+            for (int subspace = 0; subspace < subspaces; subspace++) {
+                sum += table[subspace * CENTROIDS + Byte.toUnsignedInt(codes[offset + subspace])];
+            }
+            if (euclidean) {
+                return -sum;
+            } else if (metric == Metric.COSINE) {
+                return squaredNorms[row] > 0f ? sum / (float) Math.sqrt(squaredNorms[row]) : 0f;
+            }
+            return sum;
+        };
+    }
+
+}
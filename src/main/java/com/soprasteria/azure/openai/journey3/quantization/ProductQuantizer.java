@@ -0,0 +1,205 @@
+package com.soprasteria.azure.openai.journey3.quantization;
+
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import com.soprasteria.azure.openai.journey3.vector.Metric;
+import com.soprasteria.azure.openai.journey3.vector.VectorOps;
+import com.soprasteria.azure.openai.journey3.vector.VectorStore;
+
+/**
+ * Product quantization: the leading {@link #dimensions()} values are split into {@link #subspaces()} equal
+ * sub-vectors, and each sub-vector is replaced by the index of its nearest centroid in a 256 entry codebook of
+ * that subspace, so a vector is stored in one byte per subspace.
+ * <p>
+ * The service has no such compression; this is a local codec for estimating what much higher compression ratios
+ * than int8 or binary would cost in recall. Codebooks are trained with k-means on a sample of the corpus, and
+ * codes are searched with asymmetric distances: the query stays at full precision and is compared with every
+ * centroid once, after which scoring a row is {@link #subspaces()} table lookups.
+ */
+public class ProductQuantizer {
+
+    static final int CENTROIDS = 256;
+
+    private final int subspaces;
+    private final int subDimensions;
+    // codebooks[s][c * subDimensions + i] is value i of centroid c of subspace s.
+    private final float[][] codebooks;
+
+    private ProductQuantizer(int subspaces, int subDimensions, float[][] codebooks) {
+        this.subspaces = subspaces;
+        this.subDimensions = subDimensions;
+        this.codebooks = codebooks;
+    }
+
+    /**
+     * Train one codebook per subspace with Lloyd's k-means on up to {@code sampleSize} rows of the store, picked
+     * with a seeded random. The assignment step of every iteration runs in parallel over the sample.
+     *
+     * @param dimensions number of leading dimensions to quantize, divisible by {@code subspaces}
+     * @param subspaces  number of sub-vectors, i.e. bytes per encoded vector
+     */
+    public static ProductQuantizer train(VectorStore store, int dimensions, int subspaces, int sampleSize,
+                                         int iterations, long seed) {
+        if (dimensions > store.dimensions() || dimensions % subspaces != 0) {
+            throw new IllegalArgumentException("Cannot split " + dimensions + " of " + store.dimensions()
+                + " dimensions into " + subspaces + " subspaces");
+        }
+        if (store.size() == 0) {
+            throw new IllegalArgumentException("Cannot train codebooks on an empty store");
+        }
+        final var subDimensions = dimensions / subspaces;
+        final var random = new Random(seed);
+        final var sample = Math.min(sampleSize, store.size());
+        final var rows = new float[sample][];
+        for (int s = 0; s < sample; s++) {
+            rows[s] = store.get(sample == store.size() ? s : random.nextInt(store.size()));
+        }
+
+        final var codebooks = new float[subspaces][];
+        for (int subspace = 0; subspace < subspaces; subspace++) {
+            final var points = new float[sample * subDimensions];
+            for (int s = 0; s < sample; s++) {
+                System.arraycopy(rows[s], subspace * subDimensions, points, s * subDimensions, subDimensions);
+            }
+            codebooks[subspace] = kMeans(points, sample, subDimensions, iterations, random);
+        }
+        return new ProductQuantizer(subspaces, subDimensions, codebooks);
+    }
+
+    public int dimensions() {
+        return subspaces * subDimensions;
+    }
+
+    public int subspaces() {
+        return subspaces;
+    }
+
+    public byte[] encode(float[] vector) {
+        final var codes = new byte[subspaces];
+        encode(vector, 0, codes, 0);
+        return codes;
+    }
+
+    /**
+     * Encode the leading {@link #dimensions()} values of {@code vector} from {@code offset} into
+     * {@link #subspaces()} bytes of {@code codes} from {@code codesOffset}. Codes are unsigned centroid indexes.
+     */
+    public void encode(float[] vector, int offset, byte[] codes, int codesOffset) {
+        for (int subspace = 0; subspace < subspaces; subspace++) {
+            codes[codesOffset + subspace] = (byte) nearest(codebooks[subspace], CENTROIDS, subDimensions,
+                vector, offset + subspace * subDimensions);
+        }
+    }
+
+    public float[] decode(byte[] codes) {
+        final var vector = new float[dimensions()];
+        decode(codes, 0, vector, 0);
+        return vector;
+    }
+
+    public void decode(byte[] codes, int codesOffset, float[] vector, int offset) {
+        for (int subspace = 0; subspace < subspaces; subspace++) {
+            final var centroid = Byte.toUnsignedInt(codes[codesOffset + subspace]);
+            System.arraycopy(codebooks[subspace], centroid * subDimensions,
+                vector, offset + subspace * subDimensions, subDimensions);
+        }
+    }
+
+    /**
+     * Encode every row of the store, e.g. the {@link com.soprasteria.azure.openai.journey3.vector.MappedVectorStore}
+     * of a Parquet dataset. Rows are read in blocks and encoded in parallel.
+     */
+    public ProductQuantizedVectors encodeAll(VectorStore store, Metric metric) {
+        final var codes = new byte[store.size() * subspaces];
+        final var squaredNorms = new float[store.size()];
+        final var centroidNorms = centroidSquaredNorms();
+        QuantizedVectors.forEachRow(store, (row, block, offset) -> {
+            encode(block, offset, codes, row * subspaces);
+            var norm = 0f;
+            for (int subspace = 0; subspace < subspaces; subspace++) {
+                norm += centroidNorms[subspace * CENTROIDS + Byte.toUnsignedInt(codes[row * subspaces + subspace])];
+            }
+            squaredNorms[row] = norm;
+        });
+        return new ProductQuantizedVectors(this, metric, codes, squaredNorms);
+    }
+
+    /**
+     * Asymmetric distance table of a query: entry {@code subspace * 256 + centroid} is the dot product, or the
+     * squared L2 distance when {@code squaredL2} is set, of the query's sub-vector with that centroid.
+     */
+    float[] table(float[] query, boolean squaredL2) {
+        final var table = new float[subspaces * CENTROIDS];
+        for (int subspace = 0; subspace < subspaces; subspace++) {
+            final var offset = subspace * subDimensions;
+            for (int centroid = 0; centroid < CENTROIDS; centroid++) {
+                table[subspace * CENTROIDS + centroid] = squaredL2
+                    ? VectorOps.squaredL2(query, offset, codebooks[subspace], centroid * subDimensions, subDimensions)
+                    : VectorOps.dot(query, offset, codebooks[subspace], centroid * subDimensions, subDimensions);
+            }
+        }
+        return table;
+    }
+
+    private float[] centroidSquaredNorms() {
+        final var norms = new float[subspaces * CENTROIDS];
+        for (int subspace = 0; subspace < subspaces; subspace++) {
+            for (int centroid = 0; centroid < CENTROIDS; centroid++) {
+                final var offset = centroid * subDimensions;
+                norms[subspace * CENTROIDS + centroid] =
+                    VectorOps.dot(codebooks[subspace], offset, codebooks[subspace], offset, subDimensions);
+            }
+        }
+        return norms;
+    }
+
+    private static float[] kMeans(float[] points, int count, int dimensions, int iterations, Random random) {
+        // Seed the centroids with random sample points; with fewer points than centroids some repeat.
+        final var centroids = new float[CENTROIDS * dimensions];
+        for (int c = 0; c < CENTROIDS; c++) {
+            System.arraycopy(points, random.nextInt(count) * dimensions, centroids, c * dimensions, dimensions);
+        }
+
+        final var assignments = new int[count];
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            IntStream.range(0, count).parallel().forEach(p ->
+                assignments[p] = nearest(centroids, CENTROIDS, dimensions, points, p * dimensions));
+
+            final var sums = new double[CENTROIDS * dimensions];
+            final var sizes = new int[CENTROIDS];
+            for (int p = 0; p < count; p++) {
+                final var c = assignments[p];
+                sizes[c]++;
+                for (int i = 0; i < dimensions; i++) {
+                    sums[c * dimensions + i] += points[p * dimensions + i];
+                }
+            }
+            for (int c = 0; c < CENTROIDS; c++) {
+                if (sizes[c] == 0) {
+                    // Re-seed an empty cluster on a random point rather than letting the centroid go to waste.
+                    System.arraycopy(points, random.nextInt(count) * dimensions, centroids, c * dimensions, dimensions);
+                    continue;
+                }
+                for (int i = 0; i < dimensions; i++) {
+                    centroids[c * dimensions + i] = (float) (sums[c * dimensions + i] / sizes[c]);
+                }
+            }
+        }
+        return centroids;
+    }
+
+    private static int nearest(float[] centroids, int count, int dimensions, float[] vector, int offset) {
+        var best = 0;
+        var bestDistance = Float.POSITIVE_INFINITY;
+        for (int c = 0; c < count; c++) {
+            final var distance = VectorOps.squaredL2(vector, offset, centroids, c * dimensions, dimensions);
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = c;
+            }
+        }
+        return best;
+    }
+
+}
@@ -0,0 +1,96 @@
+package com.soprasteria.azure.openai.journey3.quantization;
+
+import java.util.stream.IntStream;
+
+import com.soprasteria.azure.openai.journey3.vector.NodeHeap;
+import com.soprasteria.azure.openai.journey3.vector.VectorStore;
+
+/**
+ * A corpus encoded by one of the quantizers, searchable by brute force over the codes alone, the way a
+ * compressed index without rescoring ranks candidates.
+ */
+public abstract class QuantizedVectors {
+
+    private static final int ENCODE_BLOCK_ROWS = 256;
+
+    /**
+     * Approximate similarity of one query against rows of the corpus; larger is closer.
+     */
+    @FunctionalInterface
+    protected interface Scorer {
+        float score(int row);
+    }
+
+    /**
+     * Receives one row of a store during bulk encoding, as an offset into a block of consecutive rows.
+     */
+    @FunctionalInterface
+    interface RowConsumer {
+        void accept(int row, float[] block, int offset);
+    }
+
+    public abstract int size();
+
+    /**
+     * Bytes of code per vector, excluding per-corpus calibration data.
+     */
+    public abstract int bytesPerVector();
+
+    public long sizeBytes() {
+        return (long) size() * bytesPerVector();
+    }
+
+    /**
+     * Prepare a full-precision query for scoring against the codes, e.g. truncate, rescale or binarize it.
+     */
+    protected abstract Scorer scorer(float[] query);
+
+    /**
+     * Row ordinals of the k best scoring codes, best first.
+     */
+    public int[] search(float[] query, int k) {
+        final var scorer = scorer(query);
+        final var heap = NodeHeap.min(k + 1);
+        for (int row = 0; row < size(); row++) {
+            final var score = scorer.score(row);
+            if (heap.size() < k) {
+                heap.push(score, row);
+            } else if (score > heap.topKey()) {
+                heap.replaceTop(score, row);
+            }
+        }
+        final var ids = new int[heap.size()];
+        for (int i = ids.length - 1; i >= 0; i--) {
+            ids[i] = heap.pop();
+        }
+        return ids;
+    }
+
+    /**
+     * {@link #search(float[], int)} for every query, spread across cores.
+     */
+    public int[][] searchAll(float[][] queries, int k) {
+        final var results = new int[queries.length][];
+        IntStream.range(0, queries.length).parallel().forEach(q -> results[q] = search(queries[q], k));
+        return results;
+    }
+
+    /**
+     * Visit every row of the store, reading it in blocks spread across cores. Rows are visited exactly once,
+     * in no particular order.
+     */
+    static void forEachRow(VectorStore store, RowConsumer consumer) {
+        final var dimensions = store.dimensions();
+        final var blocks = (store.size() + ENCODE_BLOCK_ROWS - 1) / ENCODE_BLOCK_ROWS;
+        IntStream.range(0, blocks).parallel().forEach(blockIndex -> {
+            final var from = blockIndex * ENCODE_BLOCK_ROWS;
+            final var rows = Math.min(ENCODE_BLOCK_ROWS, store.size() - from);
+            final var block = new float[rows * dimensions];
+            store.read(from, rows, block);
+            for (int r = 0; r < rows; r++) {
+                consumer.accept(from + r, block, r * dimensions);
+            }
+        });
+    }
+
+}
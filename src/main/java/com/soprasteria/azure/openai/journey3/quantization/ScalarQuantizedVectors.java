@@ -0,0 +1,62 @@
+package com.soprasteria.azure.openai.journey3.quantization;
+
+import com.soprasteria.azure.openai.journey3.vector.Metric;
+import com.soprasteria.azure.openai.journey3.vector.VectorOps;
+
+/**
+ * A corpus encoded by a {@link ScalarQuantizer}: one byte per dimension per row, plus the squared norm of every
+ * decoded row for the cosine and euclidean metrics.
+ */
+public class ScalarQuantizedVectors extends QuantizedVectors {
+
+    private final ScalarQuantizer quantizer;
+    private final Metric metric;
+    private final byte[] codes;
+    private final float[] squaredNorms;
+
+    ScalarQuantizedVectors(ScalarQuantizer quantizer, Metric metric, byte[] codes, float[] squaredNorms) {
+        this.quantizer = quantizer;
+        this.metric = metric;
+        this.codes = codes;
+        this.squaredNorms = squaredNorms;
+    }
+
+    public ScalarQuantizer quantizer() {
+        return quantizer;
+    }
+
+    @Override
+    public int size() {
+        return squaredNorms.length;
+    }
+
+    @Override
+    public int bytesPerVector() {
+        return quantizer.dimensions();
+    }
+
+    public float[] decode(int row) {
+        final var vector = new float[quantizer.dimensions()];
+        quantizer.decode(codes, row * quantizer.dimensions(), vector, 0);
+        return vector;
+    }
+
+    @Override
+    protected Scorer scorer(float[] query) {
+        final var dimensions = quantizer.dimensions();
+        final var weights = quantizer.weights(query);
+        final var bias = quantizer.bias(query);
+        return switch (metric) {
+            case COSINE -> row -> {
+                final var norm = (float) Math.sqrt(squaredNorms[row]);
+                final var dot = bias + VectorOps.dot(weights, 0, codes, row * dimensions, dimensions);
+                return norm > 0f ? dot / norm : 0f;
+            };
+            case DOT_PRODUCT -> row -> bias + VectorOps.dot(weights, 0, codes, row * dimensions, dimensions);
+            // |q - x|^2 = |q|^2 - 2 q.x + |x|^2, and |q|^2 does not change the ranking.
+            case EUCLIDEAN -> row ->
+                2 * (bias + VectorOps.dot(weights, 0, codes, row * dimensions, dimensions)) - squaredNorms[row];
+        };
+    }
+
+}
@@ -0,0 +1,163 @@
+package com.soprasteria.azure.openai.journey3.quantization;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import com.soprasteria.azure.openai.journey3.vector.Metric;
+import com.soprasteria.azure.openai.journey3.vector.VectorStore;
+
+/**
+ * Int8 scalar quantization, the local counterpart of {@code ScalarQuantizationCompression} with an
+ * {@code INT8} target.
+ * <p>
+ * Each value is mapped linearly from a calibrated {@code [min, max]} range onto the 256 signed byte values, and
+ * clamped when it falls outside the range. The range is taken from a sample of the corpus, either one range per
+ * dimension or a single global range. Only the first {@link #dimensions()} values of a vector are used, which
+ * models the {@code truncate_dims} of a scenario.
+ */
+public class ScalarQuantizer {
+
+    private static final int LEVELS = 255;
+
+    private final float[] min;
+    private final float[] step;
+    private final float[] inverseStep;
+
+    private ScalarQuantizer(float[] min, float[] max) {
+        this.min = min;
+        this.step = new float[min.length];
+        this.inverseStep = new float[min.length];
+        for (int i = 0; i < min.length; i++) {
+            step[i] = (max[i] - min[i]) / LEVELS;
+            // A constant dimension encodes to a single code and decodes back to min exactly.
+            inverseStep[i] = step[i] > 0f ? 1f / step[i] : 0f;
+        }
+    }
+
+    /**
+     * Calibrate the value range on up to {@code sampleSize} rows of the store, picked with a seeded random.
+     *
+     * @param dimensions   number of leading dimensions to quantize, at most {@code store.dimensions()}
+     * @param perDimension one range per dimension when true, a single range over all dimensions otherwise
+     */
+    public static ScalarQuantizer calibrate(VectorStore store, int dimensions, int sampleSize, boolean perDimension,
+                                            long seed) {
+        if (dimensions > store.dimensions()) {
+            throw new IllegalArgumentException(
+                "Cannot quantize " + dimensions + " dimensions of a " + store.dimensions() + " dimension store");
+        }
+        final var min = new float[dimensions];
+        final var max = new float[dimensions];
+        Arrays.fill(min, Float.POSITIVE_INFINITY);
+        Arrays.fill(max, Float.NEGATIVE_INFINITY);
+
+        final var random = new Random(seed);
+        final var sample = Math.min(sampleSize, store.size());
+        final var row = new float[store.dimensions()];
+        for (int s = 0; s < sample; s++) {
+            store.read(sample == store.size() ? s : random.nextInt(store.size()), 1, row);
+            for (int i = 0; i < dimensions; i++) {
+                min[i] = Math.min(min[i], row[i]);
+                max[i] = Math.max(max[i], row[i]);
+            }
+        }
+        if (sample == 0) {
+            Arrays.fill(min, 0f);
+            Arrays.fill(max, 0f);
+        }
+
+        if (!perDimension) {
+            var globalMin = Float.POSITIVE_INFINITY;
+            var globalMax = Float.NEGATIVE_INFINITY;
+            for (int i = 0; i < dimensions; i++) {
+                globalMin = Math.min(globalMin, min[i]);
+                globalMax = Math.max(globalMax, max[i]);
+            }
+            Arrays.fill(min, globalMin);
+            Arrays.fill(max, globalMax);
+        }
+        return new ScalarQuantizer(min, max);
+    }
+
+    public int dimensions() {
+        return min.length;
+    }
+
+    public byte[] encode(float[] vector) {
+        final var codes = new byte[dimensions()];
+        encode(vector, 0, codes, 0);
+        return codes;
+    }
+
+    /**
+     * Encode the leading {@link #dimensions()} values of {@code vector} from {@code offset} into
+     * {@code codes} from {@code codesOffset}.
+     */
+    public void encode(float[] vector, int offset, byte[] codes, int codesOffset) {
+        for (int i = 0; i < min.length; i++) {
+            final var level = Math.round((vector[offset + i] - min[i]) * inverseStep[i]);
+            codes[codesOffset + i] = (byte) (Math.clamp(level, 0, LEVELS) - 128);
+        }
+    }
+
+    public float[] decode(byte[] codes) {
+        final var vector = new float[dimensions()];
+        decode(codes, 0, vector, 0);
+        return vector;
+    }
+
+    public void decode(byte[] codes, int codesOffset, float[] vector, int offset) {
+        for (int i = 0; i < min.length; i++) {
+            vector[offset + i] = min[i] + (codes[codesOffset + i] + 128) * step[i];
+        }
+    }
+
+    /**
+     * Encode every row of the store, e.g. the {@link com.soprasteria.azure.openai.journey3.vector.MappedVectorStore}
+     * of a Parquet dataset. Rows are read in blocks and encoded in parallel.
+     */
+    public ScalarQuantizedVectors encodeAll(VectorStore store, Metric metric) {
+        final var dimensions = dimensions();
+        final var codes = new byte[store.size() * dimensions];
+        final var squaredNorms = new float[store.size()];
+        QuantizedVectors.forEachRow(store, (row, block, offset) -> {
+            encode(block, offset, codes, row * dimensions);
+            squaredNorms[row] = squaredNorm(codes, row * dimensions);
+        });
+        return new ScalarQuantizedVectors(this, metric, codes, squaredNorms);
+    }
+
+    /**
+     * Squared norm of the decoded vector, kept per row so cosine and euclidean scores need only a dot product
+     * with the codes.
+     */
+    private float squaredNorm(byte[] codes, int codesOffset) {
+        var sum = 0f;
+        for (int i = 0; i < min.length; i++) {
+            final var value = min[i] + (codes[codesOffset + i] + 128) * step[i];
+            sum += value * value;
+        }
+        return sum;
+    }
+
+    /**
+     * Weights and bias such that {@code bias + sum(weights[i] * code[i])} is the dot product of {@code query} with
+     * the decoded vector, so scoring never decodes.
+     */
+    float[] weights(float[] query) {
+        final var weights = new float[min.length];
+        for (int i = 0; i < min.length; i++) {
+            weights[i] = query[i] * step[i];
+        }
+        return weights;
+    }
+
+    float bias(float[] query) {
+        var bias = 0f;
+        for (int i = 0; i < min.length; i++) {
+            bias += query[i] * (min[i] + 128 * step[i]);
+        }
+        return bias;
+    }
+
+}
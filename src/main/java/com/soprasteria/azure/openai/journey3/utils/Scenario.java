@@ -0,0 +1,61 @@
+package com.soprasteria.azure.openai.journey3.utils;
+
+/**
+ * One compression scenario of the journey 3 study, as defined in {@code scenarios.yml}.
+ *
+ * @param name             scenario name, also the suffix of its index name
+ * @param compressionType  vector compression, {@link CompressionType#NONE} for full precision
+ * @param truncateDims     number of leading dimensions to keep, or null for all
+ * @param discardOriginals whether the full-precision vectors are discarded after compression
+ * @param storedEmbedding  whether the embedding field is retrievable
+ * @param pqSubspaces      bytes per vector of a {@link CompressionType#PQ} scenario, null otherwise
+ * @param localOnly        true for scenarios the service cannot provision, which are only evaluated locally
+ * @param description      human readable summary, used as the index configuration description
+ */
+public record Scenario(
+    String name,
+    CompressionType compressionType,
+    Integer truncateDims,
+    boolean discardOriginals,
+    boolean storedEmbedding,
+    Integer pqSubspaces,
+    boolean localOnly,
+    String description
+) {
+
+    public enum CompressionType {
+        NONE, SCALAR, BINARY, PQ
+    }
+
+    public Scenario {
+        if (name == null || name.isBlank()) {
+            throw new IllegalArgumentException("Scenario without a name");
+        }
+        compressionType = compressionType == null ? CompressionType.NONE : compressionType;
+        if (compressionType == CompressionType.PQ && pqSubspaces == null) {
+            throw new IllegalArgumentException("Scenario " + name + " uses product quantization without pq_subspaces");
+        }
+        if (truncateDims != null && truncateDims <= 0) {
+            throw new IllegalArgumentException("Scenario " + name + " truncates to " + truncateDims + " dimensions");
+        }
+    }
+
+    /**
+     * Uncompressed scenario with a retrievable embedding, e.g. for a single benchmark index.
+     */
+    public static Scenario uncompressed(String name) {
+        return new Scenario(name, CompressionType.NONE, null, false, true, null, false, name);
+    }
+
+    public boolean isCompressed() {
+        return compressionType != CompressionType.NONE;
+    }
+
+    /**
+     * Dimensions the scenario indexes out of {@code fullDimensions}.
+     */
+    public int dimensions(int fullDimensions) {
+        return truncateDims != null ? truncateDims : fullDimensions;
+    }
+
+}
@@ -1,90 +1,79 @@
 package com.soprasteria.azure.openai.journey3.utils;
 
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 
-public class Scenarios {
-
-    /**
-     * RAG Journey 3 - Step 6. Define Test Scenarios.
-     */
-    public static List<Map<String, Object>> defineTestScenarios() {
-        final var scenarios = new ArrayList<Map<String, Object>>();
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
 
-        final var baseline = new HashMap<String, Object>();
-        baseline.put("name", "baseline");
-        baseline.put("compression_type", null);
-        baseline.put("truncate_dims", null);
-        baseline.put("discard_originals", false);
-        baseline.put("stored_embedding", true);
-        baseline.put("description", "Baseline configuration without compression");
-        scenarios.add(baseline);
+/**
+ * Loads the study scenarios from {@code scenarios.yml} on the classpath, or from an explicit file.
+ */
+public class Scenarios {
 
-        final var baselineS = new HashMap<String, Object>();
-        baselineS.put("name", "baseline-s");
-        baselineS.put("compression_type", null);
-        baselineS.put("truncate_dims", null);
-        baselineS.put("discard_originals", false);
-        baselineS.put("stored_embedding", false);
-        baselineS.put("description", "Baseline configuration without compression, with stored=False");
-        scenarios.add(baselineS);
+    private static final String RESOURCE = "/scenarios.yml";
 
-        final var scalarFull = new HashMap<String, Object>();
-        scalarFull.put("name", "scalar-full");
-        scalarFull.put("compression_type", "scalar");
-        scalarFull.put("truncate_dims", null);
-        scalarFull.put("discard_originals", false);
-        scalarFull.put("stored_embedding", false);
-        scalarFull.put("description", "Scalar quantization (int8) with full dimensions, preserved originals");
-        scenarios.add(scalarFull);
+    private static final ObjectMapper YAML = JsonMapper.builder(new YAMLFactory())
+        .propertyNamingStrategy(PropertyNamingStrategies.SNAKE_CASE)
+        .enable(MapperFeature.ACCEPT_CASE_INSENSITIVE_ENUMS)
+        .enable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+        .build();
 
-        final var scalarTruncated1024 = new HashMap<String, Object>();
-        scalarTruncated1024.put("name", "scalar-truncated-1024");
-        scalarTruncated1024.put("compression_type", "scalar");
-        scalarTruncated1024.put("truncate_dims", 1024);
-        scalarTruncated1024.put("discard_originals", false);
-        scalarTruncated1024.put("stored_embedding", false);
-        scalarTruncated1024.put("description", "Scalar quantization (int8) with 1024 dimensions, preserved originals");
-        scenarios.add(scalarTruncated1024);
+    private record Definition(List<Scenario> scenarios) {
+    }
 
-        final var scalarTruncated1024Discard = new HashMap<String, Object>();
-        scalarTruncated1024Discard.put("name", "scalar-truncated-1024-discard");
-        scalarTruncated1024Discard.put("compression_type", "scalar");
-        scalarTruncated1024Discard.put("truncate_dims", 1024);
-        scalarTruncated1024Discard.put("discard_originals", true);
-        scalarTruncated1024Discard.put("stored_embedding", false);
-        scalarTruncated1024Discard.put("description", "Scalar quantization (int8) with 1024 dimensions, discarded originals");
-        scenarios.add(scalarTruncated1024Discard);
+    /**
+     * RAG Journey 3 - Step 6. Define Test Scenarios. The scenarios the search service can provision.
+     */
+    public static List<Scenario> defineTestScenarios() {
+        return load().stream().filter(scenario -> !scenario.localOnly()).toList();
+    }
 
-        final var binaryFull = new HashMap<String, Object>();
-        binaryFull.put("name", "binary-full");
-        binaryFull.put("compression_type", "binary");
-        binaryFull.put("truncate_dims", null);
-        binaryFull.put("discard_originals", false);
-        binaryFull.put("stored_embedding", false);
-        binaryFull.put("description", "Binary quantization with full dimensions, preserved originals");
-        scenarios.add(binaryFull);
+    /**
+     * Scenarios the service has no equivalent for, such as product quantization, evaluated only locally next to
+     * the scenarios above.
+     */
+    public static List<Scenario> defineLocalScenarios() {
+        return load().stream().filter(Scenario::localOnly).toList();
+    }
 
-        final var binaryTruncated1024 = new HashMap<String, Object>();
-        binaryTruncated1024.put("name", "binary-truncated-1024");
-        binaryTruncated1024.put("compression_type", "binary");
-        binaryTruncated1024.put("truncate_dims", 1024);
-        binaryTruncated1024.put("discard_originals", false);
-        binaryTruncated1024.put("stored_embedding", false);
-        binaryTruncated1024.put("description", "Binary quantization with 1024 dimensions, preserved originals");
-        scenarios.add(binaryTruncated1024);
+    /**
+     * Every scenario of the bundled definition, in file order.
+     */
+    public static List<Scenario> load() {
+        try (final var in = Scenarios.class.getResourceAsStream(RESOURCE)) {
+            if (in == null) {
+                throw new IllegalStateException("Missing scenario definition " + RESOURCE);
+            }
+            return read(in, RESOURCE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 
-        final var binaryTruncated1024Discard = new HashMap<String, Object>();
-        binaryTruncated1024Discard.put("name", "binary-truncated-1024-discard");
-        binaryTruncated1024Discard.put("compression_type", "binary");
-        binaryTruncated1024Discard.put("truncate_dims", 1024);
-        binaryTruncated1024Discard.put("discard_originals", true);
-        binaryTruncated1024Discard.put("stored_embedding", false);
-        binaryTruncated1024Discard.put("description", "Binary quantization with 1024 dimensions, discarded originals");
-        scenarios.add(binaryTruncated1024Discard);
+    public static List<Scenario> load(Path file) throws IOException {
+        try (final var in = Files.newInputStream(file)) {
+            return read(in, file.toString());
+        }
+    }
 
+    private static List<Scenario> read(InputStream in, String source) throws IOException {
+        final var scenarios = YAML.readValue(in, Definition.class).scenarios();
+        final var names = new HashSet<String>();
+        for (final var scenario : scenarios) {
+            if (!names.add(scenario.name())) {
+                throw new IllegalArgumentException("Duplicate scenario " + scenario.name() + " in " + source);
+            }
+        }
         return scenarios;
     }
 
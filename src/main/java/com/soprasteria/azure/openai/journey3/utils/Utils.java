@@ -4,12 +4,59 @@ import java.util.ArrayList;
 import java.util.Base64;
 import java.util.List;
 
+import com.azure.core.client.traits.AzureKeyCredentialTrait;
+import com.azure.core.client.traits.EndpointTrait;
+import com.azure.core.client.traits.HttpTrait;
+import com.azure.core.credential.AzureKeyCredential;
+import com.azure.core.http.HttpClient;
+import com.azure.core.http.HttpHeaderName;
+import com.azure.core.http.HttpHeaders;
+import com.azure.core.http.HttpPipelineBuilder;
+import com.azure.core.http.policy.AddHeadersPolicy;
+import com.azure.core.http.policy.RetryPolicy;
+import com.azure.core.util.HttpClientOptions;
+
 public class Utils {
 
     public static String encodeKey(String key) {
         return Base64.getUrlEncoder().withoutPadding().encodeToString(key.getBytes());
     }
 
+    /**
+     * Point any Azure client builder, search or OpenAI, at an endpoint with an API key. The SDK only sends key
+     * credentials over https, so for plain http endpoints (local stand-ins) the key is sent as a header by a minimal
+     * pipeline with the default retry policy instead.
+     */
+    public static <T extends EndpointTrait<T> & AzureKeyCredentialTrait<T> & HttpTrait<T>> T keyedEndpoint(
+        T builder,
+        String endpoint,
+        String apiKey
+    ) {
+        return keyedEndpoint(builder, endpoint, apiKey, new HttpClientOptions());
+    }
+
+    /**
+     * {@link #keyedEndpoint(EndpointTrait, String, String)} with the HTTP client configured by {@code options}, also
+     * in the pipeline built for plain http endpoints, which a builder's own client options do not reach.
+     */
+    public static <T extends EndpointTrait<T> & AzureKeyCredentialTrait<T> & HttpTrait<T>> T keyedEndpoint(
+        T builder,
+        String endpoint,
+        String apiKey,
+        HttpClientOptions options
+    ) {
+        builder.endpoint(endpoint);
+        if (!endpoint.startsWith("http://")) {
+            return builder.credential(new AzureKeyCredential(apiKey)).clientOptions(options);
+        }
+        return builder.pipeline(new HttpPipelineBuilder()
+            .httpClient(HttpClient.createDefault(options))
+            .policies(
+                new AddHeadersPolicy(new HttpHeaders().set(HttpHeaderName.fromString("api-key"), apiKey)),
+                new RetryPolicy())
+            .build());
+    }
+
     public static <T> List<List<T>> chunkList(List<T> list, int chunkSize) {
         final var chunks = new ArrayList<List<T>>();
         for (int i = 0; i < list.size(); i += chunkSize) {
@@ -18,4 +65,15 @@ public class Utils {
         return chunks;
     }
 
+    /**
+     * Nearest-rank percentile of an already sorted array, {@code p} in [0, 100].
+     */
+    public static double percentile(double[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0.0;
+        }
+        final var rank = (int) Math.ceil(p / 100.0 * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+    }
+
 }
@@ -0,0 +1,135 @@
+package com.soprasteria.azure.openai.journey3.vector;
+
+import java.util.stream.IntStream;
+
+/**
+ * Exact brute-force k nearest neighbours over a {@link VectorStore}, used as ground truth for recall.
+ * <p>
+ * The store is split into one contiguous row range per core. Each worker reads its range in blocks, scores
+ * every row of a block against every query of the batch with {@link VectorOps}, and keeps a bounded top-k
+ * min-heap per query; the per-worker heaps are merged at the end. Batching queries means the store is streamed
+ * through memory once per batch rather than once per query.
+ */
+public class ExactKnn {
+
+    private static final int BLOCK_ROWS = 64;
+
+    private final VectorStore store;
+    private final Metric metric;
+
+    public ExactKnn(VectorStore store, Metric metric) {
+        this.store = store;
+        this.metric = metric;
+    }
+
+    public VectorStore store() {
+        return store;
+    }
+
+    public Metric metric() {
+        return metric;
+    }
+
+    public Neighbor[] search(float[] query, int k) {
+        return searchAll(new float[][]{query}, k)[0];
+    }
+
+    /**
+     * Row ordinals of the exact k nearest neighbours of every query, nearest first.
+     */
+    public int[][] neighbours(float[][] queries, int k) {
+        final var results = searchAll(queries, k);
+        final var ids = new int[queries.length][];
+        for (int q = 0; q < queries.length; q++) {
+            ids[q] = new int[results[q].length];
+            for (int i = 0; i < results[q].length; i++) {
+                ids[q][i] = results[q][i].id();
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Exact k nearest neighbours of every query, nearest first. Scores follow {@link Neighbor}: larger is closer.
+     */
+    public Neighbor[][] searchAll(float[][] queries, int k) {
+        final var prepared = new float[queries.length][];
+        for (int q = 0; q < queries.length; q++) {
+            prepared[q] = metric == Metric.COSINE ? normalized(queries[q]) : queries[q];
+        }
+
+        final var cores = Runtime.getRuntime().availableProcessors();
+        final var workers = Math.max(1, Math.min(cores, store.size() / BLOCK_ROWS));
+        final var partials = IntStream.range(0, workers).parallel()
+            .mapToObj(worker -> scan(prepared, k,
+                (int) ((long) store.size() * worker / workers),
+                (int) ((long) store.size() * (worker + 1) / workers)))
+            .toList();
+
+        final var results = new Neighbor[queries.length][];
+        for (int q = 0; q < queries.length; q++) {
+            final var merged = NodeHeap.min(k);
+            for (final var heaps : partials) {
+                final var heap = heaps[q];
+                while (!heap.isEmpty()) {
+                    offer(merged, k, heap.topKey(), heap.topId());
+                    heap.pop();
+                }
+            }
+            final var neighbours = new Neighbor[merged.size()];
+            for (int i = neighbours.length - 1; i >= 0; i--) {
+                final var score = merged.topKey();
+                neighbours[i] = new Neighbor(merged.pop(), score);
+            }
+            results[q] = neighbours;
+        }
+        return results;
+    }
+
+    private NodeHeap[] scan(float[][] queries, int k, int from, int to) {
+        final var dimensions = store.dimensions();
+        final var heaps = new NodeHeap[queries.length];
+        for (int q = 0; q < queries.length; q++) {
+            heaps[q] = NodeHeap.min(k + 1);
+        }
+        final var block = new float[BLOCK_ROWS * dimensions];
+        for (int start = from; start < to; start += BLOCK_ROWS) {
+            final var rows = Math.min(BLOCK_ROWS, to - start);
+            store.read(start, rows, block);
+            for (int r = 0; r < rows; r++) {
+                final var offset = r * dimensions;
+                final var scale = metric == Metric.COSINE ? inverseNorm(block, offset, dimensions) : 1f;
+                for (int q = 0; q < queries.length; q++) {
+                    final var score = metric == Metric.EUCLIDEAN
+                        ? -VectorOps.squaredL2(queries[q], 0, block, offset, dimensions)
+                        : VectorOps.dot(queries[q], 0, block, offset, dimensions) * scale;
+                    offer(heaps[q], k, score, start + r);
+                }
+            }
+        }
+        return heaps;
+    }
+
+    private static void offer(NodeHeap heap, int k, float score, int id) {
+        if (heap.size() < k) {
+            heap.push(score, id);
+        } else if (score > heap.topKey()) {
+            heap.replaceTop(score, id);
+        }
+    }
+
+    private static float inverseNorm(float[] vector, int offset, int dimensions) {
+        final var norm = (float) Math.sqrt(VectorOps.dot(vector, offset, vector, offset, dimensions));
+        return norm > 0f ? 1f / norm : 0f;
+    }
+
+    private static float[] normalized(float[] vector) {
+        final var copy = vector.clone();
+        final var scale = inverseNorm(copy, 0, copy.length);
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] *= scale;
+        }
+        return copy;
+    }
+
+}
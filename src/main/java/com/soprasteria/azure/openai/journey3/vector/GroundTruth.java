@@ -0,0 +1,120 @@
+package com.soprasteria.azure.openai.journey3.vector;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Exact neighbour lists for a query set, computed with {@link ExactKnn} and cached on disk.
+ * <p>
+ * A scan of the full dataset takes seconds per query batch, and the same query set is evaluated against every
+ * scenario and every run, so results are stored under a digest of the metric, k, store shape and query vectors.
+ * The cache directory should be specific to the dataset, e.g. next to the vector store file.
+ */
+public class GroundTruth {
+
+    private final ExactKnn knn;
+    private final Path cacheDirectory;
+
+    public GroundTruth(ExactKnn knn, Path cacheDirectory) {
+        this.knn = knn;
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    /**
+     * Row ordinals of the exact k nearest neighbours of every query, nearest first.
+     */
+    public int[][] neighbours(float[][] queries, int k) throws IOException {
+        final var file = cacheDirectory.resolve("truth-" + digest(queries, k) + ".bin");
+        if (Files.exists(file)) {
+            return read(file);
+        }
+
+        System.out.printf("Computing exact ground truth for %d queries over %d vectors (%s)...%n",
+            queries.length, knn.store().size(), VectorOps.describe());
+        final var start = System.nanoTime();
+        final var truth = knn.neighbours(queries, k);
+        System.out.printf("Ground truth computed in %.2f s%n", (System.nanoTime() - start) / 1e9);
+
+        write(file, truth);
+        return truth;
+    }
+
+    /**
+     * Fraction of the exact top-k found in {@code result}, ignoring order.
+     */
+    public static double recall(int[] result, int[] truth) {
+        if (truth.length == 0) {
+            return 1.0;
+        }
+        int hits = 0;
+        for (int id : result) {
+            for (int expected : truth) {
+                if (id == expected) {
+                    hits++;
+                    break;
+                }
+            }
+        }
+        return (double) hits / truth.length;
+    }
+
+    private String digest(float[][] queries, int k) {
+        try {
+            final var sha = MessageDigest.getInstance("SHA-256");
+            sha.update(ByteBuffer.allocate(16)
+                .putInt(k)
+                .putInt(knn.store().size())
+                .putInt(knn.store().dimensions())
+                .putInt(knn.metric().ordinal())
+                .flip());
+            for (final var query : queries) {
+                final var bytes = ByteBuffer.allocate(query.length * Float.BYTES);
+                bytes.asFloatBuffer().put(query);
+                sha.update(bytes);
+            }
+            return HexFormat.of().formatHex(sha.digest(), 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static int[][] read(Path file) throws IOException {
+        try (final var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            final var truth = new int[in.readInt()][];
+            for (int q = 0; q < truth.length; q++) {
+                truth[q] = new int[in.readInt()];
+                for (int i = 0; i < truth[q].length; i++) {
+                    truth[q][i] = in.readInt();
+                }
+            }
+            return truth;
+        }
+    }
+
+    private static void write(Path file, int[][] truth) throws IOException {
+        Files.createDirectories(file.getParent());
+        // Write aside and move into place, so an interrupted run never leaves a truncated cache entry behind.
+        final var temporary = Files.createTempFile(file.getParent(), "truth-", ".tmp");
+        try (final var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            out.writeInt(truth.length);
+            for (final var ids : truth) {
+                out.writeInt(ids.length);
+                for (int id : ids) {
+                    out.writeInt(id);
+                }
+            }
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+}
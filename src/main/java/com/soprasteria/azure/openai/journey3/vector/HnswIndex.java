@@ -0,0 +1,497 @@
+package com.soprasteria.azure.openai.journey3.vector;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-process HNSW graph over vectors stored in primitive {@code float[]} pages.
+ * <p>
+ * Uses the same m / efConstruction / efSearch knobs as the service configuration, see {@link HnswParameters}.
+ * Insertion is thread safe: every node has its own lock guarding its neighbour lists, held only while a list is read
+ * or rewritten so locks never nest, and a global lock is only taken when a node becomes the new top-level entry
+ * point. Searches may run concurrently with insertions.
+ */
+public class HnswIndex {
+
+    private static final int PAGE_FLOATS = 1 << 24;
+
+    private final int dimensions;
+    private final Metric metric;
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private final int efSearch;
+    private final double levelMultiplier;
+    private final int capacity;
+
+    private final int rowsPerPage;
+    private final float[][] pages;
+    private final int[] levels;
+    private final int[][][] links;
+    private final Object[] locks;
+
+    private final AtomicInteger size = new AtomicInteger();
+    private final ReentrantLock entryLock = new ReentrantLock();
+    private volatile int entryPoint = -1;
+    private volatile int maxLevel = -1;
+
+    private final ConcurrentLinkedQueue<VisitedSet> visitedPool = new ConcurrentLinkedQueue<>();
+
+    public HnswIndex(int dimensions, int capacity, HnswParameters parameters) {
+        this(dimensions, capacity, parameters.metric(), parameters.m(), parameters.efConstruction(),
+            parameters.efSearch());
+    }
+
+    public HnswIndex(int dimensions, int capacity, Metric metric, int m, int efConstruction, int efSearch) {
+        this.dimensions = dimensions;
+        this.capacity = capacity;
+        this.metric = metric;
+        this.m = m;
+        this.maxM0 = 2 * m;
+        this.efConstruction = Math.max(efConstruction, m);
+        this.efSearch = efSearch;
+        this.levelMultiplier = 1.0 / Math.log(Math.max(m, 2));
+
+        this.rowsPerPage = Math.max(1, PAGE_FLOATS / dimensions);
+        this.pages = new float[(capacity + rowsPerPage - 1) / rowsPerPage][];
+        this.levels = new int[capacity];
+        this.links = new int[capacity][][];
+        this.locks = new Object[capacity];
+        for (int i = 0; i < capacity; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public int dimensions() {
+        return dimensions;
+    }
+
+    public Metric metric() {
+        return metric;
+    }
+
+    /**
+     * Ordinal every search starts from, or -1 while the index is empty.
+     */
+    int entryPoint() {
+        return entryPoint;
+    }
+
+    /**
+     * Approximate heap footprint of vectors and graph links in bytes.
+     */
+    public long sizeBytes() {
+        final var count = size();
+        long linkInts = 0;
+        for (int i = 0; i < count; i++) {
+            final var nodeLinks = links[i];
+            if (nodeLinks != null) {
+                for (final var level : nodeLinks) {
+                    linkInts += level.length;
+                }
+            }
+        }
+        return (long) count * dimensions * Float.BYTES + linkInts * Integer.BYTES;
+    }
+
+    /**
+     * Copy of the stored vector for an ordinal. Cosine vectors are stored normalized.
+     */
+    public float[] vector(int id) {
+        final var vector = new float[dimensions];
+        System.arraycopy(pages[id / rowsPerPage], (id % rowsPerPage) * dimensions, vector, 0, dimensions);
+        return vector;
+    }
+
+    /**
+     * Insert a vector and return its ordinal. Safe to call from many threads.
+     */
+    public int add(float[] vector) {
+        if (vector.length != dimensions) {
+            throw new IllegalArgumentException("Expected " + dimensions + " dimensions, got " + vector.length);
+        }
+        final var id = size.getAndIncrement();
+        if (id >= capacity) {
+            size.decrementAndGet();
+            throw new IllegalStateException("HNSW index is full (capacity " + capacity + ")");
+        }
+
+        final var page = page(id / rowsPerPage);
+        final var offset = (id % rowsPerPage) * dimensions;
+        System.arraycopy(vector, 0, page, offset, dimensions);
+        if (metric == Metric.COSINE) {
+            normalize(page, offset);
+        }
+
+        final var level = randomLevel();
+        final var nodeLinks = new int[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            nodeLinks[l] = new int[maxLinks(l) + 1];
+        }
+        levels[id] = level;
+        links[id] = nodeLinks;
+
+        entryLock.lock();
+        final var currentMaxLevel = maxLevel;
+        var holdsEntryLock = true;
+        try {
+            if (level <= currentMaxLevel) {
+                entryLock.unlock();
+                holdsEntryLock = false;
+            }
+            var currentEntry = entryPoint;
+            if (currentEntry == -1) {
+                entryPoint = id;
+                maxLevel = level;
+                return id;
+            }
+
+            final var entryLevel = levels[currentEntry];
+            currentEntry = greedyDescend(page, offset, currentEntry, entryLevel, level);
+
+            for (int l = Math.min(level, entryLevel); l >= 0; l--) {
+                final var candidates = searchLayer(page, offset, currentEntry, efConstruction, l);
+                currentEntry = connect(id, candidates, l, currentEntry);
+            }
+
+            if (level > currentMaxLevel) {
+                entryPoint = id;
+                maxLevel = level;
+            }
+        } finally {
+            if (holdsEntryLock) {
+                entryLock.unlock();
+            }
+        }
+        return id;
+    }
+
+    /**
+     * Ordinals of the approximate {@code k} nearest vectors, best first.
+     */
+    public int[] search(float[] query, int k) {
+        final var neighbors = searchNeighbors(query, k);
+        final var ids = new int[neighbors.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = neighbors.get(i).id();
+        }
+        return ids;
+    }
+
+    /**
+     * Approximate {@code k} nearest vectors with their similarity scores, best first.
+     */
+    public List<Neighbor> searchNeighbors(float[] query, int k) {
+        return searchNeighbors(query, k, efSearch);
+    }
+
+    public List<Neighbor> searchNeighbors(float[] query, int k, int ef) {
+        final var currentEntry = entryPoint;
+        if (currentEntry == -1) {
+            return List.of();
+        }
+        var q = query;
+        if (metric == Metric.COSINE) {
+            q = query.clone();
+            normalize(q, 0);
+        }
+
+        final var entry = greedyDescend(q, 0, currentEntry, levels[currentEntry], 0);
+        final var results = searchLayer(q, 0, entry, Math.max(ef, k), 0);
+        while (results.size() > k) {
+            results.pop();
+        }
+
+        final var neighbors = new Neighbor[results.size()];
+        for (int i = neighbors.length - 1; i >= 0; i--) {
+            final var distance = results.topKey();
+            neighbors[i] = new Neighbor(results.pop(), similarity(distance));
+        }
+        return List.of(neighbors);
+    }
+
+    private int greedyDescend(float[] query, int queryOffset, int entry, int fromLevel, int toLevelExclusive) {
+        var current = entry;
+        var currentDistance = distance(query, queryOffset, current);
+        for (int l = fromLevel; l > toLevelExclusive; l--) {
+            var changed = true;
+            while (changed) {
+                changed = false;
+                for (final int neighbor : neighbours(current, l)) {
+                    final var d = distance(query, queryOffset, neighbor);
+                    if (d < currentDistance) {
+                        currentDistance = d;
+                        current = neighbor;
+                        changed = true;
+                    }
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Best-first search of one layer. Returns a max-heap of at most {@code ef} results keyed by distance.
+     */
+    private NodeHeap searchLayer(float[] query, int queryOffset, int entry, int ef, int level) {
+        var seen = visitedPool.poll();
+        if (seen == null) {
+            seen = new VisitedSet(capacity);
+        }
+        try {
+            return searchLayer(query, queryOffset, entry, ef, level, seen);
+        } finally {
+            visitedPool.offer(seen);
+        }
+    }
+
+    private NodeHeap searchLayer(float[] query, int queryOffset, int entry, int ef, int level, VisitedSet seen) {
+        seen.reset();
+
+        final var candidates = NodeHeap.min(ef * 2);
+        final var results = NodeHeap.max(ef + 1);
+
+        final var entryDistance = distance(query, queryOffset, entry);
+        candidates.push(entryDistance, entry);
+        results.push(entryDistance, entry);
+        seen.visit(entry);
+
+        while (!candidates.isEmpty()) {
+            final var candidateDistance = candidates.topKey();
+            if (candidateDistance > results.topKey() && results.size() >= ef) {
+                break;
+            }
+            final var candidate = candidates.pop();
+            for (final int neighbor : neighbours(candidate, level)) {
+                if (!seen.visit(neighbor)) {
+                    continue;
+                }
+                final var d = distance(query, queryOffset, neighbor);
+                if (results.size() < ef || d < results.topKey()) {
+                    candidates.push(d, neighbor);
+                    results.push(d, neighbor);
+                    if (results.size() > ef) {
+                        results.pop();
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Link a new node to the heuristic selection of its candidates on one level, and back-link every
+     * selected neighbour. Links are merged into the existing lists, never overwritten, because concurrent
+     * inserts may already have back-linked the new node. Returns the closest candidate, or {@code fallback}
+     * when the search found nothing but the node itself.
+     */
+    private int connect(int id, NodeHeap candidates, int level, int fallback) {
+        final var sorted = Arrays.stream(drainAscending(candidates))
+            .filter(candidate -> candidate[0] != id)
+            .toArray(int[][]::new);
+        if (sorted.length == 0) {
+            return fallback;
+        }
+        final var selected = selectNeighbours(sorted, m);
+
+        merge(id, level, selected);
+        for (final int neighbor : selected) {
+            merge(neighbor, level, new int[]{id});
+        }
+        return sorted[0][0];
+    }
+
+    /**
+     * Add links to a node's list under its lock, skipping duplicates and self-links, and prune the union
+     * with the selection heuristic if it overflows.
+     */
+    private void merge(int node, int level, int[] additions) {
+        final var maxLinks = maxLinks(level);
+        synchronized (locks[node]) {
+            final var list = links[node][level];
+            final var count = list[0];
+            final var union = Arrays.copyOf(list, count + 1 + additions.length);
+            var unionCount = count;
+            for (final int addition : additions) {
+                if (addition != node && !contains(union, unionCount, addition)) {
+                    union[++unionCount] = addition;
+                }
+            }
+            if (unionCount <= maxLinks) {
+                System.arraycopy(union, 1, list, 1, unionCount);
+                list[0] = unionCount;
+                return;
+            }
+            final var heap = NodeHeap.max(unionCount);
+            for (int i = 1; i <= unionCount; i++) {
+                heap.push(distance(node, union[i]), union[i]);
+            }
+            final var pruned = selectNeighbours(drainAscending(heap), maxLinks);
+            list[0] = pruned.length;
+            System.arraycopy(pruned, 0, list, 1, pruned.length);
+        }
+    }
+
+    private static boolean contains(int[] list, int count, int id) {
+        for (int i = 1; i <= count; i++) {
+            if (list[i] == id) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * HNSW neighbour selection heuristic: keep a candidate only if it is closer to the base node than to
+     * any neighbour already selected. Input is {@code [id, distanceBits]} pairs in ascending distance.
+     */
+    private int[] selectNeighbours(int[][] ascending, int limit) {
+        if (ascending.length <= limit) {
+            final var ids = new int[ascending.length];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = ascending[i][0];
+            }
+            return ids;
+        }
+        final var selected = new int[limit];
+        int count = 0;
+        for (final var candidate : ascending) {
+            if (count == limit) {
+                break;
+            }
+            final var candidateDistance = Float.intBitsToFloat(candidate[1]);
+            var keep = true;
+            for (int i = 0; i < count; i++) {
+                if (distance(candidate[0], selected[i]) < candidateDistance) {
+                    keep = false;
+                    break;
+                }
+            }
+            if (keep) {
+                selected[count++] = candidate[0];
+            }
+        }
+        return count == limit ? selected : Arrays.copyOf(selected, count);
+    }
+
+    private static int[][] drainAscending(NodeHeap maxHeap) {
+        final var sorted = new int[maxHeap.size()][];
+        for (int i = sorted.length - 1; i >= 0; i--) {
+            final var distance = maxHeap.topKey();
+            sorted[i] = new int[]{maxHeap.pop(), Float.floatToRawIntBits(distance)};
+        }
+        return sorted;
+    }
+
+    /**
+     * Vector page, allocated on first use so a generous capacity costs nothing until it is filled.
+     */
+    private float[] page(int pageIndex) {
+        var page = pages[pageIndex];
+        if (page == null) {
+            synchronized (pages) {
+                page = pages[pageIndex];
+                if (page == null) {
+                    final var rows = Math.min(rowsPerPage, capacity - pageIndex * rowsPerPage);
+                    page = new float[rows * dimensions];
+                    pages[pageIndex] = page;
+                }
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Copy of a node's links on one level.
+     */
+    int[] neighbours(int node, int level) {
+        synchronized (locks[node]) {
+            final var list = links[node][level];
+            final var copy = new int[list[0]];
+            System.arraycopy(list, 1, copy, 0, copy.length);
+            return copy;
+        }
+    }
+
+    private int maxLinks(int level) {
+        return level == 0 ? maxM0 : m;
+    }
+
+    private int randomLevel() {
+        final var uniform = 1.0 - ThreadLocalRandom.current().nextDouble();
+        return (int) (-Math.log(uniform) * levelMultiplier);
+    }
+
+    private float distance(int a, int b) {
+        return distance(pages[a / rowsPerPage], (a % rowsPerPage) * dimensions, b);
+    }
+
+    private float distance(float[] query, int queryOffset, int node) {
+        final var page = pages[node / rowsPerPage];
+        final var offset = (node % rowsPerPage) * dimensions;
+        if (metric == Metric.EUCLIDEAN) {
+            return VectorOps.squaredL2(query, queryOffset, page, offset, dimensions);
+        }
+        final var dot = VectorOps.dot(query, queryOffset, page, offset, dimensions);
+        return metric == Metric.COSINE ? 1f - dot : -dot;
+    }
+
+    private float similarity(float distance) {
+        return switch (metric) {
+            case COSINE -> 1f - distance;
+            case DOT_PRODUCT, EUCLIDEAN -> -distance;
+        };
+    }
+
+    private void normalize(float[] vector, int offset) {
+        final var norm = (float) Math.sqrt(VectorOps.dot(vector, offset, vector, offset, dimensions));
+        if (norm > 0f) {
+            for (int i = 0; i < dimensions; i++) {
+                vector[offset + i] /= norm;
+            }
+        }
+    }
+
+    /**
+     * Visited marks pooled across searches, so virtual-thread callers do not each allocate one; bumping the
+     * epoch clears them in O(1).
+     */
+    private static class VisitedSet {
+
+        private final int[] marks;
+        private int epoch;
+
+        VisitedSet(int capacity) {
+            this.marks = new int[capacity];
+        }
+
+        void reset() {
+            epoch++;
+            if (epoch == Integer.MAX_VALUE) {
+                Arrays.fill(marks, 0);
+                epoch = 1;
+            }
+        }
+
+        /**
+         * Mark a node, returning false if it was already visited in this search.
+         */
+        boolean visit(int node) {
+            if (marks[node] == epoch) {
+                return false;
+            }
+            marks[node] = epoch;
+            return true;
+        }
+
+    }
+
+}
@@ -0,0 +1,22 @@
+package com.soprasteria.azure.openai.journey3.vector;
+
+/**
+ * HNSW graph parameters as the local vector code uses them. The service-side settings in {@code journey3} map to
+ * these.
+ *
+ * @param m              number of bi-directional links per node
+ * @param efConstruction candidate list size while building the graph
+ * @param efSearch       candidate list size while querying
+ * @param metric         similarity metric
+ */
+public record HnswParameters(int m, int efConstruction, int efSearch, Metric metric) {
+
+    /**
+     * Short name usable as part of an index name, e.g. {@code m4-efc400-efs500-cosine}.
+     */
+    public String label() {
+        return "m" + m + "-efc" + efConstruction + "-efs" + efSearch + "-"
+            + metric.name().toLowerCase().replace("_", "");
+    }
+
+}
@@ -0,0 +1,39 @@
+package com.soprasteria.azure.openai.journey3.vector;
+
+import java.util.stream.IntStream;
+
+/**
+ * {@link VectorEngine} backed by an in-process {@link HnswIndex}. The corpus is inserted concurrently on the
+ * common fork-join pool, so ordinals are assigned in arbitrary order and mapped back to corpus positions.
+ */
+public class LocalHnswEngine implements VectorEngine {
+
+    @Override
+    public Index build(String name, HnswParameters parameters, float[][] corpus) {
+        final var index = new HnswIndex(corpus[0].length, corpus.length, parameters);
+        final var corpusOrdinals = new int[corpus.length];
+        IntStream.range(0, corpus.length).parallel()
+            .forEach(i -> corpusOrdinals[index.add(corpus[i])] = i);
+
+        return new Index() {
+            @Override
+            public int[] search(float[] query, int k) {
+                final var ids = index.search(query, k);
+                for (int i = 0; i < ids.length; i++) {
+                    ids[i] = corpusOrdinals[ids[i]];
+                }
+                return ids;
+            }
+
+            @Override
+            public long sizeBytes() {
+                return index.sizeBytes();
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+}
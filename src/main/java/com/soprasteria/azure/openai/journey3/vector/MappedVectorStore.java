@@ -0,0 +1,150 @@
+package com.soprasteria.azure.openai.journey3.vector;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link VectorStore} over a flat file of little-endian float32 rows, memory-mapped so the page cache rather
+ * than the heap holds the dataset (100k x 3072 floats is 1.2 GB).
+ * <p>
+ * File layout: a 16 byte header ({@code VEC1} magic, row count, dimensions, reserved) followed by the rows.
+ * A single mapping is limited to 2 GB, so larger files are mapped as several segments, each holding a whole
+ * number of rows.
+ */
+public class MappedVectorStore implements VectorStore, AutoCloseable {
+
+    private static final int MAGIC = 0x56454331; // "VEC1"
+    private static final int HEADER_BYTES = 16;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final int size;
+    private final int dimensions;
+    private final int rowsPerSegment;
+    private final List<FloatBuffer> segments = new ArrayList<>();
+
+    private MappedVectorStore(Path path) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        final var header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        channel.read(header, 0);
+        header.flip();
+        if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC) {
+            channel.close();
+            throw new IOException("Not a vector store: " + path);
+        }
+        this.size = header.getInt();
+        this.dimensions = header.getInt();
+
+        final var rowBytes = (long) dimensions * Float.BYTES;
+        this.rowsPerSegment = (int) Math.max(1, Integer.MAX_VALUE / rowBytes);
+        for (int first = 0; first < size; first += rowsPerSegment) {
+            final var rows = Math.min(rowsPerSegment, size - first);
+            segments.add(channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES + first * rowBytes, rows * rowBytes)
+                .order(ByteOrder.LITTLE_ENDIAN)
+                .asFloatBuffer());
+        }
+    }
+
+    public static MappedVectorStore open(Path path) throws IOException {
+        return new MappedVectorStore(path);
+    }
+
+    /**
+     * Start writing a new store, replacing any existing file. Rows are appended with {@link Writer#add(float[])}
+     * and the header is completed on close.
+     */
+    public static Writer create(Path path, int dimensions) throws IOException {
+        return new Writer(path, dimensions);
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int dimensions() {
+        return dimensions;
+    }
+
+    @Override
+    public void read(int from, int count, float[] target) {
+        int offset = 0;
+        while (count > 0) {
+            final var segment = segments.get(from / rowsPerSegment);
+            final var row = from % rowsPerSegment;
+            final var rows = Math.min(count, rowsPerSegment - row);
+            // Absolute bulk get does not touch the buffer position, so concurrent readers can share it.
+            segment.get(row * dimensions, target, offset, rows * dimensions);
+            offset += rows * dimensions;
+            from += rows;
+            count -= rows;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    public static class Writer implements AutoCloseable {
+
+        private final FileChannel channel;
+        private final int dimensions;
+        private final ByteBuffer row;
+        private int size;
+
+        private Writer(Path path, int dimensions) throws IOException {
+            Files.createDirectories(path.toAbsolutePath().getParent());
+            this.channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            this.dimensions = dimensions;
+            this.row = ByteBuffer.allocateDirect(dimensions * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            channel.position(HEADER_BYTES);
+        }
+
+        public void add(float[] vector) throws IOException {
+            if (vector.length != dimensions) {
+                throw new IllegalArgumentException("Expected " + dimensions + " dimensions but got " + vector.length);
+            }
+            row.clear();
+            row.asFloatBuffer().put(vector);
+            row.limit(row.capacity());
+            while (row.hasRemaining()) {
+                channel.write(row);
+            }
+            size++;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public void close() throws IOException {
+            final var header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN)
+                .putInt(MAGIC)
+                .putInt(size)
+                .putInt(dimensions)
+                .putInt(0)
+                .flip();
+            channel.write(header, 0);
+            channel.close();
+        }
+
+    }
+
+}
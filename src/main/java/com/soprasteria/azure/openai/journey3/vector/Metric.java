@@ -0,0 +1,33 @@
+package com.soprasteria.azure.openai.journey3.vector;
+
+import com.azure.search.documents.indexes.models.VectorSearchAlgorithmMetric;
+
+/**
+ * Similarity metrics supported by the local vector code, mirroring {@link VectorSearchAlgorithmMetric}.
+ */
+public enum Metric {
+
+    COSINE,
+    DOT_PRODUCT,
+    EUCLIDEAN;
+
+    public static Metric from(VectorSearchAlgorithmMetric metric) {
+        if (metric == null || VectorSearchAlgorithmMetric.COSINE.equals(metric)) {
+            return COSINE;
+        } else if (VectorSearchAlgorithmMetric.DOT_PRODUCT.equals(metric)) {
+            return DOT_PRODUCT;
+        } else if (VectorSearchAlgorithmMetric.EUCLIDEAN.equals(metric)) {
+            return EUCLIDEAN;
+        }
+        throw new IllegalArgumentException("Unsupported metric: " + metric);
+    }
+
+    public VectorSearchAlgorithmMetric toAzure() {
+        return switch (this) {
+            case COSINE -> VectorSearchAlgorithmMetric.COSINE;
+            case DOT_PRODUCT -> VectorSearchAlgorithmMetric.DOT_PRODUCT;
+            case EUCLIDEAN -> VectorSearchAlgorithmMetric.EUCLIDEAN;
+        };
+    }
+
+}
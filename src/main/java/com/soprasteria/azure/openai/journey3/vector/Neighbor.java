@@ -0,0 +1,7 @@
+package com.soprasteria.azure.openai.journey3.vector;
+
+/**
+ * A search hit: the ordinal of a vector and its similarity to the query, where larger is closer.
+ */
+public record Neighbor(int id, float score) {
+}
@@ -0,0 +1,113 @@
+package com.soprasteria.azure.openai.journey3.vector;
+
+import java.util.Arrays;
+
+/**
+ * Binary heap of (key, id) pairs over primitive arrays, so hot search loops do not box.
+ * <p>
+ * A min-heap keeps the smallest key on top, a max-heap the largest.
+ */
+public class NodeHeap {
+
+    private final boolean max;
+    private float[] keys;
+    private int[] ids;
+    private int size;
+
+    private NodeHeap(boolean max, int initialCapacity) {
+        this.max = max;
+        this.keys = new float[Math.max(initialCapacity, 4)];
+        this.ids = new int[Math.max(initialCapacity, 4)];
+    }
+
+    public static NodeHeap min(int initialCapacity) {
+        return new NodeHeap(false, initialCapacity);
+    }
+
+    public static NodeHeap max(int initialCapacity) {
+        return new NodeHeap(true, initialCapacity);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public float topKey() {
+        return keys[0];
+    }
+
+    public int topId() {
+        return ids[0];
+    }
+
+    public void push(float key, int id) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            ids = Arrays.copyOf(ids, size * 2);
+        }
+        int i = size++;
+        while (i > 0) {
+            final var parent = (i - 1) >>> 1;
+            if (!before(key, keys[parent])) {
+                break;
+            }
+            keys[i] = keys[parent];
+            ids[i] = ids[parent];
+            i = parent;
+        }
+        keys[i] = key;
+        ids[i] = id;
+    }
+
+    /**
+     * Remove the top entry and return its id.
+     */
+    public int pop() {
+        final var top = ids[0];
+        size--;
+        if (size > 0) {
+            siftDown(keys[size], ids[size]);
+        }
+        return top;
+    }
+
+    /**
+     * Replace the top entry, cheaper than {@link #pop()} followed by {@link #push(float, int)}.
+     */
+    public void replaceTop(float key, int id) {
+        siftDown(key, id);
+    }
+
+    private void siftDown(float key, int id) {
+        int i = 0;
+        final var half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            final var right = child + 1;
+            if (right < size && before(keys[right], keys[child])) {
+                child = right;
+            }
+            if (!before(keys[child], key)) {
+                break;
+            }
+            keys[i] = keys[child];
+            ids[i] = ids[child];
+            i = child;
+        }
+        keys[i] = key;
+        ids[i] = id;
+    }
+
+    private boolean before(float a, float b) {
+        return max ? a > b : a < b;
+    }
+
+}
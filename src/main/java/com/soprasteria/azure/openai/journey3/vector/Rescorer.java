@@ -0,0 +1,85 @@
+package com.soprasteria.azure.openai.journey3.vector;
+
+import java.util.HashSet;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Query-side rescoring of an approximate candidate list with the full-precision vectors of a {@link VectorStore}.
+ * <p>
+ * The Java SDK cannot enable rescoring on a compressed index, and a scenario that discards its originals has
+ * nothing to rescore with in the service anyway. Instead the compressed index is asked for
+ * {@link #candidates(int, double) k x oversampling} candidates, and this stage reads their vectors from the local
+ * store by row ordinal, scores them exactly and keeps the best k. Time spent here is accumulated so the overhead
+ * can be reported next to the recall it buys.
+ */
+public class Rescorer {
+
+    private final VectorStore store;
+    private final Metric metric;
+    private final LongAdder queries = new LongAdder();
+    private final LongAdder nanos = new LongAdder();
+
+    public Rescorer(VectorStore store, Metric metric) {
+        this.store = store;
+        this.metric = metric;
+    }
+
+    /**
+     * Number of candidates to ask the compressed index for, never fewer than k.
+     */
+    public static int candidates(int k, double oversampling) {
+        return Math.max(k, (int) Math.ceil(k * oversampling));
+    }
+
+    /**
+     * The k best of {@code candidates} by exact score, best first. Candidates outside the store are ignored, and a
+     * candidate listed more than once is scored once, so the result never repeats a row.
+     */
+    public int[] rescore(float[] query, int[] candidates, int k) {
+        final var start = System.nanoTime();
+        final var dimensions = store.dimensions();
+        final var queryNorm = (float) Math.sqrt(VectorOps.dot(query, 0, query, 0, dimensions));
+        final var vector = new float[dimensions];
+        final var heap = NodeHeap.min(k + 1);
+        final var seen = new HashSet<Integer>(candidates.length * 2);
+        for (int candidate : candidates) {
+            if (candidate < 0 || candidate >= store.size() || !seen.add(candidate)) {
+                continue;
+            }
+            store.read(candidate, 1, vector);
+            final var score = switch (metric) {
+                case COSINE -> {
+                    final var norms = queryNorm * (float) Math.sqrt(VectorOps.dot(vector, 0, vector, 0, dimensions));
+                    yield norms > 0f ? VectorOps.dot(query, 0, vector, 0, dimensions) / norms : 0f;
+                }
+                case DOT_PRODUCT -> VectorOps.dot(query, 0, vector, 0, dimensions);
+                case EUCLIDEAN -> -VectorOps.squaredL2(query, 0, vector, 0, dimensions);
+            };
+            if (heap.size() < k) {
+                heap.push(score, candidate);
+            } else if (score > heap.topKey()) {
+                heap.replaceTop(score, candidate);
+            }
+        }
+        final var ids = new int[heap.size()];
+        for (int i = ids.length - 1; i >= 0; i--) {
+            ids[i] = heap.pop();
+        }
+        queries.increment();
+        nanos.add(System.nanoTime() - start);
+        return ids;
+    }
+
+    public long rescoredQueries() {
+        return queries.sum();
+    }
+
+    /**
+     * Mean time spent rescoring one candidate list, in microseconds.
+     */
+    public double meanMicros() {
+        final var count = queries.sum();
+        return count == 0 ? 0.0 : nanos.sum() / 1e3 / count;
+    }
+
+}
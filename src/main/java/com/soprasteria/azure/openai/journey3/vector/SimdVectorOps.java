@@ -0,0 +1,156 @@
+package com.soprasteria.azure.openai.journey3.vector;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vector API implementations behind {@link VectorOps}. Only loaded when the incubator module is present.
+ * <p>
+ * Multiply and add are kept separate rather than fused: {@code fma} is emulated, and very slow, on CPUs
+ * without FMA units. Two accumulators hide the add latency.
+ * <p>
+ * Int8 codes are widened lane for lane, so the byte species has as many lanes as the float or int species it is
+ * converted to. With 128-bit vectors that would be a 32-bit byte vector, which does not exist; the int8 kernels are
+ * then reported unavailable and {@link VectorOps} uses its scalar loops.
+ */
+final class SimdVectorOps {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Byte> BYTE_FLOAT_SPECIES = byteSpecies(SPECIES.length());
+    private static final VectorSpecies<Integer> INT_SPECIES = IntVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Byte> BYTE_INT_SPECIES = byteSpecies(INT_SPECIES.length());
+    private static final VectorSpecies<Long> LONG_SPECIES = LongVector.SPECIES_PREFERRED;
+
+    private SimdVectorOps() {
+    }
+
+    static int bitSize() {
+        return SPECIES.vectorBitSize();
+    }
+
+    static boolean hasByteToFloat() {
+        return BYTE_FLOAT_SPECIES != null;
+    }
+
+    static boolean hasByteToInt() {
+        return BYTE_INT_SPECIES != null;
+    }
+
+    static float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        final var step = SPECIES.length();
+        var acc0 = FloatVector.zero(SPECIES);
+        var acc1 = FloatVector.zero(SPECIES);
+        int i = 0;
+        for (final var bound = SPECIES.loopBound(length) - step; i < bound; i += 2 * step) {
+            acc0 = acc0.add(FloatVector.fromArray(SPECIES, a, aOffset + i)
+                .mul(FloatVector.fromArray(SPECIES, b, bOffset + i)));
+            acc1 = acc1.add(FloatVector.fromArray(SPECIES, a, aOffset + i + step)
+                .mul(FloatVector.fromArray(SPECIES, b, bOffset + i + step)));
+        }
+        for (final var bound = SPECIES.loopBound(length); i < bound; i += step) {
+            acc0 = acc0.add(FloatVector.fromArray(SPECIES, a, aOffset + i)
+                .mul(FloatVector.fromArray(SPECIES, b, bOffset + i)));
+        }
+        var sum = acc0.add(acc1).reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+
+    static float squaredL2(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        final var step = SPECIES.length();
+        var acc0 = FloatVector.zero(SPECIES);
+        var acc1 = FloatVector.zero(SPECIES);
+        int i = 0;
+        for (final var bound = SPECIES.loopBound(length) - step; i < bound; i += 2 * step) {
+            final var d0 = FloatVector.fromArray(SPECIES, a, aOffset + i)
+                .sub(FloatVector.fromArray(SPECIES, b, bOffset + i));
+            final var d1 = FloatVector.fromArray(SPECIES, a, aOffset + i + step)
+                .sub(FloatVector.fromArray(SPECIES, b, bOffset + i + step));
+            acc0 = acc0.add(d0.mul(d0));
+            acc1 = acc1.add(d1.mul(d1));
+        }
+        for (final var bound = SPECIES.loopBound(length); i < bound; i += step) {
+            final var d = FloatVector.fromArray(SPECIES, a, aOffset + i)
+                .sub(FloatVector.fromArray(SPECIES, b, bOffset + i));
+            acc0 = acc0.add(d.mul(d));
+        }
+        var sum = acc0.add(acc1).reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            final var d = a[aOffset + i] - b[bOffset + i];
+            sum += d * d;
+        }
+        return sum;
+    }
+
+    static float dot(float[] a, int aOffset, byte[] b, int bOffset, int length) {
+        final var step = SPECIES.length();
+        var acc0 = FloatVector.zero(SPECIES);
+        var acc1 = FloatVector.zero(SPECIES);
+        int i = 0;
+        for (final var bound = SPECIES.loopBound(length) - step; i < bound; i += 2 * step) {
+            acc0 = acc0.add(FloatVector.fromArray(SPECIES, a, aOffset + i)
+                .mul(ByteVector.fromArray(BYTE_FLOAT_SPECIES, b, bOffset + i).castShape(SPECIES, 0)));
+            acc1 = acc1.add(FloatVector.fromArray(SPECIES, a, aOffset + i + step)
+                .mul(ByteVector.fromArray(BYTE_FLOAT_SPECIES, b, bOffset + i + step).castShape(SPECIES, 0)));
+        }
+        for (final var bound = SPECIES.loopBound(length); i < bound; i += step) {
+            acc0 = acc0.add(FloatVector.fromArray(SPECIES, a, aOffset + i)
+                .mul(ByteVector.fromArray(BYTE_FLOAT_SPECIES, b, bOffset + i).castShape(SPECIES, 0)));
+        }
+        var sum = acc0.add(acc1).reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+
+    static int dot(byte[] a, int aOffset, byte[] b, int bOffset, int length) {
+        final var step = INT_SPECIES.length();
+        var acc = IntVector.zero(INT_SPECIES);
+        int i = 0;
+        for (final var bound = INT_SPECIES.loopBound(length); i < bound; i += step) {
+            final var va = (IntVector) ByteVector.fromArray(BYTE_INT_SPECIES, a, aOffset + i).castShape(INT_SPECIES, 0);
+            final var vb = (IntVector) ByteVector.fromArray(BYTE_INT_SPECIES, b, bOffset + i).castShape(INT_SPECIES, 0);
+            acc = acc.add(va.mul(vb));
+        }
+        var sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+
+    static int hamming(long[] a, int aOffset, long[] b, int bOffset, int words) {
+        var acc = LongVector.zero(LONG_SPECIES);
+        int i = 0;
+        for (final var bound = LONG_SPECIES.loopBound(words); i < bound; i += LONG_SPECIES.length()) {
+            acc = acc.add(LongVector.fromArray(LONG_SPECIES, a, aOffset + i)
+                .lanewise(VectorOperators.XOR, LongVector.fromArray(LONG_SPECIES, b, bOffset + i))
+                .lanewise(VectorOperators.BIT_COUNT));
+        }
+        var distance = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < words; i++) {
+            distance += Long.bitCount(a[aOffset + i] ^ b[bOffset + i]);
+        }
+        return (int) distance;
+    }
+
+    /**
+     * Byte species with the given number of lanes, or null when no vector shape of that size exists.
+     */
+    private static VectorSpecies<Byte> byteSpecies(int lanes) {
+        try {
+            return VectorSpecies.of(byte.class, VectorShape.forBitSize(lanes * Byte.SIZE));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+}
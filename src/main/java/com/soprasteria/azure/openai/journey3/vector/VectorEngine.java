@@ -0,0 +1,32 @@
+package com.soprasteria.azure.openai.journey3.vector;
+
+/**
+ * Something that can build a vector index over a corpus and answer k-nearest-neighbour queries against it.
+ * <p>
+ * Vectors are identified by their ordinal in the corpus, so results can be compared with exact ground truth.
+ */
+public interface VectorEngine {
+
+    /**
+     * Build an index variant named {@code name} with the given HNSW parameters and ingest the whole corpus.
+     */
+    Index build(String name, HnswParameters parameters, float[][] corpus) throws Exception;
+
+    interface Index extends AutoCloseable {
+
+        /**
+         * Ordinals of the {@code k} nearest corpus vectors, best first.
+         */
+        int[] search(float[] query, int k);
+
+        /**
+         * Size of the vector index in bytes, as reported by the engine.
+         */
+        long sizeBytes();
+
+        @Override
+        void close();
+
+    }
+
+}
@@ -0,0 +1,193 @@
+package com.soprasteria.azure.openai.journey3.vector;
+
+/**
+ * Distance kernels shared by the local vector code: float32 dot, cosine and squared L2, float32 x int8 and
+ * int8 x int8 dot for scalar-quantized codes, and Hamming distance for packed bits. The batch variants score one
+ * query against a block of consecutive rows, the layout {@link VectorStore#read(int, int, float[])} produces.
+ * <p>
+ * When the {@code jdk.incubator.vector} module is resolved (run with {@code --add-modules jdk.incubator.vector})
+ * the kernels use the Vector API through {@link SimdVectorOps}; otherwise, or with {@code -Dvector.scalar=true},
+ * they fall back to unrolled scalar loops. The choice is made once, so the JIT folds the branch away.
+ */
+public final class VectorOps {
+
+    private static final boolean SIMD = !Boolean.getBoolean("vector.scalar")
+        && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    private VectorOps() {
+    }
+
+    public static boolean isSimd() {
+        return SIMD;
+    }
+
+    /**
+     * Human readable description of the kernels in use, for benchmark and report headers.
+     */
+    public static String describe() {
+        return SIMD ? "Vector API, " + SimdVectorOps.bitSize() + "-bit lanes" : "scalar";
+    }
+
+    public static float dot(float[] a, float[] b) {
+        return dot(a, 0, b, 0, a.length);
+    }
+
+    public static float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        return SIMD ? SimdVectorOps.dot(a, aOffset, b, bOffset, length) : scalarDot(a, aOffset, b, bOffset, length);
+    }
+
+    public static float squaredL2(float[] a, float[] b) {
+        return squaredL2(a, 0, b, 0, a.length);
+    }
+
+    public static float squaredL2(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        return SIMD
+            ? SimdVectorOps.squaredL2(a, aOffset, b, bOffset, length)
+            : scalarSquaredL2(a, aOffset, b, bOffset, length);
+    }
+
+    public static float cosine(float[] a, float[] b) {
+        return cosine(a, 0, b, 0, a.length);
+    }
+
+    /**
+     * Cosine similarity, 0 when either vector is all zeros.
+     */
+    public static float cosine(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        final var norms = dot(a, aOffset, a, aOffset, length) * dot(b, bOffset, b, bOffset, length);
+        return norms > 0f ? dot(a, aOffset, b, bOffset, length) / (float) Math.sqrt(norms) : 0f;
+    }
+
+    /**
+     * Dot product of float weights with signed int8 codes, the inner loop of scoring a query against
+     * scalar-quantized vectors.
+     */
+    public static float dot(float[] a, int aOffset, byte[] b, int bOffset, int length) {
+        return SIMD && SimdVectorOps.hasByteToFloat()
+            ? SimdVectorOps.dot(a, aOffset, b, bOffset, length)
+            : scalarDot(a, aOffset, b, bOffset, length);
+    }
+
+    /**
+     * Dot product of two int8 code vectors, accumulated in 32-bit ints so it cannot overflow below 131072
+     * dimensions.
+     */
+    public static int dot(byte[] a, int aOffset, byte[] b, int bOffset, int length) {
+        return SIMD && SimdVectorOps.hasByteToInt()
+            ? SimdVectorOps.dot(a, aOffset, b, bOffset, length)
+            : scalarDot(a, aOffset, b, bOffset, length);
+    }
+
+    /**
+     * Number of differing bits between two packed bit vectors of {@code words} longs.
+     */
+    public static int hamming(long[] a, int aOffset, long[] b, int bOffset, int words) {
+        return SIMD
+            ? SimdVectorOps.hamming(a, aOffset, b, bOffset, words)
+            : scalarHamming(a, aOffset, b, bOffset, words);
+    }
+
+    /**
+     * {@link #dot(float[], int, float[], int, int)} of {@code query} with each of {@code rows} consecutive rows of
+     * {@code block}, written to {@code scores[0..rows)}.
+     */
+    public static void dotBatch(float[] query, float[] block, int rows, int dimensions, float[] scores) {
+        for (int r = 0; r < rows; r++) {
+            scores[r] = dot(query, 0, block, r * dimensions, dimensions);
+        }
+    }
+
+    public static void squaredL2Batch(float[] query, float[] block, int rows, int dimensions, float[] scores) {
+        for (int r = 0; r < rows; r++) {
+            scores[r] = squaredL2(query, 0, block, r * dimensions, dimensions);
+        }
+    }
+
+    public static void cosineBatch(float[] query, float[] block, int rows, int dimensions, float[] scores) {
+        final var queryNorm = dot(query, 0, query, 0, dimensions);
+        for (int r = 0; r < rows; r++) {
+            final var offset = r * dimensions;
+            final var norms = queryNorm * dot(block, offset, block, offset, dimensions);
+            scores[r] = norms > 0f ? dot(query, 0, block, offset, dimensions) / (float) Math.sqrt(norms) : 0f;
+        }
+    }
+
+    /**
+     * {@link #dot(float[], int, byte[], int, int)} of {@code weights} with each of {@code rows} consecutive code
+     * rows starting at {@code codesOffset}.
+     */
+    public static void dotBatch(float[] weights, byte[] codes, int codesOffset, int rows, int dimensions,
+                                float[] scores) {
+        for (int r = 0; r < rows; r++) {
+            scores[r] = dot(weights, 0, codes, codesOffset + r * dimensions, dimensions);
+        }
+    }
+
+    public static void hammingBatch(long[] query, long[] bits, int bitsOffset, int rows, int words,
+                                    int[] distances) {
+        for (int r = 0; r < rows; r++) {
+            distances[r] = hamming(query, 0, bits, bitsOffset + r * words, words);
+        }
+    }
+
+    static float scalarDot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        float s0 = 0f, s1 = 0f, s2 = 0f, s3 = 0f;
+        int i = 0;
+        for (; i + 3 < length; i += 4) {
+            s0 += a[aOffset + i] * b[bOffset + i];
+            s1 += a[aOffset + i + 1] * b[bOffset + i + 1];
+            s2 += a[aOffset + i + 2] * b[bOffset + i + 2];
+            s3 += a[aOffset + i + 3] * b[bOffset + i + 3];
+        }
+        for (; i < length; i++) {
+            s0 += a[aOffset + i] * b[bOffset + i];
+        }
+        return s0 + s1 + s2 + s3;
+    }
+
+    static float scalarSquaredL2(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        float s0 = 0f, s1 = 0f;
+        int i = 0;
+        for (; i + 1 < length; i += 2) {
+            final var d0 = a[aOffset + i] - b[bOffset + i];
+            final var d1 = a[aOffset + i + 1] - b[bOffset + i + 1];
+            s0 += d0 * d0;
+            s1 += d1 * d1;
+        }
+        for (; i < length; i++) {
+            final var d = a[aOffset + i] - b[bOffset + i];
+            s0 += d * d;
+        }
+        return s0 + s1;
+    }
+
+    static float scalarDot(float[] a, int aOffset, byte[] b, int bOffset, int length) {
+        float s0 = 0f, s1 = 0f;
+        int i = 0;
+        for (; i + 1 < length; i += 2) {
+            s0 += a[aOffset + i] * b[bOffset + i];
+            s1 += a[aOffset + i + 1] * b[bOffset + i + 1];
+        }
+        for (; i < length; i++) {
+            s0 += a[aOffset + i] * b[bOffset + i];
+        }
+        return s0 + s1;
+    }
+
+    static int scalarDot(byte[] a, int aOffset, byte[] b, int bOffset, int length) {
+        int sum = 0;
+        for (int i = 0; i < length; i++) {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+
+    static int scalarHamming(long[] a, int aOffset, long[] b, int bOffset, int words) {
+        int distance = 0;
+        for (int i = 0; i < words; i++) {
+            distance += Long.bitCount(a[aOffset + i] ^ b[bOffset + i]);
+        }
+        return distance;
+    }
+
+}
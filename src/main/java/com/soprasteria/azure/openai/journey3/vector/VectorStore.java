@@ -0,0 +1,49 @@
+package com.soprasteria.azure.openai.journey3.vector;
+
+/**
+ * Read-only, row-addressed collection of equally sized float vectors.
+ */
+public interface VectorStore {
+
+    int size();
+
+    int dimensions();
+
+    /**
+     * Copy {@code count} consecutive rows starting at {@code from} into {@code target}, row after row,
+     * starting at index 0. Implementations must allow concurrent reads.
+     */
+    void read(int from, int count, float[] target);
+
+    default float[] get(int row) {
+        final var vector = new float[dimensions()];
+        read(row, 1, vector);
+        return vector;
+    }
+
+    /**
+     * Store over vectors already on the heap.
+     */
+    static VectorStore of(float[][] vectors) {
+        return new VectorStore() {
+            @Override
+            public int size() {
+                return vectors.length;
+            }
+
+            @Override
+            public int dimensions() {
+                return vectors.length == 0 ? 0 : vectors[0].length;
+            }
+
+            @Override
+            public void read(int from, int count, float[] target) {
+                final var dimensions = dimensions();
+                for (int i = 0; i < count; i++) {
+                    System.arraycopy(vectors[from + i], 0, target, i * dimensions, dimensions);
+                }
+            }
+        };
+    }
+
+}
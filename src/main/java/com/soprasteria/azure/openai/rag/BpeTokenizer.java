@@ -0,0 +1,412 @@
+package com.soprasteria.azure.openai.rag;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Local byte-pair encoding tokenizer for the {@code cl100k_base} and {@code o200k_base} encodings used by the chat and
+ * embedding models, to know what a prompt costs before it is sent.
+ * <p>
+ * Text is split into pieces as the encoding's regular expression splits it, by {@link PieceSplitter} rather than the
+ * regex engine, each piece is UTF-8 encoded into a reusable buffer, and its bytes are merged by rank over primitive
+ * arrays, as tiktoken does. Ranks are kept in an
+ * open-addressing table over one byte pool, so lookups do not allocate. Frequent pieces are cached with their
+ * tokens. {@link #count} takes the same path without building the token list.
+ * <p>
+ * The merge tables are read from {@code tokenizers/<encoding>.tiktoken} on the classpath, in tiktoken's format of
+ * one base64 token and its rank per line; the build downloads them into the classpath.
+ */
+public final class BpeTokenizer {
+
+    private static final int CACHE_LIMIT = 100_000;
+    private static final int CACHED_PIECE_CHARS = 32;
+    private static final int NO_RANK = Integer.MAX_VALUE;
+    private static final Map<Encoding, BpeTokenizer> LOADED = new ConcurrentHashMap<>();
+
+    public enum Encoding {
+
+        CL100K_BASE("cl100k_base", 100_256,
+            "(?i:'s|'t|'re|'ve|'m|'ll|'d)|[^\\r\\n\\p{L}\\p{N}]?\\p{L}+|\\p{N}{1,3}| ?[^\\s\\p{L}\\p{N}]+[\\r\\n]*"
+                + "|\\s*[\\r\\n]+|\\s+(?!\\S)|\\s+"),
+        O200K_BASE("o200k_base", 199_998,
+            "[^\\r\\n\\p{L}\\p{N}]?[\\p{Lu}\\p{Lt}\\p{Lm}\\p{Lo}\\p{M}]*[\\p{Ll}\\p{Lm}\\p{Lo}\\p{M}]+"
+                + "(?i:'s|'t|'re|'ve|'m|'ll|'d)?"
+                + "|[^\\r\\n\\p{L}\\p{N}]?[\\p{Lu}\\p{Lt}\\p{Lm}\\p{Lo}\\p{M}]+[\\p{Ll}\\p{Lm}\\p{Lo}\\p{M}]*"
+                + "(?i:'s|'t|'re|'ve|'m|'ll|'d)?"
+                + "|\\p{N}{1,3}| ?[^\\s\\p{L}\\p{N}]+[\\r\\n/]*|\\s*[\\r\\n]+|\\s+(?!\\S)|\\s+");
+
+        private final String name;
+        private final int tokens;
+        private final Pattern pattern;
+
+        Encoding(String name, int tokens, String pattern) {
+            this.name = name;
+            this.tokens = tokens;
+            this.pattern = Pattern.compile(pattern, Pattern.UNICODE_CHARACTER_CLASS);
+        }
+
+        /**
+         * The pattern tiktoken splits text with; {@link #pieceEnd} finds the same pieces faster.
+         */
+        public Pattern pattern() {
+            return pattern;
+        }
+
+        /**
+         * Where the piece starting at {@code start} ends.
+         */
+        int pieceEnd(CharSequence text, int start) {
+            return this == CL100K_BASE ? PieceSplitter.cl100k(text, start) : PieceSplitter.o200k(text, start);
+        }
+
+        public String resource() {
+            return "/tokenizers/" + name + ".tiktoken";
+        }
+
+        /**
+         * The encoding of a model or deployment name: {@code o200k_base} for the GPT-4o, GPT-4.1 and o-series
+         * families, {@code cl100k_base} for GPT-4, GPT-3.5 and the text-embedding models.
+         */
+        public static Encoding forModel(String model) {
+            final var name = model.toLowerCase();
+            return name.startsWith("gpt-4o") || name.startsWith("gpt-4.1") || name.matches("o\\d.*")
+                ? O200K_BASE
+                : CL100K_BASE;
+        }
+    }
+
+    private final Encoding encoding;
+    private final RankTable ranks;
+    private final Map<String, int[]> cache = new ConcurrentHashMap<>();
+
+    BpeTokenizer(Encoding encoding, RankTable ranks) {
+        this.encoding = encoding;
+        this.ranks = ranks;
+    }
+
+    /**
+     * The tokenizer of {@code encoding}, loaded from the classpath on first use and shared after that.
+     */
+    public static BpeTokenizer of(Encoding encoding) {
+        return LOADED.computeIfAbsent(encoding, BpeTokenizer::load);
+    }
+
+    public static BpeTokenizer forModel(String model) {
+        return of(Encoding.forModel(model));
+    }
+
+    /**
+     * @throws IllegalStateException if the merge table is missing, or is not the whole table of {@code encoding}
+     */
+    private static BpeTokenizer load(Encoding encoding) {
+        try (final var in = BpeTokenizer.class.getResourceAsStream(encoding.resource())) {
+            if (in == null) {
+                throw new IllegalStateException("Missing merge table " + encoding.resource()
+                    + "; run 'mvn generate-resources' to download it, or put the tiktoken file there");
+            }
+            final var ranks = RankTable.read(in);
+            if (ranks.size() != encoding.tokens) {
+                throw new IllegalStateException("Merge table " + encoding.resource() + " has " + ranks.size()
+                    + " tokens, " + encoding.name + " has " + encoding.tokens + "; delete it and download it again");
+            }
+            return new BpeTokenizer(encoding, ranks);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unreadable merge table " + encoding.resource(), e);
+        }
+    }
+
+    public Encoding encoding() {
+        return encoding;
+    }
+
+    RankTable ranks() {
+        return ranks;
+    }
+
+    public int[] encode(String text) {
+        final var scratch = new Scratch();
+        var tokens = new int[Math.max(16, text.length() / 3)];
+        var count = 0;
+        for (int start = 0, end; start < text.length(); start = end) {
+            end = encoding.pieceEnd(text, start);
+            final var piece = tokens(text, start, end, scratch);
+            if (count + piece.length > tokens.length) {
+                tokens = Arrays.copyOf(tokens, Math.max(tokens.length * 2, count + piece.length));
+            }
+            System.arraycopy(piece, 0, tokens, count, piece.length);
+            count += piece.length;
+        }
+        return Arrays.copyOf(tokens, count);
+    }
+
+    /**
+     * Number of tokens {@code text} encodes to, without building them.
+     */
+    public int count(String text) {
+        final var scratch = new Scratch();
+        var count = 0;
+        for (int start = 0, end; start < text.length(); start = end) {
+            end = encoding.pieceEnd(text, start);
+            if (end - start <= CACHED_PIECE_CHARS) {
+                final var cached = cache.get(text.substring(start, end));
+                if (cached != null) {
+                    count += cached.length;
+                    continue;
+                }
+            }
+            final var length = scratch.utf8(text, start, end);
+            if (ranks.rank(scratch.bytes, 0, length) != NO_RANK) {
+                count++;
+            } else {
+                count += merge(scratch, length) - 1;
+            }
+        }
+        return count;
+    }
+
+    public String decode(int[] tokens) {
+        var bytes = new byte[tokens.length * 4];
+        var length = 0;
+        for (final var token : tokens) {
+            final var tokenLength = ranks.length(token);
+            if (length + tokenLength > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + tokenLength));
+            }
+            ranks.copy(token, bytes, length);
+            length += tokenLength;
+        }
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Tokens of {@code text[start, end)}, one regex piece, from the cache when it is a short piece seen before.
+     */
+    private int[] tokens(String text, int start, int end, Scratch scratch) {
+        final var key = end - start <= CACHED_PIECE_CHARS ? text.substring(start, end) : null;
+        if (key != null) {
+            final var cached = cache.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        final var length = scratch.utf8(text, start, end);
+        final int[] tokens;
+        final var whole = ranks.rank(scratch.bytes, 0, length);
+        if (whole != NO_RANK) {
+            tokens = new int[]{whole};
+        } else {
+            final var parts = merge(scratch, length);
+            tokens = new int[parts - 1];
+            for (int i = 0; i < tokens.length; i++) {
+                tokens[i] = ranks.rank(scratch.bytes, scratch.starts[i], scratch.starts[i + 1]);
+            }
+        }
+        if (key != null && cache.size() < CACHE_LIMIT) {
+            cache.put(key, tokens);
+        }
+        return tokens;
+    }
+
+    /**
+     * Merge the {@code length} bytes in the scratch buffer by rank, lowest first, until no adjacent pair is a token.
+     * Leaves the token boundaries in {@code scratch.starts}.
+     *
+     * @return number of boundaries, one more than the number of tokens
+     */
+    private int merge(Scratch scratch, int length) {
+        scratch.ensureParts(length + 1);
+        final var bytes = scratch.bytes;
+        final var starts = scratch.starts;
+        final var pairRanks = scratch.ranks;
+        var parts = length + 1;
+        for (int i = 0; i < parts; i++) {
+            starts[i] = i;
+            pairRanks[i] = i + 2 <= length ? ranks.rank(bytes, i, i + 2) : NO_RANK;
+        }
+        while (true) {
+            var best = -1;
+            var bestRank = NO_RANK;
+            for (int i = 0; i < parts - 1; i++) {
+                if (pairRanks[i] < bestRank) {
+                    bestRank = pairRanks[i];
+                    best = i;
+                }
+            }
+            if (best < 0) {
+                return parts;
+            }
+            // Part best absorbs part best + 1; the pairs starting at best - 1 and best change.
+            if (best > 0) {
+                pairRanks[best - 1] = best + 2 < parts ? ranks.rank(bytes, starts[best - 1], starts[best + 2]) : NO_RANK;
+            }
+            pairRanks[best] = best + 3 < parts ? ranks.rank(bytes, starts[best], starts[best + 3]) : NO_RANK;
+            System.arraycopy(starts, best + 2, starts, best + 1, parts - best - 2);
+            System.arraycopy(pairRanks, best + 2, pairRanks, best + 1, parts - best - 2);
+            parts--;
+        }
+    }
+
+    /**
+     * Buffers reused across the pieces of one call.
+     */
+    private static final class Scratch {
+
+        private byte[] bytes = new byte[64];
+        private int[] starts = new int[65];
+        private int[] ranks = new int[65];
+
+        /**
+         * UTF-8 encode {@code text[start, end)} into {@link #bytes}.
+         *
+         * @return number of bytes
+         */
+        int utf8(String text, int start, int end) {
+            if (bytes.length < (end - start) * 3) {
+                bytes = new byte[(end - start) * 3];
+            }
+            var length = 0;
+            for (int i = start; i < end; i++) {
+                final var c = text.charAt(i);
+                if (c < 0x80) {
+                    bytes[length++] = (byte) c;
+                } else if (c < 0x800) {
+                    bytes[length++] = (byte) (0xC0 | c >> 6);
+                    bytes[length++] = (byte) (0x80 | c & 0x3F);
+                } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(text.charAt(i + 1))) {
+                    final var codePoint = Character.toCodePoint(c, text.charAt(++i));
+                    bytes[length++] = (byte) (0xF0 | codePoint >> 18);
+                    bytes[length++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+                    bytes[length++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+                    bytes[length++] = (byte) (0x80 | codePoint & 0x3F);
+                } else if (Character.isSurrogate(c)) {
+                    // Unpaired surrogate: encoded as U+FFFD, as String.getBytes does.
+                    bytes[length++] = (byte) 0xEF;
+                    bytes[length++] = (byte) 0xBF;
+                    bytes[length++] = (byte) 0xBD;
+                } else {
+                    bytes[length++] = (byte) (0xE0 | c >> 12);
+                    bytes[length++] = (byte) (0x80 | c >> 6 & 0x3F);
+                    bytes[length++] = (byte) (0x80 | c & 0x3F);
+                }
+            }
+            return length;
+        }
+
+        void ensureParts(int parts) {
+            if (starts.length < parts) {
+                starts = new int[parts];
+                ranks = new int[parts];
+            }
+        }
+    }
+
+    /**
+     * Token bytes to rank, as an open-addressing hash table of ranks over one pool of all token bytes.
+     */
+    static final class RankTable {
+
+        private final byte[] pool;
+        private final int[] offsets;
+        private final int[] slots;
+        private final int mask;
+
+        private RankTable(byte[] pool, int[] offsets, int[] slots) {
+            this.pool = pool;
+            this.offsets = offsets;
+            this.slots = slots;
+            this.mask = slots.length - 1;
+        }
+
+        /**
+         * Read a tiktoken file: one {@code <base64 token> <rank>} per line, ranks from 0 without gaps.
+         */
+        static RankTable read(InputStream in) throws IOException {
+            final var tokens = new java.util.ArrayList<byte[]>();
+            final var decoder = Base64.getDecoder();
+            try (final var reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.US_ASCII))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isBlank()) {
+                        continue;
+                    }
+                    final var space = line.indexOf(' ');
+                    final var rank = Integer.parseInt(line, space + 1, line.length(), 10);
+                    if (rank != tokens.size()) {
+                        throw new IOException("Expected rank " + tokens.size() + " but found " + rank);
+                    }
+                    tokens.add(decoder.decode(line.substring(0, space)));
+                }
+            }
+            return of(tokens.toArray(byte[][]::new));
+        }
+
+        /**
+         * A table where the token at index {@code i} has rank {@code i}.
+         */
+        static RankTable of(byte[][] tokens) {
+            final var offsets = new int[tokens.length + 1];
+            for (int i = 0; i < tokens.length; i++) {
+                offsets[i + 1] = offsets[i] + tokens[i].length;
+            }
+            final var pool = new byte[offsets[tokens.length]];
+            for (int i = 0; i < tokens.length; i++) {
+                System.arraycopy(tokens[i], 0, pool, offsets[i], tokens[i].length);
+            }
+            final var slots = new int[Integer.highestOneBit(Math.max(2, tokens.length * 2 - 1)) << 1];
+            Arrays.fill(slots, -1);
+            final var table = new RankTable(pool, offsets, slots);
+            for (int rank = 0; rank < tokens.length; rank++) {
+                var slot = hash(tokens[rank], 0, tokens[rank].length) & table.mask;
+                while (slots[slot] >= 0) {
+                    slot = slot + 1 & table.mask;
+                }
+                slots[slot] = rank;
+            }
+            return table;
+        }
+
+        int rank(byte[] bytes, int from, int to) {
+            var slot = hash(bytes, from, to) & mask;
+            while (true) {
+                final var rank = slots[slot];
+                if (rank < 0) {
+                    return NO_RANK;
+                }
+                if (Arrays.equals(pool, offsets[rank], offsets[rank + 1], bytes, from, to)) {
+                    return rank;
+                }
+                slot = slot + 1 & mask;
+            }
+        }
+
+        int size() {
+            return offsets.length - 1;
+        }
+
+        int length(int rank) {
+            return offsets[rank + 1] - offsets[rank];
+        }
+
+        void copy(int rank, byte[] target, int at) {
+            System.arraycopy(pool, offsets[rank], target, at, length(rank));
+        }
+
+        private static int hash(byte[] bytes, int from, int to) {
+            var hash = 0x811C9DC5;
+            for (int i = from; i < to; i++) {
+                hash = (hash ^ bytes[i]) * 0x01000193;
+            }
+            return hash ^ hash >>> 16;
+        }
+    }
+
+}
@@ -0,0 +1,140 @@
+package com.soprasteria.azure.openai.rag;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caps the calls in flight to one backend. A caller waits for a permit no longer than the bulkhead's queue wait, a few
+ * tens of milliseconds, or its own deadline if sooner, and is then {@link Rejected}, so a slow or throttled backend
+ * makes requests fail fast instead of piling up hundreds of virtual threads on it, and one backend's trouble does not
+ * use up the capacity meant for the others.
+ * <p>
+ * A caller that must know it has capacity before starting, like a stream that cannot take back its status once sent,
+ * takes a {@link Permit} with {@link #enter} and holds it for the call.
+ */
+public final class Bulkhead {
+
+    /**
+     * No permit became free within the queue wait or before the caller's deadline.
+     */
+    public static final class Rejected extends RuntimeException {
+
+        private final String backend;
+
+        Rejected(String backend, Duration waited) {
+            super(backend + " is at capacity, no permit within " + waited.toMillis() + " ms");
+            this.backend = backend;
+        }
+
+        public String backend() {
+            return backend;
+        }
+    }
+
+    /**
+     * @param inFlight    calls holding a permit now
+     * @param maxInFlight most calls that held a permit at the same time
+     */
+    public record Stats(String name, int limit, int inFlight, int maxInFlight, long calls, long rejected) {
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d/%d in flight (max %d), %d calls, %d rejected",
+                name, inFlight, limit, maxInFlight, calls, rejected);
+        }
+    }
+
+    /**
+     * A permit held until closed, which releases it once.
+     */
+    public final class Permit implements AutoCloseable {
+
+        private final AtomicBoolean held = new AtomicBoolean(true);
+
+        private Permit() {
+        }
+
+        @Override
+        public void close() {
+            if (held.compareAndSet(true, false)) {
+                inFlight.decrementAndGet();
+                permits.release();
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface Call<T> {
+        T call() throws Exception;
+    }
+
+    private final String name;
+    private final int limit;
+    private final Duration maxQueueWait;
+    private final Semaphore permits;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * @param maxQueueWait longest a caller waits for a permit, whatever its deadline
+     */
+    public Bulkhead(String name, int limit, Duration maxQueueWait) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit must be at least 1, was " + limit);
+        }
+        this.name = name;
+        this.limit = limit;
+        this.maxQueueWait = maxQueueWait;
+        this.permits = new Semaphore(limit, true);
+    }
+
+    /**
+     * Take a permit, waiting no longer than the queue wait or until {@code deadline}, a {@link System#nanoTime()}
+     * value. Once the deadline has passed no permit is given, even a free one, and
+     * {@link RagPipeline.DeadlineExceeded} is thrown.
+     */
+    public Permit enter(long deadline) {
+        final var remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+            throw new RagPipeline.DeadlineExceeded(name);
+        }
+        final var wait = Math.min(maxQueueWait.toNanos(), remaining);
+        try {
+            if (!permits.tryAcquire(wait, TimeUnit.NANOSECONDS)) {
+                rejected.increment();
+                throw new Rejected(name, Duration.ofNanos(wait));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for " + name, e);
+        }
+        calls.increment();
+        maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        return new Permit();
+    }
+
+    /**
+     * Run {@code call} holding a permit taken by {@link #enter}. Checked exceptions of the call are rethrown wrapped
+     * in an {@link IllegalStateException}.
+     */
+    public <T> T call(long deadline, Call<T> call) {
+        try (final var permit = enter(deadline)) {
+            return call.call();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(name + " call failed", e);
+        }
+    }
+
+    public Stats stats() {
+        return new Stats(name, limit, inFlight.get(), maxInFlight.get(), calls.sum(), rejected.sum());
+    }
+
+}
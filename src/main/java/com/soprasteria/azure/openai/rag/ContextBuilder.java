@@ -0,0 +1,353 @@
+package com.soprasteria.azure.openai.rag;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+import com.azure.search.documents.SearchDocument;
+import com.azure.search.documents.models.SearchOptions;
+import com.azure.search.documents.models.SearchResult;
+import com.soprasteria.azure.openai.embedding.EmbeddingCache;
+import com.soprasteria.azure.openai.journey2.SearchResultReader;
+import com.soprasteria.azure.openai.journey3.vector.VectorOps;
+
+/**
+ * Assembles the context of a RAG prompt from the best {@code topK} search hits only. Identical chunks are kept once,
+ * and chunks are packed best score first until the budget is spent; a chunk that does not fit is skipped and smaller
+ * ones after it may still be packed. Every candidate left out is reported with the reason, so the cost of a budget
+ * can be seen.
+ * <p>
+ * The budget is in whatever unit {@code cost} counts: characters with {@link #characters}, or tokens with
+ * {@link #tokens}.
+ * <p>
+ * With {@link #diverse}, the context is chosen by {@link MmrSelector Maximal Marginal Relevance} from a larger pool
+ * of candidates, using the chunks' vectors: chunks that only repeat a better one are left out as redundant, and the
+ * budget goes to chunks that add something.
+ */
+public class ContextBuilder {
+
+    private static final String SEPARATOR = "\n";
+    private static final int PREVIEW_CHARS = 60;
+
+    /**
+     * @param vector the chunk's embedding, or null when it is not known
+     */
+    public record Chunk(String text, double score, float[] vector) {
+
+        public Chunk(String text, double score) {
+            this(text, score, null);
+        }
+    }
+
+    /**
+     * Why a candidate is not in the context: a copy of a better chunk, too similar to a chosen one, too little
+     * relevant next to the best, not among the {@code topK} chosen, or not fitting the budget.
+     */
+    public enum DropReason { DUPLICATE, REDUNDANT, LOW_RELEVANCE, NOT_SELECTED, OVER_BUDGET }
+
+    public record Dropped(String preview, double score, int cost, DropReason reason) {
+    }
+
+    /**
+     * @param text the included chunks in score order, each followed by a newline
+     * @param hits search hits considered, at most {@code topK}
+     * @param cost budget used by {@code text}
+     */
+    public record Context(String text, List<Chunk> included, List<Dropped> dropped, int hits, int cost, int budget) {
+
+        public long dropped(DropReason reason) {
+            return dropped.stream().filter(drop -> drop.reason() == reason).count();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d of %d hits in context, %d/%d budget used, dropped %d duplicates, %d redundant, "
+                    + "%d of low relevance, %d not selected and %d over budget", included.size(), hits, cost, budget,
+                dropped(DropReason.DUPLICATE), dropped(DropReason.REDUNDANT), dropped(DropReason.LOW_RELEVANCE),
+                dropped(DropReason.NOT_SELECTED), dropped(DropReason.OVER_BUDGET));
+        }
+    }
+
+    private final int topK;
+    private final int budget;
+    private final ToIntFunction<String> cost;
+    private final MmrSelector mmr;
+    private final int candidates;
+    private final String vectorField;
+    private final Function<List<String>, List<float[]>> vectors;
+
+    public ContextBuilder(int topK, int budget, ToIntFunction<String> cost) {
+        this(topK, budget, cost, null, topK, null, null);
+    }
+
+    private ContextBuilder(int topK, int budget, ToIntFunction<String> cost, MmrSelector mmr, int candidates,
+                           String vectorField, Function<List<String>, List<float[]>> vectors) {
+        if (topK < 1) {
+            throw new IllegalArgumentException("topK must be at least 1, was " + topK);
+        }
+        if (candidates < topK) {
+            throw new IllegalArgumentException("candidates must be at least topK, was " + candidates);
+        }
+        this.topK = topK;
+        this.budget = budget;
+        this.cost = cost;
+        this.mmr = mmr;
+        this.candidates = candidates;
+        this.vectorField = vectorField;
+        this.vectors = vectors;
+    }
+
+    /**
+     * A builder with a budget of {@code maxChars} characters.
+     */
+    public static ContextBuilder characters(int topK, int maxChars) {
+        return new ContextBuilder(topK, maxChars, String::length);
+    }
+
+    /**
+     * A builder with a budget of {@code maxTokens} tokens as {@code tokenizer} counts them.
+     */
+    public static ContextBuilder tokens(int topK, int maxTokens, BpeTokenizer tokenizer) {
+        return new ContextBuilder(topK, maxTokens, tokenizer::count);
+    }
+
+    /**
+     * This builder choosing its {@code topK} chunks by MMR among the best {@code candidates} hits.
+     *
+     * @param vectorField document field holding the chunk's vector, which {@link #bound} selects
+     * @param vectors     vectors of the chunks the index did not return them for, in order, all asked for at once so
+     *                    they can be embedded in one request; may be null, leaving such chunks without
+     */
+    public ContextBuilder diverse(MmrSelector mmr, int candidates, String vectorField,
+                                  Function<List<String>, List<float[]>> vectors) {
+        return new ContextBuilder(topK, budget, cost, mmr, candidates, vectorField, vectors);
+    }
+
+    public int topK() {
+        return topK;
+    }
+
+    /**
+     * {@code options} asking for no more hits than are considered, so the service returns a single page. The chunk is
+     * added to the fields {@code options} already selects, and a diverse builder adds its vector as well.
+     */
+    public SearchOptions bound(SearchOptions options) {
+        final var select = new LinkedHashSet<String>();
+        if (options.getSelect() != null) {
+            select.addAll(options.getSelect());
+            select.add("chunk");
+        }
+        if (mmr != null && vectorField != null) {
+            select.add("chunk");
+            select.add(vectorField);
+        }
+        if (!select.isEmpty()) {
+            options.setSelect(select.toArray(String[]::new));
+        }
+        return options.setTop(candidates);
+    }
+
+    /**
+     * {@link #bound(SearchOptions)} for the REST body of a search, as sent by a
+     * {@link com.soprasteria.azure.openai.journey2.StreamingSearchClient}.
+     */
+    public Map<String, Object> bound(Map<String, Object> request) {
+        final var select = new LinkedHashSet<String>();
+        if (request.get("select") instanceof String fields) {
+            select.addAll(List.of(fields.split(",")));
+            select.add("chunk");
+        }
+        if (mmr != null && vectorField != null) {
+            select.add("chunk");
+            select.add(vectorField);
+        }
+        if (!select.isEmpty()) {
+            request.put("select", String.join(",", select));
+        }
+        request.put("top", candidates);
+        return request;
+    }
+
+    /**
+     * A reader of what {@link #bound} selects: the chunk and, for a diverse builder, its vector.
+     */
+    public SearchResultReader reader() {
+        return new SearchResultReader(Integer.MAX_VALUE, List.of("chunk"), mmr != null ? vectorField : null);
+    }
+
+    /**
+     * Build the context from the first results of {@code results}, taking the chunk of each. Iteration stops at
+     * {@code topK}, or at the number of candidates of a diverse builder, whatever the iterable could still fetch.
+     * Semantic reranker scores are used when present.
+     */
+    public Context build(Iterable<SearchResult> results) {
+        return build(results, null);
+    }
+
+    /**
+     * {@link #build(Iterable)} for a question with embedding {@code question}, which a diverse builder measures the
+     * relevance of chunks against.
+     */
+    public Context build(Iterable<SearchResult> results, float[] question) {
+        final var chunks = new ArrayList<Chunk>(candidates);
+        for (final var result : results) {
+            final var document = result.getDocument(SearchDocument.class);
+            if (document.get("chunk") instanceof String chunk) {
+                final var semantic = result.getSemanticSearch();
+                final var score = semantic != null && semantic.getRerankerScore() != null
+                    ? semantic.getRerankerScore()
+                    : result.getScore();
+                chunks.add(new Chunk(chunk, score, mmr != null ? vector(document) : null));
+            }
+            if (chunks.size() >= candidates) {
+                break;
+            }
+        }
+        return packWithVectors(chunks, question);
+    }
+
+    /**
+     * {@link #build(Iterable, float[])} from hits decoded by {@link #reader}, without a document map per hit.
+     */
+    public Context buildFromPassages(List<SearchResultReader.Passage> passages, float[] question) {
+        final var chunks = new ArrayList<Chunk>(candidates);
+        for (final var passage : passages) {
+            final var chunk = passage.text("chunk");
+            if (chunk != null) {
+                final var score = passage.rerankerScore() != null ? passage.rerankerScore() : passage.score();
+                final var vector = mmr != null && passage.vector() != null && passage.vector().length > 0
+                    ? passage.vector()
+                    : null;
+                chunks.add(new Chunk(chunk, score, vector));
+            }
+            if (chunks.size() >= candidates) {
+                break;
+            }
+        }
+        return packWithVectors(chunks, question);
+    }
+
+    /**
+     * Pack {@code chunks}, first asking {@code vectors} for those a diverse builder has no vector of.
+     */
+    private Context packWithVectors(List<Chunk> chunks, float[] question) {
+        final var unknown = new ArrayList<Integer>();
+        if (mmr != null) {
+            for (int i = 0; i < chunks.size(); i++) {
+                if (chunks.get(i).vector() == null) {
+                    unknown.add(i);
+                }
+            }
+        }
+        if (!unknown.isEmpty() && vectors != null) {
+            final var found = vectors.apply(unknown.stream().map(i -> chunks.get(i).text()).toList());
+            for (int j = 0; j < unknown.size(); j++) {
+                final var chunk = chunks.get(unknown.get(j));
+                chunks.set(unknown.get(j), new Chunk(chunk.text(), chunk.score(), found.get(j)));
+            }
+        }
+        return pack(chunks, question);
+    }
+
+    /**
+     * Build the context from chunks already retrieved, in any order; only the best {@code topK} are considered.
+     */
+    public Context pack(List<Chunk> chunks) {
+        return pack(chunks, null);
+    }
+
+    /**
+     * {@link #pack(List)} for a question with embedding {@code question}. A diverse builder considers the best
+     * candidates instead, and picks {@code topK} of them by MMR, with relevance the cosine to {@code question} or,
+     * without it, the score relative to the best.
+     */
+    public Context pack(List<Chunk> chunks, float[] question) {
+        final var ranked = chunks.stream()
+            .sorted(Comparator.comparingDouble(Chunk::score).reversed())
+            .limit(candidates)
+            .toList();
+
+        final var seen = new HashSet<String>();
+        final var unique = new ArrayList<Chunk>(ranked.size());
+        final var dropped = new ArrayList<Dropped>();
+        for (final var chunk : ranked) {
+            if (seen.add(EmbeddingCache.normalize(chunk.text()))) {
+                unique.add(chunk);
+            } else {
+                dropped.add(dropped(chunk, DropReason.DUPLICATE));
+            }
+        }
+        final var selected = mmr != null
+            ? select(unique, question, dropped)
+            : unique.subList(0, Math.min(topK, unique.size()));
+
+        final var included = new ArrayList<Chunk>();
+        final var text = new StringBuilder();
+        var used = 0;
+        for (final var chunk : selected) {
+            final var chunkCost = cost.applyAsInt(chunk.text() + SEPARATOR);
+            if (used + chunkCost > budget) {
+                dropped.add(new Dropped(preview(chunk.text()), chunk.score(), chunkCost, DropReason.OVER_BUDGET));
+            } else {
+                included.add(chunk);
+                text.append(chunk.text()).append(SEPARATOR);
+                used += chunkCost;
+            }
+        }
+        return new Context(text.toString(), included, dropped, ranked.size(), used, budget);
+    }
+
+    private List<Chunk> select(List<Chunk> chunks, float[] question, List<Dropped> dropped) {
+        final var relevance = new double[chunks.size()];
+        final var chunkVectors = new float[chunks.size()][];
+        final var best = chunks.isEmpty() ? 0 : chunks.getFirst().score();
+        for (int i = 0; i < relevance.length; i++) {
+            final var chunk = chunks.get(i);
+            chunkVectors[i] = chunk.vector();
+            relevance[i] = question != null && chunk.vector() != null
+                ? VectorOps.cosine(question, chunk.vector())
+                : best > 0 ? chunk.score() / best : 0;
+        }
+        final var selection = mmr.select(relevance, chunkVectors, topK);
+        for (final var i : selection.redundant()) {
+            dropped.add(dropped(chunks.get(i), DropReason.REDUNDANT));
+        }
+        for (final var i : selection.lowRelevance()) {
+            dropped.add(dropped(chunks.get(i), DropReason.LOW_RELEVANCE));
+        }
+        for (final var i : selection.notSelected()) {
+            dropped.add(dropped(chunks.get(i), DropReason.NOT_SELECTED));
+        }
+        final var selected = new ArrayList<Chunk>(selection.selected().length);
+        for (final var i : selection.selected()) {
+            selected.add(chunks.get(i));
+        }
+        return selected;
+    }
+
+    private float[] vector(SearchDocument document) {
+        if (vectorField != null && document.get(vectorField) instanceof List<?> values && !values.isEmpty()) {
+            final var vector = new float[values.size()];
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] = ((Number) values.get(i)).floatValue();
+            }
+            return vector;
+        }
+        return null;
+    }
+
+    private Dropped dropped(Chunk chunk, DropReason reason) {
+        return new Dropped(preview(chunk.text()), chunk.score(), cost.applyAsInt(chunk.text() + SEPARATOR), reason);
+    }
+
+    private static String preview(String text) {
+        final var oneLine = EmbeddingCache.normalize(text);
+        return oneLine.length() <= PREVIEW_CHARS ? oneLine : oneLine.substring(0, PREVIEW_CHARS) + "...";
+    }
+
+}
@@ -0,0 +1,134 @@
+package com.soprasteria.azure.openai.rag;
+
+import java.util.Arrays;
+
+import com.soprasteria.azure.openai.journey3.vector.VectorOps;
+
+/**
+ * Maximal Marginal Relevance: picks chunks one at a time, each maximizing
+ * {@code lambda * relevance - (1 - lambda) * similarity to the closest chunk already picked}, so a chunk that only
+ * repeats what is already in the prompt loses to a less relevant one that adds something. Candidates at least
+ * {@code maxSimilarity} similar to a picked chunk are redundant and never picked.
+ * <p>
+ * Relevance is taken relative to the most relevant candidate, and candidates below {@code minRelevance} of it are
+ * never picked either: once the relevant chunks are in, a shorter prompt is better than one filled up with chunks
+ * that are merely different.
+ * <p>
+ * Similarity is the cosine of the chunks' vectors. A candidate without a vector is never redundant and competes on
+ * relevance alone.
+ */
+public final class MmrSelector {
+
+    /**
+     * Every candidate index is in exactly one of the arrays.
+     *
+     * @param selected     candidate indexes in the order they were picked, at most {@code k}
+     * @param redundant    candidate indexes left out as near-copies of a picked one, with the similarity that did it
+     * @param lowRelevance candidate indexes left out as below {@code minRelevance}
+     * @param notSelected  candidate indexes that were eligible but not picked before {@code k} were
+     */
+    public record Selection(int[] selected, int[] redundant, double[] redundantSimilarity, int[] lowRelevance,
+                            int[] notSelected) {
+    }
+
+    private final double lambda;
+    private final double maxSimilarity;
+    private final double minRelevance;
+
+    /**
+     * @param lambda        weight of relevance against novelty, 1 for plain relevance order
+     * @param maxSimilarity similarity to a picked chunk at which a candidate is dropped as redundant
+     * @param minRelevance  fraction of the best relevance a candidate needs to be picked at all
+     */
+    public MmrSelector(double lambda, double maxSimilarity, double minRelevance) {
+        if (lambda < 0 || lambda > 1) {
+            throw new IllegalArgumentException("lambda must be between 0 and 1, was " + lambda);
+        }
+        this.lambda = lambda;
+        this.maxSimilarity = maxSimilarity;
+        this.minRelevance = minRelevance;
+    }
+
+    public static MmrSelector withDefaults() {
+        return new MmrSelector(0.7, 0.92, 0.5);
+    }
+
+    /**
+     * Pick up to {@code k} of the candidates.
+     *
+     * @param relevance relevance of each candidate to the question, higher is better
+     * @param vectors   vector of each candidate, or null where there is none
+     */
+    public Selection select(double[] relevance, float[][] vectors, int k) {
+        final var n = relevance.length;
+        var mostRelevant = 0.0;
+        for (final var value : relevance) {
+            mostRelevant = Math.max(mostRelevant, value);
+        }
+        // Similarity of every candidate to the closest picked one, updated as chunks are picked.
+        final var closest = new double[n];
+        final var state = new byte[n];
+        final byte open = 0, picked = 1, redundant = 2;
+        final var selected = new int[Math.min(k, n)];
+        final var dropped = new int[n];
+        final var droppedSimilarity = new double[n];
+        var selectedCount = 0;
+        var droppedCount = 0;
+        while (selectedCount < selected.length) {
+            var best = -1;
+            var bestScore = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < n; i++) {
+                if (state[i] == open && relevantEnough(relevance[i], mostRelevant)) {
+                    final var relative = mostRelevant > 0 ? relevance[i] / mostRelevant : 0;
+                    final var score = lambda * relative - (1 - lambda) * closest[i];
+                    if (score > bestScore) {
+                        bestScore = score;
+                        best = i;
+                    }
+                }
+            }
+            if (best < 0) {
+                break;
+            }
+            state[best] = picked;
+            selected[selectedCount++] = best;
+            if (vectors[best] == null) {
+                continue;
+            }
+            for (int i = 0; i < n; i++) {
+                if (state[i] != open || vectors[i] == null) {
+                    continue;
+                }
+                final double similarity = VectorOps.cosine(vectors[best], vectors[i]);
+                closest[i] = Math.max(closest[i], similarity);
+                if (similarity >= maxSimilarity) {
+                    state[i] = redundant;
+                    dropped[droppedCount] = i;
+                    droppedSimilarity[droppedCount++] = similarity;
+                }
+            }
+        }
+        final var lowRelevance = new int[n];
+        final var notSelected = new int[n];
+        var lowRelevanceCount = 0;
+        var notSelectedCount = 0;
+        for (int i = 0; i < n; i++) {
+            if (state[i] != open) {
+                continue;
+            }
+            if (relevantEnough(relevance[i], mostRelevant)) {
+                notSelected[notSelectedCount++] = i;
+            } else {
+                lowRelevance[lowRelevanceCount++] = i;
+            }
+        }
+        return new Selection(Arrays.copyOf(selected, selectedCount), Arrays.copyOf(dropped, droppedCount),
+            Arrays.copyOf(droppedSimilarity, droppedCount), Arrays.copyOf(lowRelevance, lowRelevanceCount),
+            Arrays.copyOf(notSelected, notSelectedCount));
+    }
+
+    private boolean relevantEnough(double relevance, double mostRelevant) {
+        return mostRelevant <= 0 || relevance / mostRelevant >= minRelevance;
+    }
+
+}
@@ -0,0 +1,299 @@
+package com.soprasteria.azure.openai.rag;
+
+/**
+ * Hand-written equivalents of the pre-tokenization patterns of {@link BpeTokenizer.Encoding}: each method returns
+ * where the piece starting at {@code start} ends, exactly as the next {@code Matcher.find()} of the pattern would, but
+ * without the regex engine's backtracking, which costs more than the merging itself.
+ * <p>
+ * The alternatives are tried in the pattern's order, and each comment quotes the one it implements. Character classes
+ * follow {@code Pattern.UNICODE_CHARACTER_CLASS}: {@code \s} is Unicode White_Space, and the cases of
+ * {@code (?i:...)} are folded as Java does.
+ */
+final class PieceSplitter {
+
+    private PieceSplitter() {
+    }
+
+    static int cl100k(CharSequence text, int start) {
+        final var length = text.length();
+        final var c = Character.codePointAt(text, start);
+        // (?i:'s|'t|'re|'ve|'m|'ll|'d)
+        final var contraction = contraction(text, start);
+        if (contraction > start) {
+            return contraction;
+        }
+        // [^\r\n\p{L}\p{N}]?\p{L}+
+        if (Character.isLetter(c)) {
+            return skipLetters(text, start);
+        }
+        final var next = start + Character.charCount(c);
+        if (isPrefix(c) && next < length && Character.isLetter(Character.codePointAt(text, next))) {
+            return skipLetters(text, next);
+        }
+        // \p{N}{1,3}
+        if (isNumber(c)) {
+            return skipNumbers(text, start);
+        }
+        return punctuationOrSpace(text, start, c, next, false);
+    }
+
+    static int o200k(CharSequence text, int start) {
+        final var length = text.length();
+        final var c = Character.codePointAt(text, start);
+        final var next = start + Character.charCount(c);
+        final var prefix = isPrefix(c) && next < length;
+        // [^\r\n\p{L}\p{N}]?[\p{Lu}\p{Lt}\p{Lm}\p{Lo}\p{M}]*[\p{Ll}\p{Lm}\p{Lo}\p{M}]+(?i:'s|'t|'re|'ve|'m|'ll|'d)?
+        var end = prefix ? upperThenLower(text, next) : -1;
+        if (end < 0) {
+            end = upperThenLower(text, start);
+        }
+        // [^\r\n\p{L}\p{N}]?[\p{Lu}\p{Lt}\p{Lm}\p{Lo}\p{M}]+[\p{Ll}\p{Lm}\p{Lo}\p{M}]*(?i:'s|'t|'re|'ve|'m|'ll|'d)?
+        if (end < 0 && prefix) {
+            end = upperRun(text, next);
+        }
+        if (end < 0) {
+            end = upperRun(text, start);
+        }
+        if (end >= 0) {
+            return Math.max(end, contraction(text, end));
+        }
+        // \p{N}{1,3}
+        if (isNumber(c)) {
+            return skipNumbers(text, start);
+        }
+        return punctuationOrSpace(text, start, c, next, true);
+    }
+
+    /**
+     * The alternatives both encodings end with:
+     * {@code  ?[^\s\p{L}\p{N}]+[\r\n]*|\s*[\r\n]+|\s+(?!\S)|\s+}, where {@code o200k_base} also takes slashes
+     * after the line breaks.
+     */
+    private static int punctuationOrSpace(CharSequence text, int start, int c, int next, boolean slashes) {
+        final var length = text.length();
+        if (isPunctuation(c)) {
+            return skipLineBreaks(text, skipPunctuation(text, next), slashes);
+        }
+        if (c == ' ' && next < length && isPunctuation(Character.codePointAt(text, next))) {
+            return skipLineBreaks(text, skipPunctuation(text, next), slashes);
+        }
+        // Only white space is left.
+        var end = start;
+        var lastLineBreak = -1;
+        while (end < length) {
+            final var cp = Character.codePointAt(text, end);
+            if (!isWhiteSpace(cp)) {
+                break;
+            }
+            if (cp == '\r' || cp == '\n') {
+                lastLineBreak = end;
+            }
+            end += Character.charCount(cp);
+        }
+        if (lastLineBreak >= 0) {
+            return lastLineBreak + 1;
+        }
+        if (end == length) {
+            return end;
+        }
+        // Leave the last space to the word after it, unless it is the only one.
+        final var last = end - Character.charCount(Character.codePointBefore(text, end));
+        return last > start ? last : end;
+    }
+
+    /**
+     * End of {@code [UPPER]*[LOWER]+} at {@code start}, or -1. When the upper run is not followed by a lower letter,
+     * the regex gives back upper letters until one that is also lower (modifier, other letter or mark).
+     */
+    private static int upperThenLower(CharSequence text, int start) {
+        final var length = text.length();
+        var upperEnd = start;
+        var lastLower = -1;
+        while (upperEnd < length) {
+            final var cp = Character.codePointAt(text, upperEnd);
+            if (!isUpper(cp)) {
+                break;
+            }
+            if (isLower(cp)) {
+                lastLower = upperEnd;
+            }
+            upperEnd += Character.charCount(cp);
+        }
+        if (upperEnd < length && isLower(Character.codePointAt(text, upperEnd))) {
+            return skipLower(text, upperEnd);
+        }
+        return lastLower < 0 ? -1 : lastLower + Character.charCount(Character.codePointAt(text, lastLower));
+    }
+
+    /**
+     * End of {@code [UPPER]+[LOWER]*} at {@code start}, or -1.
+     */
+    private static int upperRun(CharSequence text, int start) {
+        final var length = text.length();
+        var end = start;
+        while (end < length) {
+            final var cp = Character.codePointAt(text, end);
+            if (!isUpper(cp)) {
+                break;
+            }
+            end += Character.charCount(cp);
+        }
+        return end == start ? -1 : skipLower(text, end);
+    }
+
+    /**
+     * End of the contraction at {@code start}, or {@code start} if there is none.
+     */
+    private static int contraction(CharSequence text, int start) {
+        final var length = text.length();
+        if (start + 1 >= length || text.charAt(start) != '\'') {
+            return start;
+        }
+        final var first = text.charAt(start + 1);
+        if (matches(first, 's') || matches(first, 't') || matches(first, 'm') || matches(first, 'd')) {
+            return start + 2;
+        }
+        if (start + 2 < length) {
+            final var second = text.charAt(start + 2);
+            if (matches(first, 'r') && matches(second, 'e')
+                || matches(first, 'v') && matches(second, 'e')
+                || matches(first, 'l') && matches(second, 'l')) {
+                return start + 3;
+            }
+        }
+        return start;
+    }
+
+    /**
+     * Case-insensitive match of {@code c} against the lower case ASCII letter {@code letter}, folding like
+     * {@code (?iu)} does, so that for instance the long s matches s.
+     */
+    private static boolean matches(char c, char letter) {
+        return c == letter || Character.toLowerCase(Character.toUpperCase(c)) == letter;
+    }
+
+    private static int skipLetters(CharSequence text, int from) {
+        var end = from;
+        while (end < text.length()) {
+            final var cp = Character.codePointAt(text, end);
+            if (!Character.isLetter(cp)) {
+                break;
+            }
+            end += Character.charCount(cp);
+        }
+        return end;
+    }
+
+    private static int skipLower(CharSequence text, int from) {
+        var end = from;
+        while (end < text.length()) {
+            final var cp = Character.codePointAt(text, end);
+            if (!isLower(cp)) {
+                break;
+            }
+            end += Character.charCount(cp);
+        }
+        return end;
+    }
+
+    private static int skipNumbers(CharSequence text, int from) {
+        var end = from;
+        for (int i = 0; i < 3 && end < text.length(); i++) {
+            final var cp = Character.codePointAt(text, end);
+            if (!isNumber(cp)) {
+                break;
+            }
+            end += Character.charCount(cp);
+        }
+        return end;
+    }
+
+    private static int skipPunctuation(CharSequence text, int from) {
+        var end = from;
+        while (end < text.length()) {
+            final var cp = Character.codePointAt(text, end);
+            if (!isPunctuation(cp)) {
+                break;
+            }
+            end += Character.charCount(cp);
+        }
+        return end;
+    }
+
+    private static int skipLineBreaks(CharSequence text, int from, boolean slashes) {
+        var end = from;
+        while (end < text.length()) {
+            final var c = text.charAt(end);
+            if (c != '\r' && c != '\n' && (!slashes || c != '/')) {
+                break;
+            }
+            end++;
+        }
+        return end;
+    }
+
+    /**
+     * {@code [^\r\n\p{L}\p{N}]}
+     */
+    private static boolean isPrefix(int cp) {
+        return cp != '\r' && cp != '\n' && !Character.isLetter(cp) && !isNumber(cp);
+    }
+
+    /**
+     * {@code [^\s\p{L}\p{N}]}
+     */
+    private static boolean isPunctuation(int cp) {
+        return !isWhiteSpace(cp) && !Character.isLetter(cp) && !isNumber(cp);
+    }
+
+    /**
+     * {@code \p{N}}
+     */
+    private static boolean isNumber(int cp) {
+        if (cp < 0x80) {
+            return cp >= '0' && cp <= '9';
+        }
+        final var type = Character.getType(cp);
+        return type == Character.DECIMAL_DIGIT_NUMBER || type == Character.LETTER_NUMBER
+            || type == Character.OTHER_NUMBER;
+    }
+
+    /**
+     * {@code \s} with Unicode character classes: the White_Space property.
+     */
+    private static boolean isWhiteSpace(int cp) {
+        if (cp < 0x80) {
+            return cp == ' ' || cp >= '\t' && cp <= '\r';
+        }
+        return cp == 0x85 || Character.isSpaceChar(cp);
+    }
+
+    /**
+     * {@code [\p{Lu}\p{Lt}\p{Lm}\p{Lo}\p{M}]}
+     */
+    private static boolean isUpper(int cp) {
+        if (cp < 0x80) {
+            return cp >= 'A' && cp <= 'Z';
+        }
+        final var type = Character.getType(cp);
+        return type == Character.UPPERCASE_LETTER || type == Character.TITLECASE_LETTER || isLowerOrUpper(type);
+    }
+
+    /**
+     * {@code [\p{Ll}\p{Lm}\p{Lo}\p{M}]}
+     */
+    private static boolean isLower(int cp) {
+        if (cp < 0x80) {
+            return cp >= 'a' && cp <= 'z';
+        }
+        final var type = Character.getType(cp);
+        return type == Character.LOWERCASE_LETTER || isLowerOrUpper(type);
+    }
+
+    private static boolean isLowerOrUpper(int type) {
+        return type == Character.MODIFIER_LETTER || type == Character.OTHER_LETTER
+            || type == Character.NON_SPACING_MARK || type == Character.ENCLOSING_MARK
+            || type == Character.COMBINING_SPACING_MARK;
+    }
+
+}
@@ -0,0 +1,254 @@
+package com.soprasteria.azure.openai.rag;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+import com.azure.ai.openai.OpenAIClient;
+import com.azure.ai.openai.models.ChatCompletionsOptions;
+import com.azure.ai.openai.models.ChatRequestMessage;
+import com.azure.ai.openai.models.ChatRequestSystemMessage;
+import com.azure.ai.openai.models.ChatRequestUserMessage;
+import com.azure.search.documents.SearchClient;
+import com.soprasteria.azure.openai.embedding.EmbeddingBatcher;
+import com.soprasteria.azure.openai.embedding.EmbeddingCache;
+import com.soprasteria.azure.openai.journey2.SearchResultCache;
+import com.soprasteria.azure.openai.journey2.SearchResultReader.Passage;
+import com.soprasteria.azure.openai.journey2.StreamingSearchClient;
+
+/**
+ * Answers questions from the handbook: embeds the question, searches the index, builds the context and streams the
+ * answer. One instance serves every request, sharing its clients, their connection pools, the embedding cache and
+ * the search result cache, which whoever uploads documents to the index must {@linkplain SearchResultCache#invalidate
+ * invalidate}.
+ * <p>
+ * Each backend is called behind a {@link Bulkhead} of its own, and every step gives up at the request's deadline, a
+ * {@link System#nanoTime()} value: waiting for a permit beyond the bulkhead's short queue wait ends in
+ * {@link Bulkhead.Rejected}, and a step still running at the deadline in {@link DeadlineExceeded}. Backend calls run
+ * on threads of their own and are interrupted at the deadline, so no call outlives the request; the permit of an
+ * interrupted call is held until the call has actually ended.
+ */
+public class RagPipeline {
+
+    private static final String SYSTEM_PROMPT = """
+        Du er en AI Assistent som har innsikt i Sopra Steria sin personalhåndbok vedlagt som context.
+        Vær kortfattet og detaljert i svarene dine, bruk kun informasjon fra fra personalhåndboken.
+
+        Context:
+        %s
+        """;
+    public static final String VECTOR_FIELD = "text_vector";
+
+    /**
+     * @param candidates       hits MMR chooses the context from
+     * @param chatStallTimeout longest wait for the next piece of a streamed answer
+     */
+    public record Settings(String chatModel, String embeddingModel, int embeddingDimensions, int topK, int maxTokens,
+                           MmrSelector mmr, int candidates, double temperature, Duration chatStallTimeout) {
+    }
+
+    /**
+     * The request's deadline passed during a step.
+     */
+    public static final class DeadlineExceeded extends RuntimeException {
+
+        DeadlineExceeded(String step) {
+            super("Deadline exceeded during " + step);
+        }
+    }
+
+    /**
+     * A question with its context, ready to be answered.
+     */
+    public record Retrieval(String question, ContextBuilder.Context context, List<ChatRequestMessage> messages,
+                            int promptTokens, double millis) {
+    }
+
+    private final OpenAIClient embeddingsClient;
+    private final OpenAIClient chatClient;
+    private final SearchClient searchClient;
+    private final StreamingSearchClient streamingSearch;
+    private final EmbeddingCache embeddingCache;
+    private final SearchResultCache<List<Passage>> searchCache;
+    private final Settings settings;
+    private final BpeTokenizer tokenizer;
+    private final ContextBuilder contextBuilder;
+    private final Bulkhead embeddings;
+    private final Bulkhead search;
+    private final Bulkhead chat;
+    private final ExecutorService calls = Executors.newVirtualThreadPerTaskExecutor();
+
+    /**
+     * @param embeddingsClient client for the embeddings deployment, may be the same as {@code chatClient}
+     */
+    public RagPipeline(OpenAIClient embeddingsClient, OpenAIClient chatClient, SearchClient searchClient,
+                       EmbeddingCache embeddingCache, SearchResultCache<List<Passage>> searchCache,
+                       Settings settings, Bulkhead embeddings, Bulkhead search, Bulkhead chat) {
+        this.embeddingsClient = embeddingsClient;
+        this.chatClient = chatClient;
+        this.searchClient = searchClient;
+        this.embeddingCache = embeddingCache;
+        this.searchCache = searchCache;
+        this.settings = settings;
+        this.tokenizer = BpeTokenizer.forModel(settings.chatModel());
+        this.contextBuilder = ContextBuilder.tokens(settings.topK(), settings.maxTokens(), tokenizer);
+        // Hits are decoded as the response streams in, reading only the fields the context is built from.
+        this.streamingSearch = new StreamingSearchClient(searchClient,
+            contextBuilder.diverse(settings.mmr(), settings.candidates(), VECTOR_FIELD, null).reader());
+        this.embeddings = embeddings;
+        this.search = search;
+        this.chat = chat;
+    }
+
+    /**
+     * Embed {@code question}, search for it and build the prompt.
+     */
+    public Retrieval retrieve(String question, long deadline) {
+        final var start = System.nanoTime();
+        // Embed the question here rather than with a VectorizableTextQuery, so repeated questions are served from
+        // the cache instead of being embedded by the service again.
+        final var questionVector = embed(question, deadline);
+        checkDeadline(deadline, "embedding");
+
+        // Chunks are chosen by MMR among more candidates, with their vectors from the index or, when the index does
+        // not return them, from the embedding cache, embedding the chunks it misses in one request.
+        final var builder = contextBuilder.diverse(settings.mmr(), settings.candidates(), VECTOR_FIELD,
+            chunks -> embedAll(chunks, deadline));
+        final var request = builder.bound(searchRequest(question, questionVector));
+        // The bounded search returns a single page, read in full while the permit is held. Repeated questions are
+        // served from the cache; a request waiting for another's search of the same question still gives up at its
+        // own deadline.
+        final List<Passage> results = within(deadline, "search", () -> searchCache.get(searchClient.getIndexName(),
+            question, request, () -> search.call(deadline, () -> List.copyOf(streamingSearch.search(request)))));
+        checkDeadline(deadline, "search");
+        final var context = builder.buildFromPassages(results, questionVector);
+
+        final var systemPrompt = String.format(SYSTEM_PROMPT, context.text());
+        final List<ChatRequestMessage> messages = List.of(
+            new ChatRequestSystemMessage(systemPrompt),
+            new ChatRequestUserMessage(question));
+        return new Retrieval(question, context, messages, tokenizer.count(systemPrompt) + tokenizer.count(question),
+            (System.nanoTime() - start) / 1_000_000.0);
+    }
+
+    /**
+     * Take the chat permit an answer runs under, for a caller that must know there is capacity before it starts
+     * streaming. {@link Bulkhead.Rejected} if none is free within the chat bulkhead's queue wait.
+     */
+    public Bulkhead.Permit admit(long deadline) {
+        return chat.enter(deadline);
+    }
+
+    /**
+     * Stream the answer to {@code retrieval}, passing every piece of text to {@code sink}.
+     */
+    public StreamingAnswer.Result answer(Retrieval retrieval, Consumer<String> sink, long deadline) {
+        try (final var permit = admit(deadline)) {
+            return answer(retrieval, permit, sink, deadline);
+        }
+    }
+
+    /**
+     * {@link #answer(Retrieval, Consumer, long)} under {@code permit}, taken by {@link #admit} and still held.
+     */
+    public StreamingAnswer.Result answer(Retrieval retrieval, Bulkhead.Permit permit, Consumer<String> sink,
+                                         long deadline) {
+        Objects.requireNonNull(permit, "permit");
+        final var options = new ChatCompletionsOptions(retrieval.messages()).setTemperature(settings.temperature());
+        return within(deadline, "answer", () -> StreamingAnswer.stream(chatClient, settings.chatModel(), options,
+            text -> {
+                checkDeadline(deadline, "answer");
+                sink.accept(text);
+            }, settings.chatStallTimeout()));
+    }
+
+    public BpeTokenizer tokenizer() {
+        return tokenizer;
+    }
+
+    public List<Bulkhead.Stats> bulkheads() {
+        return List.of(embeddings.stats(), search.stats(), chat.stats());
+    }
+
+    public EmbeddingCache.Stats embeddingCache() {
+        return embeddingCache.stats();
+    }
+
+    public SearchResultCache.Stats searchCache() {
+        return searchCache.stats();
+    }
+
+    private float[] embed(String text, long deadline) {
+        return embedAll(List.of(text), deadline).getFirst();
+    }
+
+    /**
+     * Embeddings of {@code texts} from the cache, with the ones it misses embedded in one request.
+     */
+    private List<float[]> embedAll(List<String> texts, long deadline) {
+        return embeddingCache.getAll(settings.embeddingModel(), settings.embeddingDimensions(), texts,
+            missing -> within(deadline, "embedding", () -> embeddings.call(deadline, () -> EmbeddingBatcher.embed(
+                embeddingsClient, settings.embeddingModel(), settings.embeddingDimensions(), missing))));
+    }
+
+    /**
+     * Run {@code call} on a thread of its own and wait for it until {@code deadline}, then interrupt it and throw
+     * {@link DeadlineExceeded}. Exceptions of the call are rethrown as they are, checked ones wrapped.
+     */
+    private <T> T within(long deadline, String step, Bulkhead.Call<T> call) {
+        final var task = calls.submit(call::call);
+        try {
+            return task.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            task.cancel(true);
+            throw new DeadlineExceeded(step);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IllegalStateException(step + " failed", e.getCause());
+        } catch (InterruptedException e) {
+            task.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted during " + step, e);
+        }
+    }
+
+    private static void checkDeadline(long deadline, String step) {
+        if (System.nanoTime() - deadline > 0) {
+            throw new DeadlineExceeded(step);
+        }
+    }
+
+    /**
+     * REST body of a hybrid search for {@code question}, with its embedding as the vector query.
+     */
+    private static Map<String, Object> searchRequest(String question, float[] vector) {
+        final var vectorQuery = new LinkedHashMap<String, Object>();
+        vectorQuery.put("kind", "vector");
+        vectorQuery.put("vector", toList(vector));
+        vectorQuery.put("fields", VECTOR_FIELD);
+        final var request = new LinkedHashMap<String, Object>();
+        request.put("search", question);
+        request.put("vectorQueries", List.of(vectorQuery));
+        return request;
+    }
+
+    private static List<Float> toList(float[] vector) {
+        final var list = new ArrayList<Float>(vector.length);
+        for (float value : vector) {
+            list.add(value);
+        }
+        return list;
+    }
+
+}
@@ -0,0 +1,155 @@
+package com.soprasteria.azure.openai.rag;
+
+import java.io.PrintStream;
+import java.time.Duration;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import com.azure.ai.openai.OpenAIClient;
+import com.azure.ai.openai.models.ChatCompletions;
+import com.azure.ai.openai.models.ChatCompletionsOptions;
+
+/**
+ * Streams a chat completion and hands each piece of the answer to a sink as it arrives, so the reader sees the first
+ * words long before the whole answer exists. Time to first token is measured separately from the total, since it is
+ * what users perceive as the answer's latency.
+ * <p>
+ * The stream is read on a thread of its own and closed whenever the answer ends early, because the sink failed, no
+ * update arrived within the stall timeout or the caller was interrupted, so the model stops generating for no one.
+ */
+public final class StreamingAnswer {
+
+    /**
+     * Default longest wait for the next update, including the first.
+     */
+    public static final Duration DEFAULT_STALL_TIMEOUT = Duration.ofSeconds(30);
+
+    /**
+     * No update arrived within the stall timeout.
+     */
+    public static final class Stalled extends RuntimeException {
+
+        Stalled(Duration timeout, int chunks) {
+            super("No update from the model within " + timeout.toMillis() + " ms, after " + chunks + " chunks");
+        }
+    }
+
+    /**
+     * An update read from the stream, the error that ended it, or its end when both are null.
+     */
+    private record Signal(ChatCompletions update, RuntimeException error) {
+    }
+
+    private static final Signal END = new Signal(null, null);
+
+    /**
+     * @param timeToFirstTokenMillis from sending the request to the first piece of answer text
+     * @param totalMillis            from sending the request to the end of the stream
+     * @param chunks                 number of streamed updates that carried text
+     * @param finishReason           why the model stopped, as reported in the last update
+     */
+    public record Result(String answer, double timeToFirstTokenMillis, double totalMillis, int chunks,
+                         String finishReason) {
+
+        @Override
+        public String toString() {
+            return String.format("first token after %.0f ms, done after %.0f ms (%d chunks, %s)",
+                timeToFirstTokenMillis, totalMillis, chunks, finishReason);
+        }
+    }
+
+    private StreamingAnswer() {
+    }
+
+    /**
+     * Stream the answer of {@code deployment} to {@code options}, passing every piece of text to {@code sink}, with
+     * the {@link #DEFAULT_STALL_TIMEOUT}.
+     */
+    public static Result stream(OpenAIClient client, String deployment, ChatCompletionsOptions options,
+                                Consumer<String> sink) {
+        return stream(client, deployment, options, sink, DEFAULT_STALL_TIMEOUT);
+    }
+
+    /**
+     * {@link #stream(OpenAIClient, String, ChatCompletionsOptions, Consumer)} giving up with {@link Stalled} when no
+     * update arrives within {@code stallTimeout}.
+     */
+    public static Result stream(OpenAIClient client, String deployment, ChatCompletionsOptions options,
+                                Consumer<String> sink, Duration stallTimeout) {
+        final var start = System.nanoTime();
+        final var signals = new LinkedBlockingQueue<Signal>();
+        final var reader = Thread.ofVirtual().name("chat-stream").start(() -> {
+            // Closing the stream cancels the response, which also happens when this thread is interrupted.
+            try (final var updates = client.getChatCompletionsStream(deployment, options).stream()) {
+                updates.forEach(update -> signals.add(new Signal(update, null)));
+                signals.add(END);
+            } catch (RuntimeException e) {
+                signals.add(new Signal(null, e));
+            }
+        });
+
+        final var answer = new StringBuilder();
+        var firstToken = -1L;
+        var chunks = 0;
+        String finishReason = null;
+        try {
+            while (true) {
+                final var signal = signals.poll(stallTimeout.toNanos(), TimeUnit.NANOSECONDS);
+                if (signal == null) {
+                    throw new Stalled(stallTimeout, chunks);
+                }
+                if (signal == END) {
+                    break;
+                }
+                if (signal.error() != null) {
+                    throw signal.error();
+                }
+                // The first update only carries prompt filter results, and some carry no choices at all.
+                final var choices = signal.update().getChoices();
+                if (choices == null) {
+                    continue;
+                }
+                for (final var choice : choices) {
+                    if (choice.getFinishReason() != null) {
+                        finishReason = choice.getFinishReason().toString();
+                    }
+                    final var delta = choice.getDelta();
+                    final var text = delta != null ? delta.getContent() : null;
+                    if (text == null || text.isEmpty()) {
+                        continue;
+                    }
+                    if (firstToken < 0) {
+                        firstToken = System.nanoTime();
+                    }
+                    chunks++;
+                    answer.append(text);
+                    sink.accept(text);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while streaming the answer", e);
+        } finally {
+            reader.interrupt();
+        }
+        final var end = System.nanoTime();
+        return new Result(answer.toString(), millis(start, firstToken < 0 ? end : firstToken), millis(start, end),
+            chunks, finishReason);
+    }
+
+    /**
+     * A sink writing to {@code out} and flushing after every piece, so text appears as soon as it arrives.
+     */
+    public static Consumer<String> printingTo(PrintStream out) {
+        return text -> {
+            out.print(text);
+            out.flush();
+        };
+    }
+
+    private static double millis(long from, long to) {
+        return (to - from) / 1_000_000.0;
+    }
+
+}
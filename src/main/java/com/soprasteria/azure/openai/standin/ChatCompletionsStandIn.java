@@ -0,0 +1,287 @@
+package com.soprasteria.azure.openai.standin;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local HTTP stand-in for the Azure OpenAI chat completions operation,
+ * {@code POST /openai/deployments/{deployment}/chat/completions}, answering with words taken from the prompt.
+ * <p>
+ * Latency follows the shape of a real model: after the {@link FaultProfile} delay, the first token waits for the
+ * prompt to be read at {@code prefillPerThousandTokens}, and every further token takes {@code tokenInterval}; latency
+ * measured against the stand-in reproduces those settings and says nothing about the service itself. With
+ * {@code "stream": true} the answer is sent as server-sent events, one word per update, after an update carrying
+ * only prompt filter results, as the service does. Prompt tokens are estimated at four characters each. Build clients
+ * pointed at it with {@code Utils.keyedEndpoint}; keys are not checked.
+ */
+public class ChatCompletionsStandIn implements AutoCloseable {
+
+    private static final Pattern COMPLETIONS_PATH =
+        Pattern.compile("^/openai/deployments/([^/]+)/chat/completions$");
+    private static final int DEFAULT_MAX_TOKENS = 60;
+    private static final int CHARS_PER_TOKEN = 4;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final FaultProfile faults;
+    private final Duration prefillPerThousandTokens;
+    private final Duration tokenInterval;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder promptTokens = new LongAdder();
+    private final LongAdder abandoned = new LongAdder();
+    private final AtomicInteger concurrent = new AtomicInteger();
+    private final AtomicInteger maxConcurrent = new AtomicInteger();
+
+    public static void main(String[] args) throws Exception {
+        final var port = args.length > 0 ? Integer.parseInt(args[0]) : 8091;
+        final var standIn = new ChatCompletionsStandIn(port, FaultProfile.REALISTIC, Duration.ofMillis(100),
+            Duration.ofMillis(15));
+        System.out.println("Chat completions stand-in listening on " + standIn.endpoint());
+        Thread.currentThread().join();
+    }
+
+    /**
+     * Start a stand-in on {@code port} (0 picks a free port).
+     *
+     * @param prefillPerThousandTokens time to first token per thousand prompt tokens
+     * @param tokenInterval            time between answer tokens
+     */
+    public ChatCompletionsStandIn(int port, FaultProfile faults, Duration prefillPerThousandTokens,
+                                  Duration tokenInterval) throws IOException {
+        this.faults = faults;
+        this.prefillPerThousandTokens = prefillPerThousandTokens;
+        this.tokenInterval = tokenInterval;
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        this.server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        this.server.setExecutor(executor);
+        this.server.createContext("/", this::handle);
+        this.server.start();
+    }
+
+    public String endpoint() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    /**
+     * Completions answered successfully.
+     */
+    public long requests() {
+        return requests.sum();
+    }
+
+    /**
+     * Estimated prompt tokens of all completions answered.
+     */
+    public long promptTokens() {
+        return promptTokens.sum();
+    }
+
+    /**
+     * Streamed answers the client stopped reading before the end.
+     */
+    public long abandonedStreams() {
+        return abandoned.sum();
+    }
+
+    /**
+     * Most requests that were being served at the same time.
+     */
+    public int maxConcurrentRequests() {
+        return maxConcurrent.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.close();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+        try {
+            faults.delay();
+            if (faults.throttle()) {
+                sendError(exchange, 429, "429", "Simulated rate limit by the chat completions stand-in.");
+                return;
+            }
+            if (faults.unavailable()) {
+                sendError(exchange, 503, "ServiceUnavailable", "Simulated outage by the chat completions stand-in.");
+                return;
+            }
+            final var matcher = COMPLETIONS_PATH.matcher(exchange.getRequestURI().getPath());
+            if (!"POST".equals(exchange.getRequestMethod()) || !matcher.matches()) {
+                sendError(exchange, 404, "404", "No route for " + exchange.getRequestMethod() + " "
+                    + exchange.getRequestURI().getPath());
+                return;
+            }
+            completions(exchange, matcher.group(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (JsonProcessingException e) {
+            sendError(exchange, 400, "invalid_request", e.getOriginalMessage());
+        } catch (IOException e) {
+            // The client went away in the middle of a streamed answer.
+            abandoned.increment();
+        } catch (IllegalArgumentException e) {
+            sendError(exchange, 400, "invalid_request", String.valueOf(e.getMessage()));
+        } catch (Exception e) {
+            sendError(exchange, 500, "InternalServerError", e.getClass().getSimpleName() + ": " + e.getMessage());
+        } finally {
+            concurrent.decrementAndGet();
+            exchange.close();
+        }
+    }
+
+    private void completions(HttpExchange exchange, String deployment) throws IOException, InterruptedException {
+        final var request = mapper.readTree(exchange.getRequestBody());
+        final var messages = request.path("messages");
+        if (!messages.isArray() || messages.isEmpty()) {
+            sendError(exchange, 400, "invalid_request", "'messages' must hold at least one message");
+            return;
+        }
+        var promptChars = 0;
+        final var words = new ArrayList<String>();
+        for (final var message : messages) {
+            final var content = message.path("content").asText();
+            promptChars += content.length();
+            // The answer draws on the system prompt, where the context is.
+            if ("system".equals(message.path("role").asText())) {
+                for (final var word : content.split("\\s+")) {
+                    if (!word.isBlank()) {
+                        words.add(word);
+                    }
+                }
+            }
+        }
+        final var prompt = promptChars / CHARS_PER_TOKEN;
+        final var maxTokens = request.path("max_tokens").asInt(DEFAULT_MAX_TOKENS);
+        final var answer = answer(words, maxTokens);
+        final var id = "chatcmpl-" + UUID.randomUUID();
+        final var created = System.currentTimeMillis() / 1000;
+
+        Thread.sleep(Duration.ofNanos(prefillPerThousandTokens.toNanos() * prompt / 1000));
+        requests.increment();
+        promptTokens.add(prompt);
+        if (request.path("stream").asBoolean(false)) {
+            stream(exchange, deployment, id, created, answer);
+            return;
+        }
+        Thread.sleep(tokenInterval.multipliedBy(Math.max(0, answer.size() - 1)));
+        final var response = completion(id, created, deployment, "chat.completion");
+        final var choice = response.putArray("choices").addObject()
+            .put("index", 0)
+            .put("finish_reason", "stop");
+        choice.putObject("message")
+            .put("role", "assistant")
+            .put("content", String.join("", answer));
+        response.putObject("usage")
+            .put("prompt_tokens", prompt)
+            .put("completion_tokens", answer.size())
+            .put("total_tokens", prompt + answer.size());
+        send(exchange, 200, mapper.writeValueAsBytes(response));
+    }
+
+    private void stream(HttpExchange exchange, String deployment, String id, long created, List<String> answer)
+        throws IOException, InterruptedException {
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+        exchange.sendResponseHeaders(200, 0);
+        final var out = exchange.getResponseBody();
+
+        final var filters = mapper.createObjectNode()
+            .put("id", "")
+            .put("object", "")
+            .put("created", 0)
+            .put("model", "");
+        filters.putArray("choices");
+        filters.putArray("prompt_filter_results").addObject().put("prompt_index", 0);
+        event(out, mapper.writeValueAsString(filters));
+
+        for (int i = 0; i < answer.size(); i++) {
+            if (i > 0) {
+                Thread.sleep(tokenInterval);
+            }
+            final var update = completion(id, created, deployment, "chat.completion.chunk");
+            final var choice = update.putArray("choices").addObject()
+                .put("index", 0)
+                .putNull("finish_reason");
+            final var delta = choice.putObject("delta");
+            if (i == 0) {
+                delta.put("role", "assistant");
+            }
+            delta.put("content", answer.get(i));
+            event(out, mapper.writeValueAsString(update));
+        }
+        final var last = completion(id, created, deployment, "chat.completion.chunk");
+        last.putArray("choices").addObject()
+            .put("index", 0)
+            .put("finish_reason", "stop")
+            .putObject("delta");
+        event(out, mapper.writeValueAsString(last));
+        event(out, "[DONE]");
+    }
+
+    private ObjectNode completion(String id, long created, String deployment, String object) {
+        return mapper.createObjectNode()
+            .put("id", id)
+            .put("object", object)
+            .put("created", created)
+            .put("model", deployment);
+    }
+
+    /**
+     * Up to {@code maxTokens} words of the prompt, each with the space before it, as a model streams them.
+     */
+    private static List<String> answer(List<String> words, int maxTokens) {
+        final var answer = new ArrayList<String>(maxTokens);
+        answer.add("Ifølge");
+        for (int i = 0; i < words.size() && answer.size() < maxTokens; i++) {
+            answer.add(" " + words.get(i));
+        }
+        return answer;
+    }
+
+    private static void event(OutputStream out, String data) throws IOException {
+        out.write(("data: " + data + "\n\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private void sendError(HttpExchange exchange, int status, String code, String message) throws IOException {
+        final var error = new HashMap<String, Object>();
+        error.put("code", code);
+        error.put("message", message);
+        if (status == 429 || status == 503) {
+            final var millis = faults.retryAfter().toMillis();
+            exchange.getResponseHeaders().set("retry-after-ms", Long.toString(millis));
+            exchange.getResponseHeaders().set("Retry-After", Long.toString(Math.ceilDiv(millis, 1000)));
+        }
+        send(exchange, status, mapper.writeValueAsBytes(Map.of("error", error)));
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        exchange.getResponseBody().write(body);
+    }
+
+}
@@ -0,0 +1,199 @@
+package com.soprasteria.azure.openai.standin;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local HTTP stand-in for the Azure OpenAI embeddings operation,
+ * {@code POST /openai/deployments/{deployment}/embeddings}, with vectors from the {@link HashingVectorizer}.
+ * <p>
+ * It accepts a single input or an array of up to 2048 inputs, honours {@code dimensions} and the base64
+ * {@code encoding_format}, and runs every request through a {@link FaultProfile}. Invalid requests are answered with
+ * 400, unexpected failures of the stand-in itself with 500. Latency is charged per request
+ * rather than per input, like the real service, so it shows what batching saves. Build clients pointed at it with
+ * {@code Utils.keyedEndpoint}, which works for any Azure client builder; keys are not checked.
+ */
+public class EmbeddingsStandIn implements AutoCloseable {
+
+    private static final Pattern EMBEDDINGS_PATH = Pattern.compile("^/openai/deployments/([^/]+)/embeddings$");
+    private static final int MAX_INPUTS = 2048;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final FaultProfile faults;
+    private final int defaultDimensions;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder inputs = new LongAdder();
+    private final AtomicInteger concurrent = new AtomicInteger();
+    private final AtomicInteger maxConcurrent = new AtomicInteger();
+
+    public static void main(String[] args) throws Exception {
+        final var port = args.length > 0 ? Integer.parseInt(args[0]) : 8090;
+        final var standIn = new EmbeddingsStandIn(port, FaultProfile.REALISTIC, 3072);
+        System.out.println("Embeddings stand-in listening on " + standIn.endpoint());
+        Thread.currentThread().join();
+    }
+
+    /**
+     * Start a stand-in on {@code port} (0 picks a free port), returning {@code defaultDimensions} values when a
+     * request does not ask for a dimension count.
+     */
+    public EmbeddingsStandIn(int port, FaultProfile faults, int defaultDimensions) throws IOException {
+        this.faults = faults;
+        this.defaultDimensions = defaultDimensions;
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        this.server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        this.server.setExecutor(executor);
+        this.server.createContext("/", this::handle);
+        this.server.start();
+    }
+
+    public String endpoint() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    /**
+     * Embedding requests answered successfully.
+     */
+    public long requests() {
+        return requests.sum();
+    }
+
+    public long inputs() {
+        return inputs.sum();
+    }
+
+    /**
+     * Most requests that were being served at the same time.
+     */
+    public int maxConcurrentRequests() {
+        return maxConcurrent.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.close();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+        try {
+            faults.delay();
+            if (faults.throttle()) {
+                sendError(exchange, 429, "429", "Simulated rate limit by the embeddings stand-in.");
+                return;
+            }
+            if (faults.unavailable()) {
+                sendError(exchange, 503, "ServiceUnavailable", "Simulated outage by the embeddings stand-in.");
+                return;
+            }
+            final var matcher = EMBEDDINGS_PATH.matcher(exchange.getRequestURI().getPath());
+            if (!"POST".equals(exchange.getRequestMethod()) || !matcher.matches()) {
+                sendError(exchange, 404, "404", "No route for " + exchange.getRequestMethod() + " "
+                    + exchange.getRequestURI().getPath());
+                return;
+            }
+            embeddings(exchange, matcher.group(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IllegalArgumentException | JsonProcessingException e) {
+            sendError(exchange, 400, "invalid_request", String.valueOf(e.getMessage()));
+        } catch (Exception e) {
+            sendError(exchange, 500, "InternalServerError", e.getClass().getSimpleName() + ": " + e.getMessage());
+        } finally {
+            concurrent.decrementAndGet();
+            exchange.close();
+        }
+    }
+
+    private void embeddings(HttpExchange exchange, String deployment) throws IOException {
+        final var request = mapper.readTree(exchange.getRequestBody());
+        final var input = request.path("input");
+        final var texts = new ArrayList<String>();
+        if (input.isArray()) {
+            input.forEach(text -> texts.add(text.asText()));
+        } else if (input.isTextual()) {
+            texts.add(input.asText());
+        }
+        if (texts.isEmpty() || texts.size() > MAX_INPUTS) {
+            sendError(exchange, 400, "invalid_request",
+                "'input' must hold between 1 and " + MAX_INPUTS + " texts, got " + texts.size());
+            return;
+        }
+        final var dimensions = request.path("dimensions").asInt(defaultDimensions);
+        if (dimensions < 1) {
+            throw new IllegalArgumentException("'dimensions' must be positive, got " + dimensions);
+        }
+        final var base64 = "base64".equals(request.path("encoding_format").asText());
+
+        final var data = mapper.createArrayNode();
+        var tokens = 0;
+        for (int i = 0; i < texts.size(); i++) {
+            final var vector = HashingVectorizer.vectorize(texts.get(i), dimensions);
+            final ObjectNode item = data.addObject()
+                .put("object", "embedding")
+                .put("index", i);
+            if (base64) {
+                final var bytes = ByteBuffer.allocate(vector.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                bytes.asFloatBuffer().put(vector);
+                item.put("embedding", Base64.getEncoder().encodeToString(bytes.array()));
+            } else {
+                final var values = item.putArray("embedding");
+                for (float value : vector) {
+                    values.add(value);
+                }
+            }
+            tokens += texts.get(i).split("\\s+").length;
+        }
+        final var response = mapper.createObjectNode()
+            .put("object", "list")
+            .put("model", deployment);
+        response.set("data", data);
+        response.putObject("usage")
+            .put("prompt_tokens", tokens)
+            .put("total_tokens", tokens);
+
+        requests.increment();
+        inputs.add(texts.size());
+        send(exchange, 200, mapper.writeValueAsBytes(response));
+    }
+
+    private void sendError(HttpExchange exchange, int status, String code, String message) throws IOException {
+        final var error = new HashMap<String, Object>();
+        error.put("code", code);
+        error.put("message", message);
+        if (status == 429 || status == 503) {
+            final var millis = faults.retryAfter().toMillis();
+            exchange.getResponseHeaders().set("retry-after-ms", Long.toString(millis));
+            exchange.getResponseHeaders().set("Retry-After", Long.toString(Math.ceilDiv(millis, 1000)));
+        }
+        send(exchange, status, mapper.writeValueAsBytes(Map.of("error", error)));
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        exchange.getResponseBody().write(body);
+    }
+
+}
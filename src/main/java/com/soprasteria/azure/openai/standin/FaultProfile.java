@@ -0,0 +1,60 @@
+package com.soprasteria.azure.openai.standin;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Latency and failures a stand-in injects into every request.
+ *
+ * @param latency            fixed delay added to every request
+ * @param jitter             extra uniformly distributed delay, up to this much
+ * @param throttleRate       fraction of requests answered with 429 Too Many Requests
+ * @param unavailableRate    fraction of the requests not throttled that are answered with 503 Service Unavailable
+ * @param partialFailureRate fraction of documents in an indexing batch that fail individually
+ * @param retryAfter         delay asked for with 429 and 503 responses, sent as {@code retry-after-ms} and, rounded up
+ *                           to whole seconds, as {@code Retry-After}
+ */
+public record FaultProfile(
+    Duration latency,
+    Duration jitter,
+    double throttleRate,
+    double unavailableRate,
+    double partialFailureRate,
+    Duration retryAfter
+) {
+
+    public static final FaultProfile NONE = new FaultProfile(Duration.ZERO, Duration.ZERO, 0, 0, 0, Duration.ZERO);
+
+    /**
+     * Roughly what the service looks like from inside the same region under moderate load.
+     */
+    public static final FaultProfile REALISTIC = new FaultProfile(
+        Duration.ofMillis(20), Duration.ofMillis(30), 0.02, 0.005, 0.001, Duration.ofMillis(500));
+
+    void delay() throws InterruptedException {
+        var nanos = latency.toNanos();
+        if (!jitter.isZero()) {
+            nanos += ThreadLocalRandom.current().nextLong(jitter.toNanos() + 1);
+        }
+        if (nanos > 0) {
+            Thread.sleep(Duration.ofNanos(nanos));
+        }
+    }
+
+    boolean throttle() {
+        return roll(throttleRate);
+    }
+
+    boolean unavailable() {
+        return roll(unavailableRate);
+    }
+
+    boolean failDocument() {
+        return roll(partialFailureRate);
+    }
+
+    private static boolean roll(double rate) {
+        return rate > 0 && ThreadLocalRandom.current().nextDouble() < rate;
+    }
+
+}
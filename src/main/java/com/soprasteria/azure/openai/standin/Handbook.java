@@ -0,0 +1,97 @@
+package com.soprasteria.azure.openai.standin;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.azure.search.documents.indexes.models.SearchField;
+import com.azure.search.documents.indexes.models.SearchFieldDataType;
+import com.azure.search.documents.indexes.models.SearchIndex;
+
+/**
+ * A generated personnel handbook for the stand-ins: four paragraphs on each of {@link #TOPICS}, every paragraph in
+ * three near-identical versions, as written, with the page footer, and with the edition of the handbook in front, the
+ * way chunks of several published editions end up in one index. Chunks are vectorized with the
+ * {@link HashingVectorizer}, like the {@link EmbeddingsStandIn} vectorizes questions.
+ */
+public final class Handbook {
+
+    public static final List<String> TOPICS = List.of(
+        "ferie", "feriepenger", "sykefravær", "egenmelding", "foreldrepermisjon", "lønn", "overtid", "pensjon",
+        "hjemmekontor", "reiseregning", "forsikring", "kompetanseutvikling", "oppsigelse", "arbeidstid",
+        "velferdspermisjon", "bonus");
+
+    private static final List<String> PARAGRAPHS = List.of(
+        "Ansatte har rett til %1$s etter arbeidsmiljøloven og tariffavtalen. Retten til %1$s gjelder fra første "
+            + "arbeidsdag for både fast ansatte og midlertidig ansatte med avtale over tre måneder. Søknad om %1$s "
+            + "registreres i personalsystemet senest fire uker før, og kvittering sendes på e-post.",
+        "Spørsmål om %1$s rettes til nærmeste leder, som avklarer med HR ved behov. Leder godkjenner %1$s normalt "
+            + "innen fem virkedager og gir skriftlig tilbakemelding. Avslag på %1$s kan klages inn til "
+            + "HR-direktøren innen tre uker etter at svaret er mottatt.",
+        "Utbetaling knyttet til %1$s skjer sammen med ordinær lønn den 20. hver måned. Beløpet for %1$s fremgår av "
+            + "lønnsslippen og innberettes til Skatteetaten. Feil i %1$s meldes til lønningskontoret så snart som "
+            + "mulig, og rettes ved neste ordinære lønnskjøring.",
+        "Endringer i reglene for %1$s varsles på intranettet og i personalhåndboken. Gjeldende regler for %1$s er "
+            + "alltid de som ligger på intranettet. Lokale avtaler om %1$s kan gi bedre vilkår enn det som står her, "
+            + "men aldri dårligere enn lov og tariffavtale.");
+
+    private Handbook() {
+    }
+
+    /**
+     * One question per topic.
+     */
+    public static List<String> questions() {
+        return TOPICS.stream()
+            .map(topic -> "Hvordan fungerer " + topic + " hos oss?")
+            .toList();
+    }
+
+    /**
+     * The chunks as documents with an {@code id}, the {@code chunk} text and its {@code text_vector}.
+     */
+    public static List<Map<String, Object>> chunks(int dimensions) {
+        final var chunks = new ArrayList<Map<String, Object>>();
+        for (final var topic : TOPICS) {
+            for (int p = 0; p < PARAGRAPHS.size(); p++) {
+                final var paragraph = String.format(PARAGRAPHS.get(p), topic);
+                final var versions = List.of(
+                    paragraph,
+                    paragraph + " Side " + (4 * TOPICS.indexOf(topic) + p + 3) + " av 84.",
+                    "Personalhåndbok 2023. " + paragraph);
+                for (final var chunk : versions) {
+                    chunks.add(Map.of("id", "chunk-" + chunks.size(), "chunk", chunk,
+                        "text_vector", toList(HashingVectorizer.vectorize(chunk, dimensions))));
+                }
+            }
+        }
+        return chunks;
+    }
+
+    /**
+     * A search service stand-in with the handbook in index {@code indexName}.
+     */
+    public static SearchServiceStandIn searchService(FaultProfile faults, String indexName, int dimensions)
+        throws IOException {
+        final var chunks = chunks(dimensions);
+        final var standIn = new SearchServiceStandIn(0, faults, chunks.size());
+        final var index = new SearchIndex(indexName, List.of(
+            new SearchField("id", SearchFieldDataType.STRING).setKey(true),
+            new SearchField("chunk", SearchFieldDataType.STRING).setSearchable(true),
+            new SearchField("text_vector", SearchFieldDataType.collection(SearchFieldDataType.SINGLE))
+                .setVectorSearchDimensions(dimensions)));
+        standIn.backend().createOrUpdateIndex(index, chunks.size());
+        standIn.backend().upload(indexName, chunks);
+        return standIn;
+    }
+
+    private static List<Float> toList(float[] vector) {
+        final var list = new ArrayList<Float>(vector.length);
+        for (float value : vector) {
+            list.add(value);
+        }
+        return list;
+    }
+
+}
@@ -0,0 +1,44 @@
+package com.soprasteria.azure.openai.standin;
+
+import java.util.Locale;
+
+/**
+ * Deterministic text-to-vector function for stand-ins: each token is hashed into one dimension with a hashed
+ * sign, and the result is L2-normalized. Texts sharing words get similar vectors, which is all a stand-in
+ * needs to exercise vector query paths without an embedding model.
+ */
+public final class HashingVectorizer {
+
+    private HashingVectorizer() {
+    }
+
+    public static float[] vectorize(String text, int dimensions) {
+        final var vector = new float[dimensions];
+        for (final var token : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (token.isEmpty()) {
+                continue;
+            }
+            final var hash = mix(token.hashCode());
+            final var index = (int) Long.remainderUnsigned(hash, dimensions);
+            vector[index] += (hash & (1L << 63)) == 0 ? 1f : -1f;
+        }
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        if (norm > 0) {
+            final var scale = (float) (1.0 / Math.sqrt(norm));
+            for (int i = 0; i < dimensions; i++) {
+                vector[i] *= scale;
+            }
+        }
+        return vector;
+    }
+
+    private static long mix(long x) {
+        x = (x ^ (x >>> 33)) * 0xff51afd7ed558ccdL;
+        x = (x ^ (x >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return x ^ (x >>> 33);
+    }
+
+}
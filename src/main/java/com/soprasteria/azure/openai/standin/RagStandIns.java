@@ -0,0 +1,51 @@
+package com.soprasteria.azure.openai.standin;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * The three backends of the RAG service as local stand-ins: a search service holding the {@link Handbook}, embeddings
+ * of the same dimensions, and chat completions whose time to first token grows with the prompt. Embeddings and chat
+ * completions listen on ports of their own, so clients of the two OpenAI operations are built separately.
+ */
+public class RagStandIns implements AutoCloseable {
+
+    private static final Duration PREFILL_PER_THOUSAND_TOKENS = Duration.ofMillis(150);
+    private static final Duration TOKEN_INTERVAL = Duration.ofMillis(15);
+
+    private final SearchServiceStandIn search;
+    private final EmbeddingsStandIn embeddings;
+    private final ChatCompletionsStandIn chat;
+
+    public RagStandIns(FaultProfile faults, String indexName, int dimensions) throws IOException {
+        this.search = Handbook.searchService(faults, indexName, dimensions);
+        this.embeddings = new EmbeddingsStandIn(0, faults, dimensions);
+        this.chat = new ChatCompletionsStandIn(0, faults, PREFILL_PER_THOUSAND_TOKENS, TOKEN_INTERVAL);
+    }
+
+    public SearchServiceStandIn search() {
+        return search;
+    }
+
+    public EmbeddingsStandIn embeddings() {
+        return embeddings;
+    }
+
+    public ChatCompletionsStandIn chat() {
+        return chat;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("search %s, embeddings %s, chat %s", search.endpoint(), embeddings.endpoint(),
+            chat.endpoint());
+    }
+
+    @Override
+    public void close() {
+        chat.close();
+        embeddings.close();
+        search.close();
+    }
+
+}
@@ -0,0 +1,414 @@
+package com.soprasteria.azure.openai.standin;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+import com.azure.json.JsonProviders;
+import com.azure.search.documents.indexes.models.SearchField;
+import com.azure.search.documents.indexes.models.SearchIndex;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.soprasteria.azure.openai.journey3.LocalSearchBackend;
+import com.soprasteria.azure.openai.journey3.vector.Neighbor;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local HTTP stand-in for the subset of the Azure AI Search REST API used in this repository: index
+ * create/get/list/delete, {@code docs/search.index} batches, {@code docs/search.post.search} with text and
+ * vector queries, {@code top}/{@code skip}/{@code select}/{@code count}, and {@code search.stats}.
+ * <p>
+ * Requests are served on virtual threads from a {@link LocalSearchBackend}. Every request first goes through
+ * the configured {@link FaultProfile}, so clients see realistic latency, 429/503 throttling and partially
+ * failed indexing batches. Invalid requests are answered with 400, unexpected failures of the stand-in itself with
+ * 500.
+ * <p>
+ * The SDK refuses to send an {@code AzureKeyCredential} over plain http, so build clients pointed at the
+ * stand-in with {@code Utils.keyedEndpoint}, which sends the key as a plain header; the stand-in does not
+ * check keys.
+ */
+public class SearchServiceStandIn implements AutoCloseable {
+
+    private static final Pattern INDEX_PATH = Pattern.compile("^/indexes\\('([^']+)'\\)(/.*)?$");
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int RRF_K = 60;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final LocalSearchBackend backend = new LocalSearchBackend();
+    private final FaultProfile faults;
+    private final int indexCapacity;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final LongAdder searches = new LongAdder();
+
+    public static void main(String[] args) throws Exception {
+        final var port = args.length > 0 ? Integer.parseInt(args[0]) : 8089;
+        final var standIn = new SearchServiceStandIn(port, FaultProfile.REALISTIC, 200_000);
+        System.out.println("Search service stand-in listening on " + standIn.endpoint());
+        Thread.currentThread().join();
+    }
+
+    /**
+     * Start a stand-in on {@code port} (0 picks a free port) with room for {@code indexCapacity} documents per index.
+     */
+    public SearchServiceStandIn(int port, FaultProfile faults, int indexCapacity) throws IOException {
+        this.faults = faults;
+        this.indexCapacity = indexCapacity;
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        this.server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        this.server.setExecutor(executor);
+        this.server.createContext("/", this::handle);
+        this.server.start();
+    }
+
+    public String endpoint() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    public LocalSearchBackend backend() {
+        return backend;
+    }
+
+    /**
+     * Search requests that got past the fault profile, one per page fetched.
+     */
+    public long searches() {
+        return searches.sum();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.close();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            faults.delay();
+            if (faults.throttle()) {
+                sendError(exchange, 429, "TooManyRequests", "Simulated throttling by the search stand-in.");
+                return;
+            }
+            if (faults.unavailable()) {
+                sendError(exchange, 503, "ServiceUnavailable", "Simulated outage by the search stand-in.");
+                return;
+            }
+            route(exchange);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IllegalArgumentException | JsonProcessingException e) {
+            sendError(exchange, 400, "InvalidRequest", String.valueOf(e.getMessage()));
+        } catch (Exception e) {
+            sendError(exchange, 500, "InternalServerError", e.getClass().getSimpleName() + ": " + e.getMessage());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void route(HttpExchange exchange) throws IOException {
+        final var method = exchange.getRequestMethod();
+        final var path = exchange.getRequestURI().getPath();
+
+        if (path.equals("/indexes")) {
+            switch (method) {
+                case "GET" -> listIndexes(exchange);
+                case "POST" -> putIndex(exchange, null);
+                default -> sendError(exchange, 405, "MethodNotAllowed", method + " " + path);
+            }
+            return;
+        }
+
+        final var matcher = INDEX_PATH.matcher(path);
+        if (!matcher.matches()) {
+            sendError(exchange, 404, "ResourceNotFound", "No route for " + path);
+            return;
+        }
+        final var indexName = matcher.group(1);
+        final var rest = matcher.group(2) == null ? "" : matcher.group(2);
+
+        if (!rest.isEmpty() && backend.getIndex(indexName).isEmpty()) {
+            sendError(exchange, 404, "ResourceNotFound", "The index '" + indexName + "' was not found.");
+            return;
+        }
+        switch (method + " " + rest) {
+            case "GET " -> getIndex(exchange, indexName);
+            case "PUT " -> putIndex(exchange, indexName);
+            case "DELETE " -> deleteIndex(exchange, indexName);
+            case "GET /search.stats" -> getStatistics(exchange, indexName);
+            case "GET /docs/$count" -> send(exchange, 200, "text/plain",
+                Long.toString(backend.getDocumentCount(indexName)).getBytes(StandardCharsets.UTF_8));
+            case "POST /docs/search.index" -> indexDocuments(exchange, indexName);
+            case "POST /docs/search.post.search" -> search(exchange, indexName);
+            default -> sendError(exchange, 404, "ResourceNotFound", "No route for " + method + " " + path);
+        }
+    }
+
+    private void listIndexes(HttpExchange exchange) throws IOException {
+        final var out = new ByteArrayOutputStream();
+        out.write("{\"value\":[".getBytes(StandardCharsets.UTF_8));
+        var first = true;
+        for (final var index : backend.listIndexes()) {
+            if (!first) {
+                out.write(',');
+            }
+            first = false;
+            out.write(toJson(index));
+        }
+        out.write("]}".getBytes(StandardCharsets.UTF_8));
+        send(exchange, 200, "application/json", out.toByteArray());
+    }
+
+    private void getIndex(HttpExchange exchange, String indexName) throws IOException {
+        final var index = backend.getIndex(indexName);
+        if (index.isEmpty()) {
+            sendError(exchange, 404, "ResourceNotFound", "The index '" + indexName + "' was not found.");
+            return;
+        }
+        send(exchange, 200, "application/json", toJson(index.get()));
+    }
+
+    private void putIndex(HttpExchange exchange, String indexName) throws IOException {
+        final var body = exchange.getRequestBody().readAllBytes();
+        final SearchIndex definition;
+        try (final var reader = JsonProviders.createReader(body)) {
+            definition = SearchIndex.fromJson(reader);
+        } catch (IOException | RuntimeException e) {
+            throw new IllegalArgumentException("Invalid index definition: " + e.getMessage(), e);
+        }
+        if (indexName != null && !indexName.equals(definition.getName())) {
+            sendError(exchange, 400, "InvalidRequest", "Index name in body does not match the URL.");
+            return;
+        }
+        if (indexName == null && backend.getIndex(definition.getName()).isPresent()) {
+            sendError(exchange, 409, "ResourceNameAlreadyInUse",
+                "Cannot create index '" + definition.getName() + "' because it already exists.");
+            return;
+        }
+        final var created = backend.createOrUpdateIndex(definition, indexCapacity);
+        send(exchange, created ? 201 : 200, "application/json", toJson(definition));
+    }
+
+    private void deleteIndex(HttpExchange exchange, String indexName) throws IOException {
+        if (backend.deleteIndex(indexName)) {
+            send(exchange, 204, null, null);
+        } else {
+            sendError(exchange, 404, "ResourceNotFound", "The index '" + indexName + "' was not found.");
+        }
+    }
+
+    private void getStatistics(HttpExchange exchange, String indexName) throws IOException {
+        final var stats = mapper.createObjectNode()
+            .put("documentCount", backend.getDocumentCount(indexName))
+            .put("storageSize", backend.getStorageSize(indexName))
+            .put("vectorIndexSize", backend.getVectorIndexSize(indexName));
+        send(exchange, 200, "application/json", mapper.writeValueAsBytes(stats));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void indexDocuments(HttpExchange exchange, String indexName) throws IOException {
+        final var body = mapper.readValue(exchange.getRequestBody(), Map.class);
+        final var actions = (List<Map<String, Object>>) body.getOrDefault("value", List.of());
+
+        final var accepted = new ArrayList<Map<String, Object>>(actions.size());
+        final var rejected = new ArrayList<LocalSearchBackend.IndexingOutcome>();
+        for (final var action : actions) {
+            if (faults.failDocument()) {
+                rejected.add(new LocalSearchBackend.IndexingOutcome(
+                    String.valueOf(action.get(keyField(indexName))), false, "Simulated transient indexing failure.", 503));
+            } else {
+                accepted.add(action);
+            }
+        }
+        final var outcomes = new ArrayList<>(backend.index(indexName, accepted));
+        outcomes.addAll(rejected);
+
+        final var value = mapper.createArrayNode();
+        var allSucceeded = true;
+        for (final var outcome : outcomes) {
+            allSucceeded &= outcome.succeeded();
+            value.addObject()
+                .put("key", outcome.key())
+                .put("status", outcome.succeeded())
+                .put("errorMessage", outcome.errorMessage())
+                .put("statusCode", outcome.statusCode());
+        }
+        final var response = mapper.createObjectNode();
+        response.set("value", value);
+        send(exchange, allSucceeded ? 200 : 207, "application/json", mapper.writeValueAsBytes(response));
+    }
+
+    private void search(HttpExchange exchange, String indexName) throws IOException {
+        searches.increment();
+        if (!(mapper.readTree(exchange.getRequestBody()) instanceof ObjectNode request)) {
+            throw new IllegalArgumentException("The search request must be a JSON object.");
+        }
+        final var definition = backend.getIndex(indexName).orElseThrow();
+
+        final var searchText = request.path("search").asText(null);
+        final Integer top = request.hasNonNull("top") ? request.get("top").asInt() : null;
+        final var skip = request.path("skip").asInt(0);
+        final var pageSize = top != null ? top : DEFAULT_PAGE_SIZE;
+        // One past the page, so we can tell whether there is a next page to advertise.
+        final var window = skip + pageSize + 1;
+
+        final var rankings = new ArrayList<List<Neighbor>>();
+        final var weights = new ArrayList<Float>();
+        if (searchText != null && !searchText.isBlank() && !searchText.equals("*")) {
+            rankings.add(backend.keywordSearch(indexName, searchText, window));
+            weights.add(1f);
+        }
+        for (final var vectorQuery : request.path("vectorQueries")) {
+            final var k = vectorQuery.path("k").asInt(window);
+            rankings.add(backend.vectorSearch(indexName, queryVector(vectorQuery, definition), k));
+            weights.add((float) vectorQuery.path("weight").asDouble(1.0));
+        }
+
+        final var ranked = rankings.isEmpty() ? backend.allDocuments(indexName, window)
+            : rankings.size() == 1 ? rankings.getFirst()
+            : reciprocalRankFusion(rankings, weights);
+
+        final var end = Math.min(ranked.size(), skip + pageSize);
+        final var semantic = "semantic".equalsIgnoreCase(request.path("queryType").asText());
+        final var select = selectedFields(request.path("select").asText(null), definition);
+
+        final var value = mapper.createArrayNode();
+        for (int i = skip; i < end; i++) {
+            final var hit = ranked.get(i);
+            final var doc = backend.getDocument(indexName, hit.id());
+            if (doc == null) {
+                continue;
+            }
+            final var node = value.addObject();
+            node.put("@search.score", hit.score());
+            if (semantic) {
+                node.put("@search.rerankerScore", Math.min(4.0, 4.0 * hit.score()));
+            }
+            for (final var field : select) {
+                node.set(field, mapper.valueToTree(doc.get(field)));
+            }
+        }
+
+        final var response = mapper.createObjectNode();
+        if (request.path("count").asBoolean(false)) {
+            response.put("@odata.count", ranked.size());
+        }
+        response.set("value", value);
+        if (top == null && ranked.size() > end) {
+            final var next = request.deepCopy();
+            next.put("skip", end);
+            response.set("@search.nextPageParameters", next);
+            response.put("@odata.nextLink", endpoint() + "/indexes('" + indexName + "')/docs/search.post.search");
+        }
+        send(exchange, 200, "application/json", mapper.writeValueAsBytes(response));
+    }
+
+    private float[] queryVector(JsonNode vectorQuery, SearchIndex definition) {
+        if ("text".equals(vectorQuery.path("kind").asText())) {
+            final var fieldName = vectorQuery.path("fields").asText().split(",")[0].trim();
+            final var dimensions = definition.getFields().stream()
+                .filter(field -> field.getName().equals(fieldName))
+                .map(SearchField::getVectorSearchDimensions)
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unknown vector field '" + fieldName + "'"));
+            return HashingVectorizer.vectorize(vectorQuery.path("text").asText(), dimensions);
+        }
+        final var values = vectorQuery.path("vector");
+        final var vector = new float[values.size()];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = (float) values.get(i).asDouble();
+        }
+        return vector;
+    }
+
+    /**
+     * Reciprocal Rank Fusion, as the service does for hybrid queries: {@code score = sum(weight / (60 + rank))}.
+     */
+    private static List<Neighbor> reciprocalRankFusion(List<List<Neighbor>> rankings, List<Float> weights) {
+        final var scores = new LinkedHashMap<Integer, Float>();
+        for (int r = 0; r < rankings.size(); r++) {
+            final var ranking = rankings.get(r);
+            final var weight = weights.get(r);
+            for (int rank = 0; rank < ranking.size(); rank++) {
+                scores.merge(ranking.get(rank).id(), weight / (RRF_K + rank + 1), Float::sum);
+            }
+        }
+        return scores.entrySet().stream()
+            .sorted((a, b) -> Float.compare(b.getValue(), a.getValue()))
+            .map(entry -> new Neighbor(entry.getKey(), entry.getValue()))
+            .toList();
+    }
+
+    /**
+     * Requested fields, or every retrievable field; hidden fields are never returned.
+     */
+    private static List<String> selectedFields(String select, SearchIndex definition) {
+        final var retrievable = definition.getFields().stream()
+            .filter(field -> !Boolean.TRUE.equals(field.isHidden()))
+            .map(SearchField::getName)
+            .toList();
+        if (select == null || select.isBlank() || select.equals("*")) {
+            return retrievable;
+        }
+        final var fields = new ArrayList<String>();
+        for (final var field : select.split(",")) {
+            if (retrievable.contains(field.trim())) {
+                fields.add(field.trim());
+            }
+        }
+        return fields;
+    }
+
+    private String keyField(String indexName) {
+        return backend.getIndex(indexName).orElseThrow().getFields().stream()
+            .filter(field -> Boolean.TRUE.equals(field.isKey()))
+            .map(SearchField::getName)
+            .findFirst()
+            .orElse("id");
+    }
+
+    private static byte[] toJson(SearchIndex index) throws IOException {
+        final var out = new ByteArrayOutputStream();
+        try (final var writer = JsonProviders.createWriter(out)) {
+            index.toJson(writer);
+        }
+        return out.toByteArray();
+    }
+
+    private void sendError(HttpExchange exchange, int status, String code, String message) throws IOException {
+        final var error = new HashMap<String, Object>();
+        error.put("code", code);
+        error.put("message", message);
+        if (status == 429 || status == 503) {
+            final var millis = faults.retryAfter().toMillis();
+            exchange.getResponseHeaders().set("retry-after-ms", Long.toString(millis));
+            exchange.getResponseHeaders().set("Retry-After", Long.toString(Math.ceilDiv(millis, 1000)));
+        }
+        send(exchange, status, "application/json", mapper.writeValueAsBytes(Map.of("error", error)));
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        if (contentType != null) {
+            exchange.getResponseHeaders().set("Content-Type", contentType + "; charset=utf-8");
+        }
+        if (body == null || body.length == 0) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(status, body.length);
+        exchange.getResponseBody().write(body);
+    }
+
+}
@@ -0,0 +1,36 @@
+package com.soprasteria.azure.openai;
+
+import com.soprasteria.azure.openai.standin.Handbook;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.ActiveProfiles;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Stand-ins slower than the request timeout: the request is answered 504 at its deadline, before any event.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = {"rag.standin.faults.latency=1s", "rag.server.request-timeout=200ms",
+        "logging.level.com.soprasteria=warn"})
+@ActiveProfiles({"standin", "nofaults"})
+class RagControllerDeadlineTest {
+
+    @Autowired
+    private TestRestTemplate http;
+
+    @Test
+    void answers504AtTheDeadline() {
+        final var start = System.nanoTime();
+        final var response = http.postForEntity("/api/answer",
+            new RagController.Question(Handbook.questions().getLast()), String.class);
+        final var millis = (System.nanoTime() - start) / 1_000_000;
+        assertEquals(HttpStatus.GATEWAY_TIMEOUT, response.getStatusCode());
+        assertTrue(millis < 900, "answered after " + millis + " ms");
+    }
+
+}
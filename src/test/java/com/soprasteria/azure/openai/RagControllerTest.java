@@ -0,0 +1,107 @@
+package com.soprasteria.azure.openai;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.soprasteria.azure.openai.rag.RagPipeline;
+import com.soprasteria.azure.openai.standin.Handbook;
+import com.soprasteria.azure.openai.standin.RagStandIns;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.ActiveProfiles;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = {"rag.server.max-concurrent.chat=1", "logging.level.com.soprasteria=warn"})
+@ActiveProfiles({"standin", "nofaults"})
+class RagControllerTest {
+
+    @Autowired
+    private TestRestTemplate http;
+
+    @Autowired
+    private RagPipeline pipeline;
+
+    @Autowired
+    private RagStandIns standIns;
+
+    @Value("${azure.search.index-name}")
+    private String indexName;
+
+    @Test
+    void streamsContextThenAnswerThenDone() {
+        final var response = http.postForEntity("/api/answer",
+            new RagController.Question(Handbook.questions().getFirst()), String.class);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+
+        final var events = events(response.getBody());
+        assertEquals("context", events.getFirst());
+        assertEquals("done", events.getLast());
+        final var answer = events.subList(1, events.size() - 1);
+        assertTrue(!answer.isEmpty() && answer.stream().allMatch("message"::equals), events::toString);
+    }
+
+    @Test
+    void rejectsWith503WhileChatIsSaturated() {
+        try (final var permit = pipeline.admit(System.nanoTime() + Duration.ofSeconds(5).toNanos())) {
+            final var response = http.postForEntity("/api/answer",
+                new RagController.Question(Handbook.questions().getFirst()), String.class);
+            assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.getStatusCode());
+            assertEquals("1", response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+        }
+    }
+
+    @Test
+    void repeatedQuestionsAreServedFromTheSearchCacheUntilTheIndexChanges() {
+        final var question = Handbook.questions().get(1);
+        final var deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        pipeline.retrieve(question, deadline);
+        final var first = pipeline.searchCache();
+        pipeline.retrieve(question, deadline);
+        assertEquals(first.hits() + 1, pipeline.searchCache().hits());
+
+        // An in-place update leaves the document count as it was, and still invalidates.
+        standIns.search().backend().index(indexName,
+            List.of(Map.of("@search.action", "merge", "id", "chunk-0", "chunk", "Oppdatert avsnitt.")));
+        final var updated = pipeline.searchCache();
+        assertTrue(updated.invalidations() > first.invalidations(), updated::toString);
+        pipeline.retrieve(question, deadline);
+        assertEquals(updated.misses() + 1, pipeline.searchCache().misses());
+    }
+
+    @Test
+    void rejectsBlankQuestions() {
+        final var response = http.postForEntity("/api/answer", new RagController.Question(" "), String.class);
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+    }
+
+    /**
+     * Names of the server-sent events in {@code body}, {@code message} for those without one.
+     */
+    private static List<String> events(String body) {
+        final var names = new ArrayList<String>();
+        for (final var event : body.split("\n\n")) {
+            if (event.isBlank()) {
+                continue;
+            }
+            var name = "message";
+            for (final var line : event.split("\n")) {
+                if (line.startsWith("event: ")) {
+                    name = line.substring("event: ".length());
+                }
+            }
+            names.add(name);
+        }
+        return names;
+    }
+
+}
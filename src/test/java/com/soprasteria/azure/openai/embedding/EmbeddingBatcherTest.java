@@ -0,0 +1,165 @@
+package com.soprasteria.azure.openai.embedding;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import com.azure.ai.openai.OpenAIClient;
+import com.azure.ai.openai.OpenAIClientBuilder;
+import com.azure.core.exception.HttpResponseException;
+import com.soprasteria.azure.openai.journey3.utils.Utils;
+import com.soprasteria.azure.openai.standin.EmbeddingsStandIn;
+import com.soprasteria.azure.openai.standin.FaultProfile;
+import com.soprasteria.azure.openai.standin.HashingVectorizer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EmbeddingBatcherTest {
+
+    private static final String DEPLOYMENT = "text-embedding-3-small";
+    private static final int DIMENSIONS = 64;
+    private static final Duration LINGER = Duration.ofMillis(200);
+
+    private final List<List<String>> batches = new CopyOnWriteArrayList<>();
+    private EmbeddingsStandIn standIn;
+    private OpenAIClient client;
+
+    @BeforeEach
+    void start() throws Exception {
+        standIn = new EmbeddingsStandIn(0, FaultProfile.NONE, DIMENSIONS);
+        client = Utils.keyedEndpoint(new OpenAIClientBuilder(), standIn.endpoint(), "key").buildClient();
+    }
+
+    @AfterEach
+    void stop() {
+        standIn.close();
+    }
+
+    @Test
+    void packsUpToMaxInputsPerRequest() {
+        final var texts = texts(20, "chunk");
+        try (final var batcher = batcher(8, 64_000)) {
+            batcher.embedAll(texts);
+            assertEquals(List.of(8, 8, 4), batches.stream().map(List::size).toList());
+            assertEquals(3, batcher.stats().requests());
+            assertEquals(20, batcher.stats().inputs());
+        }
+        assertEquals(3, standIn.requests());
+        assertEquals(20, standIn.inputs());
+    }
+
+    @Test
+    void packsUpToMaxTokensPerRequest() {
+        // Ten characters are three estimated tokens, so ten tokens hold three texts.
+        final var texts = new ArrayList<>(texts(7, "a chunk"));
+        final var oversized = "x".repeat(100);
+        texts.add(oversized);
+        try (final var batcher = batcher(256, 10)) {
+            batcher.embedAll(texts);
+        }
+        for (final var batch : batches) {
+            final var tokens = batch.stream().mapToInt(EmbeddingBatcher::estimateTokens).sum();
+            assertTrue(tokens <= 10 || batch.equals(List.of(oversized)), "batch over budget: " + batch);
+        }
+        assertEquals(List.of(3, 3, 1, 1), batches.stream().map(List::size).toList());
+    }
+
+    @Test
+    void vectorsMapBackToTheirTexts() {
+        final var texts = texts(50, "sentence about topic");
+        try (final var batcher = batcher(16, 64_000)) {
+            final var vectors = batcher.embedAll(texts);
+            assertEquals(texts.size(), vectors.size());
+            for (int i = 0; i < texts.size(); i++) {
+                assertArrayEquals(HashingVectorizer.vectorize(texts.get(i), DIMENSIONS), vectors.get(i), 1e-6f,
+                    texts.get(i));
+            }
+        }
+    }
+
+    @Test
+    void keepsAtMostMaxInFlightRequestsRunning() {
+        final var running = new AtomicInteger();
+        final var maxRunning = new AtomicInteger();
+        final var texts = texts(40, "paragraph");
+        try (final var batcher = new EmbeddingBatcher(batch -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(100);
+                return batch.stream().map(text -> HashingVectorizer.vectorize(text, DIMENSIONS)).toList();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            } finally {
+                running.decrementAndGet();
+            }
+        }, 4, 64_000, 3, LINGER, EmbeddingBatcher::estimateTokens)) {
+            final var vectors = batcher.embedAll(texts);
+            for (int i = 0; i < texts.size(); i++) {
+                assertArrayEquals(HashingVectorizer.vectorize(texts.get(i), DIMENSIONS), vectors.get(i), 1e-6f,
+                    texts.get(i));
+            }
+            assertEquals(10, batcher.stats().requests());
+        }
+        assertEquals(3, maxRunning.get());
+    }
+
+    @Test
+    void failedRequestFailsEveryTextInIt() throws Exception {
+        standIn.close();
+        standIn = new EmbeddingsStandIn(0, new FaultProfile(Duration.ZERO, Duration.ZERO, 0, 1.0, 0, Duration.ZERO),
+            DIMENSIONS);
+        client = Utils.keyedEndpoint(new OpenAIClientBuilder(), standIn.endpoint(), "key").buildClient();
+        try (final var batcher = batcher(8, 64_000)) {
+            final var first = batcher.submit("first");
+            final var second = batcher.submit("second");
+            final var failure = assertThrows(CompletionException.class, first::join).getCause();
+            assertInstanceOf(HttpResponseException.class, failure);
+            assertSame(failure, assertThrows(CompletionException.class, second::join).getCause());
+            assertEquals(1, batcher.stats().failedRequests());
+        }
+    }
+
+    @Test
+    void missingVectorFailsOnlyItsText() {
+        try (final var batcher = new EmbeddingBatcher(texts -> List.of(new float[]{1f}), 8, 64_000, 1, LINGER,
+            EmbeddingBatcher::estimateTokens)) {
+            final var first = batcher.submit("first");
+            final var second = batcher.submit("second");
+            assertArrayEquals(new float[]{1f}, first.join(), 0f);
+            assertInstanceOf(IllegalStateException.class,
+                assertThrows(CompletionException.class, second::join).getCause());
+        }
+    }
+
+    @Test
+    void rejectsTextsAfterClose() {
+        final var batcher = batcher(8, 64_000);
+        batcher.close();
+        assertInstanceOf(IllegalStateException.class,
+            assertThrows(CompletionException.class, () -> batcher.submit("late").join()).getCause());
+    }
+
+    private EmbeddingBatcher batcher(int maxInputs, int maxTokens) {
+        return new EmbeddingBatcher(texts -> {
+            batches.add(texts);
+            return EmbeddingBatcher.embed(client, DEPLOYMENT, DIMENSIONS, texts);
+        }, maxInputs, maxTokens, 1, LINGER, EmbeddingBatcher::estimateTokens);
+    }
+
+    private static List<String> texts(int count, String prefix) {
+        return IntStream.range(0, count).mapToObj(i -> String.format("%s %02d", prefix, i)).toList();
+    }
+
+}
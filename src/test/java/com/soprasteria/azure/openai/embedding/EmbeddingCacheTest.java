@@ -0,0 +1,49 @@
+package com.soprasteria.azure.openai.embedding;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+
+class EmbeddingCacheTest {
+
+    private static final String DEPLOYMENT = "text-embedding-3-small";
+    private static final int DIMENSIONS = 2;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void getAllEmbedsEveryMissInOneCall() throws Exception {
+        final var calls = new ArrayList<List<String>>();
+        try (final var cache = new EmbeddingCache(directory, 1024 * 1024)) {
+            cache.get(DEPLOYMENT, DIMENSIONS, "ferie", text -> vector(text));
+
+            final var vectors = cache.getAll(DEPLOYMENT, DIMENSIONS, List.of("overtid", "ferie", "  sykefravær "),
+                texts -> {
+                    calls.add(texts);
+                    return texts.stream().map(EmbeddingCacheTest::vector).toList();
+                });
+
+            assertEquals(List.of(List.of("overtid", "  sykefravær ")), calls);
+            assertArrayEquals(vector("overtid"), vectors.get(0));
+            assertArrayEquals(vector("ferie"), vectors.get(1));
+            assertArrayEquals(vector("  sykefravær "), vectors.get(2));
+            assertEquals(new EmbeddingCache.Stats(1, 0, 3), cache.stats());
+
+            cache.getAll(DEPLOYMENT, DIMENSIONS, List.of("sykefravær", "overtid"),
+                texts -> fail("embedded cached texts " + texts));
+        }
+    }
+
+    private static float[] vector(String text) {
+        return new float[]{text.strip().length(), text.strip().hashCode()};
+    }
+
+}
@@ -0,0 +1,70 @@
+package com.soprasteria.azure.openai.journey2;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HybridRetrieverTest {
+
+    @Test
+    void legsWithTheSameNameAreFusedSeparately() throws Exception {
+        final var legs = List.of(
+            new HybridRetriever.Leg("index text_vector", 1.0, question -> documents("a", "b")),
+            new HybridRetriever.Leg("index text_vector", 1.0, question -> documents("b", "a")));
+        try (final var retriever = new HybridRetriever(legs, HybridRetriever.byField("id"), null)) {
+            final var result = retriever.retrieve("question", 10);
+            assertEquals(2, result.hits().size());
+            for (final var hit : result.hits()) {
+                assertEquals(2, hit.ranks().size(), hit.id());
+                assertEquals(1.0 / (HybridRetriever.RRF_K + 1) + 1.0 / (HybridRetriever.RRF_K + 2), hit.score(), 1e-12);
+            }
+            assertEquals(List.of("index text_vector #1", "index text_vector #2"),
+                result.legs().stream().map(HybridRetriever.LegResult::leg).toList());
+        }
+    }
+
+    @Test
+    void duplicatesWithinOneLegCountOnce() throws Exception {
+        final var legs = List.of(new HybridRetriever.Leg("keyword", 1.0, question -> documents("a", "a", "b")));
+        try (final var retriever = new HybridRetriever(legs, HybridRetriever.byField("id"), null)) {
+            final var hits = retriever.retrieve("question", 10).hits();
+            assertEquals("a", hits.getFirst().id());
+            assertEquals(1.0 / (HybridRetriever.RRF_K + 1), hits.getFirst().score(), 1e-12);
+            assertEquals(Map.of("keyword", 3), hits.get(1).ranks());
+        }
+    }
+
+    @Test
+    void lateLegIsInterruptedAtTheBudget() throws Exception {
+        final var interrupted = new CountDownLatch(1);
+        final var legs = List.of(
+            new HybridRetriever.Leg("fast", 1.0, question -> documents("a")),
+            new HybridRetriever.Leg("slow", 1.0, question -> {
+                try {
+                    Thread.sleep(Duration.ofMinutes(1));
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                    throw e;
+                }
+                return documents("b");
+            }));
+        try (final var retriever = new HybridRetriever(legs, HybridRetriever.byField("id"), Duration.ofMillis(100))) {
+            final var result = retriever.retrieve("question", 10);
+            assertEquals(List.of("a"), result.hits().stream().map(HybridRetriever.Hit::id).toList());
+            assertEquals(HybridRetriever.LegStatus.LATE, result.legs().get(1).status());
+            assertTrue(interrupted.await(5, TimeUnit.SECONDS), "slow leg was not interrupted");
+        }
+    }
+
+    private static List<Map<String, Object>> documents(String... ids) {
+        return List.of(ids).stream().<Map<String, Object>>map(id -> Map.of("id", id)).toList();
+    }
+
+}
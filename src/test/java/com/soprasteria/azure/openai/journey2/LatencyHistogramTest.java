@@ -0,0 +1,57 @@
+package com.soprasteria.azure.openai.journey2;
+
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LatencyHistogramTest {
+
+    @Test
+    void emptyHistogramReportsZero() {
+        final var histogram = new LatencyHistogram();
+        assertEquals(0, histogram.count());
+        assertEquals(0.0, histogram.percentileMillis(99));
+        assertEquals(0.0, histogram.meanMillis());
+    }
+
+    @Test
+    void valuesBelowTheLinearRangeAreExact() {
+        final var histogram = new LatencyHistogram();
+        for (int micros = 1; micros <= 50; micros++) {
+            histogram.record(micros);
+        }
+        assertEquals(0.025, histogram.percentileMillis(50), 1e-9);
+        assertEquals(0.050, histogram.percentileMillis(99), 1e-9);
+        assertEquals(0.001, histogram.percentileMillis(0), 1e-9);
+        assertEquals(0.0255, histogram.meanMillis(), 1e-9);
+    }
+
+    @Test
+    void percentilesAreWithinTheBucketPrecision() {
+        final var histogram = new LatencyHistogram();
+        // 1 to 1000 ms, one sample each: the p-th percentile is p * 10 ms.
+        for (int millis = 1_000; millis >= 1; millis--) {
+            histogram.recordNanos(millis * 1_000_000L);
+        }
+        assertEquals(1_000, histogram.count());
+        for (final var p : new double[]{1, 25, 50, 90, 95, 99, 99.9}) {
+            final var expected = Math.ceil(p * 10);
+            assertEquals(expected, histogram.percentileMillis(p), expected * 0.035, "p" + p);
+        }
+        // The top bucket is capped by the largest value recorded.
+        assertEquals(1_000.0, histogram.percentileMillis(100));
+        assertEquals(1_000.0, histogram.maxMillis());
+        assertEquals(500.5, histogram.meanMillis(), 1e-9);
+    }
+
+    @Test
+    void concurrentRecordingLosesNoSamples() {
+        final var histogram = new LatencyHistogram();
+        IntStream.range(0, 100_000).parallel().forEach(i -> histogram.record(i % 1_000));
+        assertEquals(100_000, histogram.count());
+        assertEquals(0.999, histogram.maxMillis(), 1e-9);
+    }
+
+}
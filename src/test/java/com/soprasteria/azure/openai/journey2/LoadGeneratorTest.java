@@ -0,0 +1,93 @@
+package com.soprasteria.azure.openai.journey2;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LoadGeneratorTest {
+
+    private static final List<String> QUESTIONS = List.of("Hvor mange feriedager har jeg?");
+    private static final Duration PACING = Duration.ofMillis(10);
+    private static final long STALL_MILLIS = 500;
+
+    @Test
+    void correctedLatencyIncludesTheRequestsAStallHeldBack() {
+        // One user on a 10 ms schedule for one second; the 10th request stalls for 500 ms, every other one is instant.
+        final var calls = new AtomicInteger();
+        final var generator = new LoadGenerator(question -> {
+            if (calls.incrementAndGet() == 10) {
+                Thread.sleep(STALL_MILLIS);
+            }
+        }, QUESTIONS, 42);
+
+        final var result = generator.closedLoop("stall", 1, PACING, Duration.ofSeconds(1));
+
+        assertEquals(0, result.errors());
+        assertEquals(100, result.requests(), 5);
+        // Only one request was slow to serve, so the service time p99 does not see the stall...
+        assertTrue(result.serviceTime().percentileMillis(99) < 50, "svc p99 " + result.serviceTime()
+            .percentileMillis(99));
+        assertTrue(result.serviceTime().maxMillis() >= STALL_MILLIS);
+        // ...but the ~50 requests due during the stall queued behind it, from 490 ms down to 10 ms late.
+        final var p99 = result.latency().percentileMillis(99);
+        assertTrue(p99 >= 0.8 * STALL_MILLIS, "p99 " + p99);
+        // The tenth slowest of them was still 400 ms late.
+        final var p90 = result.latency().percentileMillis(90);
+        assertTrue(p90 >= 0.6 * STALL_MILLIS, "p90 " + p90);
+    }
+
+    @Test
+    void unpacedClosedLoopReportsServiceTime() {
+        final var calls = new AtomicInteger();
+        final var generator = new LoadGenerator(question ->
+            Thread.sleep(calls.incrementAndGet() == 10 ? STALL_MILLIS : 1), QUESTIONS, 42);
+
+        // Without a schedule there is no due time to be late against: the stall is one slow request.
+        final var result = generator.closedLoop("unpaced", 1, Duration.ZERO, Duration.ofMillis(700));
+
+        assertTrue(result.latency().percentileMillis(99) < 50, "p99 " + result.latency().percentileMillis(99));
+        assertTrue(result.latency().maxMillis() >= STALL_MILLIS);
+    }
+
+    @Test
+    void openLoopCountsQueueingBehindASerialService() {
+        // A service that handles one request at a time: the open loop keeps sending while it is stalled.
+        final var calls = new AtomicInteger();
+        final var lock = new Object();
+        final var generator = new LoadGenerator(question -> {
+            synchronized (lock) {
+                if (calls.incrementAndGet() == 10) {
+                    Thread.sleep(STALL_MILLIS);
+                }
+            }
+        }, QUESTIONS, 42);
+
+        final var result = generator.openLoop("open", 1_000.0 / PACING.toMillis(), Duration.ofSeconds(1));
+
+        assertEquals(0, result.errors());
+        final var p99 = result.latency().percentileMillis(99);
+        assertTrue(p99 >= 0.8 * STALL_MILLIS, "p99 " + p99);
+    }
+
+    @Test
+    void failedRequestsAreCountedByType() {
+        final var calls = new AtomicInteger();
+        final var generator = new LoadGenerator(question -> {
+            if (calls.incrementAndGet() % 2 == 0) {
+                throw new IllegalStateException("down");
+            }
+        }, QUESTIONS, 42);
+
+        final var result = generator.closedLoop("errors", 1, PACING, Duration.ofMillis(200));
+
+        assertEquals(result.requests() / 2, result.errors());
+        assertEquals(result.errors(), (long) result.errorsByType().get("IllegalStateException"));
+        assertEquals(result.requests() - result.errors(), result.latency().count());
+    }
+
+}
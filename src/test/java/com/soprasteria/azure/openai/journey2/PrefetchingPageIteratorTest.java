@@ -0,0 +1,115 @@
+package com.soprasteria.azure.openai.journey2;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.azure.search.documents.SearchAsyncClient;
+import com.azure.search.documents.SearchClientBuilder;
+import com.azure.search.documents.indexes.models.SearchField;
+import com.azure.search.documents.indexes.models.SearchFieldDataType;
+import com.azure.search.documents.indexes.models.SearchIndex;
+import com.azure.search.documents.models.SearchOptions;
+import com.soprasteria.azure.openai.journey3.utils.Utils;
+import com.soprasteria.azure.openai.standin.FaultProfile;
+import com.soprasteria.azure.openai.standin.SearchServiceStandIn;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PrefetchingPageIteratorTest {
+
+    private static final String INDEX = "prefetch";
+    // Ten pages of the stand-in's 50 results.
+    private static final int DOCUMENTS = 500;
+    private static final Duration LATENCY = Duration.ofMillis(100);
+    // Long enough for several more pages to arrive, had they been requested.
+    private static final long SETTLE_MILLIS = 600;
+
+    private static final SearchOptions OPTIONS = new SearchOptions().setSelect("id");
+
+    @Test
+    void fetchesTheNextPageWhileTheCurrentOneIsConsumed() throws Exception {
+        try (final var standIn = standIn();
+             final var pages = PrefetchingPageIterator.pages(client(standIn), "*", OPTIONS, 1)) {
+            Thread.sleep(SETTLE_MILLIS);
+            assertEquals(1, standIn.searches(), "only the first page before anything is consumed");
+
+            assertEquals(50, pages.next().getValue().size());
+            // The consumer holds page 1; page 2 is fetched in the meantime, but no further.
+            Thread.sleep(SETTLE_MILLIS);
+            assertEquals(2, standIn.searches());
+
+            // Page 2 is already buffered, so taking it does not wait for a round trip.
+            final var start = System.nanoTime();
+            assertEquals(50, pages.next().getValue().size());
+            assertTrue(System.nanoTime() - start < LATENCY.toNanos(), "page 2 was not prefetched");
+
+            var count = 100;
+            while (pages.hasNext()) {
+                count += pages.next().getValue().size();
+            }
+            assertEquals(DOCUMENTS, count);
+            assertEquals(DOCUMENTS / 50, standIn.searches());
+        }
+    }
+
+    @Test
+    void closingCancelsThePagesStillRequested() throws Exception {
+        try (final var standIn = standIn()) {
+            final var pages = PrefetchingPageIterator.pages(client(standIn), "*", OPTIONS, 3);
+            pages.next();
+            // Page 2 is on its way and pages 3 to 4 are requested behind it.
+            pages.close();
+
+            Thread.sleep(SETTLE_MILLIS);
+            assertTrue(standIn.searches() <= 2, "fetched " + standIn.searches() + " pages after close");
+            assertFalse(pages.hasNext());
+        }
+    }
+
+    @Test
+    void abandoningTheIterationCancelsThePendingFetch() throws Exception {
+        try (final var standIn = standIn()) {
+            final var client = client(standIn);
+            // A consumer that fails on the first page leaves the try-with-resources block early.
+            assertThrows(IllegalStateException.class, () -> {
+                try (final var pages = PrefetchingPageIterator.pages(client, "*", OPTIONS, 3)) {
+                    while (pages.hasNext()) {
+                        pages.next();
+                        throw new IllegalStateException("enough results");
+                    }
+                }
+            });
+
+            Thread.sleep(SETTLE_MILLIS);
+            assertTrue(standIn.searches() <= 2, "fetched " + standIn.searches() + " pages after abandoning");
+        }
+    }
+
+    private static SearchServiceStandIn standIn() throws Exception {
+        final var faults = new FaultProfile(LATENCY, Duration.ZERO, 0, 0, 0, Duration.ZERO);
+        final var standIn = new SearchServiceStandIn(0, faults, DOCUMENTS);
+        standIn.backend().createOrUpdateIndex(new SearchIndex(INDEX, List.of(
+            new SearchField("id", SearchFieldDataType.STRING).setKey(true),
+            new SearchField("text_vector", SearchFieldDataType.collection(SearchFieldDataType.SINGLE))
+                .setVectorSearchDimensions(4))), DOCUMENTS);
+        final var documents = new ArrayList<Map<String, Object>>(DOCUMENTS);
+        for (int i = 0; i < DOCUMENTS; i++) {
+            documents.add(Map.of("id", "doc-" + i, "text_vector", List.of(1.0, i % 7 / 7.0, i % 5 / 5.0, i % 3 / 3.0)));
+        }
+        standIn.backend().upload(INDEX, documents);
+        return standIn;
+    }
+
+    private static SearchAsyncClient client(SearchServiceStandIn standIn) {
+        return Utils.keyedEndpoint(new SearchClientBuilder(), standIn.endpoint(), "stand-in")
+            .indexName(INDEX)
+            .buildAsyncClient();
+    }
+
+}
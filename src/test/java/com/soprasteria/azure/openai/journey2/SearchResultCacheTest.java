@@ -0,0 +1,119 @@
+package com.soprasteria.azure.openai.journey2;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
+
+import com.azure.search.documents.models.QueryAnswer;
+import com.azure.search.documents.models.QueryAnswerType;
+import com.azure.search.documents.models.QueryCaption;
+import com.azure.search.documents.models.QueryCaptionType;
+import com.azure.search.documents.models.QueryLanguage;
+import com.azure.search.documents.models.ScoringParameter;
+import com.azure.search.documents.models.SearchOptions;
+import com.azure.search.documents.models.SemanticSearchOptions;
+import com.azure.search.documents.models.VectorSearchOptions;
+import com.azure.search.documents.models.VectorizableTextQuery;
+import com.azure.search.documents.models.VectorizedQuery;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class SearchResultCacheTest {
+
+    private static SearchOptions base() {
+        return new SearchOptions()
+            .setTop(5)
+            .setSelect("title", "chunk")
+            .setSemanticSearchOptions(new SemanticSearchOptions().setSemanticConfigurationName("default"))
+            .setVectorSearchOptions(new VectorSearchOptions().setQueries(List.of(
+                new VectorizableTextQuery("Hva er feriereglene?").setFields("text_vector"),
+                new VectorizedQuery(List.of(0.1f, 0.2f, 0.3f)).setFields("text_vector"))));
+    }
+
+    @Test
+    void everyResponseOptionChangesTheKey() {
+        final List<UnaryOperator<SearchOptions>> changes = List.of(
+            options -> options.setFacets("category"),
+            options -> options.setHighlightFields("chunk"),
+            options -> options.setHighlightPreTag("<b>"),
+            options -> options.setHighlightPostTag("</b>"),
+            options -> options.setMinimumCoverage(80.0),
+            options -> options.setScoringParameters(new ScoringParameter("region", List.of("oslo"))),
+            options -> options.setQueryLanguage(QueryLanguage.EN_US),
+            options -> options.setIncludeTotalCount(true),
+            options -> options.setSemanticSearchOptions(new SemanticSearchOptions()
+                .setSemanticConfigurationName("default")
+                .setQueryAnswer(new QueryAnswer(QueryAnswerType.EXTRACTIVE))),
+            options -> options.setSemanticSearchOptions(new SemanticSearchOptions()
+                .setSemanticConfigurationName("default")
+                .setQueryCaption(new QueryCaption(QueryCaptionType.EXTRACTIVE))),
+            options -> options.setSemanticSearchOptions(new SemanticSearchOptions()
+                .setSemanticConfigurationName("default")
+                .setSemanticQuery("ferie")),
+            options -> options.setSemanticSearchOptions(new SemanticSearchOptions()
+                .setSemanticConfigurationName("default")
+                .setMaxWaitDuration(Duration.ofMillis(700))),
+            options -> options.setVectorSearchOptions(new VectorSearchOptions().setQueries(List.of(
+                new VectorizableTextQuery("Hva er feriereglene?").setFields("text_vector"),
+                new VectorizedQuery(List.of(0.1f, 0.2f, 0.4f)).setFields("text_vector")))),
+            options -> options.setVectorSearchOptions(new VectorSearchOptions().setQueries(List.of(
+                new VectorizableTextQuery("Hva er feriereglene?").setFields("text_vector").setWeight(2f),
+                new VectorizedQuery(List.of(0.1f, 0.2f, 0.3f)).setFields("text_vector")))));
+        final var key = SearchResultCache.canonical(base());
+        for (int i = 0; i < changes.size(); i++) {
+            assertNotEquals(key, SearchResultCache.canonical(changes.get(i).apply(base())), "change " + i);
+        }
+    }
+
+    @Test
+    void selectOrderAndQuestionWhitespaceShareAnEntry() {
+        final var reordered = base()
+            .setSelect("chunk", "title")
+            .setVectorSearchOptions(new VectorSearchOptions().setQueries(List.of(
+                new VectorizableTextQuery("  Hva er\n feriereglene? ").setFields("text_vector"),
+                new VectorizedQuery(List.of(0.1f, 0.2f, 0.3f)).setFields("text_vector"))));
+        assertEquals(SearchResultCache.canonical(base()), SearchResultCache.canonical(reordered));
+    }
+
+    @Test
+    void invalidationAndNewIndexVersionsMissTheCache() {
+        final var cache = SearchResultCache.<Integer>withDefaults();
+        final var searches = new AtomicInteger();
+        final var options = base();
+        cache.get("handbook", "ferie", options, searches::incrementAndGet);
+        cache.get("handbook", " ferie ", options, searches::incrementAndGet);
+        assertEquals(1, searches.get());
+
+        cache.invalidate("handbook");
+        cache.get("handbook", "ferie", options, searches::incrementAndGet);
+        assertEquals(2, searches.get());
+
+        cache.indexVersion("handbook", "100");
+        cache.get("handbook", "ferie", options, searches::incrementAndGet);
+        assertEquals(2, searches.get());
+        cache.indexVersion("handbook", "101");
+        cache.get("handbook", "ferie", options, searches::incrementAndGet);
+        assertEquals(3, searches.get());
+    }
+
+
+    @Test
+    void restQueryVectorsAreKeyedByTheirHash() {
+        final var request = restRequest(List.of(0.1f, 0.2f, 0.3f));
+        final var canonical = SearchResultCache.canonical(request);
+        assertEquals(canonical, SearchResultCache.canonical(restRequest(List.of(0.1f, 0.2f, 0.3f))));
+        assertNotEquals(canonical, SearchResultCache.canonical(restRequest(List.of(0.1f, 0.2f, 0.4f))));
+        assertFalse(canonical.contains("0.2"), canonical);
+    }
+
+    private static Map<String, Object> restRequest(List<Float> vector) {
+        return Map.of("search", "ferie", "top", 20, "select", "chunk,text_vector",
+            "vectorQueries", List.of(Map.of("kind", "vector", "vector", vector, "fields", "text_vector")));
+    }
+
+}
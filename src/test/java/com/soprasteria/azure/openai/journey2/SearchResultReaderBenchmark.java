@@ -0,0 +1,122 @@
+package com.soprasteria.azure.openai.journey2;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * {@link SearchResultReader} against decoding every hit into a map first, as {@code getDocument(SearchDocument.class)}
+ * does, then casting out title and chunk and cutting the chunk to 300 characters, as the journey 2 examples do.
+ * Responses carry {@code hits} results with chunks of {@code chunkChars} characters, and optionally a
+ * {@code text_vector} of {@code vectorDimensions} floats the caller did not need.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.soprasteria.azure.openai.journey2.SearchResultReaderBenchmark}; the GC profiler is on, so
+ * {@code gc.alloc.rate.norm} gives the bytes allocated per decoded response.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SearchResultReaderBenchmark {
+
+    private static final int PRINTED_CHARS = 300;
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Param({"5", "50"})
+    int hits;
+
+    @Param({"2000"})
+    int chunkChars;
+
+    @Param({"0", "1536"})
+    int vectorDimensions;
+
+    private byte[] response;
+    private final SearchResultReader reader = new SearchResultReader(PRINTED_CHARS);
+
+    @Setup
+    public void setUp() throws IOException {
+        final var random = new Random(42);
+        final var value = new ArrayList<Map<String, Object>>(hits);
+        for (int i = 0; i < hits; i++) {
+            final var hit = new LinkedHashMap<String, Object>();
+            hit.put("@search.score", random.nextDouble());
+            hit.put("@search.rerankerScore", 4 * random.nextDouble());
+            hit.put("title", "Personalhåndbok kapittel " + i);
+            hit.put("chunk", randomText(random, chunkChars));
+            if (vectorDimensions > 0) {
+                final var vector = new float[vectorDimensions];
+                for (int d = 0; d < vectorDimensions; d++) {
+                    vector[d] = (float) random.nextGaussian();
+                }
+                hit.put("text_vector", vector);
+            }
+            value.add(hit);
+        }
+        response = MAPPER.writeValueAsBytes(Map.of("value", value));
+    }
+
+    @Benchmark
+    public void documentMaps(Blackhole blackhole) throws IOException {
+        final Map<String, Object> body = MAPPER.readValue(response, new TypeReference<>() {
+        });
+        @SuppressWarnings("unchecked")
+        final var value = (List<Map<String, Object>>) body.get("value");
+        for (final var document : value) {
+            final var title = (String) document.get("title");
+            var chunk = (String) document.get("chunk");
+            if (chunk != null && chunk.length() > PRINTED_CHARS) {
+                chunk = chunk.substring(0, PRINTED_CHARS) + "...";
+            }
+            blackhole.consume(title);
+            blackhole.consume(chunk);
+        }
+    }
+
+    @Benchmark
+    public int streamingReader(Blackhole blackhole) throws IOException {
+        return reader.read(new ByteArrayInputStream(response), blackhole::consume);
+    }
+
+    private static String randomText(Random random, int length) {
+        final var words = new String[]{"ferie", "lønn", "permisjon", "arbeidstid", "avtale", "ansatte", "søknad"};
+        final var text = new StringBuilder(length + 16);
+        while (text.length() < length) {
+            text.append(words[random.nextInt(words.length)]).append(' ');
+        }
+        return text.substring(0, length);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+            .include(SearchResultReaderBenchmark.class.getSimpleName())
+            .addProfiler("gc")
+            .build()).run();
+    }
+
+}
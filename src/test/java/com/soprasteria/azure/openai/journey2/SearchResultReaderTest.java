@@ -0,0 +1,106 @@
+package com.soprasteria.azure.openai.journey2;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SearchResultReaderTest {
+
+    @Test
+    void readsOnlyTheProjectedFields() throws IOException {
+        final var passages = read(new SearchResultReader(Integer.MAX_VALUE, List.of("chunk"), "text_vector"), """
+            {"value": [{
+              "@search.score": 0.82,
+              "@search.highlights": {"chunk": ["<em>ferie</em>"]},
+              "id": "chunk-1",
+              "title": "Ferie",
+              "chunk": "Du har rett på fem uker ferie.",
+              "tags": ["ferie", {"nested": [1, 2, {"deeper": null}]}],
+              "text_vector": [0.5, -1.25, 2]
+            }]}
+            """);
+
+        assertEquals(1, passages.size());
+        final var passage = passages.getFirst();
+        assertEquals(0.82, passage.score(), 1e-9);
+        assertNull(passage.rerankerScore());
+        assertEquals("Du har rett på fem uker ferie.", passage.text("chunk"));
+        assertNull(passage.text("title"));
+        assertArrayEquals(new float[]{0.5f, -1.25f, 2f}, passage.vector());
+    }
+
+    @Test
+    void skipsVectorsThatAreNotProjected() throws IOException {
+        final var passage = read(new SearchResultReader(Integer.MAX_VALUE), """
+            {"value": [{"@search.score": 1.0, "text_vector": [1, 2], "title": "Lønn", "chunk": "Utbetales den 25."}]}
+            """).getFirst();
+        assertNull(passage.vector());
+        assertEquals("Lønn", passage.text("title"));
+        assertEquals("Utbetales den 25.", passage.text("chunk"));
+    }
+
+    @Test
+    void cutsLongTextWithoutSplittingSurrogatePairs() throws IOException {
+        final var passages = read(new SearchResultReader(5, List.of("title", "chunk"), null), """
+            {"value": [{"title": "Kort", "chunk": "Arbeidstid er 37,5 timer."}]}
+            """);
+        assertEquals("Kort", passages.getFirst().text("title"));
+        assertEquals("Arbei...", passages.getFirst().text("chunk"));
+
+        // The emoji is a surrogate pair at chars 5 and 6; a cut after char 6 would leave half of it.
+        final var emoji = """
+            {"value": [{"chunk": "Ferie\uD83D\uDE00 og fri"}]}
+            """;
+        assertEquals("Ferie...", read(new SearchResultReader(6, List.of("chunk"), null), emoji)
+            .getFirst().text("chunk"));
+        assertEquals("Ferie\uD83D\uDE00...", read(new SearchResultReader(7, List.of("chunk"), null), emoji)
+            .getFirst().text("chunk"));
+    }
+
+    @Test
+    void readsScoresAndSkipsPagingAroundTheHits() throws IOException {
+        final var reader = new SearchResultReader(Integer.MAX_VALUE);
+        final var passages = read(reader, """
+            {
+              "@odata.count": 3,
+              "@search.nextPageParameters": {"search": "ferie", "skip": 2, "vectorQueries": [{"k": 50}]},
+              "value": [
+                {"@search.score": 0.03, "@search.rerankerScore": 3.1, "chunk": "a"},
+                {"@search.score": 0.02, "@search.rerankerScore": null, "chunk": "b"}
+              ],
+              "@odata.nextLink": "https://search.example/indexes('handbook')/docs/search.post.search"
+            }
+            """);
+
+        assertEquals(List.of("a", "b"), passages.stream().map(passage -> passage.text("chunk")).toList());
+        assertEquals(0.03, passages.get(0).score(), 1e-9);
+        assertEquals(3.1, passages.get(0).rerankerScore(), 1e-9);
+        assertNull(passages.get(1).rerankerScore());
+
+        assertEquals(2, reader.read(stream("""
+            {"@odata.nextLink": "https://search.example/next", "value": [{"chunk": "a"}, {"chunk": "b"}]}
+            """), passage -> { }));
+    }
+
+    @Test
+    void rejectsAResponseThatIsNotAnObject() {
+        assertThrows(IOException.class, () -> read(new SearchResultReader(10), "[]"));
+    }
+
+    private static List<SearchResultReader.Passage> read(SearchResultReader reader, String json) throws IOException {
+        return reader.readAll(stream(json));
+    }
+
+    private static ByteArrayInputStream stream(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
@@ -0,0 +1,63 @@
+package com.soprasteria.azure.openai.journey3;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+import com.azure.search.documents.indexes.models.VectorSearchAlgorithmMetric;
+import com.soprasteria.azure.openai.journey3.vector.LocalHnswEngine;
+import com.soprasteria.azure.openai.journey3.vector.RandomVectors;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The sweep of {@link HnswSweepExample} over the in-process engine and a small seeded corpus, so it runs without the
+ * dataset or the search service.
+ */
+class HnswSweepTest {
+
+    private static final int DIMENSIONS = 32;
+    private static final int K = 10;
+    private static final long SEED = 42;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void recallRisesWithEfSearch() throws Exception {
+        final var corpus = RandomVectors.clustered(3_000, DIMENSIONS, 30, 0.4f, SEED);
+        final var queries = queries(corpus, 100);
+        final var grid = HnswSweep.grid(new int[]{8}, new int[]{100}, new int[]{10, 40, 200},
+            List.of(VectorSearchAlgorithmMetric.COSINE));
+
+        final var points = new HnswSweep(new LocalHnswEngine(), corpus, queries, K, directory).run(grid);
+
+        assertEquals(grid.size(), points.size());
+        for (int i = 1; i < points.size(); i++) {
+            assertTrue(points.get(i).recall() >= points.get(i - 1).recall() - 0.01,
+                () -> "recall fell from " + points.get(0) + " along " + points);
+        }
+        assertTrue(points.getFirst().recall() < points.getLast().recall(), points::toString);
+        assertTrue(points.getLast().recall() >= 0.95, points::toString);
+        assertTrue(points.stream().anyMatch(HnswSweep.Point::pareto));
+    }
+
+    /**
+     * Corpus vectors with a little noise, near indexed vectors but not identical to them.
+     */
+    private static float[][] queries(float[][] corpus, int count) {
+        final var random = new Random(SEED + 1);
+        final var queries = new float[count][];
+        for (int q = 0; q < count; q++) {
+            queries[q] = corpus[random.nextInt(corpus.length)].clone();
+            for (int i = 0; i < DIMENSIONS; i++) {
+                queries[q][i] += 0.05f * (float) random.nextGaussian();
+            }
+        }
+        return queries;
+    }
+
+}
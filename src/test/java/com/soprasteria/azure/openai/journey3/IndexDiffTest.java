@@ -0,0 +1,176 @@
+package com.soprasteria.azure.openai.journey3;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import com.azure.search.documents.indexes.models.BinaryQuantizationCompression;
+import com.azure.search.documents.indexes.models.HnswAlgorithmConfiguration;
+import com.azure.search.documents.indexes.models.HnswParameters;
+import com.azure.search.documents.indexes.models.LexicalAnalyzerName;
+import com.azure.search.documents.indexes.models.ScalarQuantizationCompression;
+import com.azure.search.documents.indexes.models.ScalarQuantizationParameters;
+import com.azure.search.documents.indexes.models.SearchField;
+import com.azure.search.documents.indexes.models.SearchFieldDataType;
+import com.azure.search.documents.indexes.models.SearchIndex;
+import com.azure.search.documents.indexes.models.VectorSearch;
+import com.azure.search.documents.indexes.models.VectorSearchAlgorithmMetric;
+import com.azure.search.documents.indexes.models.VectorSearchCompressionTarget;
+import com.azure.search.documents.indexes.models.VectorSearchProfile;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IndexDiffTest {
+
+    @Test
+    void identicalDefinitionsHaveNoChanges() {
+        final var diff = IndexDiff.between(index(false, 1536, 16, "scalar"), index(false, 1536, 16, "scalar"));
+        assertTrue(diff.isEmpty());
+        assertFalse(diff.requiresRebuild());
+    }
+
+    @Test
+    void addedFieldsAndRetrievabilityApplyInPlace() {
+        final var desired = index(true, 1536, 16, null);
+        desired.getFields().add(new SearchField("category", SearchFieldDataType.STRING).setFilterable(true));
+
+        final var diff = IndexDiff.between(desired, index(false, 1536, 16, null));
+        assertEquals(List.of("~ field 'embedding' hidden: false -> true", "+ field 'category'"), diff.getChanges());
+        assertFalse(diff.requiresRebuild());
+    }
+
+    @Test
+    void changedVectorDimensionsRequireARebuild() {
+        final var diff = IndexDiff.between(index(false, 3072, 16, null), index(false, 1536, 16, null));
+        assertEquals(List.of("~ field 'embedding' dimensions: 1536 -> 3072 (requires rebuild)"), diff.getChanges());
+        assertTrue(diff.requiresRebuild());
+    }
+
+    @Test
+    void removedFieldsRequireARebuild() {
+        final var existing = index(false, 1536, 16, null);
+        existing.getFields().add(new SearchField("category", SearchFieldDataType.STRING));
+
+        final var diff = IndexDiff.between(index(false, 1536, 16, null), existing);
+        assertEquals(List.of("- field 'category' (requires rebuild)"), diff.getChanges());
+        assertTrue(diff.requiresRebuild());
+    }
+
+    @Test
+    void changedFieldAttributesRequireARebuild() {
+        assertRebuild(field -> field.setFilterable(true), "~ field 'content' filterable: null -> true");
+        assertRebuild(field -> field.setSortable(true), "~ field 'content' sortable: null -> true");
+        assertRebuild(field -> field.setSearchable(false), "~ field 'content' searchable: true -> false");
+    }
+
+    @Test
+    void analyzerOfAnExistingFieldRequiresARebuild() {
+        assertRebuild(field -> field.setAnalyzerName(LexicalAnalyzerName.NB_MICROSOFT),
+            "~ field 'content' analyzer: null -> " + LexicalAnalyzerName.NB_MICROSOFT);
+
+        // Only the search side of the analysis can change on an existing field.
+        final var desired = index(false, 1536, 16, null);
+        content(desired).setSearchAnalyzerName(LexicalAnalyzerName.NB_MICROSOFT);
+        final var diff = IndexDiff.between(desired, index(false, 1536, 16, null));
+        assertEquals(1, diff.changes().size());
+        assertFalse(diff.requiresRebuild());
+    }
+
+    @Test
+    void compressingAnUncompressedIndexRequiresARebuild() {
+        final var diff = IndexDiff.between(index(false, 1536, 16, "scalar"), index(false, 1536, 16, null));
+        assertEquals(List.of(
+            "~ profile 'default-profile' compression: null -> scalar-compression (requires rebuild)",
+            "+ compression 'scalar-compression'"), diff.getChanges());
+        assertTrue(diff.requiresRebuild());
+    }
+
+    @Test
+    void droppingTheCompressionRequiresARebuild() {
+        final var diff = IndexDiff.between(index(false, 1536, 16, null), index(false, 1536, 16, "binary"));
+        assertEquals(List.of(
+            "~ profile 'default-profile' compression: binary-compression -> null (requires rebuild)",
+            "- compression 'binary-compression'"), diff.getChanges());
+        assertTrue(diff.requiresRebuild());
+    }
+
+    @Test
+    void changedQuantizationRequiresARebuild() {
+        final var existing = index(false, 1536, 16, null);
+        existing.getVectorSearch().getProfiles().getFirst().setCompressionName("compression");
+        existing.getVectorSearch().setCompressions(List.of(new BinaryQuantizationCompression("compression")));
+        final var desired = index(false, 1536, 16, null);
+        desired.getVectorSearch().getProfiles().getFirst().setCompressionName("compression");
+        desired.getVectorSearch().setCompressions(List.of(new ScalarQuantizationCompression("compression")));
+
+        final var diff = IndexDiff.between(desired, existing);
+        assertEquals(List.of("~ compression 'compression' kind: BinaryQuantizationCompression -> "
+            + "ScalarQuantizationCompression (requires rebuild)"), diff.getChanges());
+        assertTrue(diff.requiresRebuild());
+    }
+
+    @Test
+    void graphParametersRequireARebuildButEfSearchDoesNot() {
+        final var graph = IndexDiff.between(index(false, 1536, 32, null), index(false, 1536, 16, null));
+        assertEquals(List.of("~ algorithm 'hnsw-config' m: 16 -> 32 (requires rebuild)"), graph.getChanges());
+        assertTrue(graph.requiresRebuild());
+
+        final var desired = index(false, 1536, 16, null);
+        hnsw(desired).getParameters().setEfSearch(800);
+        final var query = IndexDiff.between(desired, index(false, 1536, 16, null));
+        assertEquals(List.of("~ algorithm 'hnsw-config' efSearch: 500 -> 800"), query.getChanges());
+        assertFalse(query.requiresRebuild());
+    }
+
+    private static void assertRebuild(Consumer<SearchField> change, String expected) {
+        final var desired = index(false, 1536, 16, null);
+        change.accept(content(desired));
+        final var diff = IndexDiff.between(desired, index(false, 1536, 16, null));
+        assertEquals(List.of(expected + " (requires rebuild)"), diff.getChanges());
+        assertTrue(diff.requiresRebuild());
+    }
+
+    /**
+     * An index shaped like the compression study's, see {@link AzureSearchIndexManager#buildIndex}.
+     */
+    private static SearchIndex index(boolean hidden, int dimensions, int m, String compression) {
+        final var fields = new ArrayList<SearchField>(List.of(
+            new SearchField("id", SearchFieldDataType.STRING).setKey(true).setFilterable(true),
+            new SearchField("content", SearchFieldDataType.STRING).setSearchable(true),
+            new SearchField("embedding", SearchFieldDataType.collection(SearchFieldDataType.SINGLE))
+                .setSearchable(true)
+                .setVectorSearchDimensions(dimensions)
+                .setVectorSearchProfileName("default-profile")
+                .setHidden(hidden)));
+        final var profile = new VectorSearchProfile("default-profile", "hnsw-config");
+        final var vectorSearch = new VectorSearch()
+            .setAlgorithms(List.of(new HnswAlgorithmConfiguration("hnsw-config").setParameters(new HnswParameters()
+                .setM(m)
+                .setEfConstruction(400)
+                .setEfSearch(500)
+                .setMetric(VectorSearchAlgorithmMetric.COSINE))))
+            .setProfiles(List.of(profile));
+        if ("scalar".equals(compression)) {
+            profile.setCompressionName("scalar-compression");
+            vectorSearch.setCompressions(List.of(new ScalarQuantizationCompression("scalar-compression")
+                .setParameters(new ScalarQuantizationParameters()
+                    .setQuantizedDataType(VectorSearchCompressionTarget.INT8))));
+        } else if ("binary".equals(compression)) {
+            profile.setCompressionName("binary-compression");
+            vectorSearch.setCompressions(List.of(new BinaryQuantizationCompression("binary-compression")));
+        }
+        return new SearchIndex("compression-test").setFields(fields).setVectorSearch(vectorSearch);
+    }
+
+    private static SearchField content(SearchIndex index) {
+        return index.getFields().get(1);
+    }
+
+    private static HnswAlgorithmConfiguration hnsw(SearchIndex index) {
+        return (HnswAlgorithmConfiguration) index.getVectorSearch().getAlgorithms().getFirst();
+    }
+
+}
@@ -0,0 +1,122 @@
+package com.soprasteria.azure.openai.journey3;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.azure.search.documents.indexes.models.HnswAlgorithmConfiguration;
+import com.azure.search.documents.indexes.models.HnswParameters;
+import com.azure.search.documents.indexes.models.SearchField;
+import com.azure.search.documents.indexes.models.SearchFieldDataType;
+import com.azure.search.documents.indexes.models.SearchIndex;
+import com.azure.search.documents.indexes.models.VectorSearch;
+import com.azure.search.documents.indexes.models.VectorSearchAlgorithmMetric;
+import com.azure.search.documents.indexes.models.VectorSearchProfile;
+import com.soprasteria.azure.openai.journey3.IndexSizeEstimator.DatasetStatistics;
+import com.soprasteria.azure.openai.journey3.IndexSizeEstimator.Measurement;
+import com.soprasteria.azure.openai.journey3.utils.Scenario;
+import com.soprasteria.azure.openai.journey3.utils.Scenario.CompressionType;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class IndexSizeEstimatorTest {
+
+    private static final DatasetStatistics DATASET = new DatasetStatistics(10_000, 64, 300.0);
+    private static final long MEASURED_DOCUMENTS = 1_000;
+
+    private static final List<Scenario> SCENARIOS = List.of(
+        scenario("baseline", CompressionType.NONE, null, false, true),
+        scenario("scalar", CompressionType.SCALAR, null, false, false),
+        scenario("binary", CompressionType.BINARY, null, true, false),
+        scenario("scalar-truncated", CompressionType.SCALAR, 32, true, false));
+
+    @Test
+    void fitRecoversAKnownScaleAndPerDocumentOverhead() {
+        final var raw = List.of(100.0, 250.0, 400.0, 1_000.0);
+        final var measured = raw.stream().map(bytes -> 1.25 * bytes + 80.0).toList();
+
+        final var fit = IndexSizeEstimator.fit(raw, measured);
+        assertEquals(1.25, fit.scale(), 1e-9);
+        assertEquals(80.0, fit.perDocument(), 1e-9);
+        assertEquals(4, fit.measurements());
+    }
+
+    @Test
+    void fitWithOneRawSizeOnlyScales() {
+        final var fit = IndexSizeEstimator.fit(List.of(200.0, 200.0), List.of(300.0, 340.0));
+        assertEquals(1.6, fit.scale(), 1e-9);
+        assertEquals(0.0, fit.perDocument());
+        assertEquals(IndexSizeEstimator.Fit.IDENTITY, IndexSizeEstimator.fit(List.of(), List.of()));
+    }
+
+    @Test
+    void calibrationRecoversTheServiceOverheadOfSyntheticMeasurements() {
+        final var graphs = Map.of("baseline", 4, "scalar", 4, "binary", 16, "scalar-truncated", 32);
+        final var estimator = IndexSizeEstimator.uncalibrated(DATASET, scenario -> hnsw(graphs.get(scenario.name())));
+
+        // What the service would report with 1.3x storage plus 200 bytes, and 1.1x vector index plus 64 bytes.
+        final var measurements = new ArrayList<Measurement>();
+        for (final var scenario : SCENARIOS) {
+            measurements.add(new Measurement(scenario.name(), MEASURED_DOCUMENTS,
+                Math.round((1.3 * estimator.storageBytesPerDocument(scenario) + 200) * MEASURED_DOCUMENTS),
+                Math.round((1.1 * estimator.vectorBytesPerDocument(scenario) + 64) * MEASURED_DOCUMENTS)));
+        }
+        // Neither an unknown scenario nor an empty index skews the fit.
+        measurements.add(new Measurement("unknown", MEASURED_DOCUMENTS, 1, 1));
+        measurements.add(new Measurement("baseline", 0, 0, 0));
+
+        final var calibrated = IndexSizeEstimator.calibrated(DATASET,
+            scenario -> hnsw(graphs.get(scenario.name())), SCENARIOS, measurements);
+        assertEquals(SCENARIOS.size(), calibrated.storageFit().measurements());
+        assertEquals(1.3, calibrated.storageFit().scale(), 1e-3);
+        assertEquals(200.0, calibrated.storageFit().perDocument(), 0.5);
+        assertEquals(1.1, calibrated.vectorFit().scale(), 1e-3);
+        assertEquals(64.0, calibrated.vectorFit().perDocument(), 0.5);
+
+        // The estimate covers the whole dataset, ten times the measured documents.
+        final var scalar = SCENARIOS.get(1);
+        final var expected = (1.1 * estimator.vectorBytesPerDocument(scalar) + 64) * DATASET.documents();
+        assertEquals(expected, calibrated.estimate(scalar).vectorIndexSize(), expected * 1e-4);
+    }
+
+    @Test
+    void graphLinksFollowTheScenariosOwnM() {
+        final var scenario = SCENARIOS.get(1);
+        final var m4 = IndexSizeEstimator.uncalibrated(DATASET, s -> hnsw(4)).vectorBytesPerDocument(scenario);
+        final var m32 = IndexSizeEstimator.uncalibrated(DATASET, s -> hnsw(32)).vectorBytesPerDocument(scenario);
+
+        // 64 int8 codes, then 2m links on layer 0 and m / (m - 1) above, 4 bytes each.
+        assertEquals(64 + 4 * (8 + 4.0 / 3), m4, 1e-9);
+        assertEquals(64 + 4 * (64 + 32.0 / 31), m32, 1e-9);
+    }
+
+    @Test
+    void graphSettingsAreReadFromTheIndexDefinition() {
+        final var index = new SearchIndex("compression-test-scalar").setFields(List.of(
+                new SearchField("id", SearchFieldDataType.STRING).setKey(true),
+                new SearchField("embedding", SearchFieldDataType.collection(SearchFieldDataType.SINGLE))
+                    .setVectorSearchDimensions(64)
+                    .setVectorSearchProfileName("default-profile")))
+            .setVectorSearch(new VectorSearch()
+                .setAlgorithms(List.of(new HnswAlgorithmConfiguration("hnsw-config")
+                    .setParameters(new HnswParameters().setM(12).setEfConstruction(200))))
+                .setProfiles(List.of(new VectorSearchProfile("default-profile", "hnsw-config"))));
+
+        final var settings = HnswSettings.of(index);
+        assertEquals(new HnswSettings(12, 200, HnswSettings.DEFAULT.efSearch(), HnswSettings.DEFAULT.metric()),
+            settings);
+        assertEquals(HnswSettings.DEFAULT, HnswSettings.of(new SearchIndex("plain").setFields(List.of(
+            new SearchField("id", SearchFieldDataType.STRING).setKey(true)))));
+    }
+
+    private static HnswSettings hnsw(int m) {
+        return new HnswSettings(m, 400, 500, VectorSearchAlgorithmMetric.COSINE);
+    }
+
+    private static Scenario scenario(String name, CompressionType compression, Integer truncateDims,
+                                     boolean discardOriginals, boolean storedEmbedding) {
+        return new Scenario(name, compression, truncateDims, discardOriginals, storedEmbedding, null, false, name);
+    }
+
+}
@@ -0,0 +1,117 @@
+package com.soprasteria.azure.openai.journey3;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.azure.search.documents.indexes.SearchIndexClientBuilder;
+import com.azure.search.documents.indexes.models.SearchField;
+import com.azure.search.documents.indexes.models.SearchFieldDataType;
+import com.azure.search.documents.indexes.models.SearchIndex;
+import com.soprasteria.azure.openai.journey3.IndexStatisticsPoller.Sample;
+import com.soprasteria.azure.openai.journey3.ScenarioExecutor.Stage;
+import com.soprasteria.azure.openai.journey3.ScenarioExecutor.Status;
+import com.soprasteria.azure.openai.journey3.utils.Scenario;
+import com.soprasteria.azure.openai.journey3.utils.Utils;
+import com.soprasteria.azure.openai.standin.FaultProfile;
+import com.soprasteria.azure.openai.standin.SearchServiceStandIn;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IndexStatisticsPollerTest {
+
+    private static final String INDEX = "ingestion";
+    private static final int DOCUMENTS = 100;
+    private static final int BATCH_SIZE = 20;
+
+    @Test
+    void recordsTheStatisticsWhileTheIngestStageRuns() throws Exception {
+        try (final var standIn = new SearchServiceStandIn(0, FaultProfile.NONE, DOCUMENTS)) {
+            standIn.backend().createOrUpdateIndex(definition(), DOCUMENTS);
+            final var client = Utils.keyedEndpoint(new SearchIndexClientBuilder(), standIn.endpoint(), "stand-in")
+                .buildClient();
+            final var poller = new IndexStatisticsPoller(client::getIndexStatistics, Duration.ofMillis(20),
+                Duration.ofMillis(100), 3, Duration.ofSeconds(10));
+            final var recording = new AtomicReference<IndexStatisticsPoller.Recording>();
+            final var converged = new AtomicReference<IndexStatisticsPoller.Result>();
+
+            // The upload pauses 250 ms between batches, so sampling every 20 ms sees every intermediate count.
+            final var results = new ScenarioExecutor(1)
+                .monitor(Stage.INGEST, scenario -> {
+                    recording.set(poller.record(INDEX));
+                    return recording.get();
+                })
+                .stage(Stage.INGEST, scenario -> assertEquals(0, AzureParquetExample.uploadToSearch(documents(),
+                    standIn.endpoint(), "stand-in", INDEX, BATCH_SIZE)))
+                .stage(Stage.WAIT_FOR_STATS, scenario -> converged.set(poller.await(INDEX, DOCUMENTS)))
+                .run(List.of(Scenario.uncompressed("s0")));
+
+            assertTrue(results.stream().allMatch(result -> result.status() == Status.SUCCEEDED), results.toString());
+
+            final var counts = recording.get().series().stream().mapToLong(Sample::documentCount).toArray();
+            for (int i = 1; i < counts.length; i++) {
+                assertTrue(counts[i - 1] <= counts[i], "document count went down: " + Arrays.toString(counts));
+            }
+            final var intermediate = new ArrayList<Long>();
+            for (final var count : counts) {
+                if (count > 0 && count < DOCUMENTS && !intermediate.contains(count)) {
+                    intermediate.add(count);
+                }
+            }
+            assertTrue(intermediate.size() >= 2, "too few samples during the upload: " + intermediate);
+
+            // The recording stopped with the stage; waiting for the statistics took over.
+            final var recorded = recording.get().series().size();
+            Thread.sleep(100);
+            assertEquals(recorded, recording.get().series().size());
+            assertTrue(converged.get().converged());
+            assertEquals(DOCUMENTS, converged.get().last().documentCount());
+        }
+    }
+
+    @Test
+    void recordingSkipsFailedCallsAndStopsWhenClosed() throws Exception {
+        try (final var standIn = new SearchServiceStandIn(0, FaultProfile.NONE, DOCUMENTS)) {
+            final var client = Utils.keyedEndpoint(new SearchIndexClientBuilder(), standIn.endpoint(), "stand-in")
+                .buildClient();
+            final var poller = new IndexStatisticsPoller(client::getIndexStatistics, Duration.ofMillis(10),
+                Duration.ofMillis(20), 3, Duration.ofSeconds(10));
+
+            final List<Sample> series;
+            try (final var recording = poller.record(INDEX)) {
+                // The index does not exist yet, so the first calls fail and leave no sample.
+                Thread.sleep(100);
+                assertTrue(recording.series().isEmpty(), recording.series().toString());
+                standIn.backend().createOrUpdateIndex(definition(), DOCUMENTS);
+                Thread.sleep(100);
+                series = recording.series();
+            }
+            assertFalse(series.isEmpty());
+            assertEquals(0, series.getFirst().documentCount());
+        }
+    }
+
+    private static SearchIndex definition() {
+        return new SearchIndex(INDEX, List.of(
+            new SearchField("id", SearchFieldDataType.STRING).setKey(true),
+            new SearchField("title", SearchFieldDataType.STRING).setSearchable(true),
+            new SearchField("embedding", SearchFieldDataType.collection(SearchFieldDataType.SINGLE))
+                .setVectorSearchDimensions(4)));
+    }
+
+    private static List<Map<String, Object>> documents() {
+        final var documents = new ArrayList<Map<String, Object>>(DOCUMENTS);
+        for (int i = 0; i < DOCUMENTS; i++) {
+            documents.add(Map.of("id", "doc-" + i, "title", "Dokument " + i,
+                "embedding", List.of(1.0, i % 7 / 7.0, i % 5 / 5.0, i % 3 / 3.0)));
+        }
+        return documents;
+    }
+
+}
@@ -0,0 +1,59 @@
+package com.soprasteria.azure.openai.journey3;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RetrievalBenchmarkTest {
+
+    private static final double EPSILON = 1e-9;
+
+    @Test
+    void ndcgIsOneForTheExactTopKInAnyOrder() {
+        assertEquals(1.0, RetrievalBenchmark.ndcg(new int[]{4, 7, 9}, new int[]{4, 7, 9}), EPSILON);
+        // Relevance is binary, so swapping two relevant results does not change the score.
+        assertEquals(1.0, RetrievalBenchmark.ndcg(new int[]{9, 4, 7}, new int[]{4, 7, 9}), EPSILON);
+    }
+
+    @Test
+    void ndcgDiscountsRelevantResultsByRank() {
+        // Hits at ranks 1 and 3: (1 + 1/log2(4)) / (1 + 1/log2(3) + 1/log2(4)).
+        final var expected = (1.0 + 0.5) / (1.0 + 1.0 / log2(3) + 0.5);
+        assertEquals(expected, RetrievalBenchmark.ndcg(new int[]{4, 1, 9}, new int[]{4, 7, 9}), EPSILON);
+
+        assertEquals(1.0, RetrievalBenchmark.ndcg(new int[]{4, 1}, new int[]{4}), EPSILON);
+        assertEquals(1.0 / log2(3), RetrievalBenchmark.ndcg(new int[]{1, 4}, new int[]{4}), EPSILON);
+    }
+
+    @Test
+    void ndcgOfShortOrMissingResults() {
+        // A result shorter than k is still measured against the ideal of all k.
+        assertEquals(1.0 / (1.0 + 1.0 / log2(3)), RetrievalBenchmark.ndcg(new int[]{4}, new int[]{4, 7}), EPSILON);
+        assertEquals(0.0, RetrievalBenchmark.ndcg(new int[]{}, new int[]{4, 7}), EPSILON);
+        assertEquals(0.0, RetrievalBenchmark.ndcg(new int[]{1, 2}, new int[]{4, 7}), EPSILON);
+        assertEquals(1.0, RetrievalBenchmark.ndcg(new int[]{1, 2}, new int[]{}), EPSILON);
+    }
+
+    @Test
+    void overlapIgnoresOrder() {
+        assertEquals(1.0, RetrievalBenchmark.overlap(new int[]{3, 1, 2}, new int[]{1, 2, 3}), EPSILON);
+        assertEquals(0.5, RetrievalBenchmark.overlap(new int[]{8, 2, 9, 1}, new int[]{1, 2, 3, 4}), EPSILON);
+        assertEquals(0.0, RetrievalBenchmark.overlap(new int[]{5, 6}, new int[]{1, 2}), EPSILON);
+    }
+
+    @Test
+    void overlapIsMeasuredAgainstTheBaseline() {
+        // A shorter scenario result can only cover part of the baseline.
+        assertEquals(0.25, RetrievalBenchmark.overlap(new int[]{2}, new int[]{1, 2, 3, 4}), EPSILON);
+        assertEquals(1.0, RetrievalBenchmark.overlap(new int[]{1}, new int[]{}), EPSILON);
+        // The input is not reordered.
+        final var result = new int[]{3, 1, 2};
+        RetrievalBenchmark.overlap(result, new int[]{1});
+        assertEquals(3, result[0]);
+    }
+
+    private static double log2(double x) {
+        return Math.log(x) / Math.log(2);
+    }
+
+}
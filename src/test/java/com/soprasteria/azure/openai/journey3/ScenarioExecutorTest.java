@@ -0,0 +1,162 @@
+package com.soprasteria.azure.openai.journey3;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import com.soprasteria.azure.openai.journey3.ScenarioExecutor.Stage;
+import com.soprasteria.azure.openai.journey3.ScenarioExecutor.StageResult;
+import com.soprasteria.azure.openai.journey3.ScenarioExecutor.Status;
+import com.soprasteria.azure.openai.journey3.utils.Scenario;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ScenarioExecutorTest {
+
+    @Test
+    void runsTheStagesOfEachScenarioInDependencyOrder() {
+        final var ran = new ConcurrentHashMap<String, List<Stage>>();
+        final var executor = new ScenarioExecutor(3);
+        for (final var stage : Stage.values()) {
+            executor.stage(stage, scenario -> {
+                Thread.sleep(5 + Math.abs(scenario.name().hashCode() + stage.ordinal()) % 20);
+                ran.computeIfAbsent(scenario.name(), name -> Collections.synchronizedList(new ArrayList<>()))
+                    .add(stage);
+            });
+        }
+
+        final var scenarios = scenarios(5);
+        final var results = executor.run(scenarios);
+
+        for (final var scenario : scenarios) {
+            assertEquals(List.of(Stage.values()), ran.get(scenario.name()), scenario.name());
+        }
+        assertEquals(scenarios.size() * Stage.values().length, results.size());
+        assertTrue(results.stream().allMatch(result -> result.status() == Status.SUCCEEDED));
+        // Results come in scenario order, then stage order.
+        assertEquals(scenarios.getFirst().name(), results.getFirst().scenario());
+        assertEquals(Stage.PROVISION, results.getFirst().stage());
+        assertEquals(Stage.EVALUATE, results.getLast().stage());
+    }
+
+    @Test
+    void failedStageSkipsOnlyItsDependents() {
+        final var evaluated = Collections.synchronizedList(new ArrayList<String>());
+        final var results = new ScenarioExecutor(2)
+            .stage(Stage.INGEST, scenario -> {
+                if (scenario.name().equals("s1")) {
+                    throw new IllegalStateException("3 of 10 documents failed");
+                }
+            })
+            .stage(Stage.EVALUATE, scenario -> evaluated.add(scenario.name()))
+            .run(scenarios(3));
+
+        final var failed = byStage(results, "s1");
+        assertEquals(Status.SUCCEEDED, failed.get(Stage.PROVISION).status());
+        assertEquals(Status.FAILED, failed.get(Stage.INGEST).status());
+        assertEquals("IllegalStateException: 3 of 10 documents failed", failed.get(Stage.INGEST).error());
+        assertEquals(Status.SKIPPED, failed.get(Stage.WAIT_FOR_STATS).status());
+        assertEquals(Status.SKIPPED, failed.get(Stage.EVALUATE).status());
+        assertEquals(List.of("s0", "s2"), evaluated.stream().sorted().toList());
+        assertTrue(byStage(results, "s2").values().stream().allMatch(result -> result.status() == Status.SUCCEEDED));
+    }
+
+    @Test
+    void onlyThrottledStagesCountAgainstMaxConcurrency() {
+        final var throttled = new Concurrency();
+        final var waiting = new Concurrency();
+        final var results = new ScenarioExecutor(2)
+            .stage(Stage.PROVISION, scenario -> throttled.during(20))
+            .stage(Stage.INGEST, scenario -> throttled.during(20))
+            .stage(Stage.WAIT_FOR_STATS, scenario -> waiting.during(300))
+            .stage(Stage.EVALUATE, scenario -> throttled.during(20))
+            .run(scenarios(6));
+
+        assertTrue(results.stream().allMatch(result -> result.status() == Status.SUCCEEDED));
+        assertEquals(2, throttled.max.get());
+        assertTrue(waiting.max.get() > 2, "waiting stages ran " + waiting.max.get() + " at a time");
+    }
+
+    @Test
+    void monitorsRunAlongsideTheTaskOfTheirStage() {
+        final var events = Collections.synchronizedList(new ArrayList<String>());
+        final var results = new ScenarioExecutor(1)
+            .monitor(Stage.INGEST, scenario -> {
+                events.add(scenario.name() + " monitor started");
+                return () -> events.add(scenario.name() + " monitor closed");
+            })
+            .stage(Stage.INGEST, scenario -> {
+                events.add(scenario.name() + " ingest");
+                if (scenario.name().equals("s1")) {
+                    throw new IllegalStateException("upload failed");
+                }
+            })
+            .stage(Stage.WAIT_FOR_STATS, scenario -> events.add(scenario.name() + " wait"))
+            .run(scenarios(2));
+
+        assertEquals(List.of("s0 monitor started", "s0 ingest", "s0 monitor closed", "s0 wait"),
+            events.stream().filter(event -> event.startsWith("s0")).toList());
+        // The monitor is closed even when the task fails.
+        assertEquals(List.of("s1 monitor started", "s1 ingest", "s1 monitor closed"),
+            events.stream().filter(event -> event.startsWith("s1")).toList());
+        assertEquals(Status.FAILED, byStage(results, "s1").get(Stage.INGEST).status());
+    }
+
+    @Test
+    void monitorThatFailsToCloseFailsTheStage() {
+        final var results = new ScenarioExecutor(1)
+            .monitor(Stage.INGEST, scenario -> () -> {
+                throw new IllegalStateException("recording lost");
+            })
+            .run(scenarios(1));
+
+        // Stages without a task do not start their monitors.
+        assertEquals(Status.SUCCEEDED, byStage(results, "s0").get(Stage.INGEST).status());
+
+        final var failed = new ScenarioExecutor(1)
+            .monitor(Stage.INGEST, scenario -> () -> {
+                throw new IllegalStateException("recording lost");
+            })
+            .stage(Stage.INGEST, scenario -> { })
+            .run(scenarios(1));
+        assertEquals("IllegalStateException: recording lost", byStage(failed, "s0").get(Stage.INGEST).error());
+        assertEquals(Status.SKIPPED, byStage(failed, "s0").get(Stage.WAIT_FOR_STATS).status());
+    }
+
+    private static List<Scenario> scenarios(int count) {
+        return IntStream.range(0, count).mapToObj(i -> Scenario.uncompressed("s" + i)).toList();
+    }
+
+    private static Map<Stage, StageResult> byStage(List<StageResult> results, String scenario) {
+        final var stages = new EnumMap<Stage, StageResult>(Stage.class);
+        results.stream().filter(result -> result.scenario().equals(scenario))
+            .forEach(result -> stages.put(result.stage(), result));
+        return stages;
+    }
+
+    /**
+     * Counts tasks running at the same time.
+     */
+    private static class Concurrency {
+
+        private final AtomicInteger running = new AtomicInteger();
+        private final AtomicInteger max = new AtomicInteger();
+
+        void during(long millis) throws InterruptedException {
+            max.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(millis);
+            } finally {
+                running.decrementAndGet();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,91 @@
+package com.soprasteria.azure.openai.journey3.quantization;
+
+import java.util.Arrays;
+
+import com.soprasteria.azure.openai.journey3.vector.RandomVectors;
+import com.soprasteria.azure.openai.journey3.vector.VectorOps;
+import com.soprasteria.azure.openai.journey3.vector.VectorStore;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BinaryQuantizerTest {
+
+    @Test
+    void positiveValuesSetTheirBitLowestDimensionFirst() {
+        final var quantizer = new BinaryQuantizer(4);
+        assertArrayEquals(new long[]{0b1010L}, quantizer.encode(new float[]{-1f, 0.5f, 0f, 2f}));
+        assertArrayEquals(new float[]{-1f, 1f, -1f, 1f}, quantizer.decode(new long[]{0b1010L}), 0f);
+    }
+
+    @Test
+    void paddingBitsOfTheLastWordStayClear() {
+        final var quantizer = new BinaryQuantizer(100);
+        final var ones = new float[100];
+        Arrays.fill(ones, 1f);
+        final var bits = quantizer.encode(ones);
+        assertEquals(2, quantizer.words());
+        assertEquals(-1L, bits[0]);
+        assertEquals((1L << 36) - 1, bits[1]);
+    }
+
+    @Test
+    void decodeKeepsTheSigns() {
+        final var quantizer = new BinaryQuantizer(96);
+        for (final var vector : RandomVectors.gaussian(100, 96, 21)) {
+            final var decoded = quantizer.decode(quantizer.encode(vector));
+            for (int i = 0; i < vector.length; i++) {
+                assertEquals(vector[i] > 0f ? 1f : -1f, decoded[i], 0f);
+            }
+        }
+    }
+
+    @Test
+    void hammingDistanceMatchesTheDecodedDotProduct() {
+        final var dimensions = 200;
+        final var quantizer = new BinaryQuantizer(dimensions);
+        final var vectors = RandomVectors.gaussian(50, dimensions, 22);
+        for (int a = 0; a + 1 < vectors.length; a++) {
+            final var x = quantizer.encode(vectors[a]);
+            final var y = quantizer.encode(vectors[a + 1]);
+            final var hamming = VectorOps.hamming(x, 0, y, 0, quantizer.words());
+            final var dot = VectorOps.dot(quantizer.decode(x), quantizer.decode(y));
+            assertEquals((dimensions - dot) / 2, hamming, 0f);
+        }
+    }
+
+    @Test
+    void hammingDistanceEstimatesTheAngle() {
+        final var dimensions = 1024;
+        final var quantizer = new BinaryQuantizer(dimensions);
+        final var vectors = RandomVectors.clustered(400, dimensions, 4, 1f, 23);
+        var totalError = 0.0;
+        var maxError = 0.0;
+        for (int a = 0; a + 1 < vectors.length; a += 2) {
+            final var angle = Math.acos(VectorOps.cosine(vectors[a], vectors[a + 1]));
+            final var hamming = VectorOps.hamming(quantizer.encode(vectors[a]), 0, quantizer.encode(vectors[a + 1]), 0,
+                quantizer.words());
+            // The fraction of differing sign bits of two vectors is their angle over pi, in expectation.
+            final var error = Math.abs((double) hamming / dimensions - angle / Math.PI);
+            totalError += error;
+            maxError = Math.max(maxError, error);
+        }
+        final var meanError = totalError / (vectors.length / 2);
+        assertTrue(meanError < 0.02, "mean error " + meanError);
+        assertTrue(maxError < 0.08, "max error " + maxError);
+    }
+
+    @Test
+    void searchFindsAnExactCopyFirst() {
+        final var corpus = RandomVectors.gaussian(1_000, 256, 24);
+        final var encoded = new BinaryQuantizer(256).encodeAll(VectorStore.of(corpus));
+        assertEquals(32, encoded.bytesPerVector());
+        for (final var row : new int[]{0, 7, 500, 999}) {
+            assertArrayEquals(new BinaryQuantizer(256).encode(corpus[row]), encoded.codes(row));
+            assertEquals(row, encoded.search(corpus[row], 1)[0]);
+        }
+    }
+
+}
@@ -0,0 +1,89 @@
+package com.soprasteria.azure.openai.journey3.quantization;
+
+import com.soprasteria.azure.openai.journey3.vector.ExactKnn;
+import com.soprasteria.azure.openai.journey3.vector.Metric;
+import com.soprasteria.azure.openai.journey3.vector.RandomVectors;
+import com.soprasteria.azure.openai.journey3.vector.VectorStore;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProductQuantizerTest {
+
+    private static final int DIMENSIONS = 32;
+    private static final int SUBSPACES = 8;
+
+    private final float[][] corpus = RandomVectors.clustered(3_000, DIMENSIONS, 32, 0.3f, 31);
+    private final float[][] queries = RandomVectors.clustered(50, DIMENSIONS, 32, 0.3f, 32);
+    private final VectorStore store = VectorStore.of(corpus);
+    private final ProductQuantizer quantizer = ProductQuantizer.train(store, DIMENSIONS, SUBSPACES, 2_000, 15, 1);
+
+    @Test
+    void encodesOneBytePerSubspace() {
+        assertEquals(DIMENSIONS, quantizer.dimensions());
+        assertEquals(SUBSPACES, quantizer.encode(corpus[0]).length);
+        assertEquals(SUBSPACES, quantizer.encodeAll(store, Metric.COSINE).bytesPerVector());
+    }
+
+    @Test
+    void decodedVectorsEncodeToTheSameCodes() {
+        for (int row = 0; row < 500; row++) {
+            final var codes = quantizer.encode(corpus[row]);
+            assertArrayEquals(codes, quantizer.encode(quantizer.decode(codes)), "row " + row);
+        }
+    }
+
+    @Test
+    void reconstructionErrorIsSmallAgainstTheVariance() {
+        final var mean = new double[DIMENSIONS];
+        for (final var vector : corpus) {
+            for (int i = 0; i < DIMENSIONS; i++) {
+                mean[i] += vector[i] / corpus.length;
+            }
+        }
+        var variance = 0.0;
+        var error = 0.0;
+        for (final var vector : corpus) {
+            final var decoded = quantizer.decode(quantizer.encode(vector));
+            for (int i = 0; i < DIMENSIONS; i++) {
+                variance += (vector[i] - mean[i]) * (vector[i] - mean[i]);
+                error += (vector[i] - decoded[i]) * (vector[i] - decoded[i]);
+            }
+        }
+        assertTrue(error / variance < 0.05, "relative squared error " + error / variance);
+    }
+
+    @Test
+    void distanceTablesRankLikeTheDecodedVectors() {
+        for (final var metric : Metric.values()) {
+            final var encoded = quantizer.encodeAll(store, metric);
+            final var decoded = new float[corpus.length][];
+            for (int row = 0; row < corpus.length; row++) {
+                decoded[row] = encoded.decode(row);
+            }
+            final var expected = new ExactKnn(VectorStore.of(decoded), metric).neighbours(queries, 10);
+            final var agreement = RandomVectors.recall(encoded.searchAll(queries, 10), expected);
+            assertTrue(agreement >= 0.98, metric + " agreement with decoded vectors " + agreement);
+        }
+    }
+
+    @Test
+    void oversampledCandidatesHoldTheExactNeighbours() {
+        // PQ codes are coarse, so the exact top 10 is looked for among more candidates, as they are before rescoring.
+        final var encoded = quantizer.encodeAll(store, Metric.COSINE);
+        final var truth = new ExactKnn(store, Metric.COSINE).neighbours(queries, 10);
+        final var recall = RandomVectors.recall(encoded.searchAll(queries, 50), truth);
+        assertTrue(recall >= 0.9, "pq recall@10 in 50 candidates " + recall);
+    }
+
+    @Test
+    void rejectsDimensionsThatDoNotSplitEvenly() {
+        assertThrows(IllegalArgumentException.class, () -> ProductQuantizer.train(store, 30, SUBSPACES, 100, 1, 1));
+        assertThrows(IllegalArgumentException.class,
+            () -> ProductQuantizer.train(store, DIMENSIONS + SUBSPACES, SUBSPACES, 100, 1, 1));
+    }
+
+}
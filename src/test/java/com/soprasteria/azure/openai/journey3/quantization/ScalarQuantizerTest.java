@@ -0,0 +1,127 @@
+package com.soprasteria.azure.openai.journey3.quantization;
+
+import java.util.Arrays;
+
+import com.soprasteria.azure.openai.journey3.vector.ExactKnn;
+import com.soprasteria.azure.openai.journey3.vector.Metric;
+import com.soprasteria.azure.openai.journey3.vector.RandomVectors;
+import com.soprasteria.azure.openai.journey3.vector.VectorStore;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ScalarQuantizerTest {
+
+    private static final int DIMENSIONS = 24;
+    private static final float EPSILON = 1e-5f;
+
+    private final float[][] corpus = RandomVectors.gaussian(2_000, DIMENSIONS, 11);
+    private final float[][] queries = RandomVectors.gaussian(50, DIMENSIONS, 12);
+
+    @Test
+    void perDimensionRoundTripIsWithinHalfAStep() {
+        final var quantizer = ScalarQuantizer.calibrate(VectorStore.of(corpus), DIMENSIONS, corpus.length, true, 1);
+        final var steps = steps(true);
+        for (final var vector : corpus) {
+            final var decoded = quantizer.decode(quantizer.encode(vector));
+            for (int i = 0; i < DIMENSIONS; i++) {
+                assertEquals(vector[i], decoded[i], steps[i] / 2 + EPSILON, "dimension " + i);
+            }
+        }
+    }
+
+    @Test
+    void globalRoundTripIsWithinHalfAStep() {
+        final var quantizer = ScalarQuantizer.calibrate(VectorStore.of(corpus), DIMENSIONS, corpus.length, false, 1);
+        final var step = steps(false)[0];
+        for (final var vector : corpus) {
+            final var decoded = quantizer.decode(quantizer.encode(vector));
+            for (int i = 0; i < DIMENSIONS; i++) {
+                assertEquals(vector[i], decoded[i], step / 2 + EPSILON, "dimension " + i);
+            }
+        }
+    }
+
+    @Test
+    void clampsValuesOutsideTheCalibratedRange() {
+        final var quantizer = ScalarQuantizer.calibrate(VectorStore.of(new float[][]{{-1f, 0f}, {1f, 2f}}), 2, 2,
+            true, 1);
+        final var decoded = quantizer.decode(quantizer.encode(new float[]{5f, -3f}));
+        assertEquals(1f, decoded[0], EPSILON);
+        assertEquals(0f, decoded[1], EPSILON);
+    }
+
+    @Test
+    void constantDimensionDecodesExactly() {
+        final var quantizer = ScalarQuantizer.calibrate(VectorStore.of(new float[][]{{0.25f, 1f}, {0.25f, 3f}}), 2, 2,
+            true, 1);
+        assertEquals(0.25f, quantizer.decode(quantizer.encode(new float[]{0.25f, 2f}))[0], 0f);
+    }
+
+    @Test
+    void quantizesOnlyTheLeadingDimensions() {
+        final var quantizer = ScalarQuantizer.calibrate(VectorStore.of(corpus), 16, 500, true, 1);
+        assertEquals(16, quantizer.encode(corpus[0]).length);
+        assertEquals(16, quantizer.encodeAll(VectorStore.of(corpus), Metric.COSINE).bytesPerVector());
+        assertThrows(IllegalArgumentException.class,
+            () -> ScalarQuantizer.calibrate(VectorStore.of(corpus), DIMENSIONS + 1, 500, true, 1));
+    }
+
+    @Test
+    void dotProductErrorIsBoundedByTheSteps() {
+        final var quantizer = ScalarQuantizer.calibrate(VectorStore.of(corpus), DIMENSIONS, corpus.length, true, 1);
+        final var steps = steps(true);
+        for (final var query : queries) {
+            var bound = 0.0;
+            for (int i = 0; i < DIMENSIONS; i++) {
+                bound += Math.abs(query[i]) * steps[i] / 2;
+            }
+            for (int row = 0; row < 200; row++) {
+                final var decoded = quantizer.decode(quantizer.encode(corpus[row]));
+                assertEquals(dot(query, corpus[row]), dot(query, decoded), bound + 1e-4);
+            }
+        }
+    }
+
+    @Test
+    void scoringTheCodesKeepsRecall() {
+        for (final var metric : Metric.values()) {
+            final var store = VectorStore.of(corpus);
+            final var encoded = ScalarQuantizer.calibrate(store, DIMENSIONS, 1_000, true, 1).encodeAll(store, metric);
+            final var truth = new ExactKnn(store, metric).neighbours(queries, 10);
+            final var recall = RandomVectors.recall(encoded.searchAll(queries, 10), truth);
+            assertTrue(recall >= 0.9, metric + " int8 recall@10 " + recall);
+        }
+    }
+
+    private float[] steps(boolean perDimension) {
+        final var min = new float[DIMENSIONS];
+        final var max = new float[DIMENSIONS];
+        Arrays.fill(min, Float.POSITIVE_INFINITY);
+        Arrays.fill(max, Float.NEGATIVE_INFINITY);
+        for (final var vector : corpus) {
+            for (int i = 0; i < DIMENSIONS; i++) {
+                final var d = perDimension ? i : 0;
+                min[d] = Math.min(min[d], vector[i]);
+                max[d] = Math.max(max[d], vector[i]);
+            }
+        }
+        final var steps = new float[DIMENSIONS];
+        for (int i = 0; i < DIMENSIONS; i++) {
+            final var d = perDimension ? i : 0;
+            steps[i] = (max[d] - min[d]) / 255;
+        }
+        return steps;
+    }
+
+    private static double dot(float[] a, float[] b) {
+        var sum = 0.0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+}
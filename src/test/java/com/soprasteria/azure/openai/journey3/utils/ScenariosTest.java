@@ -0,0 +1,97 @@
+package com.soprasteria.azure.openai.journey3.utils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+
+import com.soprasteria.azure.openai.journey3.utils.Scenario.CompressionType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ScenariosTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void loadsTheBundledDefinition() {
+        final var scenarios = Scenarios.load();
+        assertFalse(scenarios.isEmpty());
+        assertEquals("baseline", scenarios.getFirst().name());
+        assertEquals(CompressionType.NONE, scenarios.getFirst().compressionType());
+        assertEquals(scenarios.size(), new HashSet<>(scenarios.stream().map(Scenario::name).toList()).size());
+
+        assertTrue(Scenarios.defineTestScenarios().stream().noneMatch(Scenario::localOnly));
+        assertTrue(Scenarios.defineLocalScenarios().stream().allMatch(Scenario::localOnly));
+        assertEquals(scenarios.size(),
+            Scenarios.defineTestScenarios().size() + Scenarios.defineLocalScenarios().size());
+    }
+
+    @Test
+    void readsSnakeCaseFieldsAndEnumsInAnyCase() throws IOException {
+        final var scenarios = Scenarios.load(write("""
+            scenarios:
+              - name: plain
+                description: no compression given
+              - name: scalar-1024
+                compression_type: SCALAR
+                truncate_dims: 1024
+                discard_originals: true
+              - name: pq-64
+                compression_type: pq
+                pq_subspaces: 64
+                local_only: true
+            """));
+
+        assertEquals(3, scenarios.size());
+        assertEquals(CompressionType.NONE, scenarios.get(0).compressionType());
+        assertNull(scenarios.get(0).truncateDims());
+        assertEquals(3072, scenarios.get(0).dimensions(3072));
+
+        assertEquals(CompressionType.SCALAR, scenarios.get(1).compressionType());
+        assertEquals(1024, scenarios.get(1).dimensions(3072));
+        assertTrue(scenarios.get(1).discardOriginals());
+
+        assertEquals(CompressionType.PQ, scenarios.get(2).compressionType());
+        assertEquals(64, (int) scenarios.get(2).pqSubspaces());
+        assertTrue(scenarios.get(2).localOnly());
+    }
+
+    @Test
+    void rejectsInvalidDefinitions() throws IOException {
+        assertThrows(IllegalArgumentException.class, () -> Scenarios.load(write("""
+            scenarios:
+              - name: twice
+              - name: twice
+            """)));
+        // Typos fail instead of being ignored.
+        assertThrows(IOException.class, () -> Scenarios.load(write("""
+            scenarios:
+              - name: typo
+                compresion_type: scalar
+            """)));
+        assertThrows(IOException.class, () -> Scenarios.load(write("""
+            scenarios:
+              - name: pq-without-subspaces
+                compression_type: pq
+            """)));
+        assertThrows(IOException.class, () -> Scenarios.load(write("""
+            scenarios:
+              - name: truncated-to-nothing
+                truncate_dims: 0
+            """)));
+    }
+
+    private Path write(String yaml) throws IOException {
+        final var file = Files.createTempFile(directory, "scenarios", ".yml");
+        return Files.writeString(file, yaml);
+    }
+
+}
@@ -0,0 +1,105 @@
+package com.soprasteria.azure.openai.journey3.vector;
+
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExactKnnTest {
+
+    private static final int K = 10;
+
+    private final float[][] corpus = RandomVectors.gaussian(1_000, 24, 1);
+    private final float[][] queries = RandomVectors.gaussian(25, 24, 2);
+
+    @Test
+    void cosineMatchesBruteForce() {
+        assertMatchesBruteForce(Metric.COSINE);
+    }
+
+    @Test
+    void dotProductMatchesBruteForce() {
+        assertMatchesBruteForce(Metric.DOT_PRODUCT);
+    }
+
+    @Test
+    void euclideanMatchesBruteForce() {
+        assertMatchesBruteForce(Metric.EUCLIDEAN);
+    }
+
+    @Test
+    void scoresAreBestFirst() {
+        final var neighbours = new ExactKnn(VectorStore.of(corpus), Metric.COSINE).search(queries[0], K);
+        assertEquals(K, neighbours.length);
+        for (int i = 1; i < neighbours.length; i++) {
+            assertTrue(neighbours[i - 1].score() >= neighbours[i].score(), "not best first at " + i);
+        }
+        assertEquals(similarity(Metric.COSINE, queries[0], corpus[neighbours[0].id()]), neighbours[0].score(), 1e-5);
+    }
+
+    @Test
+    void returnsWholeCorpusWhenSmallerThanK() {
+        final var small = Arrays.copyOf(corpus, 3);
+        final var ids = new ExactKnn(VectorStore.of(small), Metric.EUCLIDEAN).neighbours(queries, K);
+        for (final var result : ids) {
+            assertEquals(3, result.length);
+        }
+    }
+
+    @Test
+    void groundTruthIsCachedOnDisk() throws Exception {
+        final var directory = Files.createTempDirectory("ground-truth");
+        final var knn = new ExactKnn(VectorStore.of(corpus), Metric.COSINE);
+        final var computed = new GroundTruth(knn, directory).neighbours(queries, K);
+        try (final var files = Files.list(directory)) {
+            assertEquals(1, files.count());
+        }
+        final var cached = new GroundTruth(knn, directory).neighbours(queries, K);
+        for (int q = 0; q < queries.length; q++) {
+            assertArrayEquals(computed[q], cached[q]);
+        }
+        assertArrayEquals(knn.neighbours(queries, K)[0], cached[0]);
+    }
+
+    @Test
+    void recallIgnoresOrder() {
+        assertEquals(1.0, GroundTruth.recall(new int[]{3, 2, 1}, new int[]{1, 2, 3}), 0.0);
+        assertEquals(0.5, GroundTruth.recall(new int[]{1, 9}, new int[]{1, 2}), 0.0);
+        assertEquals(1.0, GroundTruth.recall(new int[]{}, new int[]{}), 0.0);
+    }
+
+    private void assertMatchesBruteForce(Metric metric) {
+        final var actual = new ExactKnn(VectorStore.of(corpus), metric).neighbours(queries, K);
+        for (int q = 0; q < queries.length; q++) {
+            final var query = queries[q];
+            final var expected = IntStream.range(0, corpus.length).boxed()
+                .sorted(Comparator.comparingDouble((Integer row) -> similarity(metric, query, corpus[row])).reversed())
+                .limit(K)
+                .mapToInt(Integer::intValue)
+                .toArray();
+            assertArrayEquals(expected, actual[q], metric + " query " + q);
+        }
+    }
+
+    private static double similarity(Metric metric, float[] a, float[] b) {
+        double dot = 0, aa = 0, bb = 0, l2 = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            aa += a[i] * a[i];
+            bb += b[i] * b[i];
+            l2 += (a[i] - b[i]) * (a[i] - b[i]);
+        }
+        return switch (metric) {
+            case COSINE -> dot / Math.sqrt(aa * bb);
+            case DOT_PRODUCT -> dot;
+            case EUCLIDEAN -> -l2;
+        };
+    }
+
+}
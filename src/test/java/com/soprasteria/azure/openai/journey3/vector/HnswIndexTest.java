@@ -0,0 +1,111 @@
+package com.soprasteria.azure.openai.journey3.vector;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HnswIndexTest {
+
+    private static final int K = 10;
+    private static final double MIN_RECALL = 0.9;
+
+    private final float[][] corpus = RandomVectors.clustered(3_000, 32, 40, 0.5f, 3);
+    private final float[][] queries = RandomVectors.clustered(100, 32, 40, 0.5f, 4);
+
+    @Test
+    void cosineRecallAtK() {
+        assertRecall(Metric.COSINE);
+    }
+
+    @Test
+    void dotProductRecallAtK() {
+        assertRecall(Metric.DOT_PRODUCT);
+    }
+
+    @Test
+    void euclideanRecallAtK() {
+        assertRecall(Metric.EUCLIDEAN);
+    }
+
+    @Test
+    void concurrentInsertsKeepRecall() {
+        final var index = new HnswIndex(32, corpus.length, new HnswParameters(16, 200, 100, Metric.COSINE));
+        final var rows = new int[corpus.length];
+        IntStream.range(0, corpus.length).parallel().forEach(i -> rows[index.add(corpus[i])] = i);
+        assertEquals(corpus.length, index.size());
+
+        final var truth = new ExactKnn(VectorStore.of(corpus), Metric.COSINE).neighbours(queries, K);
+        final var results = new int[queries.length][];
+        for (int q = 0; q < queries.length; q++) {
+            results[q] = index.search(queries[q], K);
+            for (int i = 0; i < results[q].length; i++) {
+                results[q][i] = rows[results[q][i]];
+            }
+        }
+        final var recall = RandomVectors.recall(results, truth);
+        assertTrue(recall >= MIN_RECALL, "recall@" + K + " " + recall);
+    }
+
+    @Test
+    void concurrentInsertsKeepTheGraphConnected() {
+        final var index = new HnswIndex(32, corpus.length, new HnswParameters(16, 200, 100, Metric.COSINE));
+        IntStream.range(0, corpus.length).parallel().forEach(i -> index.add(corpus[i]));
+
+        final var reached = new boolean[corpus.length];
+        final var queue = new ArrayDeque<Integer>();
+        reached[index.entryPoint()] = true;
+        queue.add(index.entryPoint());
+        var count = 1;
+        while (!queue.isEmpty()) {
+            final int node = queue.poll();
+            final var links = index.neighbours(node, 0);
+            assertEquals(links.length, Arrays.stream(links).distinct().count(), "duplicate link on " + node);
+            for (final int neighbor : links) {
+                assertNotEquals(node, neighbor, "self-link on " + node);
+                if (!reached[neighbor]) {
+                    reached[neighbor] = true;
+                    queue.add(neighbor);
+                    count++;
+                }
+            }
+        }
+        assertEquals(corpus.length, count, "nodes reachable from the entry point");
+    }
+
+    @Test
+    void searchesAnEmptyIndex() {
+        final var index = new HnswIndex(32, 10, new HnswParameters(4, 100, 50, Metric.COSINE));
+        assertEquals(0, index.search(queries[0], K).length);
+    }
+
+    @Test
+    void rejectsInsertsBeyondCapacity() {
+        final var index = new HnswIndex(32, 2, new HnswParameters(4, 100, 50, Metric.COSINE));
+        index.add(corpus[0]);
+        index.add(corpus[1]);
+        assertThrows(IllegalStateException.class, () -> index.add(corpus[2]));
+    }
+
+    private void assertRecall(Metric metric) {
+        final var index = new HnswIndex(32, corpus.length, new HnswParameters(16, 200, 100, metric));
+        for (final var vector : corpus) {
+            index.add(vector);
+        }
+        final var truth = new ExactKnn(VectorStore.of(corpus), metric).neighbours(queries, K);
+        final var results = new int[queries.length][];
+        for (int q = 0; q < queries.length; q++) {
+            results[q] = index.search(queries[q], K);
+            assertEquals(K, results[q].length);
+        }
+        final var recall = RandomVectors.recall(results, truth);
+        assertTrue(recall >= MIN_RECALL, metric + " recall@" + K + " " + recall);
+    }
+
+}
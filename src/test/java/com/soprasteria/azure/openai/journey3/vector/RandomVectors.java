@@ -0,0 +1,51 @@
+package com.soprasteria.azure.openai.journey3.vector;
+
+import java.util.Random;
+
+/**
+ * Seeded Gaussian vectors for the vector and quantization tests.
+ */
+public final class RandomVectors {
+
+    private RandomVectors() {
+    }
+
+    public static float[][] gaussian(int count, int dimensions, long seed) {
+        final var random = new Random(seed);
+        final var vectors = new float[count][dimensions];
+        for (final var vector : vectors) {
+            for (int i = 0; i < dimensions; i++) {
+                vector[i] = (float) random.nextGaussian();
+            }
+        }
+        return vectors;
+    }
+
+    /**
+     * Vectors scattered around {@code clusters} random centres, the shape real embeddings tend to have.
+     */
+    public static float[][] clustered(int count, int dimensions, int clusters, float spread, long seed) {
+        final var centres = gaussian(clusters, dimensions, seed);
+        final var random = new Random(seed + 1);
+        final var vectors = new float[count][dimensions];
+        for (int v = 0; v < count; v++) {
+            final var centre = centres[random.nextInt(clusters)];
+            for (int i = 0; i < dimensions; i++) {
+                vectors[v][i] = centre[i] + spread * (float) random.nextGaussian();
+            }
+        }
+        return vectors;
+    }
+
+    /**
+     * Fraction of {@code truth} found in {@code results}, averaged over the queries.
+     */
+    public static double recall(int[][] results, int[][] truth) {
+        var sum = 0.0;
+        for (int q = 0; q < truth.length; q++) {
+            sum += GroundTruth.recall(results[q], truth[q]);
+        }
+        return sum / truth.length;
+    }
+
+}
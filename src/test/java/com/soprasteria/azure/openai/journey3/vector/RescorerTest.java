@@ -0,0 +1,84 @@
+package com.soprasteria.azure.openai.journey3.vector;
+
+import java.util.Arrays;
+
+import com.soprasteria.azure.openai.journey3.quantization.BinaryQuantizer;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RescorerTest {
+
+    private static final int K = 10;
+    private static final double OVERSAMPLING = 10.0;
+
+    private final float[][] corpus = RandomVectors.clustered(2_000, 64, 20, 0.6f, 31);
+    private final float[][] queries = RandomVectors.clustered(25, 64, 20, 0.6f, 32);
+
+    @Test
+    void restoresTheExactOrderOfAQuantizedCandidateList() {
+        final var store = VectorStore.of(corpus);
+        final var quantized = new BinaryQuantizer(64).encodeAll(store);
+        final var rescorer = new Rescorer(store, Metric.COSINE);
+        final var truth = new ExactKnn(store, Metric.COSINE).neighbours(queries, K);
+
+        final var returned = new int[queries.length][];
+        final var rescored = new int[queries.length][];
+        for (int q = 0; q < queries.length; q++) {
+            final var candidates = quantized.search(queries[q], Rescorer.candidates(K, OVERSAMPLING));
+            returned[q] = Arrays.copyOf(candidates, K);
+            rescored[q] = rescorer.rescore(queries[q], candidates, K);
+
+            // Exact search over just the candidates gives the same rows in the same order.
+            final var subset = new float[candidates.length][];
+            for (int i = 0; i < candidates.length; i++) {
+                subset[i] = corpus[candidates[i]];
+            }
+            final var exact = Arrays.stream(new ExactKnn(VectorStore.of(subset), Metric.COSINE).search(queries[q], K))
+                .mapToInt(neighbour -> candidates[neighbour.id()])
+                .toArray();
+            assertArrayEquals(exact, rescored[q], "query " + q);
+        }
+
+        final var returnedRecall = RandomVectors.recall(returned, truth);
+        final var rescoredRecall = RandomVectors.recall(rescored, truth);
+        assertTrue(rescoredRecall > returnedRecall + 0.1,
+            "rescored recall " + rescoredRecall + " vs returned " + returnedRecall);
+        assertEquals(queries.length, rescorer.rescoredQueries());
+    }
+
+    @Test
+    void allRowsAsCandidatesGiveTheExactTopK() {
+        final var store = VectorStore.of(corpus);
+        final var rescorer = new Rescorer(store, Metric.EUCLIDEAN);
+        final var everything = new int[corpus.length];
+        Arrays.setAll(everything, row -> corpus.length - 1 - row);
+        final var truth = new ExactKnn(store, Metric.EUCLIDEAN).neighbours(queries, K);
+        for (int q = 0; q < queries.length; q++) {
+            assertArrayEquals(truth[q], rescorer.rescore(queries[q], everything, K), "query " + q);
+        }
+    }
+
+    @Test
+    void duplicateCandidatesAppearOnce() {
+        final var rescorer = new Rescorer(VectorStore.of(corpus), Metric.COSINE);
+        final var query = corpus[5];
+
+        final var best = rescorer.rescore(query, new int[]{5, 3, 5, 7, 3, 5}, K);
+        assertEquals(3, best.length);
+        assertEquals(5, best[0]);
+        assertEquals(3, Arrays.stream(best).distinct().count());
+
+        assertArrayEquals(new int[]{5}, rescorer.rescore(query, new int[]{5, 5, 5}, 2));
+    }
+
+    @Test
+    void candidatesOutsideTheStoreAreIgnored() {
+        final var rescorer = new Rescorer(VectorStore.of(corpus), Metric.DOT_PRODUCT);
+        assertArrayEquals(new int[]{2}, rescorer.rescore(queries[0], new int[]{-1, corpus.length, 2}, K));
+        assertEquals(0, rescorer.rescore(queries[0], new int[]{}, K).length);
+    }
+
+}
@@ -0,0 +1,186 @@
+package com.soprasteria.azure.openai.journey3.vector;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * {@link VectorOps} kernels against naive single-accumulator loops at the two embedding sizes of the scenarios.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.soprasteria.azure.openai.journey3.vector.VectorOpsBenchmark}, or from the IDE.
+ * Add {@code -Dvector.scalar=true} to the fork arguments to measure the scalar fallbacks instead.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class VectorOpsBenchmark {
+
+    private static final int BLOCK_ROWS = 64;
+
+    @Param({"1024", "3072"})
+    int dimensions;
+
+    private float[] a;
+    private float[] b;
+    private byte[] codesA;
+    private byte[] codesB;
+    private long[] bitsA;
+    private long[] bitsB;
+    private float[] block;
+    private float[] scores;
+
+    @Setup
+    public void setUp() {
+        final var random = new Random(42);
+        a = randomFloats(random, dimensions);
+        b = randomFloats(random, dimensions);
+        codesA = randomBytes(random, dimensions);
+        codesB = randomBytes(random, dimensions);
+        bitsA = random.longs(dimensions / Long.SIZE).toArray();
+        bitsB = random.longs(dimensions / Long.SIZE).toArray();
+        block = randomFloats(random, BLOCK_ROWS * dimensions);
+        scores = new float[BLOCK_ROWS];
+    }
+
+    @Benchmark
+    public float naiveDot() {
+        float sum = 0f;
+        for (int i = 0; i < dimensions; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public float dot() {
+        return VectorOps.dot(a, b);
+    }
+
+    @Benchmark
+    public float naiveSquaredL2() {
+        float sum = 0f;
+        for (int i = 0; i < dimensions; i++) {
+            final var d = a[i] - b[i];
+            sum += d * d;
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public float squaredL2() {
+        return VectorOps.squaredL2(a, b);
+    }
+
+    @Benchmark
+    public float naiveCosine() {
+        float dot = 0f, normA = 0f, normB = 0f;
+        for (int i = 0; i < dimensions; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return dot / (float) Math.sqrt(normA * normB);
+    }
+
+    @Benchmark
+    public float cosine() {
+        return VectorOps.cosine(a, b);
+    }
+
+    @Benchmark
+    public float naiveFloatInt8Dot() {
+        float sum = 0f;
+        for (int i = 0; i < dimensions; i++) {
+            sum += a[i] * codesA[i];
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public float floatInt8Dot() {
+        return VectorOps.dot(a, 0, codesA, 0, dimensions);
+    }
+
+    @Benchmark
+    public int naiveInt8Dot() {
+        int sum = 0;
+        for (int i = 0; i < dimensions; i++) {
+            sum += codesA[i] * codesB[i];
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int int8Dot() {
+        return VectorOps.dot(codesA, 0, codesB, 0, dimensions);
+    }
+
+    @Benchmark
+    public int naiveHamming() {
+        int distance = 0;
+        for (int i = 0; i < bitsA.length; i++) {
+            distance += Long.bitCount(bitsA[i] ^ bitsB[i]);
+        }
+        return distance;
+    }
+
+    @Benchmark
+    public int hamming() {
+        return VectorOps.hamming(bitsA, 0, bitsB, 0, bitsA.length);
+    }
+
+    @Benchmark
+    public void naiveDotBlock(Blackhole blackhole) {
+        for (int r = 0; r < BLOCK_ROWS; r++) {
+            float sum = 0f;
+            for (int i = 0; i < dimensions; i++) {
+                sum += a[i] * block[r * dimensions + i];
+            }
+            scores[r] = sum;
+        }
+        blackhole.consume(scores);
+    }
+
+    @Benchmark
+    public void dotBatch(Blackhole blackhole) {
+        VectorOps.dotBatch(a, block, BLOCK_ROWS, dimensions, scores);
+        blackhole.consume(scores);
+    }
+
+    private static float[] randomFloats(Random random, int length) {
+        final var values = new float[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = (float) random.nextGaussian();
+        }
+        return values;
+    }
+
+    private static byte[] randomBytes(Random random, int length) {
+        final var values = new byte[length];
+        random.nextBytes(values);
+        return values;
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(VectorOpsBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
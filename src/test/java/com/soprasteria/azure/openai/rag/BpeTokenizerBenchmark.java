@@ -0,0 +1,89 @@
+package com.soprasteria.azure.openai.rag;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Throughput of {@link BpeTokenizer} on a megabyte of handbook-like Norwegian text: counting only, encoding, and, as
+ * the baseline the splitter replaces, finding the pieces with the encoding's regular expression alone. The text is
+ * a megabyte of UTF-8, so operations per second are megabytes per second.
+ * <p>
+ * Needs the merge tables the build downloads. Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.soprasteria.azure.openai.rag.BpeTokenizerBenchmark}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BpeTokenizerBenchmark {
+
+    private static final int MEGABYTE = 1_000_000;
+
+    @Param({"CL100K_BASE", "O200K_BASE"})
+    BpeTokenizer.Encoding encoding;
+
+    private BpeTokenizer tokenizer;
+    private String text;
+
+    @Setup
+    public void setUp() {
+        tokenizer = BpeTokenizer.of(encoding);
+        final var random = new Random(42);
+        final var words = new String[]{"Ansatte", "har", "rett", "på", "feriepenger", "lønn", "permisjon", "etter",
+            "arbeidsmiljøloven", "§", "10-6", "søknad", "sendes", "nærmeste", "leder", "før", "1.", "mai", "2025",
+            "(se", "kapittel", "4.2)", "Sopra", "Steria's", "overtid", "godtgjøres", "med", "40 %", "–"};
+        final var builder = new StringBuilder();
+        while (builder.toString().getBytes(StandardCharsets.UTF_8).length < MEGABYTE) {
+            for (int i = 0; i < 1000; i++) {
+                builder.append(words[random.nextInt(words.length)]);
+                builder.append(random.nextInt(12) == 0 ? ".\n" : " ");
+            }
+        }
+        final var bytes = builder.toString().getBytes(StandardCharsets.UTF_8);
+        text = new String(bytes, 0, MEGABYTE, StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public int count() {
+        return tokenizer.count(text);
+    }
+
+    @Benchmark
+    public int[] encode() {
+        return tokenizer.encode(text);
+    }
+
+    @Benchmark
+    public int regexPieces() {
+        final var matcher = encoding.pattern().matcher(text);
+        var pieces = 0;
+        while (matcher.find()) {
+            pieces++;
+        }
+        return pieces;
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+            .include(BpeTokenizerBenchmark.class.getSimpleName())
+            .build()).run();
+    }
+
+}
@@ -0,0 +1,192 @@
+package com.soprasteria.azure.openai.rag;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.ToIntFunction;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BpeTokenizerTest {
+
+    private static final String[] WORDS = {"Ansatte", "har", "rett", "på", "feriepenger", "lønn", "permisjon",
+        "arbeidsmiljøloven", "§", "10-6", "søknad", "sendes", "nærmeste", "leder", "1.", "mai", "2025", "(se",
+        "4.2)", "Steria's", "overtid", "40 %", "–", "中文", "😀", "naïve", "\n\n", "  "};
+
+    @Test
+    void mergesLikeTheNaiveAlgorithm() {
+        final var table = train(corpus(new Random(1), 400), 600);
+        final var tokenizer = new BpeTokenizer(BpeTokenizer.Encoding.CL100K_BASE, BpeTokenizer.RankTable.of(table));
+        final var ranks = new HashMap<String, Integer>();
+        for (int rank = 0; rank < table.length; rank++) {
+            ranks.put(key(table[rank]), rank);
+        }
+        final var random = new Random(2);
+        for (int run = 0; run < 300; run++) {
+            final var text = corpus(random, 1 + random.nextInt(30));
+            final var expected = naive(BpeTokenizer.Encoding.CL100K_BASE, ranks, text);
+            assertArrayEquals(expected, tokenizer.encode(text), text);
+            assertEquals(expected.length, tokenizer.count(text), text);
+            assertEquals(text, tokenizer.decode(expected));
+        }
+    }
+
+    @Test
+    void encodesKnownCl100kTokens() {
+        final var tokenizer = BpeTokenizer.of(BpeTokenizer.Encoding.CL100K_BASE);
+        assertArrayEquals(new int[]{15339, 1917}, tokenizer.encode("hello world"));
+        assertArrayEquals(new int[]{9906, 11, 1917, 0}, tokenizer.encode("Hello, world!"));
+        assertArrayEquals(new int[]{83, 1609, 5963, 374, 2294, 0}, tokenizer.encode("tiktoken is great!"));
+    }
+
+    @Test
+    void encodesKnownO200kTokens() {
+        final var tokenizer = BpeTokenizer.of(BpeTokenizer.Encoding.O200K_BASE);
+        assertArrayEquals(new int[]{24912, 2375}, tokenizer.encode("hello world"));
+        assertArrayEquals(new int[]{13225, 11, 2375, 0}, tokenizer.encode("Hello, world!"));
+    }
+
+    @Test
+    void realTablesRoundTripAndMatchTheNaiveAlgorithm() {
+        for (final var encoding : BpeTokenizer.Encoding.values()) {
+            final var tokenizer = BpeTokenizer.of(encoding);
+            final var random = new Random(3);
+            for (int run = 0; run < 50; run++) {
+                final var text = corpus(random, 1 + random.nextInt(40));
+                final var tokens = tokenizer.encode(text);
+                assertEquals(text, tokenizer.decode(tokens), encoding + " " + text);
+                assertEquals(tokens.length, tokenizer.count(text), encoding + " " + text);
+                assertArrayEquals(naive(encoding, tokenizer, text), tokens, encoding + " " + text);
+            }
+        }
+    }
+
+    @Test
+    void readsTiktokenFilesAndRejectsGaps() throws Exception {
+        final var table = BpeTokenizer.RankTable.read(new ByteArrayInputStream("YQ== 0\nYg== 1\n\nYWI= 2\n"
+            .getBytes(StandardCharsets.US_ASCII)));
+        assertEquals(3, table.size());
+        assertEquals(2, table.rank("ab".getBytes(StandardCharsets.US_ASCII), 0, 2));
+        assertThrows(IOException.class, () -> BpeTokenizer.RankTable.read(new ByteArrayInputStream("YQ== 0\nYg== 2\n"
+            .getBytes(StandardCharsets.US_ASCII))));
+    }
+
+    private static String corpus(Random random, int words) {
+        final var text = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            text.append(WORDS[random.nextInt(WORDS.length)]).append(random.nextInt(8) == 0 ? ". " : " ");
+        }
+        return text.toString();
+    }
+
+    /**
+     * The 256 single bytes followed by {@code merges} merges learned from {@code text} the textbook way: the most
+     * frequent adjacent pair within a piece becomes the next token.
+     */
+    private static byte[][] train(String text, int merges) {
+        final var tokens = new ArrayList<byte[]>();
+        for (int b = 0; b < 256; b++) {
+            tokens.add(new byte[]{(byte) b});
+        }
+        final var pieces = new ArrayList<List<byte[]>>();
+        final var matcher = BpeTokenizer.Encoding.CL100K_BASE.pattern().matcher(text);
+        while (matcher.find()) {
+            final var piece = new ArrayList<byte[]>();
+            for (final var b : matcher.group().getBytes(StandardCharsets.UTF_8)) {
+                piece.add(new byte[]{b});
+            }
+            pieces.add(piece);
+        }
+        for (int merge = 0; merge < merges; merge++) {
+            final var counts = new HashMap<String, Integer>();
+            for (final var piece : pieces) {
+                for (int i = 0; i + 1 < piece.size(); i++) {
+                    counts.merge(key(concat(piece.get(i), piece.get(i + 1))), 1, Integer::sum);
+                }
+            }
+            final var best = counts.entrySet().stream()
+                .max(Map.Entry.<String, Integer>comparingByValue().thenComparing(Map.Entry.comparingByKey()))
+                .map(Map.Entry::getKey)
+                .orElse(null);
+            if (best == null) {
+                break;
+            }
+            tokens.add(best.getBytes(StandardCharsets.ISO_8859_1));
+            for (final var piece : pieces) {
+                for (int i = 0; i + 1 < piece.size(); i++) {
+                    if (key(concat(piece.get(i), piece.get(i + 1))).equals(best)) {
+                        piece.set(i, concat(piece.get(i), piece.remove(i + 1)));
+                    }
+                }
+            }
+        }
+        return tokens.toArray(byte[][]::new);
+    }
+
+    private static int[] naive(BpeTokenizer.Encoding encoding, Map<String, Integer> ranks, String text) {
+        return naive(encoding, bytes -> ranks.getOrDefault(key(bytes), Integer.MAX_VALUE), text);
+    }
+
+    private static int[] naive(BpeTokenizer.Encoding encoding, BpeTokenizer tokenizer, String text) {
+        final var table = tokenizer.ranks();
+        return naive(encoding, bytes -> table.rank(bytes, 0, bytes.length), text);
+    }
+
+    /**
+     * Reference byte-pair encoding: split with the pattern, then for every piece that is not a token itself merge
+     * the adjacent pair of lowest rank, leftmost first, until no pair is a token, with lists of byte arrays.
+     */
+    private static int[] naive(BpeTokenizer.Encoding encoding, ToIntFunction<byte[]> rank, String text) {
+        final var tokens = new ArrayList<Integer>();
+        final var matcher = encoding.pattern().matcher(text);
+        while (matcher.find()) {
+            final var bytes = matcher.group().getBytes(StandardCharsets.UTF_8);
+            if (rank.applyAsInt(bytes) != Integer.MAX_VALUE) {
+                tokens.add(rank.applyAsInt(bytes));
+                continue;
+            }
+            final var parts = new ArrayList<byte[]>();
+            for (final var b : bytes) {
+                parts.add(new byte[]{b});
+            }
+            while (true) {
+                var best = -1;
+                var bestRank = Integer.MAX_VALUE;
+                for (int i = 0; i + 1 < parts.size(); i++) {
+                    final var pairRank = rank.applyAsInt(concat(parts.get(i), parts.get(i + 1)));
+                    if (pairRank < bestRank) {
+                        bestRank = pairRank;
+                        best = i;
+                    }
+                }
+                if (best < 0) {
+                    break;
+                }
+                parts.set(best, concat(parts.get(best), parts.remove(best + 1)));
+            }
+            parts.forEach(part -> tokens.add(rank.applyAsInt(part)));
+        }
+        return tokens.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        final var joined = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, joined, a.length, b.length);
+        return joined;
+    }
+
+    private static String key(byte[] bytes) {
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+}
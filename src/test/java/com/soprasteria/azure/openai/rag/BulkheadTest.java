@@ -0,0 +1,50 @@
+package com.soprasteria.azure.openai.rag;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BulkheadTest {
+
+    private static final Duration QUEUE_WAIT = Duration.ofMillis(20);
+
+    @Test
+    void waitsNoLongerThanTheQueueWait() {
+        final var bulkhead = new Bulkhead("chat", 1, QUEUE_WAIT);
+        final var deadline = System.nanoTime() + Duration.ofSeconds(60).toNanos();
+        try (final var permit = bulkhead.enter(deadline)) {
+            final var start = System.nanoTime();
+            assertThrows(Bulkhead.Rejected.class, () -> bulkhead.call(deadline, () -> "late"));
+            final var waited = Duration.ofNanos(System.nanoTime() - start);
+            assertTrue(waited.compareTo(Duration.ofSeconds(1)) < 0, () -> "waited " + waited);
+        }
+        assertEquals("now", bulkhead.call(deadline, () -> "now"));
+        assertEquals(1, bulkhead.stats().rejected());
+    }
+
+    @Test
+    void refusesEvenAFreePermitPastTheDeadline() {
+        final var bulkhead = new Bulkhead("chat", 1, QUEUE_WAIT);
+        assertThrows(RagPipeline.DeadlineExceeded.class, () -> bulkhead.enter(System.nanoTime() - 1));
+        assertEquals(0, bulkhead.stats().calls());
+    }
+
+    @Test
+    void permitIsReleasedOnce() {
+        final var bulkhead = new Bulkhead("chat", 1, QUEUE_WAIT);
+        final var deadline = System.nanoTime() + Duration.ofSeconds(1).toNanos();
+        final var permit = bulkhead.enter(deadline);
+        permit.close();
+        permit.close();
+        try (final var held = bulkhead.enter(deadline)) {
+            assertEquals(1, bulkhead.stats().inFlight());
+            assertThrows(Bulkhead.Rejected.class, () -> bulkhead.enter(deadline));
+        }
+        assertEquals(0, bulkhead.stats().inFlight());
+    }
+
+}
@@ -0,0 +1,103 @@
+package com.soprasteria.azure.openai.rag;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.azure.search.documents.models.SearchOptions;
+import com.soprasteria.azure.openai.journey2.SearchResultReader;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ContextBuilderTest {
+
+    private static final float[] EAST = {1f, 0f};
+    private static final float[] NORTH = {0f, 1f};
+    private static final float[] WEST = {-1f, 0f};
+
+    @Test
+    void reportsEveryCandidateLeftOut() {
+        final var builder = ContextBuilder.characters(2, 1_000)
+            .diverse(new MmrSelector(0.7, 0.95, 0.5), 6, "text_vector", null);
+        final var context = builder.pack(List.of(
+            new ContextBuilder.Chunk("ferie", 4.0, EAST),
+            new ContextBuilder.Chunk(" ferie\n", 3.9, EAST),
+            new ContextBuilder.Chunk("feriepenger", 3.8, EAST),
+            new ContextBuilder.Chunk("sykefravær", 3.0, NORTH),
+            new ContextBuilder.Chunk("overtid", 2.8, new float[]{0.7f, 0.7f}),
+            new ContextBuilder.Chunk("parkering", 0.5, WEST)), null);
+
+        assertEquals(List.of("ferie", "sykefravær"),
+            context.included().stream().map(ContextBuilder.Chunk::text).toList());
+        assertEquals(1, context.dropped(ContextBuilder.DropReason.DUPLICATE));
+        assertEquals(1, context.dropped(ContextBuilder.DropReason.REDUNDANT));
+        assertEquals(1, context.dropped(ContextBuilder.DropReason.LOW_RELEVANCE));
+        assertEquals(1, context.dropped(ContextBuilder.DropReason.NOT_SELECTED));
+        assertEquals(context.hits(), context.included().size() + context.dropped().size());
+    }
+
+    @Test
+    void reportsChunksOverBudget() {
+        final var context = ContextBuilder.characters(3, 12).pack(List.of(
+            new ContextBuilder.Chunk("short", 3.0),
+            new ContextBuilder.Chunk("much too long", 2.0),
+            new ContextBuilder.Chunk("tiny", 1.0)));
+        assertEquals("short\ntiny\n", context.text());
+        assertEquals(1, context.dropped(ContextBuilder.DropReason.OVER_BUDGET));
+    }
+
+    @Test
+    void boundKeepsTheSelectedFields() {
+        final var diverse = ContextBuilder.characters(2, 1_000)
+            .diverse(MmrSelector.withDefaults(), 10, "text_vector", null);
+        final var options = diverse.bound(new SearchOptions().setSelect("title", "chunk"));
+        assertEquals(List.of("title", "chunk", "text_vector"), options.getSelect());
+        assertEquals(10, (int) options.getTop());
+
+        assertEquals(List.of("title", "chunk"),
+            ContextBuilder.characters(2, 1_000).bound(new SearchOptions().setSelect("title")).getSelect());
+        assertNull(ContextBuilder.characters(2, 1_000).bound(new SearchOptions()).getSelect());
+    }
+
+
+    @Test
+    void boundRequestSelectsWhatTheReaderReads() {
+        final var diverse = ContextBuilder.characters(2, 1_000)
+            .diverse(MmrSelector.withDefaults(), 10, "text_vector", null);
+        final var request = diverse.bound(new HashMap<String, Object>(Map.of("select", "title")));
+        assertEquals("title,chunk,text_vector", request.get("select"));
+        assertEquals(10, request.get("top"));
+
+        final var plain = ContextBuilder.characters(2, 1_000).bound(new HashMap<String, Object>());
+        assertNull(plain.get("select"));
+    }
+
+    @Test
+    void buildsFromPassagesAskingOnlyForMissingVectors() {
+        final var asked = new ArrayList<String>();
+        final var builder = ContextBuilder.characters(2, 1_000)
+            .diverse(new MmrSelector(0.7, 0.95, 0.0), 3, "text_vector", chunks -> {
+                asked.addAll(chunks);
+                return chunks.stream().map(chunk -> NORTH).toList();
+            });
+        final var context = builder.buildFromPassages(List.of(
+            passage("ferie", EAST, 0.9, null),
+            passage("sykefravær", null, 0.8, null),
+            passage(null, WEST, 0.7, null),
+            passage("feriepenger", EAST, 0.1, 3.5)), EAST);
+
+        assertEquals(List.of("sykefravær"), asked);
+        assertEquals(List.of("feriepenger", "sykefravær"),
+            context.included().stream().map(ContextBuilder.Chunk::text).toList());
+        assertEquals(3.5, context.included().getFirst().score(), 1e-9);
+    }
+
+    private static SearchResultReader.Passage passage(String chunk, float[] vector, double score, Double reranker) {
+        return new SearchResultReader.Passage(chunk == null ? Map.of() : Map.of("chunk", chunk), vector, score,
+            reranker);
+    }
+
+}
@@ -0,0 +1,55 @@
+package com.soprasteria.azure.openai.rag;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MmrSelectorTest {
+
+    private static final float[] EAST = {1f, 0f};
+    private static final float[] NEARLY_EAST = {0.99f, 0.05f};
+    private static final float[] NORTH = {0f, 1f};
+    private static final float[] NORTH_EAST = {0.7f, 0.7f};
+    private static final float[] WEST = {-1f, 0f};
+
+    @Test
+    void accountsForEveryCandidate() {
+        final var relevance = new double[]{1.0, 0.95, 0.9, 0.8, 0.2};
+        final var vectors = new float[][]{EAST, NEARLY_EAST, NORTH, NORTH_EAST, WEST};
+        final var selection = new MmrSelector(0.7, 0.95, 0.5).select(relevance, vectors, 2);
+
+        assertArrayEquals(new int[]{0, 2}, selection.selected());
+        assertArrayEquals(new int[]{1}, selection.redundant());
+        assertArrayEquals(new int[]{4}, selection.lowRelevance());
+        assertArrayEquals(new int[]{3}, selection.notSelected());
+        final var all = IntStream.of(concat(selection.selected(), selection.redundant(), selection.lowRelevance(),
+            selection.notSelected())).sorted().toArray();
+        assertArrayEquals(IntStream.range(0, relevance.length).toArray(), all);
+    }
+
+    @Test
+    void plainRelevanceOrderWithLambdaOne() {
+        final var relevance = new double[]{0.6, 1.0, 0.8};
+        final var selection = new MmrSelector(1.0, 1.1, 0.0).select(relevance, new float[][]{EAST, NORTH, EAST}, 3);
+        assertArrayEquals(new int[]{1, 2, 0}, selection.selected());
+        assertEquals(0, selection.notSelected().length);
+    }
+
+    @Test
+    void candidatesWithoutVectorsCompeteOnRelevance() {
+        final var relevance = new double[]{1.0, 0.9, 0.1};
+        final var selection = new MmrSelector(0.7, 0.9, 0.5).select(relevance, new float[3][], 1);
+        assertArrayEquals(new int[]{0}, selection.selected());
+        assertArrayEquals(new int[]{1}, selection.notSelected());
+        assertArrayEquals(new int[]{2}, selection.lowRelevance());
+    }
+
+    private static int[] concat(int[]... arrays) {
+        return Arrays.stream(arrays).flatMapToInt(IntStream::of).toArray();
+    }
+
+}
@@ -0,0 +1,90 @@
+package com.soprasteria.azure.openai.rag;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PieceSplitterTest {
+
+    /**
+     * Characters the patterns treat differently: cases, marks, numbers of other scripts, contractions, line breaks,
+     * Unicode spaces, slashes and surrogate pairs.
+     */
+    private static final String[] ALPHABET = {
+        "a", "Z", "æ", "Ø", "å", "ǅ", "ß", "İ", "ı", "ſ", "K", "ʰ", "中", "ｶ", "́", "कि", "Ω", "ǈ",
+        "0", "7", "٣", "²", "Ⅻ", "½", "'", "’", "s", "S", "t", "re", "ve", "M", "ll", "D",
+        " ", "  ", "\t", "\n", "\r", "\r\n", " ", " ", " ", "\u0085", "\u000B", "\u000C",
+        "/", "\\", ".", ",", "!", "?", "-", "–", "§", "%", "(", ")", "\"", "#", "@", "😀", "𝔸", "\uD800", "\uDC00"};
+
+    @Test
+    void cl100kSplitsLikeItsPattern() {
+        fuzz(BpeTokenizer.Encoding.CL100K_BASE);
+    }
+
+    @Test
+    void o200kSplitsLikeItsPattern() {
+        fuzz(BpeTokenizer.Encoding.O200K_BASE);
+    }
+
+    @Test
+    void knownSplits() {
+        assertEquals(List.of("Hello", ",", " world", "!"), pieces(BpeTokenizer.Encoding.CL100K_BASE, "Hello, world!"));
+        assertEquals(List.of("I", "'ll", " pay", " ", "123", "4", " kr", "\n\n", " ", " done"),
+            pieces(BpeTokenizer.Encoding.CL100K_BASE, "I'll pay 1234 kr\n\n  done"));
+        assertEquals(List.of("Hello", "World", " and", "/or", " ABCdef"),
+            pieces(BpeTokenizer.Encoding.O200K_BASE, "HelloWorld and/or ABCdef"));
+    }
+
+    private static void fuzz(BpeTokenizer.Encoding encoding) {
+        final var random = new Random(7);
+        for (int run = 0; run < 5_000; run++) {
+            final var text = new StringBuilder();
+            final var length = 1 + random.nextInt(24);
+            for (int i = 0; i < length; i++) {
+                text.append(ALPHABET[random.nextInt(ALPHABET.length)]);
+            }
+            assertSplitsLikeThePattern(encoding, text.toString());
+        }
+        for (int run = 0; run < 2_000; run++) {
+            final var text = new StringBuilder();
+            final var length = 1 + random.nextInt(16);
+            for (int i = 0; i < length; i++) {
+                final var codePoint = random.nextInt(Character.MAX_CODE_POINT + 1);
+                if (Character.isDefined(codePoint)) {
+                    text.appendCodePoint(codePoint);
+                }
+            }
+            assertSplitsLikeThePattern(encoding, text.toString());
+        }
+    }
+
+    private static void assertSplitsLikeThePattern(BpeTokenizer.Encoding encoding, String text) {
+        final var expected = new ArrayList<String>();
+        final var matcher = encoding.pattern().matcher(text);
+        while (matcher.find()) {
+            expected.add(matcher.group());
+        }
+        assertEquals(expected, pieces(encoding, text), () -> encoding + " on " + escape(text));
+    }
+
+    private static List<String> pieces(BpeTokenizer.Encoding encoding, String text) {
+        final var pieces = new ArrayList<String>();
+        for (int start = 0, end; start < text.length(); start = end) {
+            end = encoding.pieceEnd(text, start);
+            pieces.add(text.substring(start, end));
+        }
+        return pieces;
+    }
+
+    private static String escape(String text) {
+        final var escaped = new StringBuilder();
+        text.codePoints().forEach(c -> escaped.append(c < 0x20 || c > 0x7E ? String.format("\\u{%X}", c)
+            : Character.toString(c)));
+        return escaped.toString();
+    }
+
+}
@@ -0,0 +1,83 @@
+package com.soprasteria.azure.openai.rag;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.azure.ai.openai.OpenAIClient;
+import com.azure.ai.openai.OpenAIClientBuilder;
+import com.azure.ai.openai.models.ChatCompletionsOptions;
+import com.azure.ai.openai.models.ChatRequestSystemMessage;
+import com.azure.ai.openai.models.ChatRequestUserMessage;
+import com.soprasteria.azure.openai.journey3.utils.Utils;
+import com.soprasteria.azure.openai.standin.ChatCompletionsStandIn;
+import com.soprasteria.azure.openai.standin.FaultProfile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StreamingAnswerTest {
+
+    private static final String DEPLOYMENT = "gpt-4o-mini";
+    private static final String CONTEXT = "ord ".repeat(100);
+
+    private ChatCompletionsStandIn standIn;
+
+    @AfterEach
+    void stop() {
+        standIn.close();
+    }
+
+    @Test
+    void streamsEveryPieceToTheSink() throws Exception {
+        final var client = start(Duration.ofMillis(1));
+        final var pieces = new CopyOnWriteArrayList<String>();
+        final var result = StreamingAnswer.stream(client, DEPLOYMENT, options(), pieces::add);
+        assertEquals(String.join("", pieces), result.answer());
+        assertEquals(60, result.chunks());
+        assertEquals("stop", result.finishReason());
+        assertTrue(result.timeToFirstTokenMillis() <= result.totalMillis());
+    }
+
+    @Test
+    void failingSinkCancelsTheStream() throws Exception {
+        final var client = start(Duration.ofMillis(50));
+        final var failure = new IllegalStateException("client gone");
+        assertSame(failure, assertThrows(IllegalStateException.class,
+            () -> StreamingAnswer.stream(client, DEPLOYMENT, options(), text -> {
+                throw failure;
+            })));
+        // The whole answer would take three seconds; a cancelled stream ends at the next token.
+        final var deadline = System.nanoTime() + Duration.ofSeconds(2).toNanos();
+        while (standIn.abandonedStreams() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, standIn.abandonedStreams());
+    }
+
+    @Test
+    void stalledStreamTimesOut() throws Exception {
+        final var client = start(Duration.ofSeconds(2));
+        final var pieces = new CopyOnWriteArrayList<String>();
+        final var start = System.nanoTime();
+        assertThrows(StreamingAnswer.Stalled.class,
+            () -> StreamingAnswer.stream(client, DEPLOYMENT, options(), pieces::add, Duration.ofMillis(500)));
+        assertTrue(System.nanoTime() - start < Duration.ofMillis(1_800).toNanos());
+        assertTrue(pieces.size() <= 1, pieces::toString);
+    }
+
+    private OpenAIClient start(Duration tokenInterval) throws Exception {
+        standIn = new ChatCompletionsStandIn(0, FaultProfile.NONE, Duration.ZERO, tokenInterval);
+        return Utils.keyedEndpoint(new OpenAIClientBuilder(), standIn.endpoint(), "key").buildClient();
+    }
+
+    private static ChatCompletionsOptions options() {
+        return new ChatCompletionsOptions(List.of(new ChatRequestSystemMessage(CONTEXT),
+            new ChatRequestUserMessage("Hva står det?")));
+    }
+
+}
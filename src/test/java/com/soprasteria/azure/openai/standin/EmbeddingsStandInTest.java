@@ -0,0 +1,112 @@
+package com.soprasteria.azure.openai.standin;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EmbeddingsStandInTest {
+
+    private static final String BODY = """
+        {"input": ["Hvor mange feriedager har jeg?"], "dimensions": 8}
+        """;
+
+    private final HttpClient http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void faultProfileThrottlesAndFailsAtItsRates() throws Exception {
+        final var requests = 1_000;
+        // 20 % are throttled, and 10 % of the rest fail with 503: 8 % of all requests.
+        final var faults = new FaultProfile(Duration.ZERO, Duration.ZERO, 0.2, 0.1, 0, Duration.ofMillis(1_500));
+        try (final var standIn = new EmbeddingsStandIn(0, faults, 8);
+             final var callers = Executors.newVirtualThreadPerTaskExecutor()) {
+            final var futures = new CompletableFuture[requests];
+            for (int i = 0; i < requests; i++) {
+                futures[i] = CompletableFuture.supplyAsync(() -> post(standIn, BODY), callers);
+            }
+            var throttled = 0;
+            var unavailable = 0;
+            var succeeded = 0;
+            for (final var future : futures) {
+                final var response = (HttpResponse<?>) future.join();
+                switch (response.statusCode()) {
+                    case 429 -> throttled++;
+                    case 503 -> unavailable++;
+                    case 200 -> succeeded++;
+                    default -> throw new AssertionError("unexpected status " + response.statusCode());
+                }
+            }
+
+            // Both bounds are more than three standard deviations wide.
+            assertEquals(0.2, (double) throttled / requests, 0.04, "throttled " + throttled);
+            assertEquals(0.08, (double) unavailable / requests, 0.03, "unavailable " + unavailable);
+            assertEquals(succeeded, standIn.requests());
+        }
+    }
+
+    @Test
+    void throttledAndUnavailableResponsesSayWhenToRetry() throws Exception {
+        final var throttling = new FaultProfile(Duration.ZERO, Duration.ZERO, 1.0, 0, 0, Duration.ofMillis(1_500));
+        try (final var standIn = new EmbeddingsStandIn(0, throttling, 8)) {
+            final var response = post(standIn, BODY);
+            assertEquals(429, response.statusCode());
+            assertEquals("1500", response.headers().firstValue("retry-after-ms").orElseThrow());
+            // Whole seconds, rounded up so a client never retries early.
+            assertEquals("2", response.headers().firstValue("Retry-After").orElseThrow());
+            assertEquals("429", mapper.readTree(response.body()).path("error").path("code").asText());
+        }
+
+        final var outage = new FaultProfile(Duration.ZERO, Duration.ZERO, 0, 1.0, 0, Duration.ofMillis(500));
+        try (final var standIn = new EmbeddingsStandIn(0, outage, 8)) {
+            final var response = post(standIn, BODY);
+            assertEquals(503, response.statusCode());
+            assertEquals("500", response.headers().firstValue("retry-after-ms").orElseThrow());
+            assertEquals("1", response.headers().firstValue("Retry-After").orElseThrow());
+        }
+
+        try (final var standIn = new EmbeddingsStandIn(0, FaultProfile.NONE, 8)) {
+            final var response = post(standIn, BODY);
+            assertEquals(200, response.statusCode());
+            assertTrue(response.headers().firstValue("retry-after-ms").isEmpty());
+            assertTrue(response.headers().firstValue("Retry-After").isEmpty());
+            assertEquals(8, mapper.readTree(response.body()).path("data").get(0).path("embedding").size());
+        }
+    }
+
+    @Test
+    void invalidRequestsAreClientErrors() throws Exception {
+        try (final var standIn = new EmbeddingsStandIn(0, FaultProfile.NONE, 8)) {
+            assertEquals(400, post(standIn, "{\"input\": [").statusCode());
+            assertEquals(400, post(standIn, "{\"input\": []}").statusCode());
+            assertEquals(400, post(standIn, "{\"input\": \"ferie\", \"dimensions\": -1}").statusCode());
+
+            final var response = post(standIn, "{\"input\": []}");
+            assertEquals("invalid_request", mapper.readTree(response.body()).path("error").path("code").asText());
+            assertTrue(response.headers().firstValue("retry-after-ms").isEmpty());
+        }
+    }
+
+    private HttpResponse<String> post(EmbeddingsStandIn standIn, String body) {
+        final var request = HttpRequest.newBuilder(
+                URI.create(standIn.endpoint() + "/openai/deployments/text-embedding-3-large/embeddings"))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(body))
+            .build();
+        try {
+            return http.send(request, HttpResponse.BodyHandlers.ofString());
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
@@ -0,0 +1,121 @@
+package com.soprasteria.azure.openai.standin;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.azure.search.documents.indexes.models.SearchField;
+import com.azure.search.documents.indexes.models.SearchFieldDataType;
+import com.azure.search.documents.indexes.models.SearchIndex;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SearchServiceStandInTest {
+
+    private static final String INDEX = "handbook";
+    private static final String DOCS = "/indexes('" + INDEX + "')/docs";
+
+    private final HttpClient http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void faultProfileThrottlesAndFailsAtItsRates() throws Exception {
+        final var requests = 1_000;
+        final var faults = new FaultProfile(Duration.ZERO, Duration.ZERO, 0.2, 0.1, 0, Duration.ofMillis(250));
+        try (final var standIn = new SearchServiceStandIn(0, faults, 10)) {
+            var throttled = 0;
+            var unavailable = 0;
+            for (int i = 0; i < requests; i++) {
+                final var response = send(standIn, "GET", "/indexes", null);
+                switch (response.statusCode()) {
+                    case 429 -> throttled++;
+                    case 503 -> unavailable++;
+                    case 200 -> { }
+                    default -> throw new AssertionError("unexpected status " + response.statusCode());
+                }
+                if (response.statusCode() != 200) {
+                    assertEquals("250", response.headers().firstValue("retry-after-ms").orElseThrow());
+                    assertEquals("1", response.headers().firstValue("Retry-After").orElseThrow());
+                }
+            }
+            // 20 % are throttled, and 10 % of the rest fail with 503; both bounds are over three standard deviations.
+            assertEquals(0.2, (double) throttled / requests, 0.04, "throttled " + throttled);
+            assertEquals(0.08, (double) unavailable / requests, 0.03, "unavailable " + unavailable);
+        }
+    }
+
+    @Test
+    void partialFailuresFailSingleDocumentsOfABatch() throws Exception {
+        final var faults = new FaultProfile(Duration.ZERO, Duration.ZERO, 0, 0, 0.3, Duration.ofMillis(250));
+        try (final var standIn = new SearchServiceStandIn(0, faults, 1_000)) {
+            standIn.backend().createOrUpdateIndex(definition(), 1_000);
+            final var documents = new ArrayList<Map<String, Object>>();
+            for (int i = 0; i < 1_000; i++) {
+                documents.add(Map.of("@search.action", "upload", "id", "doc-" + i,
+                    "text_vector", List.of(1.0, i % 7 / 7.0, i % 5 / 5.0, i % 3 / 3.0)));
+            }
+
+            final var response = send(standIn, "POST", DOCS + "/search.index",
+                mapper.writeValueAsString(Map.of("value", documents)));
+            assertEquals(207, response.statusCode());
+            var failed = 0;
+            for (final var result : mapper.readTree(response.body()).path("value")) {
+                if (!result.path("status").asBoolean()) {
+                    failed++;
+                    assertEquals(503, result.path("statusCode").asInt());
+                }
+            }
+            assertEquals(0.3, failed / 1_000.0, 0.05, "failed " + failed);
+            assertEquals(1_000 - failed, standIn.backend().getDocumentCount(INDEX));
+        }
+    }
+
+    @Test
+    void invalidRequestsAreClientErrors() throws Exception {
+        try (final var standIn = new SearchServiceStandIn(0, FaultProfile.NONE, 10)) {
+            standIn.backend().createOrUpdateIndex(definition(), 10);
+
+            final var malformed = send(standIn, "POST", DOCS + "/search.post.search", "{\"search\": ");
+            assertEquals(400, malformed.statusCode());
+            assertEquals("InvalidRequest", mapper.readTree(malformed.body()).path("error").path("code").asText());
+            assertTrue(malformed.headers().firstValue("retry-after-ms").isEmpty());
+
+            assertEquals(400, send(standIn, "POST", DOCS + "/search.post.search", "[]").statusCode());
+            assertEquals(400, send(standIn, "POST", "/indexes", "{\"name\": ").statusCode());
+            assertEquals(400, send(standIn, "POST", DOCS + "/search.post.search",
+                "{\"vectorQueries\": [{\"kind\": \"text\", \"text\": \"ferie\", \"fields\": \"missing\"}]}")
+                .statusCode());
+            assertEquals(404, send(standIn, "GET", "/indexes('missing')", null).statusCode());
+            assertEquals(200, send(standIn, "POST", DOCS + "/search.post.search", "{\"search\": \"*\"}")
+                .statusCode());
+        }
+    }
+
+    private static SearchIndex definition() {
+        return new SearchIndex(INDEX, List.of(
+            new SearchField("id", SearchFieldDataType.STRING).setKey(true),
+            new SearchField("text_vector", SearchFieldDataType.collection(SearchFieldDataType.SINGLE))
+                .setVectorSearchDimensions(4)));
+    }
+
+    private HttpResponse<String> send(SearchServiceStandIn standIn, String method, String path, String body)
+        throws Exception {
+        final var publisher = body == null
+            ? HttpRequest.BodyPublishers.noBody()
+            : HttpRequest.BodyPublishers.ofString(body);
+        final var request = HttpRequest.newBuilder(URI.create(standIn.endpoint() + path))
+            .header("Content-Type", "application/json")
+            .method(method, publisher)
+            .build();
+        return http.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+}